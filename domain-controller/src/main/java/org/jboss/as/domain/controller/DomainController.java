@@ -22,9 +22,11 @@
 
 package org.jboss.as.domain.controller;
 
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import org.jboss.as.model.AbstractModelElement;
 import org.jboss.as.model.DomainModel;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -45,6 +47,9 @@ import java.io.FileReader;
 
 /**
  * A Domain controller instance.
+ * <p>
+ * A server manager which already holds a copy of the domain model is sent only the elements which changed, see
+ * {@link #getDomainModelDelta(Map)}.
  *
  * @author John Bailey
  */
@@ -108,6 +113,26 @@ public class DomainController implements Service<DomainController> {
         return domainModel;
     }
 
+    /**
+     * Get what a server manager needs to bring its copy of the domain model up to date.  This is the top level elements
+     * whose hashes differ from the copy's, or the full model if the server manager has no copy or the namespaces of
+     * the model changed.
+     *
+     * @param elementHashes the {@link DomainModel#getElementHashes() element hashes} of the copy, or <code>null</code>
+     *                      if there is no copy
+     * @return the delta
+     */
+    public synchronized DomainModelDelta getDomainModelDelta(final Map<String, Long> elementHashes) {
+        if (elementHashes == null) {
+            return DomainModelDelta.fullModel(domainModel);
+        }
+        final Map<String, AbstractModelElement<?>> changedElements = domainModel.getChangedElements(elementHashes);
+        if (changedElements == null) {
+            return DomainModelDelta.fullModel(domainModel);
+        }
+        return DomainModelDelta.changedElements(changedElements);
+    }
+
     private DomainModel parseDomain(final XMLMapper mapper,  final File domainConfigDir) {
         final File domainXML = new File(domainConfigDir, "domain.xml");
         if (!domainXML.exists()) {
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.domain.controller;
+
+import java.util.Map;
+import org.jboss.as.model.AbstractModelElement;
+import org.jboss.as.model.DomainModel;
+
+/**
+ * What a server manager needs to bring its copy of the domain model up to date.  Depending on what the server manager
+ * already holds this is either the top level elements which changed, or the full domain model.
+ *
+ * @author John Bailey
+ */
+public final class DomainModelDelta {
+    private final DomainModel domainModel;
+    private final Map<String, AbstractModelElement<?>> changedElements;
+
+    private DomainModelDelta(final DomainModel domainModel, final Map<String, AbstractModelElement<?>> changedElements) {
+        this.domainModel = domainModel;
+        this.changedElements = changedElements;
+    }
+
+    static DomainModelDelta fullModel(final DomainModel domainModel) {
+        return new DomainModelDelta(domainModel, null);
+    }
+
+    static DomainModelDelta changedElements(final Map<String, AbstractModelElement<?>> changedElements) {
+        return new DomainModelDelta(null, changedElements);
+    }
+
+    /**
+     * Get the full domain model.
+     *
+     * @return the domain model, or <code>null</code> if this delta is not the full model
+     */
+    public DomainModel getDomainModel() {
+        return domainModel;
+    }
+
+    /**
+     * Get the top level elements to replace, see {@link DomainModel#applyChangedElements(Map)}.
+     *
+     * @return the changed elements, or <code>null</code> if this delta is not a set of changed elements
+     */
+    public Map<String, AbstractModelElement<?>> getChangedElements() {
+        return changedElements;
+    }
+}
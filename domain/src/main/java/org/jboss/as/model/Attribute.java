@@ -62,6 +62,7 @@ public enum Attribute {
     SIZE("size"),
     SOCKET_BINDING_GROUP("socket-binding-group"),
     START("start"),
+    TYPE("type"),
     VALUE("value"),
     MAX_THREADS("max-threads"),
     ;
@@ -49,6 +49,8 @@ public final class DomainModel extends AbstractModel<DomainModel> {
 
     private static final long serialVersionUID = 5516070442013067881L;
 
+    private static final String DOMAIN_KEY = "domain";
+
     private final NavigableMap<String, NamespaceAttribute> namespaces = new TreeMap<String, NamespaceAttribute>();
     private final String schemaLocation;
     private final NavigableMap<String, ExtensionElement> extensions = new TreeMap<String, ExtensionElement>();
@@ -223,6 +225,68 @@ public final class DomainModel extends AbstractModel<DomainModel> {
         return systemProperties;
     }
 
+    /**
+     * Gets the {@link AbstractModelElement#elementHash() element hashes} of the top level elements of this domain.
+     * The keys are the element's local name followed by its name, for example {@code profile/default}; the system
+     * properties use the key {@code system-properties} and the namespaces and schema location of the domain itself
+     * the key {@code domain}.  A host holding a copy of the domain sends these hashes to learn which elements
+     * changed, see {@link #getChangedElements(Map)}.
+     *
+     * @return the element hashes. Will not be <code>null</code>
+     */
+    public Map<String, Long> getElementHashes() {
+        final Map<String, Long> hashes = new HashMap<String, Long>();
+        hashes.put(DOMAIN_KEY, Long.valueOf(rootHash()));
+        for (Map.Entry<String, AbstractModelElement<?>> entry : getElements().entrySet()) {
+            hashes.put(entry.getKey(), Long.valueOf(entry.getValue().elementHash()));
+        }
+        return hashes;
+    }
+
+    /**
+     * Gets the top level elements which differ from those of a copy of this domain.
+     *
+     * @param elementHashes the {@link #getElementHashes() element hashes} of the copy
+     * @return the changed and added elements by key, with a <code>null</code> value for each element which was
+     *         removed, or <code>null</code> if the domain itself changed and the copy must be replaced
+     */
+    public Map<String, AbstractModelElement<?>> getChangedElements(final Map<String, Long> elementHashes) {
+        final Long known = elementHashes.get(DOMAIN_KEY);
+        if (known == null || known.longValue() != rootHash()) {
+            return null;
+        }
+        final Map<String, AbstractModelElement<?>> elements = getElements();
+        final Map<String, AbstractModelElement<?>> changed = new HashMap<String, AbstractModelElement<?>>();
+        for (Map.Entry<String, AbstractModelElement<?>> entry : elements.entrySet()) {
+            final Long hash = elementHashes.get(entry.getKey());
+            if (hash == null || hash.longValue() != entry.getValue().elementHash()) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String key : elementHashes.keySet()) {
+            if (!DOMAIN_KEY.equals(key) && !elements.containsKey(key)) {
+                changed.put(key, null);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Replace the top level elements of this domain with those {@link #getChangedElements(Map) changed} in another
+     * copy of it.  Every element is checked before any is replaced, so the domain is unchanged if one is not valid.
+     *
+     * @param changedElements the changed elements by key, with a <code>null</code> value for a removed element
+     * @throws IllegalArgumentException if a key or element is not valid
+     */
+    public void applyChangedElements(final Map<String, AbstractModelElement<?>> changedElements) {
+        for (Map.Entry<String, AbstractModelElement<?>> entry : changedElements.entrySet()) {
+            replaceElement(entry.getKey(), entry.getValue(), false);
+        }
+        for (Map.Entry<String, AbstractModelElement<?>> entry : changedElements.entrySet()) {
+            replaceElement(entry.getKey(), entry.getValue(), true);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public long elementHash() {
@@ -354,6 +418,105 @@ public final class DomainModel extends AbstractModel<DomainModel> {
         streamWriter.writeEndElement();
     }
 
+    private Map<String, AbstractModelElement<?>> getElements() {
+        final Map<String, AbstractModelElement<?>> elements = new HashMap<String, AbstractModelElement<?>>();
+        putElements(elements, Element.EXTENSION, extensions);
+        putElements(elements, Element.PROFILE, profiles);
+        putElements(elements, Element.INTERFACE, interfaces);
+        putElements(elements, Element.SOCKET_BINDING_GROUP, bindingGroups);
+        putElements(elements, Element.DEPLOYMENT, deployments);
+        putElements(elements, Element.SERVER_GROUP, serverGroups);
+        final PropertiesElement systemProperties = this.systemProperties;
+        if (systemProperties != null) {
+            elements.put(Element.SYSTEM_PROPERTIES.getLocalName(), systemProperties);
+        }
+        return elements;
+    }
+
+    private static void putElements(final Map<String, AbstractModelElement<?>> elements, final Element element, final Map<String, ? extends AbstractModelElement<?>> map) {
+        final String prefix = element.getLocalName() + '/';
+        synchronized (map) {
+            for (Map.Entry<String, ? extends AbstractModelElement<?>> entry : map.entrySet()) {
+                elements.put(prefix + entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void replaceElement(final String key, final AbstractModelElement<?> element, final boolean apply) {
+        if (Element.SYSTEM_PROPERTIES.getLocalName().equals(key)) {
+            final PropertiesElement properties = cast(key, element, PropertiesElement.class);
+            if (apply) {
+                systemProperties = properties;
+            }
+            return;
+        }
+        final int slash = key.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Invalid element key " + key);
+        }
+        final String name = key.substring(slash + 1);
+        switch (Element.forName(key.substring(0, slash))) {
+            case EXTENSION: {
+                replace(extensions, name, cast(key, element, ExtensionElement.class), apply);
+                break;
+            }
+            case PROFILE: {
+                replace(profiles, name, cast(key, element, ProfileElement.class), apply);
+                break;
+            }
+            case INTERFACE: {
+                replace(interfaces, name, cast(key, element, InterfaceElement.class), apply);
+                break;
+            }
+            case SOCKET_BINDING_GROUP: {
+                replace(bindingGroups, name, cast(key, element, SocketBindingGroupElement.class), apply);
+                break;
+            }
+            case DEPLOYMENT: {
+                replace(deployments, name, cast(key, element, DeploymentUnitElement.class), apply);
+                break;
+            }
+            case SERVER_GROUP: {
+                replace(serverGroups, name, cast(key, element, ServerGroupElement.class), apply);
+                break;
+            }
+            default: throw new IllegalArgumentException("Invalid element key " + key);
+        }
+    }
+
+    private static <E> void replace(final Map<String, E> map, final String name, final E element, final boolean apply) {
+        if (!apply) {
+            return;
+        }
+        synchronized (map) {
+            if (element == null) {
+                map.remove(name);
+            } else {
+                map.put(name, element);
+            }
+        }
+    }
+
+    private static <E> E cast(final String key, final AbstractModelElement<?> element, final Class<E> type) {
+        if (element != null && !type.isInstance(element)) {
+            throw new IllegalArgumentException("Element " + key + " is not a " + type.getSimpleName());
+        }
+        return type.cast(element);
+    }
+
+    /** The hash of the namespaces and schema location, which can not be changed by replacing elements */
+    private long rootHash() {
+        long hash = 0L;
+        synchronized (namespaces) {
+            for (NamespaceAttribute namespace : namespaces.values()) {
+                hash = Long.rotateLeft(hash, 1) ^ String.valueOf(namespace.getPrefix()).hashCode() & 0xffffffffL;
+                hash = Long.rotateLeft(hash, 1) ^ namespace.getNamespaceURI().hashCode() & 0xffffffffL;
+            }
+        }
+        if (schemaLocation != null) hash = Long.rotateLeft(hash, 1) ^ schemaLocation.hashCode() & 0xffffffffL;
+        return hash;
+    }
+
     private void parseExtensions(XMLExtendedStreamReader reader) throws XMLStreamException {
         while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
             switch (Namespace.forUri(reader.getNamespaceURI())) {
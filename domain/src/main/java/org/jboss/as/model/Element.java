@@ -64,6 +64,7 @@ public enum Element {
 
     LINK_LOCAL_ADDRESS("link-local-address"),
     LOCAL("local"),
+    LOCAL_TRANSPORT("local-transport"),
     LOOPBACK("loopback"),
 
     MULTICAST("multicast"),
@@ -94,6 +95,8 @@ public enum Element {
     SSL("ssl"),
     SSLS("ssls"),
     STANDALONE("standalone"),
+    STANDBY_POOL("standby-pool"),
+    STANDBY_POOLS("standby-pools"),
     SUBNET_MATCH("subnet-match"),
     SYSTEM_PROPERTIES("system-properties"),
 
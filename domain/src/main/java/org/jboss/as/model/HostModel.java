@@ -59,10 +59,12 @@ public final class HostModel extends AbstractModel<HostModel> {
     private final NavigableMap<String, ExtensionElement> extensions = new TreeMap<String, ExtensionElement>();
     private final NavigableMap<String, ServerElement> servers = new TreeMap<String, ServerElement>();
     private final NavigableMap<String, JvmElement> jvms = new TreeMap<String, JvmElement>();
+    private final NavigableMap<String, StandbyPoolElement> standbyPools = new TreeMap<String, StandbyPoolElement>();
     private String name;
     private LocalDomainControllerElement localDomainController;
     private RemoteDomainControllerElement remoteDomainController;
     private ManagementElement managementElement;
+    private LocalTransportElement localTransport;
 
     private PropertiesElement systemProperties;
 
@@ -130,6 +132,13 @@ public final class HostModel extends AbstractModel<HostModel> {
                             this.managementElement = new ManagementElement(reader);
                             break;
                         }
+                        case LOCAL_TRANSPORT: {
+                            if (localTransport != null) {
+                                throw new XMLStreamException(element.getLocalName() + " already declared", reader.getLocation());
+                            }
+                            this.localTransport = new LocalTransportElement(reader);
+                            break;
+                        }
                         case DOMAIN_CONTROLLER: {
                             parseDomainController(reader);
                             break;
@@ -146,6 +155,10 @@ public final class HostModel extends AbstractModel<HostModel> {
                             parseServers(reader);
                             break;
                         }
+                        case STANDBY_POOLS: {
+                            parseStandbyPools(reader);
+                            break;
+                        }
                         default: throw unexpectedElement(reader);
                     }
                     break;
@@ -228,6 +241,29 @@ public final class HostModel extends AbstractModel<HostModel> {
         }
     }
 
+    /**
+     * Gets the standby pools of the server groups with servers on this host.
+     *
+     * @return the standby pools. May be empty but will not be <code>null</code>
+     */
+    public Set<StandbyPoolElement> getStandbyPools() {
+        synchronized (standbyPools) {
+            return new HashSet<StandbyPoolElement>(standbyPools.values());
+        }
+    }
+
+    /**
+     * Gets the standby pool of the server group with the given <code>name</code>.
+     *
+     * @param serverGroup the name of the server group
+     * @return the standby pool, or <code>null</code> if the server group has none
+     */
+    public StandbyPoolElement getStandbyPool(String serverGroup) {
+        synchronized (standbyPools) {
+            return standbyPools.get(serverGroup);
+        }
+    }
+
     /**
      * Gets any system properties defined at the host level. These properties
      * can extend and override any properties declared at the
@@ -254,6 +290,15 @@ public final class HostModel extends AbstractModel<HostModel> {
         return managementElement;
     }
 
+    /**
+     * Gets the transport used between the processes of this host.
+     *
+     * @return the transport configuration, or <code>null</code> if TCP is used
+     */
+    public LocalTransportElement getLocalTransport() {
+        return localTransport;
+    }
+
     public String getName() {
         return name;
     }
@@ -275,9 +320,13 @@ public final class HostModel extends AbstractModel<HostModel> {
         synchronized (servers) {
             cksum = calculateElementHashOf(servers.values(), cksum);
         }
+        synchronized (standbyPools) {
+            cksum = calculateElementHashOf(standbyPools.values(), cksum);
+        }
         if (systemProperties != null) cksum = Long.rotateLeft(cksum, 1) ^ systemProperties.elementHash();
         if (localDomainController != null) cksum = Long.rotateLeft(cksum, 1) ^ localDomainController.elementHash();
         if (remoteDomainController != null) cksum = Long.rotateLeft(cksum, 1) ^ remoteDomainController.elementHash();
+        if (localTransport != null) cksum = Long.rotateLeft(cksum, 1) ^ localTransport.elementHash();
         synchronized (namespaces) {
             cksum = Long.rotateLeft(cksum, 1) ^ namespaces.hashCode() & 0xffffffffL;
         }
@@ -340,6 +389,11 @@ public final class HostModel extends AbstractModel<HostModel> {
         }
         streamWriter.writeEndElement();
 
+        if (localTransport != null) {
+            streamWriter.writeStartElement(Element.LOCAL_TRANSPORT.getLocalName());
+            localTransport.writeContent(streamWriter);
+        }
+
         synchronized (interfaces) {
             if (!interfaces.isEmpty()) {
                 streamWriter.writeStartElement(Element.INTERFACES.getLocalName());
@@ -374,6 +428,17 @@ public final class HostModel extends AbstractModel<HostModel> {
             }
         }
 
+        synchronized (standbyPools) {
+            if (!standbyPools.isEmpty()) {
+                streamWriter.writeStartElement(Element.STANDBY_POOLS.getLocalName());
+                for (StandbyPoolElement element : standbyPools.values()) {
+                    streamWriter.writeStartElement(Element.STANDBY_POOL.getLocalName());
+                    element.writeContent(streamWriter);
+                }
+                streamWriter.writeEndElement();
+            }
+        }
+
         streamWriter.writeEndElement();
     }
 
@@ -509,4 +574,27 @@ public final class HostModel extends AbstractModel<HostModel> {
             }
         }
     }
+
+    private void parseStandbyPools(XMLExtendedStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
+            switch (Namespace.forUri(reader.getNamespaceURI())) {
+                case DOMAIN_1_0: {
+                    final Element element = Element.forName(reader.getLocalName());
+                    switch (element) {
+                        case STANDBY_POOL: {
+                            final StandbyPoolElement pool = new StandbyPoolElement(reader);
+                            if (standbyPools.containsKey(pool.getServerGroup())) {
+                                throw new XMLStreamException("Standby pool for server group " + pool.getServerGroup() + " already declared", reader.getLocation());
+                            }
+                            standbyPools.put(pool.getServerGroup(), pool);
+                            break;
+                        }
+                        default: throw unexpectedElement(reader);
+                    }
+                    break;
+                }
+                default: throw unexpectedElement(reader);
+            }
+        }
+    }
 }
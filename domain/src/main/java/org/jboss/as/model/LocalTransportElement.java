@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.model;
+
+import java.util.Collections;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.staxmapper.XMLExtendedStreamReader;
+import org.jboss.staxmapper.XMLExtendedStreamWriter;
+
+/**
+ * The transport used by the connections between the processes of a {@link HostModel host}.  With the {@code unix}
+ * type the server manager also listens on an AF_UNIX socket in the given directory, and its servers connect to it
+ * there; TCP is still used if the JVM or the platform does not support AF_UNIX sockets.
+ *
+ * @author Brian Stansberry
+ */
+public final class LocalTransportElement extends AbstractModelElement<LocalTransportElement> {
+
+    private static final long serialVersionUID = 2619418893585546513L;
+
+    /**
+     * The transport types.
+     */
+    public enum Type {
+        TCP("tcp"),
+        UNIX("unix");
+
+        private final String name;
+
+        Type(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the local name of this type.
+         *
+         * @return the local name
+         */
+        public String getLocalName() {
+            return name;
+        }
+
+        static Type forName(final String localName) {
+            for (Type type : values()) {
+                if (type.name.equals(localName)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Type type;
+    private final String path;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param type the transport type
+     * @param path the directory of the socket files, or {@code null} for the default
+     */
+    public LocalTransportElement(final Type type, final String path) {
+        if (type == null) {
+            throw new IllegalArgumentException("type is null");
+        }
+        this.type = type;
+        this.path = path;
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param reader the reader from which to build this element
+     * @throws XMLStreamException if an error occurs
+     */
+    public LocalTransportElement(final XMLExtendedStreamReader reader) throws XMLStreamException {
+        // Handle attributes
+        Type type = null;
+        String path = null;
+        final int count = reader.getAttributeCount();
+        for (int i = 0; i < count; i ++) {
+            final String value = reader.getAttributeValue(i);
+            if (reader.getAttributeNamespace(i) != null) {
+                throw unexpectedAttribute(reader, i);
+            } else {
+                final Attribute attribute = Attribute.forName(reader.getAttributeLocalName(i));
+                switch (attribute) {
+                    case TYPE: {
+                        type = Type.forName(value);
+                        if (type == null) {
+                            throw new XMLStreamException("Invalid " + attribute.getLocalName() + " " + value, reader.getLocation());
+                        }
+                        break;
+                    }
+                    case PATH: {
+                        path = value;
+                        break;
+                    }
+                    default: throw unexpectedAttribute(reader, i);
+                }
+            }
+        }
+        if (type == null) {
+            throw missingRequired(reader, Collections.singleton(Attribute.TYPE));
+        }
+        this.type = type;
+        this.path = path;
+        requireNoContent(reader);
+    }
+
+    /**
+     * Gets the transport type.
+     *
+     * @return the type. Will not be <code>null</code>
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the directory in which the socket files are created.
+     *
+     * @return the directory, or <code>null</code> if the default should be used
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long elementHash() {
+        long cksum = type.getLocalName().hashCode() & 0xffffffffL;
+        if (path != null) cksum = Long.rotateLeft(cksum, 1) ^ path.hashCode() & 0xffffffffL;
+        return cksum;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Class<LocalTransportElement> getElementClass() {
+        return LocalTransportElement.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeContent(final XMLExtendedStreamWriter streamWriter) throws XMLStreamException {
+        streamWriter.writeAttribute(Attribute.TYPE.getLocalName(), type.getLocalName());
+        if (path != null) {
+            streamWriter.writeAttribute(Attribute.PATH.getLocalName(), path);
+        }
+        streamWriter.writeEndElement();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.staxmapper.XMLExtendedStreamReader;
+import org.jboss.staxmapper.XMLExtendedStreamWriter;
+
+/**
+ * The number of standby server JVMs a {@link HostModel host} keeps running for a server group.  A standby is
+ * launched with the server group's JVM configuration and waits for a configuration; it replaces a server of the
+ * group which goes down, instead of a new JVM being launched.
+ *
+ * @author Brian Stansberry
+ */
+public final class StandbyPoolElement extends AbstractModelElement<StandbyPoolElement> {
+
+    private static final long serialVersionUID = -4307393925378612207L;
+
+    private final String serverGroup;
+    private final int size;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param serverGroup the name of the server group
+     * @param size the number of standby JVMs
+     */
+    public StandbyPoolElement(final String serverGroup, final int size) {
+        if (serverGroup == null) {
+            throw new IllegalArgumentException("serverGroup is null");
+        }
+        if (size < 0) {
+            throw new IllegalArgumentException("size is negative");
+        }
+        this.serverGroup = serverGroup;
+        this.size = size;
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param reader the reader from which to build this element
+     * @throws XMLStreamException if an error occurs
+     */
+    public StandbyPoolElement(final XMLExtendedStreamReader reader) throws XMLStreamException {
+        // Handle attributes
+        String group = null;
+        Integer size = null;
+        final int count = reader.getAttributeCount();
+        for (int i = 0; i < count; i ++) {
+            final String value = reader.getAttributeValue(i);
+            if (reader.getAttributeNamespace(i) != null) {
+                throw unexpectedAttribute(reader, i);
+            } else {
+                final Attribute attribute = Attribute.forName(reader.getAttributeLocalName(i));
+                switch (attribute) {
+                    case GROUP: {
+                        group = value;
+                        break;
+                    }
+                    case SIZE: {
+                        try {
+                            size = Integer.valueOf(value);
+                        } catch (NumberFormatException e) {
+                            throw new XMLStreamException("Invalid " + attribute.getLocalName() + " " + value, reader.getLocation(), e);
+                        }
+                        if (size.intValue() < 0) {
+                            throw new XMLStreamException(attribute.getLocalName() + " must not be negative", reader.getLocation());
+                        }
+                        break;
+                    }
+                    default: throw unexpectedAttribute(reader, i);
+                }
+            }
+        }
+        if (group == null || size == null) {
+            final Set<Attribute> missing = new HashSet<Attribute>();
+            if (group == null) missing.add(Attribute.GROUP);
+            if (size == null) missing.add(Attribute.SIZE);
+            throw missingRequired(reader, missing);
+        }
+        this.serverGroup = group;
+        this.size = size.intValue();
+        requireNoContent(reader);
+    }
+
+    /**
+     * Gets the name of the server group.
+     *
+     * @return the server group name. Will not be <code>null</code>
+     */
+    public String getServerGroup() {
+        return serverGroup;
+    }
+
+    /**
+     * Gets the number of standby JVMs to keep running.
+     *
+     * @return the number of standby JVMs
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long elementHash() {
+        long cksum = serverGroup.hashCode() & 0xffffffffL;
+        cksum = Long.rotateLeft(cksum, 1) ^ size;
+        return cksum;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Class<StandbyPoolElement> getElementClass() {
+        return StandbyPoolElement.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeContent(final XMLExtendedStreamWriter streamWriter) throws XMLStreamException {
+        streamWriter.writeAttribute(Attribute.GROUP.getLocalName(), serverGroup);
+        streamWriter.writeAttribute(Attribute.SIZE.getLocalName(), Integer.toString(size));
+        streamWriter.writeEndElement();
+    }
+}
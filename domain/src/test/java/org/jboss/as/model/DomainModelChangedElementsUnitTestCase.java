@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+
+import junit.framework.TestCase;
+
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallerFactory;
+import org.jboss.marshalling.Marshalling;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.Unmarshaller;
+import org.jboss.staxmapper.XMLMapper;
+
+/**
+ * Tests bringing a host's copy of a {@link DomainModel} up to date with the elements which changed on the domain
+ * controller, as a server manager does when it registers again.
+ *
+ * @author Brian Stansberry
+ */
+public class DomainModelChangedElementsUnitTestCase extends TestCase {
+
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    private static final MarshallerFactory MARSHALLER_FACTORY = Marshalling.getMarshallerFactory("river", Thread.currentThread().getContextClassLoader());
+    private static final MarshallingConfiguration CONFIG = new MarshallingConfiguration();
+
+    public void testRoundTrip() throws Exception {
+        final DomainModel held = parse(domainXml("value1", "app-1", "512m", true));
+        final DomainModel current = parse(domainXml("value2", "app-2", "1024m", false));
+        final Map<String, Long> heldHashes = held.getElementHashes();
+
+        final Map<String, AbstractModelElement<?>> changed = current.getChangedElements(heldHashes);
+        assertNotNull(changed);
+        assertEquals(changed.toString(), 5, changed.size());
+        assertTrue(changed.containsKey("system-properties"));
+        assertTrue(changed.containsKey("server-group/main"));
+        assertNotNull(changed.get("deployment/app-2.war"));
+        assertTrue(changed.containsKey("deployment/app-1.war"));
+        assertNull(changed.get("deployment/app-1.war"));
+        assertTrue(changed.containsKey("interface/internal"));
+        assertNull(changed.get("interface/internal"));
+        assertFalse(changed.containsKey("profile/default"));
+
+        // the elements cross the wire, and replace those of a copy of the held model
+        final DomainModel updated = copy(held);
+        updated.applyChangedElements(copy(changed));
+        assertEquals(current.getElementHashes(), updated.getElementHashes());
+        assertEquals("value2", updated.getSystemProperties().getProperty("prop1"));
+        assertNull(updated.getInterface("internal"));
+
+        // the held model is untouched
+        assertEquals(heldHashes, held.getElementHashes());
+        assertEquals("value1", held.getSystemProperties().getProperty("prop1"));
+        assertNotNull(held.getInterface("internal"));
+
+        // once up to date, nothing changed
+        assertTrue(current.getChangedElements(updated.getElementHashes()).isEmpty());
+    }
+
+    public void testNamespaceChangeNeedsFullModel() throws Exception {
+        final DomainModel current = parse(domainXml("value1", "app-1", "512m", true));
+        final Map<String, Long> hashes = current.getElementHashes();
+        assertTrue(current.getChangedElements(hashes).isEmpty());
+        hashes.put("domain", Long.valueOf(hashes.get("domain").longValue() + 1L));
+        assertNull(current.getChangedElements(hashes));
+        hashes.remove("domain");
+        assertNull(current.getChangedElements(hashes));
+    }
+
+    public void testInvalidElementLeavesModelUnchanged() throws Exception {
+        final DomainModel current = parse(domainXml("value1", "app-1", "512m", true));
+        final DomainModel other = parse(domainXml("value2", "app-2", "1024m", false));
+        final Map<String, Long> hashes = current.getElementHashes();
+
+        final Map<String, AbstractModelElement<?>> changed = new HashMap<String, AbstractModelElement<?>>();
+        changed.put("system-properties", other.getSystemProperties());
+        changed.put("server-group/main", other.getSystemProperties());
+        try {
+            current.applyChangedElements(changed);
+            fail("A properties element replaced a server group");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(hashes, current.getElementHashes());
+
+        try {
+            current.applyChangedElements(Collections.<String, AbstractModelElement<?>>singletonMap("no-such-element/x", null));
+            fail("An invalid key was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(hashes, current.getElementHashes());
+    }
+
+    private static DomainModel parse(final String xml) throws Exception {
+        final XMLMapper mapper = XMLMapper.Factory.create();
+        mapper.registerRootElement(new QName(Namespace.CURRENT.getUriString(), Element.DOMAIN.getLocalName()), DomainModelParser.getInstance());
+        final ParseResult<DomainModel> result = new ParseResult<DomainModel>();
+        mapper.parseDocument(result, XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)));
+        return result.getResult();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(final T object) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Marshaller marshaller = MARSHALLER_FACTORY.createMarshaller(CONFIG);
+        marshaller.start(Marshalling.createByteOutput(bytes));
+        marshaller.writeObject(object);
+        marshaller.finish();
+        marshaller.close();
+        final Unmarshaller unmarshaller = MARSHALLER_FACTORY.createUnmarshaller(CONFIG);
+        unmarshaller.start(Marshalling.createByteInput(new ByteArrayInputStream(bytes.toByteArray())));
+        final T result = (T) unmarshaller.readObject();
+        unmarshaller.finish();
+        unmarshaller.close();
+        return result;
+    }
+
+    private static String domainXml(final String propertyValue, final String deployment, final String heapSize, final boolean internalInterface) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<domain xmlns=\"").append(Namespace.CURRENT.getUriString()).append("\">");
+        xml.append("<profiles><profile name=\"default\"/></profiles>");
+        xml.append("<interfaces><interface name=\"external\"><any-address/></interface>");
+        if (internalInterface) {
+            xml.append("<interface name=\"internal\"><loopback/></interface>");
+        }
+        xml.append("</interfaces>");
+        xml.append("<deployments><deployment name=\"").append(deployment).append(".war\" runtime-name=\"").append(deployment)
+            .append(".war\" sha1=\"").append(SHA1).append("\"/></deployments>");
+        xml.append("<server-groups><server-group name=\"main\" profile=\"default\">");
+        xml.append("<jvm name=\"default\"><heap size=\"").append(heapSize).append("\" max-size=\"2048m\"/></jvm>");
+        xml.append("</server-group></server-groups>");
+        xml.append("<system-properties><property name=\"prop1\" value=\"").append(propertyValue).append("\"/></system-properties>");
+        xml.append("</domain>");
+        return xml.toString();
+    }
+}
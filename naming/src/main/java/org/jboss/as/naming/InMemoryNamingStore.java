@@ -22,7 +22,8 @@
 
 package org.jboss.as.naming;
 
-import org.jboss.as.naming.util.FastCopyHashMap;
+import org.jboss.as.naming.util.HashTrieMap;
+import org.jboss.as.naming.util.ImmutableCompositeName;
 
 import javax.naming.Binding;
 import javax.naming.CannotProceedException;
@@ -38,10 +39,11 @@ import javax.naming.event.NamingEvent;
 import javax.naming.event.NamingListener;
 import javax.naming.spi.ResolveResult;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import static org.jboss.as.naming.util.NamingUtils.asReference;
 import static org.jboss.as.naming.util.NamingUtils.cannotProceedException;
@@ -63,15 +65,37 @@ import static org.jboss.as.naming.util.NamingUtils.notAContextException;
  */
 public class InMemoryNamingStore implements NamingStore {
 
+    /* The name of the root node */
+    private static final Name ROOT_NAME = new ImmutableCompositeName(new CompositeName());
+
     /* The root node of the tree.  Represents a JNDI name of "" */
     private final ContextNode root = new ContextNode(emptyName(), null);
 
+    /*
+     * Context for the root node, shared by all lookups of the empty name like the contexts of the other nodes.  Its
+     * environment is a shared read-only snapshot, changing it gives the context a new snapshot of its own.
+     */
+    private final NamingContext rootContext;
+
     /* Cached security namanger */
     private transient SecurityManager securityManager;
 
+    /* Granted permission checks */
+    private final JndiPermissionCache permissionCache = new JndiPermissionCache();
+
     /* Naming Event Coordinator */
     private final NamingEventCoordinator eventCoordinator;
 
+    /* Dereferenced object cache, null if disabled */
+    private final LookupCache lookupCache;
+
+    /* Lookup metrics, null if disabled */
+    private final LookupMetrics lookupMetrics;
+
+    /* Used to publish new versions of a context node's children */
+    @SuppressWarnings("unchecked")
+    private static final AtomicReferenceFieldUpdater<ContextNode, HashTrieMap<String, TreeNode>> childrenUpdater = AtomicReferenceFieldUpdater.newUpdater(ContextNode.class, (Class<HashTrieMap<String, TreeNode>>) (Class<?>) HashTrieMap.class, "children");
+
     /**
      * Construct instance with no event support.
      */
@@ -85,7 +109,35 @@ public class InMemoryNamingStore implements NamingStore {
      * @param eventCoordinator The event coordinator
      */
     public InMemoryNamingStore(final NamingEventCoordinator eventCoordinator) {
+        this(eventCoordinator, null);
+    }
+
+    /**
+     * Construct instance with an event coordinator and a lookup cache.
+     *
+     * @param eventCoordinator The event coordinator
+     * @param lookupCache The lookup cache
+     */
+    public InMemoryNamingStore(final NamingEventCoordinator eventCoordinator, final LookupCache lookupCache) {
+        this(eventCoordinator, lookupCache, null);
+    }
+
+    /**
+     * Construct instance with an event coordinator, a lookup cache and lookup metrics.
+     *
+     * @param eventCoordinator The event coordinator
+     * @param lookupCache The lookup cache
+     * @param lookupMetrics The lookup metrics
+     */
+    public InMemoryNamingStore(final NamingEventCoordinator eventCoordinator, final LookupCache lookupCache, final LookupMetrics lookupMetrics) {
         this.eventCoordinator = eventCoordinator;
+        this.lookupCache = lookupCache;
+        this.lookupMetrics = lookupMetrics;
+        try {
+            this.rootContext = new NamingContext(ROOT_NAME, this, null);
+        } catch (NamingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -105,6 +157,56 @@ public class InMemoryNamingStore implements NamingStore {
         root.accept(new BindVisitor(callingContext, name, object, className));
     }
 
+    /**
+     * Bind a set of entries into the tree.  Entries are grouped by parent context and the entries for each context are
+     * added in a single atomic update.  All parent contexts must already exist.  If any entry can not be bound, the
+     * entries already added by this call are removed and the exception is thrown.  The events for the new bindings are
+     * fired as one batch once every entry is bound.
+     *
+     * @param callingContext The calling context
+     * @param bindings The entry objects keyed by entry name
+     * @throws NamingException
+     */
+    public void bindAll(final Context callingContext, final Map<Name, Object> bindings) throws NamingException {
+        final Map<Name, BindingGroup> groups = new LinkedHashMap<Name, BindingGroup>();
+        final Map<Name, Binding> newBindings = new LinkedHashMap<Name, Binding>();
+        for (Map.Entry<Name, Object> entry : bindings.entrySet()) {
+            final Name name = entry.getKey();
+            if (isLastComponentEmpty(name)) {
+                throw emptyNameException();
+            }
+            checkPermissions(name, JndiPermission.Action.BIND);
+            final Object object = entry.getValue();
+            final String childName = getLastComponent(name);
+            final Binding binding = new Binding(childName, getClassName(object), object, true);
+            final Name parentName = name.getPrefix(name.size() - 1);
+            BindingGroup group = groups.get(parentName);
+            if (group == null) {
+                group = new BindingGroup(name);
+                groups.put(parentName, group);
+            }
+            group.children.put(childName, new BindingNode(name, binding));
+            newBindings.put(name, binding);
+        }
+
+        for (BindingGroup group : groups.values()) {
+            group.contextNode = root.accept(new ContextLocatingVisitor(group.firstName));
+        }
+        final List<BindingGroup> applied = new ArrayList<BindingGroup>(groups.size());
+        try {
+            for (BindingGroup group : groups.values()) {
+                group.contextNode.addChildren(group.children);
+                applied.add(group);
+            }
+        } catch (NamingException e) {
+            for (BindingGroup group : applied) {
+                group.contextNode.removeChildren(group.children);
+            }
+            throw e;
+        }
+        fireEvents(callingContext, newBindings, "bind");
+    }
+
     /**
      * Replace an existing entry in the tree.  This will create a new binding node in the tree and no longer store
      * the previous value.
@@ -147,14 +249,44 @@ public class InMemoryNamingStore implements NamingStore {
      */
     public Object lookup(final Name name) throws NamingException {
         if (isEmpty(name)) {
-            final Name emptyName = new CompositeName("");
-            checkPermissions(emptyName, JndiPermission.Action.LOOKUP);
-            return new NamingContext(emptyName, this, new Hashtable<String, Object>());
+            checkPermissions(ROOT_NAME, JndiPermission.Action.LOOKUP);
+            return rootContext;
         }
         checkPermissions(name, JndiPermission.Action.LOOKUP);
+        final Object found = find(name);
+        if (found != null) {
+            return found;
+        }
         return root.accept(new LookupVisitor(name));
     }
 
+    /**
+     * Find the object bound to a name without allocating a visitor, for the common lookup of an existing binding.
+     *
+     * @param name The entry name
+     * @return The object bound to the name, or {@code null} if the name is not bound or passes through a binding
+     *         which is not a context, which the {@code LookupVisitor} then handles
+     */
+    private Object find(final Name name) {
+        final int size = name.size();
+        TreeNode node = root;
+        for (int i = 0; i < size; i++) {
+            final String component = name.get(i);
+            if (i == size - 1 && component.isEmpty()) {
+                // a trailing empty component names the node itself
+                break;
+            }
+            if (!(node instanceof ContextNode)) {
+                return null;
+            }
+            node = ((ContextNode) node).children.get(component);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.binding.getObject();
+    }
+
     /**
      * List all NameClassPair instances at a given location in the tree.
      *
@@ -168,6 +300,35 @@ public class InMemoryNamingStore implements NamingStore {
         return root.accept(new ListVisitor(nodeName));
     }
 
+    /**
+     * Count the entries below a context, descending into the contexts created in this store.  Bound objects are never
+     * looked up or resolved, so a context bound by reference counts as a single entry and its contents are not counted.
+     *
+     * @param name The context name
+     * @return The number of entries
+     * @throws NamingException If the name is not a context in this store
+     */
+    public long countBindings(final Name name) throws NamingException {
+        final Name nodeName = name.isEmpty() ? new CompositeName("") : name;
+        checkPermissions(nodeName, JndiPermission.Action.LIST);
+        return root.accept(new CountVisitor(nodeName)).longValue();
+    }
+
+    /**
+     * Iterate over the Binding instances at a given location in the tree without listing them first.  The iterator
+     * reads the entries the context had when it was created, later changes to the context are not seen.  The contexts
+     * created in this store are bound as a {@code NamingContext} with the class name of {@code Context}.
+     *
+     * @param name The context name
+     * @return The iterator over the Binding instances
+     * @throws NamingException If the name is not a context in this store
+     */
+    public Iterator<Binding> iterateBindings(final Name name) throws NamingException {
+        final Name nodeName = name.isEmpty() ? new CompositeName("") : name;
+        checkPermissions(nodeName, JndiPermission.Action.LIST_BINDINGS);
+        return root.accept(new IterateBindingsVisitor(nodeName));
+    }
+
     /**
      * List all the Binding instances at a given location in the tree.
      *
@@ -204,6 +365,10 @@ public class InMemoryNamingStore implements NamingStore {
      */
     public void close() throws NamingException {
         root.clear();
+        final LookupCache cache = this.lookupCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
     }
 
     /**
@@ -232,13 +397,55 @@ public class InMemoryNamingStore implements NamingStore {
         }
     }
 
+    /**
+     * Get the lookup cache.
+     *
+     * @return The lookup cache, or {@code null} if not enabled
+     */
+    public LookupCache getLookupCache() {
+        return lookupCache;
+    }
+
+    /**
+     * Get the lookup metrics.
+     *
+     * @return The lookup metrics, or {@code null} if not enabled
+     */
+    public LookupMetrics getLookupMetrics() {
+        return lookupMetrics;
+    }
+
     private void fireEvent(final Context callingContext, final Name name, final Binding existingBinding, final Binding newBinding, final int type, final String changeInfo) {
+        final LookupCache cache = this.lookupCache;
+        if (cache != null) {
+            cache.invalidate(name, existingBinding != null && existingBinding.getObject() instanceof Context);
+        }
         final NamingEventCoordinator coordinator = this.eventCoordinator;
         if (coordinator != null && callingContext instanceof EventContext) {
             coordinator.fireEvent(EventContext.class.cast(callingContext), name, existingBinding, newBinding, type, changeInfo, NamingEventCoordinator.DEFAULT_SCOPES);
         }
     }
 
+    private void fireEvents(final Context callingContext, final Map<Name, Binding> newBindings, final String changeInfo) {
+        final LookupCache cache = this.lookupCache;
+        if (cache != null) {
+            for (Name name : newBindings.keySet()) {
+                cache.invalidate(name, false);
+            }
+        }
+        final NamingEventCoordinator coordinator = this.eventCoordinator;
+        if (coordinator != null && callingContext instanceof EventContext) {
+            coordinator.fireEvents(EventContext.class.cast(callingContext), newBindings, NamingEvent.OBJECT_ADDED, changeInfo, NamingEventCoordinator.DEFAULT_SCOPES);
+        }
+    }
+
+    private static String getClassName(final Object object) {
+        if (object instanceof Reference) {
+            return asReference(object).getClassName();
+        }
+        return object != null ? object.getClass().getName() : null;
+    }
+
     private void checkReferenceForContinuation(final Name name, final Object object) throws CannotProceedException {
         if (object instanceof Reference) {
             if (asReference(object).get("nns") != null) {
@@ -252,7 +459,7 @@ public class InMemoryNamingStore implements NamingStore {
             securityManager = System.getSecurityManager();
 
         if (securityManager != null) {
-            securityManager.checkPermission(new JndiPermission(name, permission));
+            permissionCache.checkPermission(securityManager, name, permission);
         }
     }
 
@@ -269,42 +476,82 @@ public class InMemoryNamingStore implements NamingStore {
     }
 
     private class ContextNode extends TreeNode {
-        private volatile Map<String, TreeNode> children = Collections.emptyMap();
+        /* Never mutated in place, updates are published with a CAS through childrenUpdater */
+        volatile HashTrieMap<String, TreeNode> children = HashTrieMap.empty();
 
         private ContextNode(final Name fullName, final NamingContext context) {
             super(fullName, new Binding(getLastComponent(fullName), Context.class.getName(), context));
         }
 
-        private synchronized void addChild(final String childName, final TreeNode childNode) throws NamingException {
-            if (children.containsKey(childName)) {
-                throw nameAlreadyBoundException(fullName.add(childName));
-            }
-            final Map<String, TreeNode> copy = new FastCopyHashMap<String, TreeNode>(children);
-            copy.put(childName, childNode);
-            children = copy;
-        }
-
-        private synchronized TreeNode replaceChild(final String childName, final TreeNode childNode) throws NamingException {
-            final Map<String, TreeNode> copy = new FastCopyHashMap<String, TreeNode>(children);
-            final TreeNode existing = copy.put(childName, childNode);
-            children = copy;
+        private void addChild(final String childName, final TreeNode childNode) throws NamingException {
+            HashTrieMap<String, TreeNode> current;
+            do {
+                current = children;
+                if (current.containsKey(childName)) {
+                    throw nameAlreadyBoundException(childFullName(childName));
+                }
+            } while (!childrenUpdater.compareAndSet(this, current, current.plus(childName, childNode)));
+        }
+
+        private void addChildren(final Map<String, TreeNode> childNodes) throws NamingException {
+            HashTrieMap<String, TreeNode> current;
+            HashTrieMap<String, TreeNode> updated;
+            do {
+                current = children;
+                updated = current;
+                for (Map.Entry<String, TreeNode> entry : childNodes.entrySet()) {
+                    if (current.containsKey(entry.getKey())) {
+                        throw nameAlreadyBoundException(childFullName(entry.getKey()));
+                    }
+                    updated = updated.plus(entry.getKey(), entry.getValue());
+                }
+            } while (!childrenUpdater.compareAndSet(this, current, updated));
+        }
+
+        private void removeChildren(final Map<String, TreeNode> childNodes) {
+            HashTrieMap<String, TreeNode> current;
+            HashTrieMap<String, TreeNode> updated;
+            do {
+                current = children;
+                updated = current;
+                for (Map.Entry<String, TreeNode> entry : childNodes.entrySet()) {
+                    if (current.get(entry.getKey()) == entry.getValue()) {
+                        updated = updated.minus(entry.getKey());
+                    }
+                }
+            } while (!childrenUpdater.compareAndSet(this, current, updated));
+        }
+
+        private Name childFullName(final String childName) throws NamingException {
+            final Name name = (Name) fullName.clone();
+            return name.add(childName);
+        }
+
+        private TreeNode replaceChild(final String childName, final TreeNode childNode) throws NamingException {
+            HashTrieMap<String, TreeNode> current;
+            TreeNode existing;
+            do {
+                current = children;
+                existing = current.get(childName);
+            } while (!childrenUpdater.compareAndSet(this, current, current.plus(childName, childNode)));
             return existing;
         }
 
-        private synchronized TreeNode removeChild(final String childName) throws NameNotFoundException {
-            if (!children.containsKey(childName)) {
-                throw nameNotFoundException(childName, fullName);
-            }
-            final Map<String, TreeNode> copy = new FastCopyHashMap<String, TreeNode>(children);
-            final TreeNode existing = copy.remove(childName);
-            children = copy;
+        private TreeNode removeChild(final String childName) throws NameNotFoundException {
+            HashTrieMap<String, TreeNode> current;
+            TreeNode existing;
+            do {
+                current = children;
+                existing = current.get(childName);
+                if (existing == null) {
+                    throw nameNotFoundException(childName, fullName);
+                }
+            } while (!childrenUpdater.compareAndSet(this, current, current.minus(childName)));
             return existing;
         }
 
-        private synchronized void clear() {
-            final Map<String, TreeNode> copy = new FastCopyHashMap<String, TreeNode>(children);
-            copy.clear();
-            children = copy;
+        private void clear() {
+            children = HashTrieMap.empty();
         }
 
         protected final <T> T accept(NodeVisitor<T> visitor) throws NamingException {
@@ -328,52 +575,66 @@ public class InMemoryNamingStore implements NamingStore {
         T visit(ContextNode contextNode) throws NamingException;
     }
 
+    /**
+     * Visitor which walks the tree along the components of a name.  The traversal tracks its position as an index into
+     * the target name, so walking an existing path does not allocate intermediate names.
+     */
     private abstract class NodeTraversingVisitor<T> implements NodeVisitor<T> {
-        private Name currentName;
         protected final Name targetName;
+        private final int depth;
+        private int position;
 
         private NodeTraversingVisitor(final Name targetName) {
-            this.currentName = targetName;
+            this(targetName, targetName.size());
+        }
+
+        private NodeTraversingVisitor(final Name targetName, final int depth) {
             this.targetName = targetName;
+            this.depth = depth;
         }
 
         public final T visit(final BindingNode bindingNode) throws NamingException {
-            if (isEmpty(currentName)) {
+            if (isTraversalComplete()) {
                 return found(bindingNode);
             }
             return foundReferenceInsteadOfContext(bindingNode);
         }
 
         public final T visit(final ContextNode contextNode) throws NamingException {
-            if (isEmpty(currentName)) {
+            if (isTraversalComplete()) {
                 return found(contextNode);
             }
-            final String childName = currentName.get(0);
-            currentName = currentName.getSuffix(1);
+            final String childName = targetName.get(position++);
             final TreeNode node = contextNode.children.get(childName);
             if (node == null) {
-                throw nameNotFoundException(childName, currentName);
+                throw nameNotFoundException(childName, remainingName());
             }
             return node.accept(this);
         }
 
+        private boolean isTraversalComplete() {
+            final int remaining = depth - position;
+            return remaining == 0 || (remaining == 1 && "".equals(targetName.get(position)));
+        }
+
+        private Name remainingName() {
+            return targetName.getPrefix(depth).getSuffix(position);
+        }
+
         protected abstract T found(ContextNode contextNode) throws NamingException;
 
         protected abstract T found(BindingNode bindingNode) throws NamingException;
 
         protected T foundReferenceInsteadOfContext(BindingNode bindingNode) throws NamingException {
             final Object object = bindingNode.binding.getObject();
-            checkReferenceForContinuation(currentName, object);
+            checkReferenceForContinuation(remainingName(), object);
             throw notAContextException(bindingNode.fullName);
         }
     }
 
     private abstract class BindingContextVisitor<T> extends NodeTraversingVisitor<T> {
-        protected final Name targetName;
-
         private BindingContextVisitor(final Name targetName) {
-            super(targetName.getPrefix(targetName.size() - 1));
-            this.targetName = targetName;
+            super(targetName, targetName.size() - 1);
         }
 
         protected final T found(final ContextNode contextNode) throws NamingException {
@@ -410,6 +671,26 @@ public class InMemoryNamingStore implements NamingStore {
         }
     }
 
+    private final class ContextLocatingVisitor extends BindingContextVisitor<ContextNode> {
+        private ContextLocatingVisitor(final Name name) {
+            super(name);
+        }
+
+        protected ContextNode foundBindContext(final ContextNode contextNode) throws NamingException {
+            return contextNode;
+        }
+    }
+
+    private final class BindingGroup {
+        private final Name firstName;
+        private final Map<String, TreeNode> children = new LinkedHashMap<String, TreeNode>();
+        private ContextNode contextNode;
+
+        private BindingGroup(final Name firstName) {
+            this.firstName = firstName;
+        }
+    }
+
     private final class RebindVisitor extends BindingContextVisitor<Void> {
         private final Context callingContext;
         private final Object object;
@@ -458,7 +739,7 @@ public class InMemoryNamingStore implements NamingStore {
         }
 
         protected Context foundBindContext(ContextNode contextNode) throws NamingException {
-            final NamingContext subContext = new NamingContext(targetName, InMemoryNamingStore.this, new Hashtable<String, Object>());
+            final NamingContext subContext = new NamingContext(targetName, InMemoryNamingStore.this, null);
             final ContextNode subContextNode = new ContextNode(targetName, subContext);
             contextNode.addChild(getLastComponent(targetName), subContextNode);
             fireEvent(callingContext, targetName, null, subContextNode.binding, NamingEvent.OBJECT_ADDED, "createSubcontext");
@@ -507,6 +788,60 @@ public class InMemoryNamingStore implements NamingStore {
         }
     }
 
+    private final class CountVisitor extends NodeTraversingVisitor<Long> {
+        private CountVisitor(final Name targetName) {
+            super(targetName);
+        }
+
+        protected Long found(final ContextNode contextNode) throws NamingException {
+            return Long.valueOf(count(contextNode));
+        }
+
+        protected Long found(final BindingNode bindingNode) throws NamingException {
+            checkReferenceForContinuation(emptyName(), bindingNode.binding.getObject());
+            throw notAContextException(targetName);
+        }
+
+        private long count(final ContextNode contextNode) {
+            long count = 0;
+            for (TreeNode childNode : contextNode.children.values()) {
+                count++;
+                if (childNode instanceof ContextNode) {
+                    count += count((ContextNode) childNode);
+                }
+            }
+            return count;
+        }
+    }
+
+    private final class IterateBindingsVisitor extends NodeTraversingVisitor<Iterator<Binding>> {
+        private IterateBindingsVisitor(final Name targetName) {
+            super(targetName);
+        }
+
+        protected Iterator<Binding> found(final ContextNode contextNode) throws NamingException {
+            final Iterator<TreeNode> children = contextNode.children.values().iterator();
+            return new Iterator<Binding>() {
+                public boolean hasNext() {
+                    return children.hasNext();
+                }
+
+                public Binding next() {
+                    return children.next().binding;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        protected Iterator<Binding> found(final BindingNode bindingNode) throws NamingException {
+            checkReferenceForContinuation(emptyName(), bindingNode.binding.getObject());
+            throw notAContextException(targetName);
+        }
+    }
+
     private final class ListBindingsVisitor extends NodeTraversingVisitor<List<Binding>> {
         private ListBindingsVisitor(final Name targetName) {
             super(targetName);
@@ -32,7 +32,9 @@ import java.security.PermissionCollection;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class represents access to a path in the JNDI tree. A JndiPermission
@@ -417,6 +419,33 @@ public final class JndiPermission extends Permission
         return mask;
     }
 
+    /**
+     * Return the canonical path. Used by the JndiPermissionCollection.
+     *
+     * @return the canonical path, without the trailing wildcard for directories.
+     */
+    String getCanonicalPath() {
+        return cpath;
+    }
+
+    /**
+     * Return whether the path is a directory. Used by the JndiPermissionCollection.
+     *
+     * @return true if the path is a wildcard or recursive directory.
+     */
+    boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Return whether the path is a recursive directory. Used by the JndiPermissionCollection.
+     *
+     * @return true if the path is a recursive directory.
+     */
+    boolean isRecursive() {
+        return recursive;
+    }
+
     /**
      * Return the canonical string representation of the actions. Always returns
      * present actions in the following order: bind, rebind, unbind, lookup,
@@ -549,6 +578,9 @@ final class JndiPermissionCollection extends PermissionCollection implements
     private static final long serialVersionUID = 1;
     private List<JndiPermission> perms;
 
+    // index of the permissions by path, rebuilt after each add
+    private transient volatile Matcher matcher;
+
     /**
      * Create an empty JndiPermissions object.
      */
@@ -576,6 +608,7 @@ final class JndiPermissionCollection extends PermissionCollection implements
 
         synchronized (this) {
             perms.add((JndiPermission) permission);
+            matcher = null;
         }
     }
 
@@ -592,23 +625,16 @@ final class JndiPermissionCollection extends PermissionCollection implements
         if (!(permission instanceof JndiPermission))
             return false;
 
-        JndiPermission fp = (JndiPermission) permission;
-
-        int desired = fp.getMask();
-        int effective = 0;
-        int needed = desired;
-
-        synchronized (this) {
-            for (JndiPermission x : perms) {
-                if (((needed & x.getMask()) != 0) && x.impliesIgnoreMask(fp)) {
-                    effective |= x.getMask();
-                    if ((effective & desired) == desired)
-                        return true;
-                    needed = (desired ^ effective);
+        Matcher matcher = this.matcher;
+        if (matcher == null) {
+            synchronized (this) {
+                matcher = this.matcher;
+                if (matcher == null) {
+                    matcher = this.matcher = new Matcher(perms);
                 }
             }
         }
-        return false;
+        return matcher.implies((JndiPermission) permission);
     }
 
     /**
@@ -624,4 +650,58 @@ final class JndiPermissionCollection extends PermissionCollection implements
         }
     }
 
+    /**
+     * Immutable index of a set of permissions.  The combined action mask is held for each exact path, each wildcard
+     * directory and each recursive directory, so a check costs one lookup per kind plus one lookup per path
+     * separator when recursive permissions are present, rather than a scan of every permission.
+     */
+    private static final class Matcher {
+        private final Map<String, Integer> exact = new HashMap<String, Integer>();
+        private final Map<String, Integer> wildcard = new HashMap<String, Integer>();
+        private final Map<String, Integer> recursive = new HashMap<String, Integer>();
+
+        private Matcher(final List<JndiPermission> perms) {
+            for (JndiPermission perm : perms) {
+                final Map<String, Integer> masks = perm.isRecursive() ? recursive : perm.isDirectory() ? wildcard : exact;
+                final Integer existing = masks.get(perm.getCanonicalPath());
+                masks.put(perm.getCanonicalPath(), existing == null ? perm.getMask() : existing | perm.getMask());
+            }
+        }
+
+        private boolean implies(final JndiPermission that) {
+            final int desired = that.getMask();
+            final String path = that.getCanonicalPath();
+            int effective = 0;
+            if (!that.isDirectory()) {
+                effective |= mask(exact, path);
+                if ((effective & desired) == desired)
+                    return true;
+                if (!wildcard.isEmpty()) {
+                    final int last = path.lastIndexOf('/');
+                    if (last != -1) {
+                        effective |= mask(wildcard, path.substring(0, last + 1));
+                        if ((effective & desired) == desired)
+                            return true;
+                    }
+                }
+            } else if (!that.isRecursive()) {
+                effective |= mask(wildcard, path);
+                if ((effective & desired) == desired)
+                    return true;
+            }
+            if (!recursive.isEmpty()) {
+                // a recursive path is either empty or ends with a separator, so only those prefixes can match
+                effective |= mask(recursive, "");
+                for (int i = path.indexOf('/'); i != -1 && (effective & desired) != desired; i = path.indexOf('/', i + 1)) {
+                    effective |= mask(recursive, path.substring(0, i + 1));
+                }
+            }
+            return (effective & desired) == desired;
+        }
+
+        private static int mask(final Map<String, Integer> masks, final String path) {
+            final Integer mask = masks.get(path);
+            return mask == null ? 0 : mask;
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming;
+
+import org.jboss.as.naming.util.ImmutableCompositeName;
+
+import javax.naming.Name;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of granted {@code JndiPermission} checks.  A decision is keyed by the calling access control context, which
+ * compares by its set of protection domains, the name and the action.  Only granted checks are cached, denied checks
+ * are always evaluated against the policy so they produce the normal {@code AccessControlException}.
+ * <p/>
+ * The cache is bounded and is cleared when full or once its entries reach the maximum age.  The maximum age is the
+ * only invalidation: the JDK offers no notification of a policy refresh, so a refreshed or replaced policy takes effect
+ * for cached decisions after at most the maximum age of one minute.  Decisions are only cached when the installed security manager is the default implementation, since a
+ * custom security manager may not delegate to the access controller.
+ *
+ * @author John E. Bailey
+ */
+final class JndiPermissionCache {
+    private static final int DEFAULT_MAX_SIZE = 4096;
+    private static final long DEFAULT_MAX_AGE = TimeUnit.MINUTES.toNanos(1L);
+
+    private final ConcurrentMap<Key, Key> granted = new ConcurrentHashMap<Key, Key>();
+    private final int maxSize;
+    private final long maxAge;
+    private volatile long createdAt = System.nanoTime();
+
+    JndiPermissionCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_AGE);
+    }
+
+    JndiPermissionCache(final int maxSize, final long maxAge) {
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Check the caller has permission to perform an action on a name.
+     *
+     * @param securityManager The installed security manager
+     * @param name The name
+     * @param action The action
+     * @throws SecurityException If the caller does not have permission
+     */
+    void checkPermission(final SecurityManager securityManager, final Name name, final JndiPermission.Action action) {
+        if (securityManager.getClass() != SecurityManager.class) {
+            securityManager.checkPermission(new JndiPermission(name, action));
+            return;
+        }
+        if (System.nanoTime() - createdAt > maxAge) {
+            invalidate();
+        }
+        final AccessControlContext accessControlContext = AccessController.getContext();
+        final Key key = new Key(accessControlContext, name, action);
+        if (granted.containsKey(key)) {
+            return;
+        }
+        accessControlContext.checkPermission(new JndiPermission(name, action));
+        if (granted.size() >= maxSize) {
+            invalidate();
+        }
+        final Key immutableKey = new Key(accessControlContext, new ImmutableCompositeName(name), action);
+        granted.put(immutableKey, immutableKey);
+    }
+
+    /**
+     * Discard all cached decisions, when the cache is full or its entries reach the maximum age.
+     */
+    private void invalidate() {
+        granted.clear();
+        createdAt = System.nanoTime();
+    }
+
+    private static final class Key {
+        private final AccessControlContext accessControlContext;
+        private final Name name;
+        private final JndiPermission.Action action;
+        private final int hashCode;
+
+        private Key(final AccessControlContext accessControlContext, final Name name, final JndiPermission.Action action) {
+            this.accessControlContext = accessControlContext;
+            this.name = name;
+            this.action = action;
+            this.hashCode = 31 * (31 * accessControlContext.hashCode() + name.hashCode()) + action.hashCode();
+        }
+
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key that = (Key) o;
+            return hashCode == that.hashCode && action == that.action && name.equals(that.name) && accessControlContext.equals(that.accessControlContext);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
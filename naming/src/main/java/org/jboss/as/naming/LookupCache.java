@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming;
+
+import javax.naming.Name;
+import javax.naming.RefAddr;
+import javax.naming.Reference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of objects produced by dereferencing {@code Reference} bindings.  Only references which are known to always
+ * produce the same object are cached.  A reference is cacheable if it carries a {@link #CACHEABLE_ADDR_TYPE} address
+ * with a value of "true", or if its factory class implements {@link StatelessObjectFactory}.
+ * <p/>
+ * Entries are keyed by absolute name and remember the identity of the reference they were produced from, so an entry
+ * is only ever returned for the exact reference instance currently bound.  The owning naming store invalidates entries
+ * as bindings change so stale entries do not accumulate.
+ *
+ * @author John E. Bailey
+ */
+public class LookupCache {
+    /**
+     * The {@code RefAddr} type used to mark a reference as cacheable.
+     */
+    public static final String CACHEABLE_ADDR_TYPE = "cacheable";
+
+    /* Marks a reference which was checked and found not to be cacheable */
+    private static final Object NOT_CACHEABLE = new Object();
+
+    private final ConcurrentMap<Name, Entry> entries = new ConcurrentHashMap<Name, Entry>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the cached object for a reference bound at the provided name.
+     *
+     * @param name The absolute name
+     * @param reference The reference currently bound to the name
+     * @return The cached object, or {@code null} if the reference must be dereferenced
+     */
+    public Object get(final Name name, final Reference reference) {
+        final Entry entry = entries.get(name);
+        if (entry != null && entry.reference == reference) {
+            if (entry.value == NOT_CACHEABLE) {
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Record the result of dereferencing a reference.  The result is only retained if the reference is cacheable.
+     *
+     * @param name The absolute name
+     * @param reference The reference which was dereferenced
+     * @param value The dereferenced object
+     */
+    public void put(final Name name, final Reference reference, final Object value) {
+        final Entry existing = entries.get(name);
+        if (existing != null && existing.reference == reference) {
+            return;
+        }
+        if (value != null && value != reference && isCacheable(reference)) {
+            entries.put(name, new Entry(reference, value));
+        } else {
+            entries.put(name, new Entry(reference, NOT_CACHEABLE));
+        }
+    }
+
+    /**
+     * Invalidate the entry for a name.
+     *
+     * @param name The absolute name
+     * @param subtree Whether entries for names below this name should also be invalidated
+     */
+    public void invalidate(final Name name, final boolean subtree) {
+        entries.remove(name);
+        if (subtree) {
+            final Iterator<Name> names = entries.keySet().iterator();
+            while (names.hasNext()) {
+                if (names.next().startsWith(name)) {
+                    names.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidate all entries.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Get the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups which had to dereference a reference that had not been seen before.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of names with a cached object.
+     *
+     * @return the number of cached objects
+     */
+    public int size() {
+        int size = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.value != NOT_CACHEABLE) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private boolean isCacheable(final Reference reference) {
+        final RefAddr cacheable = reference.get(CACHEABLE_ADDR_TYPE);
+        if (cacheable != null) {
+            return Boolean.parseBoolean(String.valueOf(cacheable.getContent()));
+        }
+        final String factoryClassName = reference.getFactoryClassName();
+        if (factoryClassName == null || reference.getFactoryClassLocation() != null) {
+            return false;
+        }
+        try {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader == null) {
+                classLoader = LookupCache.class.getClassLoader();
+            }
+            return StatelessObjectFactory.class.isAssignableFrom(Class.forName(factoryClassName, false, classLoader));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Reference reference;
+        private final Object value;
+
+        private Entry(final Reference reference, final Object value) {
+            this.reference = reference;
+            this.value = value;
+        }
+    }
+}
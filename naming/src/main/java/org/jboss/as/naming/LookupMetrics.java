@@ -0,0 +1,325 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming;
+
+import org.jboss.as.naming.util.ImmutableCompositeName;
+
+import javax.naming.Name;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lookup statistics recorded per name.  For each name the number of lookups, the number of lookups which did not find
+ * a binding and a histogram of the time taken to dereference the bound object are recorded.  Names can be grouped by a
+ * prefix of a fixed number of components, and once the maximum number of names are tracked further names are
+ * recorded against a single {@link #OTHER} entry.
+ * <p/>
+ * The counters of each entry are striped by thread, so concurrent lookups of the same name do not contend on a single
+ * counter.  Metrics are only recorded when an instance is provided to the naming store.
+ *
+ * @author John E. Bailey
+ */
+public class LookupMetrics {
+    /**
+     * The name of the entry recording lookups of names which are not tracked individually.
+     */
+    public static final String OTHER = "<other>";
+
+    /**
+     * The number of dereference latency buckets.  Bucket {@code i} counts latencies of at least 2^i nanoseconds and
+     * less than 2^(i+1) nanoseconds, the last bucket also counts all longer latencies.
+     */
+    public static final int BUCKETS = 32;
+
+    /* Cells of a stripe: lookups, misses, dereferences, dereference time, then the latency buckets */
+    private static final int LOOKUPS = 0;
+    private static final int MISSES = 1;
+    private static final int DEREFERENCES = 2;
+    private static final int DEREFERENCE_TIME = 3;
+    private static final int FIRST_BUCKET = 4;
+    /* Rounded up to a multiple of 8 cells so stripes do not share cache lines */
+    private static final int STRIPE_SIZE = (FIRST_BUCKET + BUCKETS + 7) & ~7;
+    private static final int STRIPES = stripes();
+
+    private final ConcurrentMap<Name, Entry> entries = new ConcurrentHashMap<Name, Entry>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Entry other = new Entry(OTHER);
+    private final int maxNames;
+    private final int prefixDepth;
+
+    /**
+     * Create an instance which tracks up to 1024 full names.
+     */
+    public LookupMetrics() {
+        this(1024, 0);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxNames The maximum number of names tracked individually
+     * @param prefixDepth The number of name components metrics are grouped by, or 0 to track full names
+     */
+    public LookupMetrics(final int maxNames, final int prefixDepth) {
+        if (maxNames < 0) {
+            throw new IllegalArgumentException("Maximum names can not be negative");
+        }
+        if (prefixDepth < 0) {
+            throw new IllegalArgumentException("Prefix depth can not be negative");
+        }
+        this.maxNames = maxNames;
+        this.prefixDepth = prefixDepth;
+    }
+
+    /**
+     * Get the entry recording lookups of a name.
+     *
+     * @param name The absolute name
+     * @return The entry
+     */
+    Entry getEntry(final Name name) {
+        final Name key = prefixDepth > 0 && name.size() > prefixDepth ? name.getPrefix(prefixDepth) : name;
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        if (size.get() >= maxNames) {
+            return other;
+        }
+        final Name immutableKey = new ImmutableCompositeName(key);
+        final Entry created = new Entry(immutableKey.toString());
+        final Entry existing = entries.putIfAbsent(immutableKey, created);
+        if (existing != null) {
+            return existing;
+        }
+        size.incrementAndGet();
+        return created;
+    }
+
+    /**
+     * Get a snapshot of the entries with recorded lookups.
+     *
+     * @return The entries
+     */
+    public List<Entry> getEntries() {
+        final List<Entry> result = new ArrayList<Entry>(entries.values());
+        if (other.getLookupCount() > 0) {
+            result.add(other);
+        }
+        return result;
+    }
+
+    /**
+     * Get the total number of recorded lookups.
+     *
+     * @return The lookup count
+     */
+    public long getLookupCount() {
+        long count = other.getLookupCount();
+        for (Entry entry : entries.values()) {
+            count += entry.getLookupCount();
+        }
+        return count;
+    }
+
+    /**
+     * Get the total number of recorded lookups which did not find a binding.
+     *
+     * @return The miss count
+     */
+    public long getMissCount() {
+        long count = other.getMissCount();
+        for (Entry entry : entries.values()) {
+            count += entry.getMissCount();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of names tracked individually.
+     *
+     * @return The number of names
+     */
+    public int getTrackedNameCount() {
+        return size.get();
+    }
+
+    /**
+     * Discard all recorded metrics.
+     */
+    public void reset() {
+        entries.clear();
+        size.set(0);
+        other.reset();
+    }
+
+    private static int stripes() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < 8) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * The metrics recorded for a name.
+     */
+    public static final class Entry {
+        private final String name;
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIPE_SIZE);
+
+        private Entry(final String name) {
+            this.name = name;
+        }
+
+        void recordLookup() {
+            cells.getAndIncrement(stripe() + LOOKUPS);
+        }
+
+        void recordMiss() {
+            cells.getAndIncrement(stripe() + MISSES);
+        }
+
+        void recordDereference(final long nanos) {
+            final int stripe = stripe();
+            cells.getAndIncrement(stripe + DEREFERENCES);
+            cells.getAndAdd(stripe + DEREFERENCE_TIME, nanos);
+            cells.getAndIncrement(stripe + FIRST_BUCKET + bucket(nanos));
+        }
+
+        /**
+         * Get the name, or name prefix, the metrics are recorded for.
+         *
+         * @return The name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the number of lookups.
+         *
+         * @return The lookup count
+         */
+        public long getLookupCount() {
+            return sum(LOOKUPS);
+        }
+
+        /**
+         * Get the number of lookups which did not find a binding.
+         *
+         * @return The miss count
+         */
+        public long getMissCount() {
+            return sum(MISSES);
+        }
+
+        /**
+         * Get the number of lookups which dereferenced the bound object.
+         *
+         * @return The dereference count
+         */
+        public long getDereferenceCount() {
+            return sum(DEREFERENCES);
+        }
+
+        /**
+         * Get the total time spent dereferencing bound objects.
+         *
+         * @return The time in nanoseconds
+         */
+        public long getDereferenceTime() {
+            return sum(DEREFERENCE_TIME);
+        }
+
+        /**
+         * Get the dereference latency histogram.  See {@link LookupMetrics#BUCKETS} for the bucket bounds.
+         *
+         * @return The count of dereferences in each bucket
+         */
+        public long[] getDereferenceHistogram() {
+            final long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = sum(FIRST_BUCKET + i);
+            }
+            return histogram;
+        }
+
+        /**
+         * Get an upper bound of a dereference latency percentile from the histogram.
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The upper bound of the bucket containing the percentile in nanoseconds, or 0 if nothing was dereferenced
+         */
+        public long getDereferenceLatencyPercentile(final double percentile) {
+            final long[] histogram = getDereferenceHistogram();
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            final long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= target) {
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        private void reset() {
+            for (int i = 0; i < cells.length(); i++) {
+                cells.set(i, 0L);
+            }
+        }
+
+        private long sum(final int cell) {
+            long sum = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                sum += cells.get(stripe * STRIPE_SIZE + cell);
+            }
+            return sum;
+        }
+
+        private static int stripe() {
+            final long id = Thread.currentThread().getId();
+            return ((int) (id ^ (id >>> 16)) & (STRIPES - 1)) * STRIPE_SIZE;
+        }
+
+        private static int bucket(final long nanos) {
+            if (nanos <= 1) {
+                return 0;
+            }
+            return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos));
+        }
+    }
+}
@@ -22,8 +22,9 @@
 
 package org.jboss.as.naming;
 
+import org.jboss.as.naming.util.ImmutableCompositeName;
+import org.jboss.as.naming.util.NameCache;
 import org.jboss.as.naming.util.NameParser;
-import org.jboss.as.naming.util.NamingUtils;
 
 import javax.naming.Binding;
 import javax.naming.CannotProceedException;
@@ -33,6 +34,7 @@ import javax.naming.InitialContext;
 import javax.naming.LinkRef;
 import javax.naming.Name;
 import javax.naming.NameClassPair;
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.Reference;
@@ -41,7 +43,12 @@ import javax.naming.event.EventContext;
 import javax.naming.event.NamingListener;
 import javax.naming.spi.NamingManager;
 import javax.naming.spi.ResolveResult;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import static org.jboss.as.naming.util.NamingUtils.asReference;
 import static org.jboss.as.naming.util.NamingUtils.asReferenceable;
@@ -58,6 +65,11 @@ import static org.jboss.as.naming.util.NamingUtils.notAContextException;
  * @author John E. Bailey
  */
 public class NamingContext implements EventContext {
+    /*
+     * The default environment, shared by every context created without an environment.
+     */
+    private static final ReadOnlyEnvironment DEFAULT_ENVIRONMENT = new ReadOnlyEnvironment(new Hashtable<String, Object>());
+
     /*
      * The active naming store to use for any context created without a name store.
      */
@@ -75,14 +87,20 @@ public class NamingContext implements EventContext {
     /* The name parser */
     private static final NameParser nameParser = new NameParser();
 
+    /* Absolute names for frequently looked up strings */
+    private static final NameCache nameCache = new NameCache(1024);
+
     /* The naming store providing the back-end storage */
     private final NamingStore namingStore;
 
     /* The name prefix the context represents. */
     private final Name prefix;
 
-    /* The environment configuration */
-    private final Hashtable<String, Object> environment;
+    /*
+     * The environment configuration.  A read-only snapshot which may be shared with other contexts and is handed to
+     * factories as is, changes replace it with a new snapshot.
+     */
+    private volatile ReadOnlyEnvironment environment;
 
     /**
      * Create a new naming context with no prefix or naming store.  This will default to a prefix of "" and
@@ -105,11 +123,12 @@ public class NamingContext implements EventContext {
     }
 
     /**
-     * Create a new naming context with a prefix name and a NamingStore instance to use as a backing.
+     * Create a new naming context with a prefix name and a NamingStore instance to use as a backing.  The environment
+     * is copied, contexts created without an environment share the default environment.
      *
      * @param prefix The prefix for this context
      * @param namingStore The NamingStore
-     * @param environment The naming environment
+     * @param environment The naming environment, or {@code null} for the default environment
      */
     public NamingContext(final Name prefix, final NamingStore namingStore, final Hashtable<String, Object> environment) throws NamingException {
         if(prefix == null) {
@@ -120,11 +139,14 @@ public class NamingContext implements EventContext {
             throw new IllegalArgumentException("NamingStore can not be null");
         }
         this.namingStore = namingStore;
-        if(environment != null) {
-            this.environment = NamingUtils.clone(environment);
-        } else {
-            this.environment = new Hashtable<String, Object>();
-        }
+        this.environment = environment != null ? new ReadOnlyEnvironment(environment) : DEFAULT_ENVIRONMENT;
+    }
+
+    /* Create a context which shares the environment snapshot of another */
+    private NamingContext(final Name prefix, final NamingStore namingStore, final ReadOnlyEnvironment environment) {
+        this.prefix = prefix;
+        this.namingStore = namingStore;
+        this.environment = environment;
     }
 
     /** {@inheritDoc} */
@@ -132,8 +154,34 @@ public class NamingContext implements EventContext {
         if (isEmpty(name)) {
             return new NamingContext(prefix, namingStore, environment);
         }
+        return lookupAbsolute(getAbsoluteName(name));
+    }
 
-        final Name absoluteName = getAbsoluteName(name);
+    /** {@inheritDoc} */
+    public Object lookup(final String name) throws NamingException {
+        final Name absoluteName = getCachedAbsoluteName(name);
+        if (absoluteName != null) {
+            return lookupAbsolute(absoluteName);
+        }
+        return lookup(parseName(name));
+    }
+
+    private Object lookupAbsolute(final Name absoluteName) throws NamingException {
+        final LookupMetrics metrics = namingStore.getLookupMetrics();
+        if (metrics == null) {
+            return lookupAbsolute(absoluteName, null);
+        }
+        final LookupMetrics.Entry entry = metrics.getEntry(absoluteName);
+        entry.recordLookup();
+        try {
+            return lookupAbsolute(absoluteName, entry);
+        } catch (NameNotFoundException e) {
+            entry.recordMiss();
+            throw e;
+        }
+    }
+
+    private Object lookupAbsolute(final Name absoluteName, final LookupMetrics.Entry metrics) throws NamingException {
         Object result;
         try {
             result = namingStore.lookup(absoluteName);
@@ -150,7 +198,11 @@ public class NamingContext implements EventContext {
             if (resolvedObject instanceof LinkRef) {
                 context = resolveLink(resolvedObject);
             } else {
+                final long start = metrics != null ? System.nanoTime() : 0L;
                 context = getObjectInstance(resolvedObject, absoluteName, environment);
+                if (metrics != null) {
+                    metrics.recordDereference(System.nanoTime() - start);
+                }
             }
             if (!(context instanceof Context)) {
                 throw notAContextException(absoluteName.getPrefix(absoluteName.size() - resolveResult.getRemainingName().size()));
@@ -160,7 +212,11 @@ public class NamingContext implements EventContext {
         } else if (result instanceof LinkRef) {
             result = resolveLink(result);
         } else if (result instanceof Reference) {
-            result = getObjectInstance(result, absoluteName, environment);
+            final long start = metrics != null ? System.nanoTime() : 0L;
+            result = dereference(asReference(result), absoluteName);
+            if (metrics != null) {
+                metrics.recordDereference(System.nanoTime() - start);
+            }
             if (result instanceof LinkRef) {
                 result = resolveLink(result);
             }
@@ -168,11 +224,6 @@ public class NamingContext implements EventContext {
         return result;
     }
 
-    /** {@inheritDoc} */
-    public Object lookup(final String name) throws NamingException {
-        return lookup(parseName(name));
-    }
-
     /** {@inheritDoc} */
     public void bind(final Name name, Object object) throws NamingException {
         final Name absoluteName = getAbsoluteName(name);
@@ -199,6 +250,26 @@ public class NamingContext implements EventContext {
         bind(parseName(name), obj);
     }
 
+    /**
+     * Bind a set of objects in one operation.  The objects are bound through the naming store's bulk bind, which
+     * updates each parent context once and fires the resulting events as one batch.  All parent contexts must exist.
+     *
+     * @param bindings The objects to bind keyed by name
+     * @throws NamingException If any of the objects can not be bound, in which case none are bound
+     */
+    public void bindAll(final Map<Name, Object> bindings) throws NamingException {
+        final Map<Name, Object> absoluteBindings = new LinkedHashMap<Name, Object>();
+        for (Map.Entry<Name, Object> entry : bindings.entrySet()) {
+            final Name absoluteName = getAbsoluteName(entry.getKey());
+            Object object = NamingManager.getStateToBind(entry.getValue(), absoluteName, this, environment);
+            if(object instanceof Referenceable) {
+                object = asReferenceable(object).getReference();
+            }
+            absoluteBindings.put(absoluteName, object);
+        }
+        namingStore.bindAll(this, absoluteBindings);
+    }
+
     /** {@inheritDoc} */
     public void rebind(final Name name, Object object) throws NamingException {
         final Name absoluteName = getAbsoluteName(name);
@@ -345,7 +416,7 @@ public class NamingContext implements EventContext {
 
     /** {@inheritDoc} */
     public Name composeName(Name name, Name prefix) throws NamingException {
-        final Name result = NamingUtils.clone(prefix);
+        final Name result = cast(prefix.clone());
         result.addAll(name);
         return result;
     }
@@ -356,18 +427,27 @@ public class NamingContext implements EventContext {
     }
 
     /** {@inheritDoc} */
-    public Object addToEnvironment(String propName, Object propVal) throws NamingException {
-        final Object existing = environment.get(propName);
-        environment.put(propName, propVal);
-        return existing;
+    public synchronized Object addToEnvironment(String propName, Object propVal) throws NamingException {
+        final Hashtable<String, Object> copy = new Hashtable<String, Object>(environment);
+        final Object previous = copy.put(propName, propVal);
+        environment = new ReadOnlyEnvironment(copy);
+        return previous;
     }
 
     /** {@inheritDoc} */
-    public Object removeFromEnvironment(String propName) throws NamingException {
-        return environment.remove(propName);
+    public synchronized Object removeFromEnvironment(String propName) throws NamingException {
+        if (!environment.containsKey(propName)) {
+            return null;
+        }
+        final Hashtable<String, Object> copy = new Hashtable<String, Object>(environment);
+        final Object previous = copy.remove(propName);
+        environment = new ReadOnlyEnvironment(copy);
+        return previous;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}  The environment returned is read-only, a clone of it may be modified.
+     */
     public Hashtable<?, ?> getEnvironment() throws NamingException {
         return environment;
     }
@@ -406,6 +486,30 @@ public class NamingContext implements EventContext {
         return getNameParser(name).parse(name);
     }
 
+    /**
+     * Get the absolute name for a string from the name cache.  Only names which resolve to the same absolute name in
+     * every context are cached, which are names in the java: namespace, names starting with '/' and any name looked up
+     * from a context with an empty prefix.
+     *
+     * @param name The string name
+     * @return The immutable absolute name, or {@code null} if the name can not be cached
+     * @throws NamingException If the name can not be parsed
+     */
+    private Name getCachedAbsoluteName(final String name) throws NamingException {
+        if (!prefix.isEmpty() && !name.startsWith("java:") && !name.startsWith("/")) {
+            return null;
+        }
+        final Name cached = nameCache.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        final Name parsed = parseName(name);
+        if (isEmpty(parsed)) {
+            return null;
+        }
+        return nameCache.put(name, getAbsoluteName(parsed));
+    }
+
     private Name getAbsoluteName(final Name name) throws NamingException {
         if(name.isEmpty()) {
             return composeName(name, prefix);
@@ -426,8 +530,10 @@ public class NamingContext implements EventContext {
     }
 
     private Object getObjectInstance(final Object object, final Name name, final Hashtable environment) throws NamingException {
+        // Object factories may modify the name they are given, so they never get a shared cached name
+        final Name factoryName = name instanceof ImmutableCompositeName ? (Name) name.clone() : name;
         try {
-            return NamingManager.getObjectInstance(object, name, this, environment);
+            return NamingManager.getObjectInstance(object, factoryName, this, environment);
         } catch(NamingException e) {
             throw e;
         } catch(Throwable t) {
@@ -435,6 +541,20 @@ public class NamingContext implements EventContext {
         }
     }
 
+    private Object dereference(final Reference reference, final Name absoluteName) throws NamingException {
+        final LookupCache cache = namingStore.getLookupCache();
+        if (cache == null) {
+            return getObjectInstance(reference, absoluteName, environment);
+        }
+        final Object cached = cache.get(absoluteName, reference);
+        if (cached != null) {
+            return cached;
+        }
+        final Object result = getObjectInstance(reference, absoluteName, environment);
+        cache.put(absoluteName, reference, result);
+        return result;
+    }
+
     private Object resolveLink(Object result) throws NamingException {
         final Object linkResult;
         try {
@@ -450,4 +570,50 @@ public class NamingContext implements EventContext {
         }
         return linkResult;
     }
+
+    /**
+     * A snapshot of an environment which can not be modified, so it can be shared between contexts and handed to
+     * object and state factories without copying it.  A clone is a modifiable {@code Hashtable}.
+     */
+    private static final class ReadOnlyEnvironment extends Hashtable<String, Object> {
+        private static final long serialVersionUID = -5236127421947452640L;
+
+        private final boolean sealed;
+
+        private ReadOnlyEnvironment(final Map<String, Object> environment) {
+            super(environment);
+            sealed = true;
+        }
+
+        public synchronized Object put(final String key, final Object value) {
+            if (sealed) {
+                throw new UnsupportedOperationException("The naming environment is read-only, use addToEnvironment");
+            }
+            return super.put(key, value);
+        }
+
+        public synchronized Object remove(final Object key) {
+            throw new UnsupportedOperationException("The naming environment is read-only, use removeFromEnvironment");
+        }
+
+        public synchronized void clear() {
+            throw new UnsupportedOperationException("The naming environment is read-only");
+        }
+
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(super.keySet());
+        }
+
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return Collections.unmodifiableSet(super.entrySet());
+        }
+
+        public Collection<Object> values() {
+            return Collections.unmodifiableCollection(super.values());
+        }
+
+        public synchronized Object clone() {
+            return new Hashtable<String, Object>(this);
+        }
+    }
 }
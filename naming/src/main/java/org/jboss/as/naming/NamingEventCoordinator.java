@@ -23,39 +23,81 @@
 package org.jboss.as.naming;
 
 import org.jboss.as.naming.util.FastCopyHashMap;
+import org.jboss.as.naming.util.HashTrieMap;
 
 import javax.naming.Binding;
+import javax.naming.CompositeName;
+import javax.naming.InvalidNameException;
 import javax.naming.Name;
 import javax.naming.event.EventContext;
 import javax.naming.event.NamespaceChangeListener;
 import javax.naming.event.NamingEvent;
 import javax.naming.event.NamingListener;
 import javax.naming.event.ObjectChangeListener;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Coordinator responsible for passing @(code NamingEvent} instances to registered @{code NamingListener} instances.  Two
- * maps are used to managed a mapping between a listener and its configuration as well as a mapping from target name to a list
- * of listener configurations.  These maps are updated atomically on listener add and remove.
+ * Coordinator responsible for passing @(code NamingEvent} instances to registered @{code NamingListener} instances.
+ * Listeners are indexed in a trie keyed by the components of their target names, so matching an event only walks the
+ * path of the event name.  The trie is immutable and replaced atomically on listener add and remove.
+ * <p/>
+ * Each listener has its own queue of pending events.  Queues are drained by a pool of dispatch threads, so events are
+ * delivered to a given listener in the order they were fired, while a slow listener only delays its own events.  When
+ * a listener falls behind, consecutive change events for the same name are coalesced into a single event.
  *
  * @author John E. Bailey
  */
 public class NamingEventCoordinator {
-    private volatile Map<TargetScope, List<ListenerHolder>> holdersByTarget = Collections.emptyMap();
+    private volatile ListenerNode root = ListenerNode.EMPTY;
     private volatile Map<NamingListener, ListenerHolder> holdersByListener = Collections.emptyMap();
 
-    private final Executor executor = Executors.newSingleThreadExecutor();
+    private final Executor executor;
+
+    /* Metrics */
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private final AtomicLong coalescedEvents = new AtomicLong();
+    private final AtomicLong totalDispatchLatency = new AtomicLong();
+    private final AtomicLong maxDispatchLatency = new AtomicLong();
 
     static final Integer[] DEFAULT_SCOPES = {EventContext.OBJECT_SCOPE, EventContext.ONELEVEL_SCOPE, EventContext.SUBTREE_SCOPE};
 
+    /**
+     * Create a coordinator with a single dispatch thread.
+     */
+    public NamingEventCoordinator() {
+        this(1);
+    }
+
+    /**
+     * Create a coordinator with the provided number of dispatch threads.  Threads are only started while there are
+     * events to deliver.
+     *
+     * @param dispatchThreads The maximum number of dispatch threads
+     */
+    public NamingEventCoordinator(final int dispatchThreads) {
+        if (dispatchThreads < 1) {
+            throw new IllegalArgumentException("At least one dispatch thread is required");
+        }
+        final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DispatchThreadFactory());
+        threadPool.allowCoreThreadTimeOut(true);
+        executor = threadPool;
+    }
+
     /**
      * Add a listener to the coordinator with a given target name and event scope.  This information is used when an
      * event is fired to determine whether or not to fire this listener.
@@ -73,18 +115,10 @@ public class NamingEventCoordinator {
             final Map<NamingListener, ListenerHolder> byListenerCopy = new FastCopyHashMap<NamingListener, ListenerHolder>(holdersByListener);
             byListenerCopy.put(namingListener, holder);
             holdersByListener = byListenerCopy;
-        } else {
-            holder.addTarget(targetScope);
-        }
-
-        List<ListenerHolder> holdersForTarget = holdersByTarget.get(targetScope);
-        if (holdersForTarget == null) {
-            holdersForTarget = new CopyOnWriteArrayList<ListenerHolder>();
-            final Map<TargetScope, List<ListenerHolder>> byTargetCopy = new FastCopyHashMap<TargetScope, List<ListenerHolder>>(holdersByTarget);
-            byTargetCopy.put(targetScope, holdersForTarget);
-            holdersByTarget = byTargetCopy;
+        } else if (!holder.addTarget(targetScope)) {
+            return;
         }
-        holdersForTarget.add(holder);
+        root = root.add(targetScope.components, 0, scope, holder);
     }
 
     /**
@@ -104,15 +138,12 @@ public class NamingEventCoordinator {
         byListenerCopy.remove(namingListener);
         holdersByListener = byListenerCopy;
 
-        final Map<TargetScope, List<ListenerHolder>> byTargetCopy = new FastCopyHashMap<TargetScope, List<ListenerHolder>>(holdersByTarget);
+        ListenerNode updated = root;
         for (TargetScope targetScope : holder.targets) {
-            final List<ListenerHolder> holders = holdersByTarget.get(targetScope);
-            holders.remove(holder);
-            if (holders.isEmpty()) {
-                byTargetCopy.remove(targetScope);
-            }
+            updated = updated.remove(targetScope.components, 0, targetScope.scope, holder);
         }
-        holdersByTarget = byTargetCopy;
+        root = updated;
+        holder.removed = true;
     }
 
     /**
@@ -128,107 +159,377 @@ public class NamingEventCoordinator {
      * @param scopes The scopes this event should be fired against
      */
     void fireEvent(final EventContext context, final Name name, final Binding existingBinding, final Binding newBinding, int type, final String changeInfo, final Integer... scopes) {
-        final String target = name.toString();
-        final Set<Integer> scopeSet = new HashSet<Integer>(Arrays.asList(scopes));
+        if (holdersByListener.isEmpty()) {
+            return;
+        }
+        final List<ListenerHolder> holdersToFire = match(name, scopes);
+        if (holdersToFire == null) {
+            return;
+        }
         final NamingEvent event = new NamingEvent(context, type, newBinding, existingBinding, changeInfo);
+        final long queuedAt = System.nanoTime();
+        for (ListenerHolder holder : holdersToFire) {
+            holder.enqueue(new PendingEvent(name, event, queuedAt));
+            holder.schedule();
+        }
+    }
 
-        final Set<ListenerHolder> holdersToFire = new HashSet<ListenerHolder>();
+    /**
+     * Fire a batch of naming events of the same type for new bindings.  Each listener is scheduled once for the whole
+     * batch and receives the events in the order of the provided map.
+     *
+     * @param context The event context generating the events.
+     * @param newBindings The new bindings keyed by the name the event represents
+     * @param type The event type
+     * @param changeInfo The change info for the events
+     * @param scopes The scopes these events should be fired against
+     */
+    void fireEvents(final EventContext context, final Map<Name, Binding> newBindings, int type, final String changeInfo, final Integer... scopes) {
+        if (holdersByListener.isEmpty()) {
+            return;
+        }
+        final long queuedAt = System.nanoTime();
+        final Set<ListenerHolder> holdersToSchedule = new HashSet<ListenerHolder>();
+        for (Map.Entry<Name, Binding> entry : newBindings.entrySet()) {
+            final List<ListenerHolder> holdersToFire = match(entry.getKey(), scopes);
+            if (holdersToFire == null) {
+                continue;
+            }
+            final NamingEvent event = new NamingEvent(context, type, entry.getValue(), null, changeInfo);
+            for (ListenerHolder holder : holdersToFire) {
+                holder.enqueue(new PendingEvent(entry.getKey(), event, queuedAt));
+                holdersToSchedule.add(holder);
+            }
+        }
+        for (ListenerHolder holder : holdersToSchedule) {
+            holder.schedule();
+        }
+    }
 
-        // Check for OBJECT_SCOPE based listeners
-        if (scopeSet.contains(EventContext.OBJECT_SCOPE)) {
-            final TargetScope targetScope = new TargetScope(target, EventContext.OBJECT_SCOPE);
-            final List<ListenerHolder> holders = holdersByTarget.get(targetScope);
-            if (holders != null) {
-                for (ListenerHolder holder : holders) {
-                    holdersToFire.add(holder);
-                }
+    /**
+     * Find the listeners matching an event for the provided name.
+     *
+     * @param name The name the event represents
+     * @param scopes The scopes the event should be fired against
+     * @return The matching listeners, or {@code null} if there are none
+     */
+    private List<ListenerHolder> match(final Name name, final Integer... scopes) {
+        boolean objectScope = false;
+        boolean oneLevelScope = false;
+        boolean subtreeScope = false;
+        for (Integer scope : scopes) {
+            switch (scope) {
+                case EventContext.OBJECT_SCOPE:
+                    objectScope = true;
+                    break;
+                case EventContext.ONELEVEL_SCOPE:
+                    oneLevelScope = true;
+                    break;
+                case EventContext.SUBTREE_SCOPE:
+                    subtreeScope = true;
+                    break;
             }
         }
 
-        // Check for ONELEVEL_SCOPE based listeners
-        if (scopeSet.contains(EventContext.ONELEVEL_SCOPE) && !name.isEmpty()) {
-            final TargetScope targetScope = new TargetScope(name.getPrefix(name.size() - 1).toString(), EventContext.ONELEVEL_SCOPE);
-            final List<ListenerHolder> holders = holdersByTarget.get(targetScope);
-            if (holders != null) {
-                for (ListenerHolder holder : holders) {
-                    holdersToFire.add(holder);
+        final int size = name.size();
+        List<ListenerHolder> holdersToFire = null;
+        ListenerNode node = root;
+        for (int depth = 0; node != null; depth++) {
+            if (subtreeScope && depth >= 1 && depth < size) {
+                holdersToFire = collect(holdersToFire, node.subtreeHolders);
+            }
+            if (oneLevelScope && depth == size - 1) {
+                holdersToFire = collect(holdersToFire, node.oneLevelHolders);
+            }
+            if (depth == size) {
+                if (objectScope) {
+                    holdersToFire = collect(holdersToFire, node.objectHolders);
                 }
+                break;
             }
+            node = node.children.get(name.get(depth));
         }
+        return holdersToFire;
+    }
 
-        // Check for SUBTREE_SCOPE based listeners
-        if (scopeSet.contains(EventContext.SUBTREE_SCOPE) && !name.isEmpty()) {
-            for (int i = 1; i < name.size(); i++) {
-                final Name parentName = name.getPrefix(i);
-                final TargetScope targetScope = new TargetScope(parentName.toString(), EventContext.SUBTREE_SCOPE);
-                final List<ListenerHolder> holders = holdersByTarget.get(targetScope);
-                if (holders != null) {
-                    for (ListenerHolder holder : holders) {
-                        holdersToFire.add(holder);
-                    }
-                }
+    /**
+     * Get the number of events waiting to be delivered.
+     *
+     * @return the queue depth
+     */
+    public int getPendingEventCount() {
+        return pendingEvents.get();
+    }
+
+    /**
+     * Get the number of events delivered to listeners.
+     *
+     * @return the delivered event count
+     */
+    public long getDeliveredEventCount() {
+        return deliveredEvents.get();
+    }
+
+    /**
+     * Get the number of events which were merged into a later event for the same name before delivery.
+     *
+     * @return the coalesced event count
+     */
+    public long getCoalescedEventCount() {
+        return coalescedEvents.get();
+    }
+
+    /**
+     * Get the average time between an event being fired and delivered to a listener.
+     *
+     * @return the average latency in nanoseconds
+     */
+    public long getAverageDispatchLatency() {
+        final long delivered = deliveredEvents.get();
+        return delivered == 0 ? 0 : totalDispatchLatency.get() / delivered;
+    }
+
+    /**
+     * Get the longest time between an event being fired and delivered to a listener.
+     *
+     * @return the maximum latency in nanoseconds
+     */
+    public long getMaxDispatchLatency() {
+        return maxDispatchLatency.get();
+    }
+
+    private static List<ListenerHolder> collect(List<ListenerHolder> holdersToFire, final ListenerHolder[] holders) {
+        for (ListenerHolder holder : holders) {
+            if (holdersToFire == null) {
+                holdersToFire = new ArrayList<ListenerHolder>(4);
+            } else if (holdersToFire.contains(holder)) {
+                continue;
             }
+            holdersToFire.add(holder);
         }
+        return holdersToFire;
+    }
 
-        executor.execute(new FireEventTask(holdersToFire, event));
+    private void recordDelivery(final PendingEvent pendingEvent) {
+        final long latency = System.nanoTime() - pendingEvent.queuedAt;
+        deliveredEvents.incrementAndGet();
+        totalDispatchLatency.addAndGet(latency);
+        long max;
+        do {
+            max = maxDispatchLatency.get();
+        } while (latency > max && !maxDispatchLatency.compareAndSet(max, latency));
     }
 
-    private class FireEventTask implements Runnable {
-        private final Set<ListenerHolder> listenerHolders;
-        private final NamingEvent event;
+    private static void deliver(final NamingListener listener, final NamingEvent event) {
+        switch (event.getType()) {
+            case NamingEvent.OBJECT_ADDED:
+                if (listener instanceof NamespaceChangeListener)
+                    ((NamespaceChangeListener) listener).objectAdded(event);
+                break;
+            case NamingEvent.OBJECT_REMOVED:
+                if (listener instanceof NamespaceChangeListener)
+                    ((NamespaceChangeListener) listener).objectRemoved(event);
+                break;
+            case NamingEvent.OBJECT_RENAMED:
+                if (listener instanceof NamespaceChangeListener)
+                    ((NamespaceChangeListener) listener).objectRenamed(event);
+                break;
+            case NamingEvent.OBJECT_CHANGED:
+                if (listener instanceof ObjectChangeListener)
+                    ((ObjectChangeListener) listener).objectChanged(event);
+                break;
+        }
+    }
 
-        private FireEventTask(Set<ListenerHolder> listenerHolders, NamingEvent event) {
-            this.listenerHolders = listenerHolders;
-            this.event = event;
+    /**
+     * Node in the listener trie.  Holds the listeners registered for the name represented by the path to this node.
+     * Nodes are never modified once published.
+     */
+    private static final class ListenerNode {
+        private static final ListenerHolder[] NO_HOLDERS = new ListenerHolder[0];
+        private static final ListenerNode EMPTY = new ListenerNode(HashTrieMap.<String, ListenerNode>empty(), NO_HOLDERS, NO_HOLDERS, NO_HOLDERS);
+
+        private final HashTrieMap<String, ListenerNode> children;
+        private final ListenerHolder[] objectHolders;
+        private final ListenerHolder[] oneLevelHolders;
+        private final ListenerHolder[] subtreeHolders;
+
+        private ListenerNode(final HashTrieMap<String, ListenerNode> children, final ListenerHolder[] objectHolders, final ListenerHolder[] oneLevelHolders, final ListenerHolder[] subtreeHolders) {
+            this.children = children;
+            this.objectHolders = objectHolders;
+            this.oneLevelHolders = oneLevelHolders;
+            this.subtreeHolders = subtreeHolders;
         }
 
-        @Override
-        public void run() {
-            for (ListenerHolder holder : listenerHolders) {
-                final NamingListener listener = holder.listener;
-                switch (event.getType()) {
-                    case NamingEvent.OBJECT_ADDED:
-                        if (listener instanceof NamespaceChangeListener)
-                            ((NamespaceChangeListener) listener).objectAdded(event);
-                        break;
-                    case NamingEvent.OBJECT_REMOVED:
-                        if (listener instanceof NamespaceChangeListener)
-                            ((NamespaceChangeListener) listener).objectRemoved(event);
-                        break;
-                    case NamingEvent.OBJECT_RENAMED:
-                        if (listener instanceof NamespaceChangeListener)
-                            ((NamespaceChangeListener) listener).objectRenamed(event);
-                        break;
-                    case NamingEvent.OBJECT_CHANGED:
-                        if (listener instanceof ObjectChangeListener)
-                            ((ObjectChangeListener) listener).objectChanged(event);
-                        break;
+        private boolean isEmpty() {
+            return children.isEmpty() && objectHolders.length == 0 && oneLevelHolders.length == 0 && subtreeHolders.length == 0;
+        }
+
+        private ListenerNode add(final String[] path, final int index, final int scope, final ListenerHolder holder) {
+            if (index == path.length) {
+                return withHolders(scope, plus(holders(scope), holder));
+            }
+            final ListenerNode child = children.get(path[index]);
+            final ListenerNode updated = (child != null ? child : EMPTY).add(path, index + 1, scope, holder);
+            return new ListenerNode(children.plus(path[index], updated), objectHolders, oneLevelHolders, subtreeHolders);
+        }
+
+        private ListenerNode remove(final String[] path, final int index, final int scope, final ListenerHolder holder) {
+            if (index == path.length) {
+                return withHolders(scope, minus(holders(scope), holder));
+            }
+            final ListenerNode child = children.get(path[index]);
+            if (child == null) {
+                return this;
+            }
+            final ListenerNode updated = child.remove(path, index + 1, scope, holder);
+            final HashTrieMap<String, ListenerNode> updatedChildren = updated.isEmpty() ? children.minus(path[index]) : children.plus(path[index], updated);
+            return new ListenerNode(updatedChildren, objectHolders, oneLevelHolders, subtreeHolders);
+        }
+
+        private ListenerHolder[] holders(final int scope) {
+            switch (scope) {
+                case EventContext.OBJECT_SCOPE:
+                    return objectHolders;
+                case EventContext.ONELEVEL_SCOPE:
+                    return oneLevelHolders;
+                default:
+                    return subtreeHolders;
+            }
+        }
+
+        private ListenerNode withHolders(final int scope, final ListenerHolder[] holders) {
+            switch (scope) {
+                case EventContext.OBJECT_SCOPE:
+                    return new ListenerNode(children, holders, oneLevelHolders, subtreeHolders);
+                case EventContext.ONELEVEL_SCOPE:
+                    return new ListenerNode(children, objectHolders, holders, subtreeHolders);
+                default:
+                    return new ListenerNode(children, objectHolders, oneLevelHolders, holders);
+            }
+        }
+
+        private static ListenerHolder[] plus(final ListenerHolder[] holders, final ListenerHolder holder) {
+            final ListenerHolder[] copy = new ListenerHolder[holders.length + 1];
+            System.arraycopy(holders, 0, copy, 0, holders.length);
+            copy[holders.length] = holder;
+            return copy;
+        }
+
+        private static ListenerHolder[] minus(final ListenerHolder[] holders, final ListenerHolder holder) {
+            for (int i = 0; i < holders.length; i++) {
+                if (holders[i] == holder) {
+                    final ListenerHolder[] copy = new ListenerHolder[holders.length - 1];
+                    System.arraycopy(holders, 0, copy, 0, i);
+                    System.arraycopy(holders, i + 1, copy, i, copy.length - i);
+                    return copy;
                 }
             }
+            return holders;
         }
     }
 
-    private class ListenerHolder {
-        private volatile Set<TargetScope> targets = new HashSet<TargetScope>();
+    private static final class PendingEvent {
+        private final Name name;
+        private final NamingEvent event;
+        private final long queuedAt;
+
+        private PendingEvent(final Name name, final NamingEvent event, final long queuedAt) {
+            this.name = name;
+            this.event = event;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * Holds a listener's registrations and its queue of pending events.  The queue is drained by at most one dispatch
+     * thread at a time, which keeps delivery to the listener in order.
+     */
+    private class ListenerHolder implements Runnable {
+        private final Set<TargetScope> targets = new HashSet<TargetScope>();
         private final NamingListener listener;
+        private final ConcurrentLinkedQueue<PendingEvent> queue = new ConcurrentLinkedQueue<PendingEvent>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean removed;
 
         private ListenerHolder(final NamingListener listener, final TargetScope initialTarget) {
             this.listener = listener;
             addTarget(initialTarget);
         }
 
-        private synchronized void addTarget(final TargetScope targetScope) {
-            targets.add(targetScope);
+        private boolean addTarget(final TargetScope targetScope) {
+            return targets.add(targetScope);
+        }
+
+        private void enqueue(final PendingEvent pendingEvent) {
+            queue.add(pendingEvent);
+            pendingEvents.incrementAndGet();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            try {
+                PendingEvent pendingEvent = queue.poll();
+                while (pendingEvent != null) {
+                    pendingEvents.decrementAndGet();
+                    PendingEvent next = queue.poll();
+                    while (next != null && canCoalesce(pendingEvent, next)) {
+                        pendingEvents.decrementAndGet();
+                        coalescedEvents.incrementAndGet();
+                        pendingEvent = coalesce(pendingEvent, next);
+                        next = queue.poll();
+                    }
+                    if (!removed) {
+                        recordDelivery(pendingEvent);
+                        try {
+                            deliver(listener, pendingEvent.event);
+                        } catch (Throwable ignored) {
+                            // A failing listener must not prevent delivery of its remaining events
+                        }
+                    }
+                    pendingEvent = next;
+                }
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private boolean canCoalesce(final PendingEvent first, final PendingEvent second) {
+            return first.event.getType() == NamingEvent.OBJECT_CHANGED && second.event.getType() == NamingEvent.OBJECT_CHANGED
+                    && first.event.getEventContext() == second.event.getEventContext() && first.name.equals(second.name);
+        }
+
+        private PendingEvent coalesce(final PendingEvent first, final PendingEvent second) {
+            final NamingEvent event = new NamingEvent(second.event.getEventContext(), NamingEvent.OBJECT_CHANGED, second.event.getNewBinding(), first.event.getOldBinding(), second.event.getChangeInfo());
+            return new PendingEvent(second.name, event, first.queuedAt);
         }
     }
 
-    private class TargetScope {
+    private static class TargetScope {
         private final String target;
         private final int scope;
+        private final String[] components;
 
         private TargetScope(String target, int scope) {
             this.target = target;
             this.scope = scope;
+            try {
+                final Name name = new CompositeName(target);
+                components = new String[name.size()];
+                for (int i = 0; i < components.length; i++) {
+                    components[i] = name.get(i);
+                }
+            } catch (InvalidNameException e) {
+                throw new IllegalArgumentException("Invalid listener target " + target, e);
+            }
         }
 
         @Override
@@ -251,4 +552,14 @@ public class NamingEventCoordinator {
             return result;
         }
     }
+
+    private static class DispatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "naming-event-dispatch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
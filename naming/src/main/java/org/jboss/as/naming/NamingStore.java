@@ -29,6 +29,7 @@ import javax.naming.NameClassPair;
 import javax.naming.NamingException;
 import javax.naming.event.NamingListener;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface to layout a contract for naming entry back-end storage.  This will be used by {@code NamingContext} instances
@@ -48,6 +49,16 @@ public interface NamingStore {
      */
     void bind(Context context, Name name, Object object, String className) throws NamingException;
 
+    /**
+     * Bind a set of objects into the naming store in one operation.  All parent contexts must be created before this
+     * can be executed.  Either all the objects are bound or none are.
+     *
+     * @param context The calling context
+     * @param bindings The entry objects keyed by entry name
+     * @throws NamingException If any problems occur
+     */
+    void bindAll(Context context, Map<Name, Object> bindings) throws NamingException;
+
     /**
      * Re-bind and object into the naming store.  All parent contexts must be created before this can be executed.
      *
@@ -129,4 +140,18 @@ public interface NamingStore {
      * @param listener The listener
      */
     void removeNamingListener(NamingListener listener);
+
+    /**
+     * Get the cache used to hold objects dereferenced from references bound in this store.
+     *
+     * @return The lookup cache, or {@code null} if lookup caching is not enabled
+     */
+    LookupCache getLookupCache();
+
+    /**
+     * Get the metrics recording lookups of names in this store.
+     *
+     * @return The lookup metrics, or {@code null} if lookup metrics are not enabled
+     */
+    LookupMetrics getLookupMetrics();
 }
@@ -36,6 +36,9 @@ public enum Attribute {
     BIND_APP_CONTEXT("bind-app-context"),
     BIND_MODULE_CONTEXT("bind-module-context"),
     BIND_COMP_CONTEXT("bind-comp-context"),
+    LOOKUP_CACHE("lookup-cache"),
+    EVENT_DISPATCH_THREADS("event-dispatch-threads"),
+    LOOKUP_METRICS("lookup-metrics"),
     ;
     private final String name;
 
@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.jboss.as.naming.LookupMetrics;
+import org.jboss.as.naming.NamingStore;
+import org.jboss.logging.Logger;
+import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * Exposes the lookup metrics recorded by the naming store as an mbean alongside the JNDIView mbean.
+ *
+ * @author John E. Bailey
+ */
+public class JndiMetrics implements JndiMetricsMBean, Service<JndiMetrics> {
+    private static final Logger log = Logger.getLogger("org.jboss.as.naming");
+    private static final String OBJECT_NAME = "jboss:type=JNDIMetrics";
+
+    private final InjectedValue<MBeanServer> mbeanServerValue = new InjectedValue<MBeanServer>();
+    private final InjectedValue<NamingStore> namingStoreValue = new InjectedValue<NamingStore>();
+
+    public synchronized void start(StartContext context) throws StartException {
+        final MBeanServer mbeanServer = getMbeanServer();
+        try {
+            mbeanServer.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            throw new StartException("Failed to register JndiMetrics mbean.", e);
+        }
+    }
+
+    public synchronized void stop(StopContext context) {
+        final MBeanServer mbeanServer = getMbeanServer();
+        try {
+            mbeanServer.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            log.error("Failed to unregister JndiMetrics mbean", e);
+        }
+    }
+
+    public JndiMetrics getValue() throws IllegalStateException {
+        return this;
+    }
+
+    public Injector<MBeanServer> getMBeanServerInjector() {
+        return mbeanServerValue;
+    }
+
+    public Injector<NamingStore> getNamingStoreInjector() {
+        return namingStoreValue;
+    }
+
+    public long getLookupCount() {
+        final LookupMetrics metrics = getLookupMetrics();
+        return metrics != null ? metrics.getLookupCount() : 0L;
+    }
+
+    public long getMissCount() {
+        final LookupMetrics metrics = getLookupMetrics();
+        return metrics != null ? metrics.getMissCount() : 0L;
+    }
+
+    public int getTrackedNameCount() {
+        final LookupMetrics metrics = getLookupMetrics();
+        return metrics != null ? metrics.getTrackedNameCount() : 0;
+    }
+
+    /**
+     * List the metrics of the most looked up names.  Dereference latencies are the upper bounds of the histogram
+     * buckets containing the percentile.
+     *
+     * @param limit the maximum number of names to list
+     */
+    public String listMetrics(int limit) {
+        final LookupMetrics metrics = getLookupMetrics();
+        if (metrics == null) {
+            return "Lookup metrics are not enabled\n";
+        }
+        final List<LookupMetrics.Entry> entries = metrics.getEntries();
+        Collections.sort(entries, new Comparator<LookupMetrics.Entry>() {
+            public int compare(final LookupMetrics.Entry o1, final LookupMetrics.Entry o2) {
+                final long c1 = o1.getLookupCount();
+                final long c2 = o2.getLookupCount();
+                return c1 > c2 ? -1 : (c1 == c2 ? 0 : 1);
+            }
+        });
+        final StringBuilder buffer = new StringBuilder(4096);
+        buffer.append("name, lookups, misses, dereferences, mean dereference ns, p50 dereference ns, p99 dereference ns\n");
+        for (LookupMetrics.Entry entry : entries.subList(0, Math.max(0, Math.min(limit, entries.size())))) {
+            final long dereferences = entry.getDereferenceCount();
+            buffer.append(entry.getName()).append(", ")
+                .append(entry.getLookupCount()).append(", ")
+                .append(entry.getMissCount()).append(", ")
+                .append(dereferences).append(", ")
+                .append(dereferences > 0 ? entry.getDereferenceTime() / dereferences : 0L).append(", ")
+                .append(entry.getDereferenceLatencyPercentile(50)).append(", ")
+                .append(entry.getDereferenceLatencyPercentile(99)).append('\n');
+        }
+        return buffer.toString();
+    }
+
+    public void reset() {
+        final LookupMetrics metrics = getLookupMetrics();
+        if (metrics != null) {
+            metrics.reset();
+        }
+    }
+
+    private LookupMetrics getLookupMetrics() {
+        final NamingStore namingStore = namingStoreValue.getOptionalValue();
+        return namingStore != null ? namingStore.getLookupMetrics() : null;
+    }
+
+    private MBeanServer getMbeanServer() {
+        MBeanServer mbeanServer = mbeanServerValue.getOptionalValue();
+        if (mbeanServer == null) {
+            mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        }
+        return mbeanServer;
+    }
+}
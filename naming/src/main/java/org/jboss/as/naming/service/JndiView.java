@@ -26,14 +26,22 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Proxy;
+import java.util.Iterator;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.naming.Binding;
+import javax.naming.CompositeName;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.LinkRef;
+import javax.naming.Name;
 import javax.naming.NameClassPair;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.NotContextException;
+import org.jboss.as.naming.InMemoryNamingStore;
+import org.jboss.as.naming.NamingContext;
+import org.jboss.as.naming.NamingStore;
 import org.jboss.logging.Logger;
 import org.jboss.msc.inject.Injector;
 import org.jboss.msc.service.Service;
@@ -50,6 +58,7 @@ public class JndiView implements JndiViewMBean, Service<JndiView> {
     private static final String OBJECT_NAME = "jboss:type=JNDIView";
 
     private final InjectedValue<MBeanServer> mbeanServerValue = new InjectedValue<MBeanServer>();
+    private final InjectedValue<NamingStore> namingStoreValue = new InjectedValue<NamingStore>();
 
     public synchronized void start(StartContext context) throws StartException {
         final MBeanServer mbeanServer = getMbeanServer();
@@ -77,6 +86,10 @@ public class JndiView implements JndiViewMBean, Service<JndiView> {
         return mbeanServerValue;
     }
 
+    public Injector<NamingStore> getNamingStoreInjector() {
+        return namingStoreValue;
+    }
+
     /**
      * List deployed application java:comp namespaces, the java:
      * namespace as well as the global InitialContext JNDI namespace.
@@ -185,6 +198,287 @@ public class JndiView implements JndiViewMBean, Service<JndiView> {
         return buffer.toString();
     }
 
+    /**
+     * List a page of the bindings below a name.  Bindings are visited depth first and only those within the page are
+     * rendered.  With an in-memory naming store the entries of each context are read one at a time from the store's
+     * tree, and the walk stops as soon as the page is full, so a large namespace can be listed a page at a time without
+     * building the whole tree or listing a whole context.  The bindings before the page are still walked, so the cost
+     * of a page grows with its offset.
+     *
+     * @param name the name of the context to list, or "" for the global JNDI namespace
+     * @param offset the number of bindings to skip
+     * @param limit the maximum number of bindings to list
+     * @param depth the number of context levels to descend below the named context, or -1 for no limit
+     * @param verbose if true, list the class of each object in addition to its name
+     */
+    public String list(final String name, final int offset, final int limit, final int depth, final boolean verbose) {
+        final StringBuffer buffer = new StringBuffer(4096);
+        final PageWalker walker = new PageWalker(offset, limit, depth) {
+            void visit(final NameClassPair pair, final String fullName) {
+                buffer.append(" +- ").append(fullName);
+                if (verbose) {
+                    buffer.append(" (class: ").append(pair.getClassName()).append(")");
+                }
+                buffer.append('\n');
+            }
+
+            void failed(final String fullName, final Throwable t) {
+                buffer.append("Failed to lookup: ").append(fullName).append(", errmsg=").append(t.getMessage()).append('\n');
+            }
+        };
+        try {
+            walk(walker, name);
+        } catch (NamingException e) {
+            log.error("Failed to list " + name, e);
+            buffer.append("Failed to list ").append(name).append(", ").append(e.toString(true));
+            formatException(buffer, e);
+            return buffer.toString();
+        }
+        if (walker.more) {
+            buffer.append(" ... more bindings from offset ").append(offset + limit).append('\n');
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * List a page of the bindings below a name in a XML format.  Each binding is listed with its full name relative to
+     * the named context, and the root element records whether there are more bindings after the page.
+     *
+     * @param name the name of the context to list, or "" for the global JNDI namespace
+     * @param offset the number of bindings to skip
+     * @param limit the maximum number of bindings to list
+     * @param depth the number of context levels to descend below the named context, or -1 for no limit
+     */
+    public String listXML(final String name, final int offset, final int limit, final int depth) {
+        final StringBuffer buffer = new StringBuffer(4096);
+        final PageWalker walker = new PageWalker(offset, limit, depth) {
+            void visit(final NameClassPair pair, final String fullName) {
+                buffer.append("<binding>\n");
+                buffer.append("<name>").append(escape(fullName)).append("</name>\n");
+                buffer.append("<attribute name='class'>").append(escape(pair.getClassName())).append("</attribute>\n");
+                buffer.append("</binding>\n");
+            }
+
+            void failed(final String fullName, final Throwable t) {
+                appendErrorTag(buffer, "Failed to lookup: " + fullName + ", errmsg=" + t.getMessage());
+            }
+        };
+        try {
+            walk(walker, name);
+        } catch (NamingException e) {
+            log.error("Failed to list " + name, e);
+            appendErrorTag(buffer, "Failed to list " + name + ", " + e.toString(true));
+        }
+        buffer.insert(0, "<jndi name='" + escape(name) + "' offset='" + offset + "' limit='" + limit + "' more='" + walker.more + "'>\n");
+        closeJndiTag(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Count the bindings below a name.  The count is taken from the naming store's tree without looking up or
+     * resolving any bound object, so a context bound by reference, such as java:comp, counts as a single binding and
+     * its contents are not counted.  Without an in-memory naming store the namespace is walked as by
+     * {@link #list(String, int, int, int, boolean)}, looking up every context.
+     *
+     * @param name the name of the context to count, or "" for the global JNDI namespace
+     * @return the number of bindings, or -1 if the context could not be found
+     */
+    public long getBindingCount(final String name) {
+        final NamingStore namingStore = namingStoreValue.getOptionalValue();
+        if (namingStore instanceof InMemoryNamingStore) {
+            try {
+                return ((InMemoryNamingStore) namingStore).countBindings(getStoreName(name));
+            } catch (NamingException e) {
+                log.error("Failed to count bindings for " + name, e);
+                return -1;
+            }
+        }
+        final PageWalker walker = new PageWalker(0, Integer.MAX_VALUE, -1) {
+            void visit(final NameClassPair pair, final String fullName) {
+            }
+
+            void failed(final String fullName, final Throwable t) {
+            }
+        };
+        try {
+            walker.walk(lookupContext(name), "", 0);
+        } catch (NamingException e) {
+            log.error("Failed to count bindings for " + name, e);
+            return -1;
+        }
+        return walker.position;
+    }
+
+    /**
+     * Get the name of a context in the naming store, which holds the java: namespace at its root.
+     */
+    private static Name getStoreName(final String name) throws NamingException {
+        final Name storeName = new CompositeName(name == null ? "" : name);
+        if (!storeName.isEmpty() && storeName.get(0).startsWith("java:")) {
+            final String first = storeName.get(0).substring(5);
+            storeName.remove(0);
+            if (first.length() > 0) {
+                storeName.add(0, first);
+            }
+        }
+        return storeName;
+    }
+
+    /**
+     * Walk the bindings below a name, reading the contexts created in an in-memory naming store from its tree.
+     */
+    private void walk(final PageWalker walker, final String name) throws NamingException {
+        final Context context = lookupContext(name);
+        final NamingStore namingStore = namingStoreValue.getOptionalValue();
+        if (namingStore instanceof InMemoryNamingStore && (context instanceof InitialContext || context instanceof NamingContext)) {
+            final InMemoryNamingStore store = (InMemoryNamingStore) namingStore;
+            final Name storeName = getStoreName(name);
+            walker.walk(store, storeName, store.iterateBindings(storeName), context, "", 0);
+        } else {
+            walker.walk(context, "", 0);
+        }
+    }
+
+    private Context lookupContext(final String name) throws NamingException {
+        final Context context = new InitialContext();
+        if (name == null || name.length() == 0) {
+            return context;
+        }
+        final Object value = context.lookup(name);
+        if (!(value instanceof Context)) {
+            throw new NotContextException(name);
+        }
+        return (Context) value;
+    }
+
+    /**
+     * Depth first walk over the bindings of a context which visits only the bindings within a page.
+     */
+    private abstract static class PageWalker {
+        private final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        private final long offset;
+        private final long end;
+        private final int depth;
+        private long position;
+        private boolean more;
+
+        private PageWalker(final int offset, final int limit, final int depth) {
+            this.offset = Math.max(offset, 0);
+            this.end = this.offset + Math.max(limit, 0);
+            this.depth = depth;
+        }
+
+        abstract void visit(NameClassPair pair, String fullName);
+
+        abstract void failed(String fullName, Throwable t);
+
+        /**
+         * Walk a context.
+         *
+         * @return false once the page is full
+         */
+        boolean walk(final Context ctx, final String prefix, final int level) throws NamingException {
+            final NamingEnumeration<NameClassPair> ne = ctx.list("");
+            try {
+                while (ne.hasMore()) {
+                    final NameClassPair pair = ne.next();
+                    if (position == end) {
+                        more = true;
+                        return false;
+                    }
+                    final String fullName = prefix.length() == 0 ? pair.getName() : prefix + '/' + pair.getName();
+                    if (position++ >= offset) {
+                        visit(pair, fullName);
+                    }
+                    if ((depth < 0 || level < depth) && isContext(pair.getClassName())) {
+                        final Object value;
+                        try {
+                            value = ctx.lookup(pair.getName());
+                        } catch (Throwable t) {
+                            failed(fullName, t);
+                            continue;
+                        }
+                        if (value instanceof Context && !walk((Context) value, fullName, level + 1)) {
+                            return false;
+                        }
+                    }
+                }
+            } finally {
+                ne.close();
+            }
+            return true;
+        }
+
+        /**
+         * Walk a context of an in-memory naming store, reading its entries one at a time from the store's tree.  A
+         * context bound by reference, such as java:comp, is looked up and walked as a {@code Context}.
+         *
+         * @param store the naming store
+         * @param storeName the name of the context in the store
+         * @param bindings the bindings of the context
+         * @param root the context the full names are relative to
+         * @return false once the page is full
+         */
+        boolean walk(final InMemoryNamingStore store, final Name storeName, final Iterator<Binding> bindings, final Context root,
+                     final String prefix, final int level) throws NamingException {
+            while (bindings.hasNext()) {
+                final Binding binding = bindings.next();
+                if (position == end) {
+                    more = true;
+                    return false;
+                }
+                final String fullName = prefix.length() == 0 ? binding.getName() : prefix + '/' + binding.getName();
+                if (position++ >= offset) {
+                    visit(binding, fullName);
+                }
+                if ((depth >= 0 && level >= depth) || !isContext(binding.getClassName())) {
+                    continue;
+                }
+                if (binding.getObject() instanceof NamingContext) {
+                    final Name childName = ((Name) storeName.clone()).add(binding.getName());
+                    Iterator<Binding> children = null;
+                    try {
+                        children = store.iterateBindings(childName);
+                    } catch (NamingException ignored) {
+                        // Not a context of the store, look it up instead
+                    }
+                    if (children != null) {
+                        if (!walk(store, childName, children, root, fullName, level + 1)) {
+                            return false;
+                        }
+                        continue;
+                    }
+                }
+                final Object value;
+                try {
+                    value = root.lookup(fullName);
+                } catch (Throwable t) {
+                    failed(fullName, t);
+                    continue;
+                }
+                if (value instanceof Context && !walk((Context) value, fullName, level + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isContext(final String className) {
+            if (className == null) {
+                return false;
+            }
+            // the naming store lists its own subcontexts with this class name
+            if (Context.class.getName().equals(className)) {
+                return true;
+            }
+            try {
+                return Context.class.isAssignableFrom(loader.loadClass(className));
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+    }
+
     private void list(Context ctx, String indent, StringBuffer buffer, boolean verbose) {
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
         try {
@@ -410,10 +704,10 @@ public class JndiView implements JndiViewMBean, Service<JndiView> {
                                   LinkRef link,
                                   NameClassPair ncp) {
         buffer.append("<link-ref>\n");
-        buffer.append("<name>").append(ncp.getName()).append("</name>\n");
+        buffer.append("<name>").append(escape(ncp.getName())).append("</name>\n");
         try {
             String lName = link.getLinkName();
-            buffer.append("<link>").append(lName).append("</link>\n");
+            buffer.append("<link>").append(escape(lName)).append("</link>\n");
         }
         catch (NamingException e) {
             appendErrorTag(buffer,
@@ -451,17 +745,48 @@ public class JndiView implements JndiViewMBean, Service<JndiView> {
     }
 
     private void appendNCPTag(StringBuffer buffer, NameClassPair ncp) {
-        buffer.append("<name>").append(ncp.getName()).append("</name>\n");
-        buffer.append("<attribute name='class'>").append(ncp.getClassName()).append(
+        buffer.append("<name>").append(escape(ncp.getName())).append("</name>\n");
+        buffer.append("<attribute name='class'>").append(escape(ncp.getClassName())).append(
                 "</attribute>\n");
     }
 
     private void appendErrorTag(StringBuffer buffer, String msg) {
         buffer.append("<error>\n");
-        buffer.append("<message>").append(msg).append("</message>\n");
+        buffer.append("<message>").append(escape(msg)).append("</message>\n");
         buffer.append("</error>\n");
     }
 
+    /**
+     * Escape a value for XML text or a quoted attribute.
+     */
+    private static String escape(final String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder builder = null;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final String replacement;
+            switch (c) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '\'': replacement = "&apos;"; break;
+                case '"': replacement = "&quot;"; break;
+                default: replacement = null;
+            }
+            if (replacement != null) {
+                if (builder == null) {
+                    builder = new StringBuilder(value.length() + 16).append(value, 0, i);
+                }
+                builder.append(replacement);
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder == null ? value : builder.toString();
+    }
+
     private void formatException(StringBuffer buffer, Throwable t) {
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw);
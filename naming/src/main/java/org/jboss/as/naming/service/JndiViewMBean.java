@@ -32,4 +32,10 @@ public interface JndiViewMBean {
   java.lang.String list(boolean verbose) ;
 
   java.lang.String listXML() ;
+
+  java.lang.String list(java.lang.String name, int offset, int limit, int depth, boolean verbose) ;
+
+  java.lang.String listXML(java.lang.String name, int offset, int limit, int depth) ;
+
+  long getBindingCount(java.lang.String name) ;
 }
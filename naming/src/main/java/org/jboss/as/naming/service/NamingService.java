@@ -25,6 +25,8 @@ package org.jboss.as.naming.service;
 import javax.naming.NamingException;
 
 import org.jboss.as.naming.InMemoryNamingStore;
+import org.jboss.as.naming.LookupCache;
+import org.jboss.as.naming.LookupMetrics;
 import org.jboss.as.naming.NamingContext;
 import org.jboss.as.naming.NamingEventCoordinator;
 import org.jboss.as.naming.NamingStore;
@@ -45,6 +47,9 @@ public class NamingService implements Service<NamingStore> {
     private static final Logger log = Logger.getLogger("org.jboss.as.naming");
     private NamingStore namingStore;
     private final boolean supportEvents;
+    private final boolean lookupCache;
+    private final int eventDispatchThreads;
+    private final boolean lookupMetrics;
 
     /**
      * Construct a new instance.
@@ -52,7 +57,43 @@ public class NamingService implements Service<NamingStore> {
      * @param supportEvents Should the naming impl support events.
      */
     public NamingService(final boolean supportEvents) {
+        this(supportEvents, false);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param supportEvents Should the naming impl support events.
+     * @param lookupCache Should the naming impl cache dereferenced objects.
+     */
+    public NamingService(final boolean supportEvents, final boolean lookupCache) {
+        this(supportEvents, lookupCache, 1);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param supportEvents Should the naming impl support events.
+     * @param lookupCache Should the naming impl cache dereferenced objects.
+     * @param eventDispatchThreads The number of threads used to deliver naming events.
+     */
+    public NamingService(final boolean supportEvents, final boolean lookupCache, final int eventDispatchThreads) {
+        this(supportEvents, lookupCache, eventDispatchThreads, false);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param supportEvents Should the naming impl support events.
+     * @param lookupCache Should the naming impl cache dereferenced objects.
+     * @param eventDispatchThreads The number of threads used to deliver naming events.
+     * @param lookupMetrics Should the naming impl record lookup metrics.
+     */
+    public NamingService(final boolean supportEvents, final boolean lookupCache, final int eventDispatchThreads, final boolean lookupMetrics) {
         this.supportEvents = supportEvents;
+        this.lookupCache = lookupCache;
+        this.eventDispatchThreads = eventDispatchThreads;
+        this.lookupMetrics = lookupMetrics;
     }
 
     /**
@@ -64,10 +105,8 @@ public class NamingService implements Service<NamingStore> {
     public synchronized void start(StartContext context) throws StartException {
         log.info("Starting Naming Service ");
         try {
-            if(supportEvents)
-                namingStore = new InMemoryNamingStore(new NamingEventCoordinator());
-            else
-                namingStore = new InMemoryNamingStore();
+            final NamingEventCoordinator eventCoordinator = supportEvents ? new NamingEventCoordinator(eventDispatchThreads) : null;
+            namingStore = new InMemoryNamingStore(eventCoordinator, lookupCache ? new LookupCache() : null, lookupMetrics ? new LookupMetrics() : null);
             NamingContext.setActiveNamingStore(namingStore);
         } catch (Throwable t) {
             throw new StartException("Failed to start naming server", t);
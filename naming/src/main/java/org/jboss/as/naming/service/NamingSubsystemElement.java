@@ -25,6 +25,7 @@ package org.jboss.as.naming.service;
 import javax.management.MBeanServer;
 import org.jboss.as.model.AbstractSubsystemElement;
 import org.jboss.as.naming.InitialContextFactoryBuilder;
+import org.jboss.as.naming.NamingStore;
 import org.jboss.as.naming.context.NamespaceObjectFactory;
 import org.jboss.logging.Logger;
 import org.jboss.msc.service.BatchBuilder;
@@ -56,6 +57,9 @@ final class NamingSubsystemElement extends AbstractSubsystemElement<NamingSubsys
     private boolean bindAppContext;
     private boolean bindModuleContext;
     private boolean bindCompContext;
+    private boolean lookupCache;
+    private int eventDispatchThreads = 1;
+    private boolean lookupMetrics;
 
     /**
      * Create a new instance without a stream reader.
@@ -98,6 +102,18 @@ final class NamingSubsystemElement extends AbstractSubsystemElement<NamingSubsys
                     bindCompContext = Boolean.parseBoolean(reader.getAttributeValue(i));
                     break;
                 }
+                case LOOKUP_CACHE: {
+                    lookupCache = Boolean.parseBoolean(reader.getAttributeValue(i));
+                    break;
+                }
+                case EVENT_DISPATCH_THREADS: {
+                    eventDispatchThreads = Integer.parseInt(reader.getAttributeValue(i));
+                    break;
+                }
+                case LOOKUP_METRICS: {
+                    lookupMetrics = Boolean.parseBoolean(reader.getAttributeValue(i));
+                    break;
+                }
                 default: throw unexpectedAttribute(reader, i);
             }
         }
@@ -123,6 +139,9 @@ final class NamingSubsystemElement extends AbstractSubsystemElement<NamingSubsys
         streamWriter.writeAttribute(Attribute.BIND_APP_CONTEXT.getLocalName(), Boolean.toString(isBindAppContext()));
         streamWriter.writeAttribute(Attribute.BIND_MODULE_CONTEXT.getLocalName(), Boolean.toString(isBindModuleContext()));
         streamWriter.writeAttribute(Attribute.BIND_COMP_CONTEXT.getLocalName(), Boolean.toString(isBindCompContext()));
+        streamWriter.writeAttribute(Attribute.LOOKUP_CACHE.getLocalName(), Boolean.toString(isLookupCache()));
+        streamWriter.writeAttribute(Attribute.EVENT_DISPATCH_THREADS.getLocalName(), Integer.toString(getEventDispatchThreads()));
+        streamWriter.writeAttribute(Attribute.LOOKUP_METRICS.getLocalName(), Boolean.toString(isLookupMetrics()));
         streamWriter.writeEndElement();
     }
 
@@ -147,7 +166,7 @@ final class NamingSubsystemElement extends AbstractSubsystemElement<NamingSubsys
 
         // Create the Naming Service
         final BatchBuilder builder = context.getBatchBuilder();
-        builder.addService(NamingService.SERVICE_NAME, new NamingService(isSupportEvents()));
+        builder.addService(NamingService.SERVICE_NAME, new NamingService(isSupportEvents(), isLookupCache(), getEventDispatchThreads(), isLookupMetrics()));
 
         // Create java: context service
         final JavaContextService javaContextService = new JavaContextService();
@@ -170,7 +189,15 @@ final class NamingSubsystemElement extends AbstractSubsystemElement<NamingSubsys
 
         final JndiView jndiView = new JndiView();
         builder.addService(ServiceName.JBOSS.append("naming", "jndi", "view"), jndiView)
+            .addDependency(NamingService.SERVICE_NAME, NamingStore.class, jndiView.getNamingStoreInjector())
             .addOptionalDependency(ServiceName.JBOSS.append("mbean", "server"), MBeanServer.class, jndiView.getMBeanServerInjector());
+
+        if(isLookupMetrics()) {
+            final JndiMetrics jndiMetrics = new JndiMetrics();
+            builder.addService(ServiceName.JBOSS.append("naming", "jndi", "metrics"), jndiMetrics)
+                .addDependency(NamingService.SERVICE_NAME, NamingStore.class, jndiMetrics.getNamingStoreInjector())
+                .addOptionalDependency(ServiceName.JBOSS.append("mbean", "server"), MBeanServer.class, jndiMetrics.getMBeanServerInjector());
+        }
     }
 
     private void addContextFactory(final BatchBuilder builder, final String contextName) {
@@ -195,4 +222,16 @@ final class NamingSubsystemElement extends AbstractSubsystemElement<NamingSubsys
     public boolean isBindCompContext() {
         return bindCompContext;
     }
+
+    public boolean isLookupCache() {
+        return lookupCache;
+    }
+
+    public int getEventDispatchThreads() {
+        return eventDispatchThreads;
+    }
+
+    public boolean isLookupMetrics() {
+        return lookupMetrics;
+    }
 }
@@ -0,0 +1,427 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable, persistent hash array mapped trie.  Updates never modify an existing instance; instead {@link #plus}
+ * and {@link #minus} return a new map which shares every untouched branch with the original, so an update costs
+ * O(log32 n) in time and allocation rather than the O(n) copy required by a copy-on-write hash map.
+ * <p/>
+ * Since instances are immutable they can be safely published through a volatile field and read without locking.
+ * Writers are expected to publish a new version with a compare-and-set and retry on contention.
+ * <p/>
+ * Null keys and values are not supported.  The {@code Map} mutator methods are not supported.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author John E. Bailey
+ */
+public final class HashTrieMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /* Deepest possible path is 7 bitmap levels plus a collision node */
+    private static final int MAX_DEPTH = 8;
+
+    private static final HashTrieMap<Object, Object> EMPTY = new HashTrieMap<Object, Object>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private transient EntrySet entrySet;
+
+    private HashTrieMap(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty map.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> HashTrieMap<K, V> empty() {
+        return (HashTrieMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Return a map containing all the entries of this map plus the provided mapping.  Any existing mapping for the key
+     * is replaced.  If the key is already mapped to the identical value, this instance is returned.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the updated map
+     */
+    public HashTrieMap<K, V> plus(final K key, final V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Null keys and values are not supported");
+        }
+        final Node current = root != null ? root : BitmapNode.EMPTY;
+        final boolean[] addedLeaf = new boolean[1];
+        final Node updated = current.put(0, hash(key), key, value, addedLeaf);
+        if (updated == root) {
+            return this;
+        }
+        return new HashTrieMap<K, V>(updated, addedLeaf[0] ? size + 1 : size);
+    }
+
+    /**
+     * Return a map containing all the entries of this map except the mapping for the provided key.  If there is no
+     * such mapping, this instance is returned.
+     *
+     * @param key the key
+     * @return the updated map
+     */
+    public HashTrieMap<K, V> minus(final Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        final Node updated = root.remove(0, hash(key), key);
+        if (updated == root) {
+            return this;
+        }
+        if (updated == null) {
+            return empty();
+        }
+        return new HashTrieMap<K, V>(updated, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(final Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        return (V) root.get(0, hash(key), key);
+    }
+
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private static int hash(final Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitpos(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Object[] insert(final Object[] array, final int index, final Object key, final Object value) {
+        final Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = key;
+        copy[index + 1] = value;
+        System.arraycopy(array, index, copy, index + 2, array.length - index);
+        return copy;
+    }
+
+    private static Object[] delete(final Object[] array, final int index) {
+        final Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 2, copy, index, copy.length - index);
+        return copy;
+    }
+
+    private static Object[] replace(final Object[] array, final int index, final Object value) {
+        final Object[] copy = array.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    /**
+     * A trie node.  Both node types store their content as a flat array of key/value pairs.
+     */
+    private abstract static class Node {
+        protected final Object[] array;
+
+        private Node(final Object[] array) {
+            this.array = array;
+        }
+
+        abstract Object get(int shift, int hash, Object key);
+
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] addedLeaf);
+
+        abstract Node remove(int shift, int hash, Object key);
+    }
+
+    /**
+     * Branch node.  A null key slot indicates the paired value slot holds a child node.
+     */
+    private static final class BitmapNode extends Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        private BitmapNode(final int bitmap, final Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        private int index(final int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) << 1;
+        }
+
+        Object get(final int shift, final int hash, final Object key) {
+            final int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            final int idx = index(bit);
+            final Object keyOrNull = array[idx];
+            final Object valueOrNode = array[idx + 1];
+            if (keyOrNull == null) {
+                return ((Node) valueOrNode).get(shift + BITS, hash, key);
+            }
+            if (key.equals(keyOrNull)) {
+                return valueOrNode;
+            }
+            return null;
+        }
+
+        Node put(final int shift, final int hash, final Object key, final Object value, final boolean[] addedLeaf) {
+            final int bit = bitpos(hash, shift);
+            final int idx = index(bit);
+            if ((bitmap & bit) != 0) {
+                final Object keyOrNull = array[idx];
+                final Object valueOrNode = array[idx + 1];
+                if (keyOrNull == null) {
+                    final Node child = ((Node) valueOrNode).put(shift + BITS, hash, key, value, addedLeaf);
+                    if (child == valueOrNode) {
+                        return this;
+                    }
+                    return new BitmapNode(bitmap, replace(array, idx + 1, child));
+                }
+                if (key.equals(keyOrNull)) {
+                    if (value == valueOrNode) {
+                        return this;
+                    }
+                    return new BitmapNode(bitmap, replace(array, idx + 1, value));
+                }
+                addedLeaf[0] = true;
+                final Object[] copy = array.clone();
+                copy[idx] = null;
+                copy[idx + 1] = createNode(shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+                return new BitmapNode(bitmap, copy);
+            }
+            addedLeaf[0] = true;
+            return new BitmapNode(bitmap | bit, insert(array, idx, key, value));
+        }
+
+        Node remove(final int shift, final int hash, final Object key) {
+            final int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            final int idx = index(bit);
+            final Object keyOrNull = array[idx];
+            final Object valueOrNode = array[idx + 1];
+            if (keyOrNull == null) {
+                final Node child = ((Node) valueOrNode).remove(shift + BITS, hash, key);
+                if (child == valueOrNode) {
+                    return this;
+                }
+                if (child != null) {
+                    return new BitmapNode(bitmap, replace(array, idx + 1, child));
+                }
+            } else if (!key.equals(keyOrNull)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            return new BitmapNode(bitmap ^ bit, delete(array, idx));
+        }
+
+        private static Node createNode(final int shift, final Object keyOne, final Object valueOne, final int hashTwo, final Object keyTwo, final Object valueTwo) {
+            final int hashOne = hash(keyOne);
+            if (hashOne == hashTwo) {
+                return new CollisionNode(hashOne, new Object[]{keyOne, valueOne, keyTwo, valueTwo});
+            }
+            final boolean[] ignored = new boolean[1];
+            return EMPTY.put(shift, hashOne, keyOne, valueOne, ignored).put(shift, hashTwo, keyTwo, valueTwo, ignored);
+        }
+    }
+
+    /**
+     * Leaf node holding keys whose full hashes collide.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+
+        private CollisionNode(final int hash, final Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        private int find(final Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Object get(final int shift, final int hash, final Object key) {
+            final int idx = find(key);
+            return idx < 0 ? null : array[idx + 1];
+        }
+
+        Node put(final int shift, final int hash, final Object key, final Object value, final boolean[] addedLeaf) {
+            if (hash == this.hash) {
+                final int idx = find(key);
+                if (idx >= 0) {
+                    if (array[idx + 1] == value) {
+                        return this;
+                    }
+                    return new CollisionNode(hash, replace(array, idx + 1, value));
+                }
+                addedLeaf[0] = true;
+                return new CollisionNode(hash, insert(array, array.length, key, value));
+            }
+            return new BitmapNode(bitpos(this.hash, shift), new Object[]{null, this}).put(shift, hash, key, value, addedLeaf);
+        }
+
+        Node remove(final int shift, final int hash, final Object key) {
+            final int idx = find(key);
+            if (idx < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            return new CollisionNode(hash, delete(array, idx));
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator(root);
+        }
+
+        public boolean contains(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            final Entry<?, ?> entry = (Entry<?, ?>) o;
+            final Object value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Depth first iterator over the trie.  Keeps an explicit stack of nodes and array positions so iteration does not
+     * allocate beyond the returned entries.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private final Node[] nodes = new Node[MAX_DEPTH];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth = -1;
+        private Object nextKey;
+        private Object nextValue;
+
+        private EntryIterator(final Node root) {
+            if (root != null) {
+                push(root);
+                advance();
+            }
+        }
+
+        private void push(final Node node) {
+            depth++;
+            nodes[depth] = node;
+            positions[depth] = 0;
+        }
+
+        private void advance() {
+            nextKey = null;
+            while (depth >= 0) {
+                final Object[] array = nodes[depth].array;
+                final int position = positions[depth];
+                if (position >= array.length) {
+                    nodes[depth--] = null;
+                    continue;
+                }
+                positions[depth] = position + 2;
+                final Object key = array[position];
+                if (key == null) {
+                    push((Node) array[position + 1]);
+                } else {
+                    nextKey = key;
+                    nextValue = array[position + 1];
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (nextKey == null) {
+                throw new NoSuchElementException();
+            }
+            final Entry<K, V> entry = new SimpleImmutableEntry<K, V>((K) nextKey, (V) nextValue);
+            advance();
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.util;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * A composite name which can not be modified.  The components are held in a pre-split array and the hash code is
+ * computed once, so instances can be shared and used as map keys without further allocation.  The mutator methods
+ * throw {@code UnsupportedOperationException}; {@link #clone()}, {@link #getPrefix(int)} and {@link #getSuffix(int)}
+ * return regular mutable composite names.
+ *
+ * @author John E. Bailey
+ */
+public final class ImmutableCompositeName extends CompositeName {
+    private static final long serialVersionUID = -3370196592387862383L;
+
+    private final transient String[] components;
+    private final transient int hashCode;
+
+    /**
+     * Create an immutable copy of the provided name.
+     *
+     * @param name The name to copy
+     */
+    public ImmutableCompositeName(final Name name) {
+        this(toArray(name));
+    }
+
+    private ImmutableCompositeName(final String[] components) {
+        super(Collections.enumeration(Arrays.asList(components)));
+        this.components = components;
+        this.hashCode = super.hashCode();
+    }
+
+    private static String[] toArray(final Name name) {
+        final String[] components = new String[name.size()];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = name.get(i);
+        }
+        return components;
+    }
+
+    public String get(final int posn) {
+        return components[posn];
+    }
+
+    public int size() {
+        return components.length;
+    }
+
+    public boolean isEmpty() {
+        return components.length == 0;
+    }
+
+    public int hashCode() {
+        return hashCode;
+    }
+
+    public Name add(final String comp) {
+        throw new UnsupportedOperationException("Name is immutable");
+    }
+
+    public Name add(final int posn, final String comp) {
+        throw new UnsupportedOperationException("Name is immutable");
+    }
+
+    public Name addAll(final Name suffix) {
+        throw new UnsupportedOperationException("Name is immutable");
+    }
+
+    public Name addAll(final int posn, final Name n) {
+        throw new UnsupportedOperationException("Name is immutable");
+    }
+
+    public Object remove(final int posn) {
+        throw new UnsupportedOperationException("Name is immutable");
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return clone();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.util;
+
+import javax.naming.Name;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded cache of immutable names keyed by the string they were parsed from.  Once the cache is full an arbitrary
+ * entry is evicted for each new entry, which keeps frequently used strings resident without the cost of tracking
+ * access order on every read.
+ *
+ * @author John E. Bailey
+ */
+public class NameCache {
+    private final ConcurrentMap<String, Name> names = new ConcurrentHashMap<String, Name>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize The maximum number of cached names
+     */
+    public NameCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the cached name for a string.
+     *
+     * @param key The string
+     * @return The cached name or {@code null} if not cached
+     */
+    public Name get(final String key) {
+        return names.get(key);
+    }
+
+    /**
+     * Cache an immutable copy of the provided name.
+     *
+     * @param key The string the name was parsed from
+     * @param name The name
+     * @return The cached immutable name
+     */
+    public Name put(final String key, final Name name) {
+        final Name immutableName = name instanceof ImmutableCompositeName ? name : new ImmutableCompositeName(name);
+        final Name existing = names.putIfAbsent(key, immutableName);
+        if (existing != null) {
+            return existing;
+        }
+        if (size.incrementAndGet() > maxSize) {
+            final Iterator<String> keys = names.keySet().iterator();
+            while (keys.hasNext()) {
+                final String evicted = keys.next();
+                if (!evicted.equals(key) && names.remove(evicted) != null) {
+                    size.decrementAndGet();
+                    break;
+                }
+            }
+        }
+        return immutableName;
+    }
+
+    /**
+     * Get the number of cached names.
+     *
+     * @return the size
+     */
+    public int size() {
+        return names.size();
+    }
+}
@@ -30,16 +30,22 @@ import javax.naming.CompositeName;
 import javax.naming.Context;
 import javax.naming.InvalidNameException;
 import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
 import javax.naming.NameClassPair;
 import javax.naming.NameNotFoundException;
+import javax.naming.NotContextException;
 import javax.naming.Reference;
 import javax.naming.spi.ResolveResult;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -110,6 +116,25 @@ public class InMemoryNamingStoreTestCase {
         assertTrue(result instanceof ResolveResult);
     }
 
+    @Test
+    public void testLookupNestedAndTrailingEmptyComponent() throws Exception {
+        final Object object = new Object();
+        nameStore.createSubcontext(null, new CompositeName("a"));
+        nameStore.createSubcontext(null, new CompositeName("a/b"));
+        nameStore.bind(null, new CompositeName("a/b/test"), object, Object.class.getName());
+        assertSame(object, nameStore.lookup(new CompositeName("a/b/test")));
+        assertSame(object, nameStore.lookup(new CompositeName("a/b/test/")));
+        assertSame(nameStore.lookup(new CompositeName("a/b")), nameStore.lookup(new CompositeName("a/b/")));
+        try {
+            nameStore.lookup(new CompositeName("a/c/test"));
+            fail("Should have thrown and NameNotFoundException");
+        } catch(NameNotFoundException expected) {}
+        // a name passing through a binding resolves to the binding and the rest of the name
+        final Object result = nameStore.lookup(new CompositeName("a/b/test/value"));
+        assertTrue(result instanceof ResolveResult);
+        assertSame(object, ((ResolveResult) result).getResolvedObj());
+    }
+
     @Test
     public void testUnbindNotFound() throws Exception {
         try {
@@ -297,4 +322,99 @@ public class InMemoryNamingStoreTestCase {
         }
         assertTrue("Not all expected results were returned", expected.isEmpty());
     }
+
+    @Test
+    public void testConcurrentBind() throws Exception {
+        final int threadCount = 8;
+        final int bindingsPerThread = 500;
+        final Thread[] threads = new Thread[threadCount];
+        final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+        for (int i = 0; i < threadCount; i++) {
+            final int threadId = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < bindingsPerThread; j++) {
+                            nameStore.bind(null, new CompositeName("test" + threadId + "-" + j), new Object(), Object.class.getName());
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(threadCount * bindingsPerThread, nameStore.list(new CompositeName()).size());
+    }
+
+    @Test
+    public void testBindAll() throws Exception {
+        nameStore.createSubcontext(null, new CompositeName("subcontext"));
+        final Map<Name, Object> bindings = new LinkedHashMap<Name, Object>();
+        for (int i = 0; i < 10; i++) {
+            bindings.put(new CompositeName("test" + i), new Object());
+            bindings.put(new CompositeName("subcontext/test" + i), new Object());
+        }
+        nameStore.bindAll(null, bindings);
+        for (Map.Entry<Name, Object> entry : bindings.entrySet()) {
+            assertEquals(entry.getValue(), nameStore.lookup(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testBindAllExistingName() throws Exception {
+        nameStore.createSubcontext(null, new CompositeName("subcontext"));
+        nameStore.bind(null, new CompositeName("subcontext/existing"), new Object(), Object.class.getName());
+        final Map<Name, Object> bindings = new LinkedHashMap<Name, Object>();
+        bindings.put(new CompositeName("test"), new Object());
+        bindings.put(new CompositeName("subcontext/existing"), new Object());
+        try {
+            nameStore.bindAll(null, bindings);
+            fail("Should have thrown and NameAlreadyBoundException");
+        } catch (NameAlreadyBoundException expected) {}
+        try {
+            nameStore.lookup(new CompositeName("test"));
+            fail("Should have thrown and NameNotFoundException");
+        } catch (NameNotFoundException expected) {}
+    }
+
+    @Test
+    public void testCountBindings() throws Exception {
+        assertEquals(0, nameStore.countBindings(new CompositeName()));
+        nameStore.createSubcontext(null, new CompositeName("a"));
+        nameStore.createSubcontext(null, new CompositeName("a/b"));
+        for (int i = 0; i < 3; i++) {
+            nameStore.bind(null, new CompositeName("test" + i), new Object(), Object.class.getName());
+            nameStore.bind(null, new CompositeName("a/test" + i), new Object(), Object.class.getName());
+            nameStore.bind(null, new CompositeName("a/b/test" + i), new Object(), Object.class.getName());
+        }
+        // a reference to a context which can not be resolved, counting must not try
+        final Reference reference = new Reference(Context.class.getName(), "org.jboss.as.naming.MissingObjectFactory", null);
+        nameStore.bind(null, new CompositeName("a/ref"), reference, Context.class.getName());
+
+        assertEquals(12, nameStore.countBindings(new CompositeName()));
+        assertEquals(12, nameStore.countBindings(new CompositeName("")));
+        assertEquals(8, nameStore.countBindings(new CompositeName("a")));
+        assertEquals(3, nameStore.countBindings(new CompositeName("a/b")));
+
+        nameStore.unbind(null, new CompositeName("a/b/test0"));
+        assertEquals(2, nameStore.countBindings(new CompositeName("a/b")));
+    }
+
+    @Test
+    public void testCountBindingsNotContext() throws Exception {
+        nameStore.bind(null, new CompositeName("test"), new Object(), Object.class.getName());
+        try {
+            nameStore.countBindings(new CompositeName("test"));
+            fail("Should have thrown and NotContextException");
+        } catch (NotContextException expected) {}
+        try {
+            nameStore.countBindings(new CompositeName("missing"));
+            fail("Should have thrown and NameNotFoundException");
+        } catch (NameNotFoundException expected) {}
+    }
 }
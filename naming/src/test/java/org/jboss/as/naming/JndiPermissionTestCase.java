@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming;
+
+import org.junit.Test;
+
+import java.security.PermissionCollection;
+
+import static org.jboss.as.naming.JndiPermission.Action.BIND;
+import static org.jboss.as.naming.JndiPermission.Action.LIST;
+import static org.jboss.as.naming.JndiPermission.Action.LOOKUP;
+import static org.jboss.as.naming.JndiPermission.Action.UNBIND;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the JNDI permission collection.
+ *
+ * @author John E. Bailey
+ */
+public class JndiPermissionTestCase {
+
+    @Test
+    public void testExactPath() throws Exception {
+        final PermissionCollection permissions = collection(new JndiPermission("test/a", LOOKUP));
+        assertTrue(permissions.implies(new JndiPermission("test/a", LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("test/a", BIND)));
+        assertFalse(permissions.implies(new JndiPermission("test/b", LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("test/*", LOOKUP)));
+    }
+
+    @Test
+    public void testWildcardPath() throws Exception {
+        final PermissionCollection permissions = collection(new JndiPermission("test/*", LOOKUP));
+        assertTrue(permissions.implies(new JndiPermission("test/a", LOOKUP)));
+        assertTrue(permissions.implies(new JndiPermission("test/*", LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("test/a/b", LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("test/-", LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("test", LOOKUP)));
+    }
+
+    @Test
+    public void testRecursivePath() throws Exception {
+        final PermissionCollection permissions = collection(new JndiPermission("test/-", LOOKUP));
+        assertTrue(permissions.implies(new JndiPermission("test/a", LOOKUP)));
+        assertTrue(permissions.implies(new JndiPermission("test/a/b/c", LOOKUP)));
+        assertTrue(permissions.implies(new JndiPermission("test/a/*", LOOKUP)));
+        assertTrue(permissions.implies(new JndiPermission("test/-", LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("test", LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("other/a", LOOKUP)));
+
+        final PermissionCollection all = collection(new JndiPermission("<<ALL BINDINGS>>", LOOKUP));
+        assertTrue(all.implies(new JndiPermission("test", LOOKUP)));
+        assertTrue(all.implies(new JndiPermission("test/a/-", LOOKUP)));
+        assertFalse(all.implies(new JndiPermission("test", BIND)));
+    }
+
+    @Test
+    public void testCombinedActions() throws Exception {
+        final PermissionCollection permissions = collection(new JndiPermission("test/-", BIND), new JndiPermission("test/a/*", LIST), new JndiPermission("test/a/b", UNBIND));
+        assertTrue(permissions.implies(new JndiPermission("test/a/b", BIND, LIST, UNBIND)));
+        assertFalse(permissions.implies(new JndiPermission("test/a/b", BIND, LIST, UNBIND, LOOKUP)));
+        assertFalse(permissions.implies(new JndiPermission("test/a/c", BIND, LIST, UNBIND)));
+
+        permissions.add(new JndiPermission("test/a/c", UNBIND));
+        assertTrue(permissions.implies(new JndiPermission("test/a/c", BIND, LIST, UNBIND)));
+    }
+
+    private PermissionCollection collection(final JndiPermission... permissions) {
+        final PermissionCollection collection = permissions[0].newPermissionCollection();
+        for (JndiPermission permission : permissions) {
+            collection.add(permission);
+        }
+        return collection;
+    }
+}
@@ -36,6 +36,7 @@ import javax.naming.Name;
 import javax.naming.NameClassPair;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
 import javax.naming.Reference;
 import javax.naming.StringRefAddr;
 import javax.naming.spi.ObjectFactory;
@@ -46,6 +47,9 @@ import java.util.Set;
 
 import static org.jboss.as.naming.util.NamingUtils.asReference;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -175,6 +179,33 @@ public class NamingContextTestCase {
         assertTrue(result instanceof NamingContext);
     }
 
+    @Test
+    public void testCachedStringLookup() throws Exception {
+        namingContext.createSubcontext("comp");
+        final Object object = new Object();
+        namingContext.bind("comp/test", object);
+        for (int i = 0; i < 3; i++) {
+            assertSame(object, namingContext.lookup("comp/test"));
+            assertSame(object, namingContext.lookup("/comp/test"));
+            assertSame(object, namingContext.lookup("java:comp/test"));
+        }
+        namingContext.unbind("comp/test");
+        try {
+            namingContext.lookup("comp/test");
+            fail("Should have thrown and NameNotFoundException");
+        } catch(NameNotFoundException expected) {}
+    }
+
+    @Test
+    public void testCachedStringLookupGivesFactoryMutableName() throws Exception {
+        final Reference reference = new Reference(String.class.getName(), new StringRefAddr("blah", "test"), NameModifyingObjectFactory.class.getName(), null);
+        namingContext.bind("test", reference);
+        // the second lookup is served from the name cache
+        assertEquals("test/suffix", namingContext.lookup("test"));
+        assertEquals("test/suffix", namingContext.lookup("test"));
+        assertEquals("test/suffix", namingContext.lookup("/test"));
+    }
+
     @Test
     public void testUnbindNotFound() throws Exception {
         try {
@@ -494,6 +525,176 @@ public class NamingContextTestCase {
         assertTrue("Not all expected results were returned", expected.isEmpty());
     }
 
+    @Test
+    public void testLookupCache() throws Exception {
+        final LookupCache cache = new LookupCache();
+        NamingContext.setActiveNamingStore(new InMemoryNamingStore(null, cache));
+        namingContext = new NamingContext(null);
+
+        final Reference cacheable = new Reference(Object.class.getName(), new StringRefAddr(LookupCache.CACHEABLE_ADDR_TYPE, "true"), CountingObjectFactory.class.getName(), null);
+        namingContext.bind("cacheable", cacheable);
+        final Reference stateless = new Reference(Object.class.getName(), StatelessTestObjectFactory.class.getName(), null);
+        namingContext.bind("stateless", stateless);
+        final Reference uncached = new Reference(Object.class.getName(), CountingObjectFactory.class.getName(), null);
+        namingContext.bind("uncached", uncached);
+
+        final Object first = namingContext.lookup("cacheable");
+        assertSame(first, namingContext.lookup("cacheable"));
+        assertSame(namingContext.lookup("stateless"), namingContext.lookup("stateless"));
+        assertNotSame(namingContext.lookup("uncached"), namingContext.lookup("uncached"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        namingContext.rebind("cacheable", new Reference(Object.class.getName(), new StringRefAddr(LookupCache.CACHEABLE_ADDR_TYPE, "true"), CountingObjectFactory.class.getName(), null));
+        assertNotSame(first, namingContext.lookup("cacheable"));
+
+        namingContext.unbind("stateless");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLookupMetrics() throws Exception {
+        final LookupMetrics metrics = new LookupMetrics(2, 0);
+        NamingContext.setActiveNamingStore(new InMemoryNamingStore(null, null, metrics));
+        namingContext = new NamingContext(null);
+
+        namingContext.bind("test", "value");
+        namingContext.bind("reference", new Reference(Object.class.getName(), CountingObjectFactory.class.getName(), null));
+        namingContext.bind("other", "value");
+        namingContext.lookup("test");
+        namingContext.lookup(new CompositeName("test"));
+        namingContext.lookup("reference");
+        namingContext.lookup("other");
+        try {
+            namingContext.lookup("missing");
+            fail("Should have thrown a NameNotFoundException");
+        } catch (NameNotFoundException expected) {
+        }
+
+        assertEquals(5, metrics.getLookupCount());
+        assertEquals(1, metrics.getMissCount());
+        assertEquals(2, metrics.getTrackedNameCount());
+        for (LookupMetrics.Entry entry : metrics.getEntries()) {
+            if ("test".equals(entry.getName())) {
+                assertEquals(2, entry.getLookupCount());
+                assertEquals(0, entry.getDereferenceCount());
+            } else if ("reference".equals(entry.getName())) {
+                assertEquals(1, entry.getLookupCount());
+                assertEquals(1, entry.getDereferenceCount());
+                assertTrue(entry.getDereferenceLatencyPercentile(99) > 0);
+            } else {
+                assertEquals(LookupMetrics.OTHER, entry.getName());
+                assertEquals(2, entry.getLookupCount());
+                assertEquals(1, entry.getMissCount());
+            }
+        }
+
+        metrics.reset();
+        assertEquals(0, metrics.getLookupCount());
+        assertTrue(metrics.getEntries().isEmpty());
+    }
+
+    @Test
+    public void testSharedEnvironment() throws Exception {
+        final Context copy = (Context) namingContext.lookup("");
+        assertNotSame(namingContext, copy);
+        copy.addToEnvironment("test", "value");
+        assertEquals("value", copy.getEnvironment().get("test"));
+        assertNull(namingContext.getEnvironment().get("test"));
+        assertNull(new NamingContext(null).getEnvironment().get("test"));
+
+        namingContext.addToEnvironment("other", "value");
+        assertNull(copy.getEnvironment().get("other"));
+        assertEquals("value", namingContext.removeFromEnvironment("other"));
+        assertNull(namingContext.getEnvironment().get("other"));
+
+        final Context subcontext = namingContext.createSubcontext("subcontext");
+        assertSame(subcontext, namingContext.lookup("subcontext"));
+
+        final InMemoryNamingStore store = new InMemoryNamingStore();
+        final Context root = (Context) store.lookup(new CompositeName());
+        assertSame(root, store.lookup(new CompositeName()));
+        final Context storeSubcontext = root.createSubcontext("subcontext");
+        final Hashtable<?, ?> environment = root.getEnvironment();
+        root.addToEnvironment("test", "value");
+        assertEquals("value", root.getEnvironment().get("test"));
+        // the change is copied into a new environment for the cached context, the shared one is untouched
+        assertNull(environment.get("test"));
+        assertNull(storeSubcontext.getEnvironment().get("test"));
+        assertNull(new NamingContext(null).getEnvironment().get("test"));
+    }
+
+    @Test
+    public void testFactoryCanNotModifySharedEnvironment() throws Exception {
+        final Reference reference = new Reference(String.class.getName(), new StringRefAddr("blah", "test"), EnvironmentModifyingObjectFactory.class.getName(), null);
+        namingContext.bind("test", reference);
+        try {
+            namingContext.lookup("test");
+            fail("Factory modified the environment");
+        } catch (NamingException expected) {
+        }
+        assertNull(namingContext.getEnvironment().get("factory"));
+        assertNull(new NamingContext(null).getEnvironment().get("factory"));
+    }
+
+    @Test
+    public void testFactoryGetsEnvironmentWithoutCopy() throws Exception {
+        final Reference reference = new Reference(String.class.getName(), new StringRefAddr("blah", "test"), EnvironmentRecordingObjectFactory.class.getName(), null);
+        namingContext.bind("test", reference);
+        namingContext.lookup("test");
+        assertSame(namingContext.getEnvironment(), EnvironmentRecordingObjectFactory.environment);
+        namingContext.lookup("test");
+        assertSame(namingContext.getEnvironment(), EnvironmentRecordingObjectFactory.environment);
+
+        // a clone of the environment may be modified
+        @SuppressWarnings("unchecked")
+        final Hashtable<String, Object> clone = (Hashtable<String, Object>) namingContext.getEnvironment().clone();
+        clone.put("test", "value");
+        assertNull(namingContext.getEnvironment().get("test"));
+    }
+
+    public static class CountingObjectFactory implements ObjectFactory {
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
+            return new Object();
+        }
+    }
+
+    public static class StatelessTestObjectFactory implements StatelessObjectFactory {
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
+            return new Object();
+        }
+    }
+
+    public static class NameModifyingObjectFactory implements ObjectFactory {
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
+            name.add("suffix");
+            return name.toString();
+        }
+    }
+
+    public static class EnvironmentModifyingObjectFactory implements ObjectFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
+            ((Hashtable<String, Object>) environment).put("factory", "value");
+            return name.toString();
+        }
+    }
+
+    public static class EnvironmentRecordingObjectFactory implements ObjectFactory {
+        static volatile Hashtable<?, ?> environment;
+
+        @Override
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
+            EnvironmentRecordingObjectFactory.environment = environment;
+            return name.toString();
+        }
+    }
+
     public  static class TestObjectFactory implements ObjectFactory {
         @Override
         public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
@@ -160,6 +160,48 @@ public class NamingEventCoordinatorTestCase {
         assertEquals(1, subtreeListenerThree.capturedEvents.size());
     }
 
+    @Test
+    public void testEventsDeliveredInOrder() throws Exception {
+        final NamingEventCoordinator coordinator = new NamingEventCoordinator(4);
+
+        final CollectingListener listenerOne = new CollectingListener(100);
+        coordinator.addListener("test", EventContext.ONELEVEL_SCOPE, listenerOne);
+        final CollectingListener listenerTwo = new CollectingListener(100);
+        coordinator.addListener("test", EventContext.SUBTREE_SCOPE, listenerTwo);
+
+        for (int i = 0; i < 100; i++) {
+            coordinator.fireEvent(context, new CompositeName("test/path" + i), null, null, NamingEvent.OBJECT_ADDED, "bind" + i, NamingEventCoordinator.DEFAULT_SCOPES);
+        }
+
+        assertTrue(listenerOne.latch.await(1L, TimeUnit.SECONDS));
+        assertTrue(listenerTwo.latch.await(1L, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("bind" + i, listenerOne.capturedEvents.get(i).getChangeInfo());
+            assertEquals("bind" + i, listenerTwo.capturedEvents.get(i).getChangeInfo());
+        }
+        assertEquals(200, coordinator.getDeliveredEventCount());
+        assertEquals(0, coordinator.getPendingEventCount());
+    }
+
+    @Test
+    public void testRemoveListener() throws Exception {
+        final NamingEventCoordinator coordinator = new NamingEventCoordinator();
+
+        final CollectingListener removedListener = new CollectingListener(0);
+        coordinator.addListener("test", EventContext.ONELEVEL_SCOPE, removedListener);
+        coordinator.addListener("test/path", EventContext.OBJECT_SCOPE, removedListener);
+        final CollectingListener listener = new CollectingListener(1);
+        coordinator.addListener("test", EventContext.ONELEVEL_SCOPE, listener);
+
+        coordinator.removeListener(removedListener);
+        coordinator.fireEvent(context, new CompositeName("test/path"), null, null, NamingEvent.OBJECT_ADDED, "bind", NamingEventCoordinator.DEFAULT_SCOPES);
+
+        assertTrue(listener.latch.await(1L, TimeUnit.SECONDS));
+        assertEquals(1, listener.capturedEvents.size());
+        assertTrue(removedListener.capturedEvents.isEmpty());
+    }
+
     private class CollectingListener implements ObjectChangeListener, NamespaceChangeListener {
         private final List<NamingEvent> capturedEvents = new ArrayList<NamingEvent>();
 
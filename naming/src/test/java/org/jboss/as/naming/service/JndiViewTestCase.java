@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.service;
+
+import org.jboss.as.naming.InMemoryNamingStore;
+import org.jboss.as.naming.InitialContextFactory;
+import org.jboss.as.naming.NamingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author John Bailey
+ */
+public class JndiViewTestCase {
+
+    private InMemoryNamingStore namingStore;
+    private JndiView jndiView;
+
+    @Before
+    public void setup() throws Exception {
+        System.setProperty(Context.INITIAL_CONTEXT_FACTORY, InitialContextFactory.class.getName());
+        namingStore = new InMemoryNamingStore();
+        NamingContext.setActiveNamingStore(namingStore);
+        jndiView = new JndiView();
+        jndiView.getNamingStoreInjector().inject(namingStore);
+
+        final Context context = new InitialContext();
+        context.createSubcontext("a");
+        context.createSubcontext("a/b");
+        for (int i = 0; i < 10; i++) {
+            context.bind("test" + i, "value" + i);
+            context.bind("a/test" + i, "value" + i);
+            context.bind("a/b/test" + i, "value" + i);
+        }
+        context.bind("ref", new Reference(Context.class.getName(), "org.jboss.as.naming.MissingObjectFactory", null));
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        NamingContext.setActiveNamingStore(new InMemoryNamingStore());
+    }
+
+    @Test
+    public void testBindingCount() throws Exception {
+        assertEquals(33, jndiView.getBindingCount(""));
+        assertEquals(21, jndiView.getBindingCount("a"));
+        assertEquals(10, jndiView.getBindingCount("a/b"));
+        assertEquals(10, jndiView.getBindingCount("java:a/b"));
+        assertEquals(-1, jndiView.getBindingCount("missing"));
+        assertEquals(-1, jndiView.getBindingCount("test0"));
+    }
+
+    @Test
+    public void testBindingCountWithoutStore() throws Exception {
+        final JndiView view = new JndiView();
+        assertEquals(21, view.getBindingCount("a"));
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        final String all = jndiView.list("a", 0, 100, -1, false);
+        assertEquals(21, all.split("\n").length);
+        final StringBuilder paged = new StringBuilder();
+        for (int offset = 0; offset < 21; offset += 4) {
+            final String page = jndiView.list("a", offset, 4, -1, false);
+            if (offset + 4 < 21) {
+                assertTrue(page.endsWith(" ... more bindings from offset " + (offset + 4) + "\n"));
+                paged.append(page.substring(0, page.lastIndexOf(" ... more")));
+            } else {
+                paged.append(page);
+            }
+        }
+        assertEquals(all, paged.toString());
+    }
+
+    @Test
+    public void testPageDepth() throws Exception {
+        assertEquals(11, jndiView.list("a", 0, 100, 0, false).split("\n").length);
+        final String xml = jndiView.listXML("a", 0, 5, -1);
+        assertTrue(xml.startsWith("<jndi name='a' offset='0' limit='5' more='true'>"));
+        assertTrue(jndiView.listXML("a", 20, 5, -1).startsWith("<jndi name='a' offset='20' limit='5' more='false'>"));
+    }
+
+    @Test
+    public void testPagesWithoutListingContexts() throws Exception {
+        final String all = jndiView.list("a", 0, 100, -1, false);
+        final InMemoryNamingStore store = new InMemoryNamingStore() {
+            public List<NameClassPair> list(final Name name) throws NamingException {
+                throw new UnsupportedOperationException("list " + name);
+            }
+        };
+        NamingContext.setActiveNamingStore(store);
+        final Context context = new InitialContext();
+        context.createSubcontext("a");
+        context.createSubcontext("a/b");
+        for (int i = 0; i < 10; i++) {
+            context.bind("a/test" + i, "value" + i);
+            context.bind("a/b/test" + i, "value" + i);
+        }
+        final JndiView view = new JndiView();
+        view.getNamingStoreInjector().inject(store);
+        assertEquals(all, view.list("a", 0, 100, -1, false));
+        assertEquals(4, view.list("a", 8, 3, -1, false).split("\n").length);
+    }
+
+    @Test
+    public void testXmlEscaped() throws Exception {
+        new InitialContext().bind("a/it's <&>", "value");
+        final String xml = jndiView.listXML("a", 0, 100, 0);
+        assertTrue(xml.contains("<name>it&apos;s &lt;&amp;&gt;</name>"));
+        assertFalse(xml.contains("it's"));
+        assertTrue(jndiView.listXML("a/<b>", 0, 1, 0).startsWith("<jndi name='a/&lt;b&gt;'"));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author John E. Bailey
+ */
+public class HashTrieMapTestCase {
+
+    @Test
+    public void testPlusAndGet() throws Exception {
+        HashTrieMap<String, Integer> map = HashTrieMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            map = map.plus("name" + i, i);
+        }
+        assertEquals(5000, map.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(Integer.valueOf(i), map.get("name" + i));
+        }
+        assertNull(map.get("missing"));
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        final HashTrieMap<String, Integer> original = HashTrieMap.<String, Integer>empty().plus("a", 1).plus("b", 2);
+        final HashTrieMap<String, Integer> updated = original.plus("a", 3).minus("b");
+
+        assertEquals(2, original.size());
+        assertEquals(Integer.valueOf(1), original.get("a"));
+        assertEquals(Integer.valueOf(2), original.get("b"));
+
+        assertEquals(1, updated.size());
+        assertEquals(Integer.valueOf(3), updated.get("a"));
+        assertFalse(updated.containsKey("b"));
+    }
+
+    @Test
+    public void testNoOpUpdatesReturnSameInstance() throws Exception {
+        final Integer value = 1;
+        final HashTrieMap<String, Integer> map = HashTrieMap.<String, Integer>empty().plus("a", value);
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("b"));
+    }
+
+    @Test
+    public void testMinus() throws Exception {
+        HashTrieMap<String, Integer> map = HashTrieMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            map = map.plus("name" + i, i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            map = map.minus("name" + i);
+        }
+        assertEquals(500, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 != 0, map.containsKey("name" + i));
+        }
+        for (int i = 1; i < 1000; i += 2) {
+            map = map.minus("name" + i);
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testHashCollisions() throws Exception {
+        HashTrieMap<CollidingKey, String> map = HashTrieMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new CollidingKey(i), "value" + i);
+        }
+        map = map.plus(new CollidingKey(100, 7), "other");
+        assertEquals(11, map.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value" + i, map.get(new CollidingKey(i)));
+        }
+        assertEquals("other", map.get(new CollidingKey(100, 7)));
+
+        map = map.minus(new CollidingKey(3));
+        assertEquals(10, map.size());
+        assertNull(map.get(new CollidingKey(3)));
+        assertEquals("value4", map.get(new CollidingKey(4)));
+    }
+
+    @Test
+    public void testIteration() throws Exception {
+        HashTrieMap<String, Integer> map = HashTrieMap.empty();
+        final Map<String, Integer> expected = new HashMap<String, Integer>();
+        for (int i = 0; i < 2000; i++) {
+            map = map.plus("name" + i, i);
+            expected.put("name" + i, i);
+        }
+        final Map<String, Integer> copy = new HashMap<String, Integer>(map);
+        assertEquals(expected, copy);
+        assertEquals(expected, map);
+    }
+
+    private static class CollidingKey {
+        private final int id;
+        private final int hash;
+
+        private CollidingKey(final int id) {
+            this(id, 42);
+        }
+
+        private CollidingKey(final int id, final int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
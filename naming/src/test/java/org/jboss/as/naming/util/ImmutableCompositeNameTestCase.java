@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.util;
+
+import org.junit.Test;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author John E. Bailey
+ */
+public class ImmutableCompositeNameTestCase {
+
+    @Test
+    public void testEqualsAndHashCode() throws Exception {
+        final CompositeName name = new CompositeName("a/b/c");
+        final Name immutable = new ImmutableCompositeName(name);
+        assertEquals(name, immutable);
+        assertEquals(immutable, name);
+        assertEquals(name.hashCode(), immutable.hashCode());
+        assertEquals(3, immutable.size());
+        assertEquals("b", immutable.get(1));
+        assertEquals("a/b/c", immutable.toString());
+        assertFalse(immutable.isEmpty());
+        assertTrue(new ImmutableCompositeName(new CompositeName()).isEmpty());
+    }
+
+    @Test
+    public void testMutatorsFail() throws Exception {
+        final Name name = new ImmutableCompositeName(new CompositeName("a/b"));
+        try {
+            name.add("c");
+            fail("Should have thrown UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {}
+        try {
+            name.add(0, "c");
+            fail("Should have thrown UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {}
+        try {
+            name.addAll(new CompositeName("c"));
+            fail("Should have thrown UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {}
+        try {
+            name.addAll(0, new CompositeName("c"));
+            fail("Should have thrown UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {}
+        try {
+            name.remove(0);
+            fail("Should have thrown UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {}
+        assertEquals(new CompositeName("a/b"), name);
+    }
+
+    @Test
+    public void testCopiesAreMutable() throws Exception {
+        final Name name = new ImmutableCompositeName(new CompositeName("a/b/c"));
+
+        final Name clone = (Name) name.clone();
+        clone.add("d");
+        assertEquals(new CompositeName("a/b/c/d"), clone);
+
+        final Name prefix = name.getPrefix(2);
+        prefix.add("x");
+        assertEquals(new CompositeName("a/b/x"), prefix);
+
+        final Name suffix = name.getSuffix(1);
+        suffix.remove(0);
+        assertEquals(new CompositeName("c"), suffix);
+
+        assertEquals(new CompositeName("a/b/c"), name);
+    }
+
+    @Test
+    public void testSerializesAsCompositeName() throws Exception {
+        final Name name = new ImmutableCompositeName(new CompositeName("a/b"));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(name);
+        output.close();
+        final Object read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(CompositeName.class, read.getClass());
+        assertEquals(name, read);
+    }
+}
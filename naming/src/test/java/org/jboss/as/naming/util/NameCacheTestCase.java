@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.util;
+
+import org.junit.Test;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author John E. Bailey
+ */
+public class NameCacheTestCase {
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        final NameCache cache = new NameCache(10);
+        assertNull(cache.get("a/b"));
+        final Name cached = cache.put("a/b", new CompositeName("a/b"));
+        assertTrue(cached instanceof ImmutableCompositeName);
+        assertEquals(new CompositeName("a/b"), cached);
+        assertSame(cached, cache.get("a/b"));
+    }
+
+    @Test
+    public void testPutKeepsExistingEntry() throws Exception {
+        final NameCache cache = new NameCache(10);
+        final Name first = cache.put("a", new CompositeName("a"));
+        final Name second = cache.put("a", new CompositeName("a"));
+        assertSame(first, second);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testPutImmutableNameIsNotCopied() throws Exception {
+        final NameCache cache = new NameCache(10);
+        final Name name = new ImmutableCompositeName(new CompositeName("a/b"));
+        assertSame(name, cache.put("a/b", name));
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        final NameCache cache = new NameCache(16);
+        for (int i = 0; i < 1000; i++) {
+            final Name cached = cache.put("name" + i, new CompositeName("name" + i));
+            assertEquals(new CompositeName("name" + i), cached);
+            assertTrue(cache.size() <= 16);
+        }
+        // the newest entry is never the one evicted
+        assertEquals(new CompositeName("name999"), cache.get("name999"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() throws Exception {
+        new NameCache(0);
+    }
+
+    @Test
+    public void testCachedNameIsIndependentOfSource() throws Exception {
+        final NameCache cache = new NameCache(10);
+        final Name source = new CompositeName("a/b");
+        final Name cached = cache.put("a/b", source);
+        source.add("c");
+        assertEquals(2, cached.size());
+        assertFalse(cached.equals(source));
+    }
+}
@@ -23,17 +23,20 @@ package org.jboss.as.communication;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 import org.jboss.as.process.StreamUtils;
 import org.jboss.logging.Logger;
 
 /**
- * Wraps a socket
+ * Wraps a socket.  The socket is either a TCP socket or, for connections between the processes of a host, an AF_UNIX
+ * socket channel (see {@link UnixDomainSockets}).
  *
  * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
  * @version $Revision: 1.1 $
@@ -42,16 +45,25 @@ public class SocketConnection {
 
     private static final Logger log = Logger.getLogger(SocketConnection.class);
     private final Socket socket;
+    private final SocketChannel channel;
     private final InputStream input;
     private final OutputStream output;
     private boolean closing;
 
     private SocketConnection(Socket socket) throws IOException{
         this.socket = socket;
+        this.channel = null;
         this.input = new BufferedInputStream(socket.getInputStream());
         this.output = new BufferedOutputStream(socket.getOutputStream());
     }
 
+    private SocketConnection(SocketChannel channel) {
+        this.socket = null;
+        this.channel = channel;
+        this.input = new BufferedInputStream(UnixDomainSockets.getInputStream(channel));
+        this.output = new BufferedOutputStream(UnixDomainSockets.getOutputStream(channel));
+    }
+
     /**
      * Creates a socket connection on the server side
      */
@@ -65,6 +77,52 @@ public class SocketConnection {
         }
     }
 
+    /**
+     * Creates a socket connection on the server side for an accepted AF_UNIX socket
+     */
+    public static SocketConnection accepted(SocketChannel channel) {
+        if (!channel.isOpen())
+            throw new IllegalArgumentException("Channel is closed");
+        return new SocketConnection(channel);
+    }
+
+    /**
+     * creates a socket connection on the client side, using an AF_UNIX socket if a socket file is given and
+     * falling back to TCP if it can not be used
+     *
+     * @param socketFile the socket file to connect to, or {@code null} to use TCP
+     * @param addr the address to connect to
+     * @param port the port to connect to
+     * @param initialRequestElements the elements of the initial request. They will be merged into a string with '\0' separating the elements and '\n' on the end
+     * @return the SocketConnection wrapper
+     */
+    public static SocketConnection connect(File socketFile, InetAddress addr, Integer port, String...initialRequestElements) {
+        if (socketFile != null && UnixDomainSockets.isSupported()) {
+            SocketChannel channel = null;
+            try {
+                log.infof("Trying to connect to %s", socketFile);
+                channel = UnixDomainSockets.connect(socketFile);
+                SocketConnection conn = new SocketConnection(channel);
+
+                String request = createInitalRequest(initialRequestElements);
+
+                log.infof("Connected to %s. Sending initial request: %s", socketFile, request.trim());
+                if (request.length() > 0)
+                    conn.sendInitialRequest(request);
+                return conn;
+            } catch (IOException e) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+                log.warnf("Could not connect to %s, falling back to TCP: %s", socketFile, e.getMessage());
+            }
+        }
+        return connect(addr, port, initialRequestElements);
+    }
+
     /**
      * creates a socket connection on the client side
      *
@@ -129,32 +187,48 @@ public class SocketConnection {
     }
 
     public boolean isConnected() {
-        return socket.isConnected();
+        return socket != null ? socket.isConnected() : channel.isConnected();
     }
 
     public boolean isOpen() {
-        return !socket.isClosed();
+        return socket != null ? !socket.isClosed() : channel.isOpen();
+    }
+
+    /**
+     * @return whether this connection uses an AF_UNIX socket
+     */
+    public boolean isUnixDomain() {
+        return channel != null;
     }
 
     public synchronized void close() {
         if (closing)
             return;
         closing = true;
+        if (channel != null) {
+            log.info("Closing AF_UNIX connection");
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warnf(e, "Could not close AF_UNIX connection");
+            }
+            return;
+        }
         log.infof("Closing connection local port: %d, remote port: %d", socket.getLocalPort(), socket.getPort());
         try {
             socket.shutdownOutput();
         } catch (IOException e) {
-            e.printStackTrace();
+            log.debugf(e, "Could not shut down output of connection on local port %d", socket.getLocalPort());
         }
         try {
             socket.shutdownInput();
         } catch (IOException e) {
-            e.printStackTrace();
+            log.debugf(e, "Could not shut down input of connection on local port %d", socket.getLocalPort());
         }
         try {
             socket.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            log.warnf(e, "Could not close connection on local port %d", socket.getLocalPort());
         }
     }
 
@@ -21,12 +21,16 @@
  */
 package org.jboss.as.communication;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -34,7 +38,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.jboss.logging.Logger;
 
 /**
- * Manages a server socket and hands off incoming connections to a {@link SocketHandler}
+ * Manages a server socket and hands off incoming connections to a {@link SocketHandler}.  If a socket file is given,
+ * and the JVM supports AF_UNIX sockets, the listener also accepts connections on that file; the TCP socket stays
+ * available for processes which can not use it.
  *
  * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
  * @version $Revision: 1.1 $
@@ -47,11 +53,13 @@ public final class SocketListener {
     private final InetAddress address;
     private final int port;
     private final int backlog;
+    private final File socketFile;
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
     private volatile ServerSocketListener serverSocketListener;
+    private volatile UnixSocketListener unixSocketListener;
 
-    private SocketListener(String name, SocketHandler socketHandler, InetAddress address, int port, int backlog) {
+    private SocketListener(String name, SocketHandler socketHandler, InetAddress address, int port, int backlog, File socketFile) {
         if (name == null) {
             throw new IllegalArgumentException("Null name");
         }
@@ -66,10 +74,15 @@ public final class SocketListener {
         this.address = address;
         this.port = port;
         this.backlog = backlog;
+        this.socketFile = socketFile;
     }
 
     public static SocketListener createSocketListener(String name, SocketHandler socketHandler, InetAddress address, int port, int backlog) throws IOException {
-        return new SocketListener(name, socketHandler, address, port, backlog);
+        return new SocketListener(name, socketHandler, address, port, backlog, null);
+    }
+
+    public static SocketListener createSocketListener(String name, SocketHandler socketHandler, InetAddress address, int port, int backlog, File socketFile) throws IOException {
+        return new SocketListener(name, socketHandler, address, port, backlog, socketFile);
     }
 
     /**
@@ -79,6 +92,19 @@ public final class SocketListener {
         serverSocketListener = new ServerSocketListener();
         Thread t = new Thread(serverSocketListener, "Socket Listener " + name);
         t.start();
+        if (socketFile != null) {
+            if (UnixDomainSockets.isSupported()) {
+                try {
+                    unixSocketListener = new UnixSocketListener();
+                    t = new Thread(unixSocketListener, "Unix Socket Listener " + name);
+                    t.start();
+                } catch (IOException e) {
+                    log.warnf("%s could not listen on %s, only TCP will be used: %s", name, socketFile, e.getMessage());
+                }
+            } else {
+                log.infof("%s: AF_UNIX sockets are not supported, only TCP will be used", name);
+            }
+        }
     }
 
     public void shutdown(){
@@ -86,6 +112,18 @@ public final class SocketListener {
         if (serverSocketListener != null) {
             serverSocketListener.shutdown();
         }
+        if (unixSocketListener != null) {
+            unixSocketListener.shutdown();
+        }
+    }
+
+    /**
+     * Get the socket file this listener accepts connections on.
+     *
+     * @return the socket file, or {@code null} if the listener only uses TCP
+     */
+    public File getSocketFile() {
+        return unixSocketListener != null ? socketFile : null;
     }
 
     public InetAddress getAddress() {
@@ -139,7 +177,8 @@ public final class SocketListener {
                 try {
                     while (!shutdown.get()) {
                         Socket socket = serverSocket.accept();
-                        executor.execute(new AcceptorTask(socket));
+                        log.debugf("%s got new connection on %d", name, socket.getLocalPort());
+                        executor.execute(new AcceptorTask(SocketConnection.accepted(socket)));
                     }
                 } catch (SocketException e) {
                     log.infof("%s server socket was closed", name);
@@ -164,19 +203,60 @@ public final class SocketListener {
     }
 
     /**
-     * Takes a newly created socket and listens for the first request.
-     * If the request is valid, the socket is handed off to the ManagedProcess
+     * Accepts connections on the socket file.
+     */
+    private class UnixSocketListener implements Runnable {
+
+        private final ServerSocketChannel serverChannel;
+        private final AtomicBoolean shutdown = new AtomicBoolean(false);
+
+        private UnixSocketListener() throws IOException {
+            serverChannel = UnixDomainSockets.listen(socketFile, backlog);
+        }
+
+        @Override
+        public void run() {
+            log.infof("%s listening on %s", name, socketFile);
+            try {
+                while (!shutdown.get()) {
+                    SocketChannel channel = serverChannel.accept();
+                    log.debugf("%s got new connection on %s", name, socketFile);
+                    executor.execute(new AcceptorTask(SocketConnection.accepted(channel)));
+                }
+            } catch (AsynchronousCloseException e) {
+                log.infof("%s socket file %s was closed", name, socketFile);
+            } catch (IOException e) {
+                log.errorf(e, "%s stopped accepting connections on socket file %s", name, socketFile);
+            } finally {
+                shutdown();
+            }
+        }
+
+        private void shutdown() {
+            if (shutdown.getAndSet(true))
+                return;
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                log.warnf("%s could not close socket file %s", name, socketFile);
+            }
+            socketFile.delete();
+        }
+    }
+
+    /**
+     * Takes a newly created connection and listens for the first request.
+     * If the request is valid, the connection is handed off to the ManagedProcess
      * that has that name.
      * <p>
      * If the request is not valid, or there is no ManagedProcess with
-     * that name the socket is closed.
+     * that name the connection is closed.
      */
     private class AcceptorTask implements Runnable {
-        private final Socket socket;
+        private final SocketConnection connection;
 
-        public AcceptorTask(Socket socket) {
-            this.socket = socket;
-            log.debugf("%s got new connection on %d", name, socket.getLocalPort());
+        public AcceptorTask(SocketConnection connection) {
+            this.connection = connection;
         }
 
         @Override
@@ -185,7 +265,7 @@ public final class SocketListener {
             try {
                 log.infof("%s checking for socket handler %b", name, socketHandler != null);
                 if (socketHandler != null) {
-                    socketHandler.initializeConnection(socket);
+                    socketHandler.initializeConnection(connection);
                 }
                 ok = true;
             } catch (InitialSocketRequestException e) {
@@ -195,10 +275,7 @@ public final class SocketListener {
             }
             finally {
                 if (!ok){
-                    try {
-                        socket.close();
-                    } catch (IOException ignore) {
-                    }
+                    connection.close();
                 }
             }
         }
@@ -207,14 +284,14 @@ public final class SocketListener {
     public interface SocketHandler {
 
         /**
-         * Used to verify the initial request of the socket and to start a thread to
-         * read data from the socket
+         * Used to verify the initial request of the connection and to start a thread to
+         * read data from the connection
          *
-         * @param socket
+         * @param connection the accepted connection, over TCP or an AF_UNIX socket
          * @throws IOException if there were some problems with the socket
          * @throws InitialSocketRequestException if there were some problems with the initial request
          */
-        void initializeConnection(Socket socket) throws IOException, InitialSocketRequestException;
+        void initializeConnection(SocketConnection connection) throws IOException, InitialSocketRequestException;
 
     }
 }
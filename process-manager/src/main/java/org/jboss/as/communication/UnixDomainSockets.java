@@ -0,0 +1,278 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.communication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Opens AF_UNIX stream sockets for the connections between the processes of a host.  They are only available on JVMs
+ * whose socket channels support the {@code UNIX} protocol family (Java 16 and later); the API is looked up
+ * reflectively, and {@link #isSupported()} returns {@code false} on older JVMs and on platforms without AF_UNIX
+ * sockets, in which case callers use TCP.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public final class UnixDomainSockets {
+
+    private static final Object UNIX_FAMILY;
+    private static final Method OPEN_SOCKET;
+    private static final Method OPEN_SERVER_SOCKET;
+    private static final Method ADDRESS_OF;
+    private static final Method BIND;
+    private static final Method TO_PATH;
+    private static final Method GET_ATTRIBUTE;
+    private static final Object NO_FOLLOW_LINKS;
+
+    /** The file type bits of a unix file mode. */
+    private static final int S_IFMT = 0170000;
+    /** The file type of a socket. */
+    private static final int S_IFSOCK = 0140000;
+
+    static {
+        Object family = null;
+        Method openSocket = null;
+        Method openServerSocket = null;
+        Method addressOf = null;
+        Method bind = null;
+        Method toPath = null;
+        Method getAttribute = null;
+        Object noFollowLinks = null;
+        try {
+            final Class<?> protocolFamily = Class.forName("java.net.ProtocolFamily");
+            final Class<?> standardProtocolFamily = Class.forName("java.net.StandardProtocolFamily");
+            family = standardProtocolFamily.getField("UNIX").get(null);
+            openSocket = SocketChannel.class.getMethod("open", protocolFamily);
+            openServerSocket = ServerSocketChannel.class.getMethod("open", protocolFamily);
+            addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+            bind = ServerSocketChannel.class.getMethod("bind", SocketAddress.class, int.class);
+            final Class<?> path = Class.forName("java.nio.file.Path");
+            final Class<?> linkOption = Class.forName("java.nio.file.LinkOption");
+            toPath = File.class.getMethod("toPath");
+            getAttribute = Class.forName("java.nio.file.Files").getMethod("getAttribute", path, String.class,
+                    Array.newInstance(linkOption, 0).getClass());
+            noFollowLinks = Array.newInstance(linkOption, 1);
+            Array.set(noFollowLinks, 0, linkOption.getField("NOFOLLOW_LINKS").get(null));
+            // the platform may still lack AF_UNIX sockets
+            ((SocketChannel) openSocket.invoke(null, family)).close();
+        } catch (Throwable t) {
+            family = null;
+        }
+        UNIX_FAMILY = family;
+        OPEN_SOCKET = openSocket;
+        OPEN_SERVER_SOCKET = openServerSocket;
+        ADDRESS_OF = addressOf;
+        BIND = bind;
+        TO_PATH = toPath;
+        GET_ATTRIBUTE = getAttribute;
+        NO_FOLLOW_LINKS = noFollowLinks;
+    }
+
+    private UnixDomainSockets() {
+    }
+
+    /**
+     * Check whether AF_UNIX sockets can be used.
+     *
+     * @return {@code true} if they can
+     */
+    public static boolean isSupported() {
+        return UNIX_FAMILY != null;
+    }
+
+    /**
+     * Listen on a socket file.  A socket file left behind by an earlier listener which no longer accepts
+     * connections is replaced; any other file at the path is left alone.
+     *
+     * @param file the socket file
+     * @param backlog the backlog
+     * @return the bound channel, in blocking mode
+     * @throws IOException if the socket could not be bound, or the path is taken by another file or a live socket
+     */
+    public static ServerSocketChannel listen(final File file, final int backlog) throws IOException {
+        checkSupported();
+        if (file.exists()) {
+            deleteStaleSocket(file);
+        }
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory for socket file " + file);
+        }
+        final ServerSocketChannel channel = (ServerSocketChannel) invoke(OPEN_SERVER_SOCKET, null, UNIX_FAMILY);
+        boolean ok = false;
+        try {
+            invoke(BIND, channel, address(file), Integer.valueOf(backlog));
+            ok = true;
+            return channel;
+        } finally {
+            if (!ok) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Connect to a socket file.
+     *
+     * @param file the socket file
+     * @return the connected channel, in blocking mode
+     * @throws IOException if the connection failed
+     */
+    public static SocketChannel connect(final File file) throws IOException {
+        checkSupported();
+        final SocketChannel channel = (SocketChannel) invoke(OPEN_SOCKET, null, UNIX_FAMILY);
+        boolean ok = false;
+        try {
+            channel.connect((SocketAddress) address(file));
+            ok = true;
+            return channel;
+        } finally {
+            if (!ok) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Get a stream reading from a blocking channel.  Unlike {@link java.nio.channels.Channels#newInputStream}, the
+     * stream does not hold the channel's blocking lock while reading, so another thread can write to the channel
+     * at the same time.
+     *
+     * @param channel the channel
+     * @return the stream
+     */
+    public static InputStream getInputStream(final SocketChannel channel) {
+        return new InputStream() {
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Get a stream writing to a blocking channel.
+     *
+     * @param channel the channel
+     * @return the stream
+     */
+    public static OutputStream getOutputStream(final SocketChannel channel) {
+        return new OutputStream() {
+            public void write(final int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private static void deleteStaleSocket(final File file) throws IOException {
+        if (!isSocket(file)) {
+            throw new IOException("Could not listen on " + file + ", a file which is not a socket exists at that path");
+        }
+        SocketChannel channel = null;
+        try {
+            channel = connect(file);
+        } catch (IOException e) {
+            // nothing accepts connections on it, so it was left behind by a listener which is gone
+        }
+        if (channel != null) {
+            channel.close();
+            throw new IOException("Could not listen on " + file + ", another process is listening on it");
+        }
+        if (!file.delete()) {
+            throw new IOException("Could not delete stale socket file " + file);
+        }
+    }
+
+    private static boolean isSocket(final File file) throws IOException {
+        final Object path = invoke(TO_PATH, file);
+        Integer mode = null;
+        try {
+            mode = (Integer) invoke(GET_ATTRIBUTE, null, path, "unix:mode", NO_FOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            // no unix attribute view on this platform
+        }
+        if (mode != null) {
+            return (mode.intValue() & S_IFMT) == S_IFSOCK;
+        }
+        // a socket is neither a regular file, a directory nor a link
+        return ((Boolean) invoke(GET_ATTRIBUTE, null, path, "basic:isOther", NO_FOLLOW_LINKS)).booleanValue();
+    }
+
+    private static Object address(final File file) throws IOException {
+        return invoke(ADDRESS_OF, null, file.getPath());
+    }
+
+    private static void checkSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("AF_UNIX sockets are not supported by this JVM");
+        }
+    }
+
+    private static Object invoke(final Method method, final Object target, final Object... args) throws IOException {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.process;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary framing of the process manager protocol.  A process selects it by adding {@link #CONNECT_OPTION} as the
+ * last element of its {@code CONNECTED} request, other processes keep using the original text framing.
+ * <p>
+ * Each frame is made up of
+ * <ul>
+ *   <li>the length of the rest of the frame, as a four byte big endian integer</li>
+ *   <li>the framing version, one byte</li>
+ *   <li>the command opcode, one byte</li>
+ *   <li>the command fields. Integers are four bytes big endian, longs eight bytes big endian, strings are a length followed by the UTF-8 bytes
+ *   (a length of {@code -1} is {@code null}), byte arrays are a length followed by the bytes, and lists and maps are
+ *   a count followed by their elements</li>
+ * </ul>
+ * Frames are built in memory and written and read with a single bulk operation.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public final class BinaryFrames {
+
+    /** The framing version */
+    public static final int VERSION = 1;
+
+    /** The last element of the {@code CONNECTED} request of a process which uses the binary framing */
+    public static final String CONNECT_OPTION = "BINARY_FRAMING_" + VERSION;
+
+    /** The maximum size of a frame */
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BinaryFrames() {
+    }
+
+    /**
+     * Check if the bytes of a {@code CONNECTED} request select the binary framing.
+     *
+     * @param request the bytes of the request
+     * @return {@code true} if the request ends with {@link #CONNECT_OPTION}
+     */
+    static boolean isRequested(final byte[] request) {
+        final InputStream in = new ByteArrayInputStream(request);
+        final StringBuilder b = new StringBuilder();
+        try {
+            Status status;
+            do {
+                status = StreamUtils.readWord(in, b);
+            } while (status == Status.MORE);
+        } catch (IOException e) {
+            return false;
+        }
+        return CONNECT_OPTION.contentEquals(b);
+    }
+
+    /**
+     * Get the length of the first complete frame in a buffer.
+     *
+     * @return the length of the frame including its header, or {@code -1} if the buffer does not yet contain a
+     * complete frame
+     * @throws StreamCorruptedException if the frame length is invalid
+     */
+    static int frameLength(final byte[] bytes, final int offset, final int end) throws StreamCorruptedException {
+        if (end - offset < 4) {
+            return -1;
+        }
+        final int length = checkLength(getInt(bytes, offset));
+        return end - offset - 4 < length ? -1 : length + 4;
+    }
+
+    private static int checkLength(final int length) throws StreamCorruptedException {
+        if (length < 2 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    private static int getInt(final byte[] bytes, final int i) {
+        return (bytes[i] & 0xff) << 24 | (bytes[i + 1] & 0xff) << 16 | (bytes[i + 2] & 0xff) << 8 | bytes[i + 3] & 0xff;
+    }
+
+    /**
+     * A stream which sends the commands written to it using the binary framing.  Writes are passed through unchanged,
+     * the protocol commands check for this type to select the framing.
+     */
+    public static final class FramedOutputStream extends FilterOutputStream {
+
+        public FramedOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * Builds a frame.
+     */
+    public static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        /**
+         * Start a frame.
+         *
+         * @param opcode the opcode of the command
+         */
+        public Writer(final int opcode) {
+            buffer = new byte[128];
+            position = 4;
+            buffer[position++] = (byte) VERSION;
+            buffer[position++] = (byte) opcode;
+        }
+
+        public Writer writeInt(final int value) {
+            ensureCapacity(4);
+            final byte[] buffer = this.buffer;
+            final int i = position;
+            buffer[i] = (byte) (value >>> 24);
+            buffer[i + 1] = (byte) (value >>> 16);
+            buffer[i + 2] = (byte) (value >>> 8);
+            buffer[i + 3] = (byte) value;
+            position = i + 4;
+            return this;
+        }
+
+        public Writer writeLong(final long value) {
+            return writeInt((int) (value >>> 32)).writeInt((int) value);
+        }
+
+        public Writer writeString(final String value) {
+            if (value == null) {
+                return writeInt(-1);
+            }
+            return writeBytes(value.getBytes(UTF_8));
+        }
+
+        public Writer writeBytes(final byte[] value) {
+            writeInt(value.length);
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, buffer, position, value.length);
+            position += value.length;
+            return this;
+        }
+
+        public Writer writeStrings(final List<String> values) {
+            writeInt(values.size());
+            for (String value : values) {
+                writeString(value);
+            }
+            return this;
+        }
+
+        public Writer writeMap(final Map<String, String> values) {
+            int count = 0;
+            for (String key : values.keySet()) {
+                if (key != null) {
+                    count++;
+                }
+            }
+            writeInt(count);
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (entry.getKey() != null) {
+                    // like the text framing, a null value is sent as an empty string
+                    final String value = entry.getValue();
+                    writeString(entry.getKey());
+                    writeString(value == null ? "" : value);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Write the frame to a stream with a single write, and flush the stream.
+         *
+         * @param output the stream
+         * @throws IOException if the frame could not be written
+         */
+        public void writeTo(final OutputStream output) throws IOException {
+            final int length = position - 4;
+            if (length > MAX_FRAME_SIZE) {
+                throw new IOException("Frame exceeds " + MAX_FRAME_SIZE + " bytes");
+            }
+            buffer[0] = (byte) (length >>> 24);
+            buffer[1] = (byte) (length >>> 16);
+            buffer[2] = (byte) (length >>> 8);
+            buffer[3] = (byte) length;
+            synchronized (output) {
+                output.write(buffer, 0, position);
+                output.flush();
+            }
+        }
+
+        private void ensureCapacity(final int count) {
+            if (position + count > buffer.length) {
+                final byte[] grown = new byte[Math.max(buffer.length << 1, position + count)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of a frame.
+     */
+    public static final class Reader {
+        private final byte[] buffer;
+        private final int opcode;
+        private int position;
+
+        private Reader(final byte[] buffer) {
+            this.buffer = buffer;
+            this.opcode = buffer[1] & 0xff;
+            this.position = 2;
+        }
+
+        /**
+         * Read the next frame from a stream.
+         *
+         * @param input the stream
+         * @return the frame, or {@code null} if the stream ended before the frame
+         * @throws IOException if the frame could not be read or is invalid
+         */
+        public static Reader read(final InputStream input) throws IOException {
+            final byte[] header = new byte[4];
+            final int first = input.read(header, 0, 4);
+            if (first < 0) {
+                return null;
+            }
+            StreamUtils.readFully(input, header, first, 4 - first);
+            final byte[] buffer = new byte[checkLength(getInt(header, 0))];
+            StreamUtils.readFully(input, buffer, 0, buffer.length);
+            if ((buffer[0] & 0xff) != VERSION) {
+                throw new StreamCorruptedException("Unsupported framing version " + (buffer[0] & 0xff));
+            }
+            return new Reader(buffer);
+        }
+
+        public int getOpcode() {
+            return opcode;
+        }
+
+        public int readInt() throws IOException {
+            require(4);
+            final int value = getInt(buffer, position);
+            position += 4;
+            return value;
+        }
+
+        public long readLong() throws IOException {
+            final long high = readInt();
+            return high << 32 | readInt() & 0xffffffffL;
+        }
+
+        public String readString() throws IOException {
+            final int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            require(length);
+            final String value = new String(buffer, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        public byte[] readBytes() throws IOException {
+            final int length = readInt();
+            require(length);
+            final byte[] value = new byte[length];
+            System.arraycopy(buffer, position, value, 0, length);
+            position += length;
+            return value;
+        }
+
+        public List<String> readStrings() throws IOException {
+            // every string takes at least four bytes
+            final int count = readCount(4);
+            final List<String> values = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        public Map<String, String> readMap() throws IOException {
+            // every entry takes at least eight bytes
+            final int count = readCount(8);
+            final Map<String, String> values = new HashMap<String, String>(count << 1);
+            for (int i = 0; i < count; i++) {
+                final String key = readString();
+                values.put(key, readString());
+            }
+            return values;
+        }
+
+        private int readCount(final int minElementSize) throws IOException {
+            final int count = readInt();
+            if (count < 0) {
+                throw new StreamCorruptedException("Negative count " + count);
+            }
+            // checked as a long so a large count can not overflow into an acceptable size
+            if ((long) count * minElementSize > buffer.length - position) {
+                throw new EOFException("Frame truncated");
+            }
+            return count;
+        }
+
+        private void require(final int count) throws IOException {
+            if (count < 0) {
+                throw new StreamCorruptedException("Negative length " + count);
+            }
+            if (buffer.length - position < count) {
+                throw new EOFException("Frame truncated");
+            }
+        }
+    }
+}
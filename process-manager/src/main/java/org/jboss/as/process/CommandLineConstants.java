@@ -47,6 +47,9 @@ public class CommandLineConstants {
     /** The ServerManager port */
     public static final String INTERPROCESS_SM_PORT = "-interprocess-sm-port";
 
+    /** The ServerManager AF_UNIX socket file, used in preference to the address and port if possible */
+    public static final String INTERPROCESS_SM_SOCKET = "-interprocess-sm-socket";
+
     /** Get the version of the server */
     public static final String VERSION = "-version";
 
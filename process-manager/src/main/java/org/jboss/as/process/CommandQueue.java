@@ -0,0 +1,474 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.process;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.logging.Logger;
+
+/**
+ * The commands waiting to be sent to a managed process.
+ * <p>
+ * Commands are queued as whole frames in a bounded lock-free ring, and are held there until the process has connected
+ * to the process manager.  Once a connection is attached the queued frames are sent in batches with a single
+ * gathering write; while the socket still has bytes waiting no more frames are taken from the ring, so a process which
+ * does not read its commands fills its own queue rather than the memory of the process manager.
+ * <p>
+ * When the ring is full, or holds more than the configured number of bytes, a sender gets an {@link IOException}.
+ * With the {@link Overflow#BLOCK block} policy a sender can first {@link #awaitSpace() wait for space}, which it
+ * does before taking the lock of the {@link ManagedProcess}, so other users of the process are not held up.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class CommandQueue {
+
+    /** The system property used to configure the number of frames which can be queued, rounded up to a power of two of at least two */
+    static final String CAPACITY = "jboss.process.manager.command.queue.capacity";
+
+    /** The system property used to configure the number of bytes which can be queued */
+    static final String MAX_BYTES = "jboss.process.manager.command.queue.max.bytes";
+
+    /** The system property used to configure the {@link Overflow overflow policy}, {@code fail} (the default) or {@code block} */
+    static final String OVERFLOW = "jboss.process.manager.command.queue.overflow";
+
+    /** The system property used to configure how long a sender waits for space, in milliseconds */
+    static final String BLOCK_TIMEOUT = "jboss.process.manager.command.queue.block.timeout";
+
+    private static final Logger log = Logger.getLogger(CommandQueue.class);
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    private static final long DEFAULT_BLOCK_TIMEOUT = 5000L;
+    private static final int MAX_BATCH_FRAMES = 64;
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final long SLOW_DRAIN = TimeUnit.SECONDS.toNanos(1L);
+
+    /**
+     * What a sender does when the queue is full.
+     */
+    enum Overflow {
+        /** Wait for space until the block timeout expires before sending, and fail if there still is none */
+        BLOCK,
+        /** Fail immediately */
+        FAIL
+    }
+
+    private final String processName;
+    private final int mask;
+    private final AtomicReferenceArray<Frame> frames;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final Object space = new Object();
+    private final long maxBytes;
+    private final Overflow overflow;
+    private final long blockTimeout;
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_BATCH_FRAMES];
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+    private volatile long head;
+    private volatile ProcessIoLoop.Connection connection;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong framesRejected = new AtomicLong();
+    private final AtomicLong totalDrainLatency = new AtomicLong();
+    private volatile long lastDrainLatency;
+    private volatile long maxDrainLatency;
+
+    CommandQueue(final String processName) {
+        this(processName, Integer.getInteger(CAPACITY, DEFAULT_CAPACITY).intValue(), Integer.getInteger(MAX_BYTES, DEFAULT_MAX_BYTES).intValue(),
+                Overflow.valueOf(System.getProperty(OVERFLOW, "fail").toUpperCase()), Long.getLong(BLOCK_TIMEOUT, DEFAULT_BLOCK_TIMEOUT).longValue());
+    }
+
+    CommandQueue(final String processName, final int capacity, final long maxBytes, final Overflow overflow, final long blockTimeout) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity is too large");
+        }
+        this.processName = processName;
+        // a slot of a single slot ring would look free again as soon as it is published
+        final int size = capacity < 2 ? 2 : Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        mask = size - 1;
+        frames = new AtomicReferenceArray<Frame>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.maxBytes = maxBytes;
+        this.overflow = overflow;
+        this.blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Get a stream which queues the bytes written to it as a frame each time it is flushed.  The stream is not thread
+     * safe; the commands sent to a process are serialized by the {@link ManagedProcess}.  Closing the stream closes the
+     * attached connection once the frames queued before have been sent, the queue then holds the frames sent after
+     * until the next connection is attached.
+     *
+     * @param binary {@code true} if the commands written use the {@link BinaryFrames binary framing}
+     * @return the stream
+     */
+    OutputStream newOutputStream(final boolean binary) {
+        return new FrameOutputStream(binary);
+    }
+
+    /**
+     * Attach the connection of the process and send it the frames queued so far.  Commands which were queued using the
+     * text framing are converted if the process selected the binary framing.
+     *
+     * @param connection the connection
+     */
+    void attach(final ProcessIoLoop.Connection connection) {
+        final ProcessIoLoop.Connection current = this.connection;
+        if (current != null) {
+            if (!current.isClosed()) {
+                throw new IllegalStateException("There is already a connection for " + processName);
+            }
+            detach(current);
+        }
+        connection.setDrainListener(drainTask);
+        this.connection = connection;
+        drain();
+    }
+
+    /**
+     * Close the attached connection once the frames queued so far have been sent.  Does nothing if no connection is
+     * attached.
+     */
+    void close() {
+        final ProcessIoLoop.Connection connection = this.connection;
+        if (connection != null) {
+            // the marker does not count against the byte limit
+            if (!offer(new Frame(connection), 0L)) {
+                log.warnf("Command queue of %s is full, closing its connection without sending the queued commands", processName);
+                detach(connection);
+                ManagedProcess.safeClose(connection.getOutputStream());
+                return;
+            }
+            drain();
+        }
+    }
+
+    /**
+     * Wait until the queue has space for another frame, if the overflow policy is {@link Overflow#BLOCK block}.  The
+     * wait ends when the block timeout expires; a frame sent then fails if the queue is still full.  Senders must not
+     * hold a lock the frames queued before need to be sent, such as the lock of the {@link ManagedProcess}.
+     */
+    void awaitSpace() {
+        if (overflow != Overflow.BLOCK || hasSpace()) {
+            return;
+        }
+        drain();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        log.debugf("Command queue of %s is full, waiting for %d frames to be sent", processName, Integer.valueOf(getQueuedFrames()));
+        waiters.incrementAndGet();
+        try {
+            synchronized (space) {
+                long remaining;
+                while (!hasSpace() && (remaining = deadline - System.nanoTime()) > 0L) {
+                    TimeUnit.NANOSECONDS.timedWait(space, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    private boolean hasSpace() {
+        return tail.get() - head <= mask && queuedBytes.get() < maxBytes;
+    }
+
+    /** @return the number of frames waiting to be sent */
+    int getQueuedFrames() {
+        return (int) (tail.get() - head);
+    }
+
+    /** @return the number of bytes waiting to be sent */
+    long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /** @return the number of frames handed to the socket */
+    long getFramesSent() {
+        return framesSent.get();
+    }
+
+    /** @return the number of bytes handed to the socket */
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /** @return the number of frames which could not be queued */
+    long getFramesRejected() {
+        return framesRejected.get();
+    }
+
+    /** @return the time the last frame sent spent in the queue, in microseconds */
+    long getLastDrainLatency() {
+        return TimeUnit.NANOSECONDS.toMicros(lastDrainLatency);
+    }
+
+    /** @return the longest time a frame spent in the queue, in microseconds */
+    long getMaxDrainLatency() {
+        return TimeUnit.NANOSECONDS.toMicros(maxDrainLatency);
+    }
+
+    /** @return the average time a frame spent in the queue, in microseconds */
+    long getAverageDrainLatency() {
+        final long sent = framesSent.get();
+        return sent == 0L ? 0L : TimeUnit.NANOSECONDS.toMicros(totalDrainLatency.get() / sent);
+    }
+
+    private void send(final Frame frame) throws IOException {
+        final long length = frame.bytes.length;
+        if (!offer(frame, length)) {
+            // the socket may take some of the frames queued before
+            drain();
+            if (!offer(frame, length)) {
+                framesRejected.incrementAndGet();
+                throw new IOException("Command queue of " + processName + " is full: " + getQueuedFrames() + " frames, " + getQueuedBytes() + " bytes");
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Add a frame to the ring, claiming a slot by advancing the tail.  A slot can be claimed once its sequence equals
+     * the tail, and is published by setting the sequence one past it.
+     */
+    private boolean offer(final Frame frame, final long length) {
+        final long queued = queuedBytes.addAndGet(length);
+        if (queued > maxBytes && queued != length) {
+            // a single frame larger than the limit is still allowed through an empty queue
+            queuedBytes.addAndGet(-length);
+            return false;
+        }
+        for (;;) {
+            final long t = tail.get();
+            final int index = (int) t & mask;
+            final long sequence = sequences.get(index);
+            if (sequence == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    frames.set(index, frame);
+                    sequences.set(index, t + 1);
+                    return true;
+                }
+            } else if (sequence < t) {
+                queuedBytes.addAndGet(-length);
+                return false;
+            }
+        }
+    }
+
+    /** Take the next published frame, only called by the thread holding the drain flag */
+    private Frame poll() {
+        final long h = head;
+        final int index = (int) h & mask;
+        if (sequences.get(index) != h + 1) {
+            return null;
+        }
+        final Frame frame = frames.get(index);
+        frames.set(index, null);
+        sequences.set(index, h + mask + 1);
+        head = h + 1;
+        return frame;
+    }
+
+    private Frame peek() {
+        final long h = head;
+        return sequences.get((int) h & mask) == h + 1 ? frames.get((int) h & mask) : null;
+    }
+
+    private void drain() {
+        while (draining.compareAndSet(false, true)) {
+            try {
+                drainBatches();
+            } finally {
+                draining.set(false);
+            }
+            if (waiters.get() > 0) {
+                synchronized (space) {
+                    space.notifyAll();
+                }
+            }
+            final ProcessIoLoop.Connection connection = this.connection;
+            if (connection == null || connection.hasPendingOutput() || peek() == null) {
+                return;
+            }
+        }
+    }
+
+    private void drainBatches() {
+        ProcessIoLoop.Connection connection;
+        while ((connection = this.connection) != null && !connection.hasPendingOutput() && peek() != null) {
+            final ByteBuffer[] batch = this.batch;
+            final long now = System.nanoTime();
+            int count = 0;
+            int bytes = 0;
+            long latency = 0L;
+            boolean close = false;
+            Frame frame;
+            while (count < batch.length && bytes < MAX_BATCH_BYTES && (frame = poll()) != null) {
+                if (frame.closes != null) {
+                    // a marker left by a connection which was replaced is dropped
+                    if (frame.closes == connection) {
+                        close = true;
+                        break;
+                    }
+                    continue;
+                }
+                queuedBytes.addAndGet(-frame.bytes.length);
+                final long waited = now - frame.queuedAt;
+                latency += waited;
+                if (waited > maxDrainLatency) {
+                    maxDrainLatency = waited;
+                }
+                lastDrainLatency = waited;
+                byte[] bytesToSend = frame.bytes;
+                if (frame.text && connection.isBinary()) {
+                    try {
+                        bytesToSend = ManagedProcess.toFrames(bytesToSend);
+                    } catch (IOException e) {
+                        log.errorf(e, "Could not convert a command for %s to the binary framing", processName);
+                        continue;
+                    }
+                }
+                batch[count++] = ByteBuffer.wrap(bytesToSend);
+                bytes += bytesToSend.length;
+            }
+            try {
+                if (count > 0) {
+                    connection.write(batch, count);
+                    framesSent.addAndGet(count);
+                    bytesSent.addAndGet(bytes);
+                    totalDrainLatency.addAndGet(latency);
+                    if (latency / count > SLOW_DRAIN) {
+                        log.warnf("Commands for %s waited %d ms on average to be sent, %d frames are still queued",
+                                processName, Long.valueOf(TimeUnit.NANOSECONDS.toMillis(latency / count)), Integer.valueOf(getQueuedFrames()));
+                    }
+                }
+                if (close) {
+                    detach(connection);
+                    ManagedProcess.safeClose(connection.getOutputStream());
+                }
+            } catch (IOException e) {
+                log.debugf("Could not send %d commands to %s: %s", Integer.valueOf(count), processName, e.getMessage());
+                detach(connection);
+            } finally {
+                Arrays.fill(batch, 0, count, null);
+            }
+        }
+    }
+
+    private void detach(final ProcessIoLoop.Connection connection) {
+        connection.setDrainListener(null);
+        if (this.connection == connection) {
+            this.connection = null;
+            log.debugf("Detached the connection of %s after sending %d frames (%d bytes), max drain latency %d us",
+                    processName, Long.valueOf(getFramesSent()), Long.valueOf(getBytesSent()), Long.valueOf(getMaxDrainLatency()));
+        }
+    }
+
+    private static final class Frame {
+        private final byte[] bytes;
+        private final boolean text;
+        private final ProcessIoLoop.Connection closes;
+        private final long queuedAt = System.nanoTime();
+
+        Frame(final byte[] bytes, final boolean text) {
+            this.bytes = bytes;
+            this.text = text;
+            this.closes = null;
+        }
+
+        /** A marker closing a connection once the frames before it have been sent */
+        Frame(final ProcessIoLoop.Connection closes) {
+            this.bytes = null;
+            this.text = false;
+            this.closes = closes;
+        }
+    }
+
+    /**
+     * Collects the bytes of a command and queues them as one frame when flushed.
+     */
+    private final class FrameOutputStream extends OutputStream {
+        private final boolean binary;
+        private byte[] buffer = new byte[128];
+        private int count;
+
+        FrameOutputStream(final boolean binary) {
+            this.binary = binary;
+        }
+
+        public void write(final int b) {
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length << 1);
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        public void write(final byte[] b, final int off, final int len) {
+            if (count + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + len));
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        public void flush() throws IOException {
+            if (count > 0) {
+                final byte[] bytes = Arrays.copyOf(buffer, count);
+                count = 0;
+                send(new Frame(bytes, !binary));
+            }
+        }
+
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                CommandQueue.this.close();
+            }
+        }
+    }
+}
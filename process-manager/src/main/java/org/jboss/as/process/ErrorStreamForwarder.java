@@ -0,0 +1,276 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.process;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+import org.jboss.logging.NDC;
+
+/**
+ * Forwards the lines written to the error stream of a process to the {@code org.jboss.as.process.stderr} log.
+ * <p>
+ * The stream is read in blocks into the reaper's buffer, and the lines found in a block are logged together as a
+ * single message.  The number of lines forwarded per second is limited by a token bucket; lines over the limit are
+ * still read, so the process never blocks on a full pipe, but are dropped and reported as a count once lines are
+ * forwarded again.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ErrorStreamForwarder implements Closeable {
+
+    /** The system property used to configure the number of lines forwarded per second, {@code 0} for no limit */
+    static final String LINES_PER_SECOND = "jboss.process.manager.stderr.lines.per.second";
+
+    /** The system property used to configure the number of lines which may be forwarded at once */
+    static final String BURST_LINES = "jboss.process.manager.stderr.burst.lines";
+
+    private static final Logger log = Logger.getLogger(ErrorStreamForwarder.class);
+    private static final Logger errorLog = Logger.getLogger("org.jboss.as.process.stderr");
+
+    private static final int DEFAULT_LINES_PER_SECOND = 1000;
+    private static final int DEFAULT_BURST_LINES = 10000;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_BATCH_SIZE = 64 * 1024;
+
+    private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final String processName;
+    private final InputStream errorStream;
+    private final Runnable closeAction;
+    private final boolean limited;
+    private final double linesPerNano;
+    private final double burst;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+    private byte[] batch = new byte[MAX_LINE_LENGTH];
+    private int batchLength;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private long pendingSuppressed;
+    private volatile long bytesRead;
+    private volatile long linesForwarded;
+    private volatile long linesSuppressed;
+    private volatile boolean closed;
+
+    ErrorStreamForwarder(final String processName, final InputStream errorStream, final Runnable closeAction) {
+        this(processName, errorStream, closeAction, Integer.getInteger(LINES_PER_SECOND, DEFAULT_LINES_PER_SECOND).intValue(),
+                Integer.getInteger(BURST_LINES, DEFAULT_BURST_LINES).intValue());
+    }
+
+    ErrorStreamForwarder(final String processName, final InputStream errorStream, final Runnable closeAction, final int linesPerSecond, final int burstLines) {
+        this.processName = processName;
+        this.errorStream = errorStream;
+        this.closeAction = closeAction;
+        limited = linesPerSecond > 0;
+        linesPerNano = (double) linesPerSecond / TimeUnit.SECONDS.toNanos(1L);
+        burst = Math.max(1, burstLines);
+        tokens = burst;
+    }
+
+    /**
+     * Log anything still buffered in the stream and stop forwarding it.
+     */
+    public void close() {
+        closed = true;
+        closeAction.run();
+    }
+
+    /** @return the number of bytes read from the error stream */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /** @return the number of lines logged */
+    long getLinesForwarded() {
+        return linesForwarded;
+    }
+
+    /** @return the number of lines dropped by the rate limit */
+    long getLinesSuppressed() {
+        return linesSuppressed;
+    }
+
+    /**
+     * Forward the lines which can be read without blocking.  Only called from the reaper thread.
+     *
+     * @param buffer a buffer to read into
+     * @return {@code true} if the stream is finished
+     * @throws IOException if the stream could not be read
+     */
+    boolean poll(final byte[] buffer) throws IOException {
+        final boolean finished = closed;
+        refill();
+        boolean eof = false;
+        try {
+            int available;
+            while (!eof && (available = errorStream.available()) > 0) {
+                final int count = errorStream.read(buffer, 0, Math.min(available, buffer.length));
+                if (count < 0) {
+                    eof = true;
+                } else {
+                    bytesRead += count;
+                    split(buffer, count);
+                }
+            }
+        } finally {
+            if (finished) {
+                endLine();
+            }
+            flush();
+        }
+        if (finished) {
+            reportSuppressed();
+            ManagedProcess.safeClose(errorStream);
+            log.debugf("Forwarded %d lines (%d bytes) of error output of process %s, suppressed %d lines",
+                    Long.valueOf(linesForwarded), Long.valueOf(bytesRead), processName, Long.valueOf(linesSuppressed));
+        }
+        return finished;
+    }
+
+    private void split(final byte[] buffer, final int count) {
+        final ByteBuffer words = ByteBuffer.wrap(buffer, 0, count).order(ByteOrder.LITTLE_ENDIAN);
+        int start = 0;
+        int newline;
+        while ((newline = indexOfNewline(words, buffer, start, count)) >= 0) {
+            if (lineLength == 0 && newline - start <= MAX_LINE_LENGTH) {
+                forwardLine(buffer, start, newline - start);
+            } else {
+                append(buffer, start, newline - start);
+                endLine();
+            }
+            start = newline + 1;
+        }
+        append(buffer, start, count - start);
+    }
+
+    /**
+     * Find the next newline, testing eight bytes at a time.  Subtracting one from every byte of the word XORed with
+     * newlines sets the high bit of the lowest zero byte, which is the first newline since the word is little endian.
+     */
+    static int indexOfNewline(final ByteBuffer words, final byte[] buffer, final int from, final int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            final long word = words.getLong(i) ^ NEWLINES;
+            final long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (found != 0L) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void append(final byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            final int count = Math.min(length, line.length - lineLength);
+            System.arraycopy(bytes, offset, line, lineLength, count);
+            lineLength += count;
+            offset += count;
+            length -= count;
+            if (lineLength == line.length) {
+                endLine();
+            }
+        }
+    }
+
+    private void endLine() {
+        forwardLine(line, 0, lineLength);
+        lineLength = 0;
+    }
+
+    private void forwardLine(final byte[] bytes, final int offset, final int length) {
+        if (length == 0) {
+            return;
+        }
+        if (limited) {
+            if (tokens < 1.0) {
+                pendingSuppressed++;
+                linesSuppressed++;
+                return;
+            }
+            tokens -= 1.0;
+        }
+        if (batchLength + length + 1 > batch.length) {
+            if (batchLength > 0 && batchLength + length + 1 > MAX_BATCH_SIZE) {
+                flush();
+            }
+            if (length + 1 > batch.length - batchLength) {
+                final byte[] grown = new byte[Math.max(batch.length << 1, batchLength + length + 1)];
+                System.arraycopy(batch, 0, grown, 0, batchLength);
+                batch = grown;
+            }
+        }
+        if (batchLength > 0) {
+            batch[batchLength++] = '\n';
+        }
+        System.arraycopy(bytes, offset, batch, batchLength, length);
+        batchLength += length;
+        linesForwarded++;
+    }
+
+    private void flush() {
+        if (batchLength > 0) {
+            final String lines = new String(batch, 0, batchLength);
+            batchLength = 0;
+            NDC.push(processName);
+            try {
+                errorLog.error(lines);
+            } finally {
+                NDC.pop();
+            }
+        }
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * linesPerNano);
+        refilledAt = now;
+        if (tokens >= 1.0) {
+            reportSuppressed();
+        }
+    }
+
+    private void reportSuppressed() {
+        if (pendingSuppressed > 0L) {
+            NDC.push(processName);
+            try {
+                errorLog.warnf("%d lines of error output were suppressed by the rate limit", Long.valueOf(pendingSuppressed));
+            } finally {
+                NDC.pop();
+            }
+            pendingSuppressed = 0L;
+        }
+    }
+}
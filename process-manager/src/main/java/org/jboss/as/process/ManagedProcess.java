@@ -22,28 +22,26 @@
 
 package org.jboss.as.process;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import org.jboss.as.communication.SocketConnection;
 import org.jboss.as.process.ProcessManagerMaster.ProcessHandlerFactory;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommand;
+import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
 import org.jboss.as.process.ProcessOutputStreamHandler.Managed;
 import org.jboss.logging.Logger;
-import org.jboss.logging.NDC;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -61,9 +59,13 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
     private final Logger log;
 
     private boolean stopped;
+    private boolean removed;
     private volatile boolean start;
-    private final DelegatingSocketOutputStream commandStream = new DelegatingSocketOutputStream();
+    private volatile int pid = -1;
+    private final CommandQueue commandQueue;
+    private volatile OutputStream commandOutput;
     private OutputStream stdinStream;
+    private ErrorStreamForwarder errorStreamForwarder;
     private List<StopProcessListener> stopProcessListeners;
     private int respawnCount;
 
@@ -75,21 +77,28 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
         this.workingDirectory = workingDirectory;
         this.respawnPolicy = respawnPolicy;
         this.log = Logger.getLogger("org.jboss.as.process." + processName);
+        this.commandQueue = new CommandQueue(processName);
+        this.commandOutput = commandQueue.newOutputStream(false);
     }
 
     public String getProcessName() {
         return processName;
     }
 
-    synchronized void setSocket(SocketConnection socketConnection) throws IOException{
+    // not synchronized, attaching the connection sends the queued commands and must not wait for a sender
+    void setConnection(ProcessIoLoop.Connection connection) throws IOException{
         log.info("Initializing socket for " + processName);
-        commandStream.setSocketOutputStream(socketConnection.getOutputStream());
+        commandQueue.attach(connection);
+        commandOutput = connection.isBinary() ? new BinaryFrames.FramedOutputStream(commandQueue.newOutputStream(true)) : commandQueue.newOutputStream(false);
+    }
 
-        final ProcessOutputStreamHandler outputStreamHandler = new ProcessOutputStreamHandler(master, this, new BufferedInputStream(socketConnection.getInputStream()));
-        final Thread outputThread = new Thread(outputStreamHandler);
-        outputThread.setName("Process " + processName + " socket reader thread");
-        // todo - error handling in the event that a thread can't start?
-        outputThread.start();
+    /**
+     * Get the queue of the commands waiting to be sent to this process.
+     *
+     * @return the command queue
+     */
+    CommandQueue getCommandQueue() {
+        return commandQueue;
     }
 
     void start() throws IOException {
@@ -99,7 +108,7 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
 
     private void start(boolean isRespawn) throws IOException{
         synchronized (this) {
-            if (start) {
+            if (start || removed) {
                 return;
             }
 
@@ -114,8 +123,12 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
                     Collections.unmodifiableMap(env),
                     workingDirectory);
             stdinStream = proc.getInputStream();
+            pid = proc.getPid();
 
-            new Thread(new ErrorStreamHandler(processName, proc.getErrorStream()), "Process " + processName + " stderr thread").start();
+            if (errorStreamForwarder != null) {
+                safeClose(errorStreamForwarder);
+            }
+            errorStreamForwarder = master.getIoLoop().watchErrorStream(processName, proc.getErrorStream());
 
             start = true;
             stopped = false;
@@ -125,12 +138,13 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
     }
 
     void stop() throws IOException {
+        awaitCommandSpace();
         synchronized (this) {
             boolean wasStart = start;
             start = false;
             stopped = true;
             if (wasStart) {
-                OutgoingPmCommand.SHUTDOWN.sendStop(commandStream);
+                OutgoingPmCommand.SHUTDOWN.sendStop(commandOutput);
             }
         }
     }
@@ -139,6 +153,28 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
         return start;
     }
 
+    /**
+     * Get the operating system process id of the running process.
+     *
+     * @return the process id, or {@code -1} if the process is not running or its id is unknown
+     */
+    int getPid() {
+        return pid;
+    }
+
+    /**
+     * Mark a stopped process as removed, so it can not be started again.
+     *
+     * @return {@code false} if the process is running and was not removed
+     */
+    synchronized boolean remove() {
+        if (start) {
+            return false;
+        }
+        removed = true;
+        return true;
+    }
+
     void sendStdin(final byte[] msg) throws IOException {
         synchronized (this) {
             if (!start)
@@ -151,24 +187,47 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
 
     void down(String stoppedProcessName) throws IOException {
         checkServerManager(OutgoingPmCommand.DOWN);
+        awaitCommandSpace();
+        synchronized (this) {
+            if (!start) {
+                return;
+            }
+            OutgoingPmCommand.DOWN.sendDown(commandOutput, stoppedProcessName);
+        }
+    }
+
+    void samples(String sampledProcessName, List<ProcessSample> samples) throws IOException {
+        checkServerManager(OutgoingPmCommand.SAMPLES);
+        awaitCommandSpace();
         synchronized (this) {
             if (!start) {
                 return;
             }
-            OutgoingPmCommand.DOWN.sendDown(commandStream, stoppedProcessName);
+            OutgoingPmCommand.SAMPLES.sendSamples(commandOutput, sampledProcessName, samples);
         }
     }
 
     void reconnectToServerManager (String addr, int port) throws IOException {
+        awaitCommandSpace();
         synchronized (this) {
             if (!start) {
                 return;
             }
-            OutgoingPmCommand.RECONNECT_SERVER_MANAGER.sendReconnectToServerManager(commandStream, addr, port);
+            OutgoingPmCommand.RECONNECT_SERVER_MANAGER.sendReconnectToServerManager(commandOutput, addr, port);
         }
     }
 
 
+    /**
+     * Wait for space in the command queue before taking the lock, so a process which does not read its commands does
+     * not hold up the other users of this process.
+     */
+    private void awaitCommandSpace() {
+        if (start) {
+            commandQueue.awaitSpace();
+        }
+    }
+
     private void checkServerManager(OutgoingPmCommand cmd) {
         if (!ProcessManagerMaster.SERVER_MANAGER_PROCESS_NAME.equals(processName))
             throw new IllegalStateException("Attempt to send " + cmd +
@@ -186,7 +245,7 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
             if (stopped || start)
                 return;
 
-            commandStream.close();
+            closeCommandStream();
             if (respawnPolicy != null) {
                 wait = respawnPolicy.getTimeOutMs(++respawnCount);
                 if (wait < 0){
@@ -208,21 +267,19 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
             return;
         }
 
-        try {
-            TimeUnit.MILLISECONDS.sleep(wait);
-        } catch (InterruptedException e) {
-            log.info("Error waiting  " + wait + "ms to respawn crashed " + processName, e);
-        }
-
-        synchronized (this) {
-            if (stopped || start)
-                return;
-        }
-        try {
-            start(true);
-        }catch(IOException e) {
-            log.warn("Error respawning " + processName, e);
-        }
+        master.getIoLoop().schedule(new Runnable() {
+            public void run() {
+                synchronized (ManagedProcess.this) {
+                    if (stopped || start)
+                        return;
+                }
+                try {
+                    start(true);
+                }catch(IOException e) {
+                    log.warn("Error respawning " + processName, e);
+                }
+            }
+        }, wait, TimeUnit.MILLISECONDS);
     }
 
     public void processEnded(int exitCode) {
@@ -230,8 +287,13 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
         boolean respawn = false;
         synchronized (this) {
             start = false;
+            pid = -1;
             if (exitCode != 0)
                 respawn = !stopped;
+            if (errorStreamForwarder != null) {
+                safeClose(errorStreamForwarder);
+                errorStreamForwarder = null;
+            }
         }
         invokeStopProcessListeners(exitCode);
         if (respawn)
@@ -243,7 +305,12 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
         synchronized (this) {
             start = false;
         }
-        commandStream.close();
+        closeCommandStream();
+    }
+
+    private synchronized void closeCommandStream() {
+        commandQueue.close();
+        commandOutput = commandQueue.newOutputStream(false);
     }
 
     static void safeClose(final Closeable closeable) {
@@ -277,166 +344,60 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
         return "ManagedProcess[name=" + processName + "; start=" + start + "; stopped=" + true + "]";
     }
 
-    private static final class ErrorStreamHandler implements Runnable {
-        private static final Logger log = Logger.getLogger("org.jboss.as.process.stderr");
-
-        private final String processName;
-        private final InputStream errorStream;
-
-        private ErrorStreamHandler(final String processName, final InputStream errorStream) {
-            this.processName = processName;
-            this.errorStream = new BufferedInputStream(errorStream);
-        }
-
-        public void run() {
-            NDC.push(processName);
-            final int idx = NDC.getDepth();
-            final Reader reader = new InputStreamReader(errorStream);
-            final StringBuilder b = new StringBuilder();
-            try {
-                for (;;) {
-                    try {
-                        int c = reader.read();
-                        if (c == -1) {
-                            return;
-                        }
-                        if (c == '\n') {
-                            if (b.length() > 0) {
-                                log.error(b.toString());
-                            }
-                            b.setLength(0);
-                        } else {
-                            b.append((char) c);
-                            if (b.length() >= 8192) {
-                                log.error(b.toString());
-                                b.setLength(0);
-                            }
-                        }
-                    } catch (IOException e) {
-                        safeClose(reader);
-                        return;
-                    } finally {
-                        NDC.setMaxDepth(idx);
-                    }
-                }
-            } finally {
-                NDC.pop();
-            }
-        }
-    }
-
     /**
-     * OutputStream to buffer commands to a process until the socket has been initialized
+     * Convert commands written using the text framing to the binary framing.
      *
+     * @param text the bytes of the commands
+     * @return the frames
+     * @throws IOException if the commands could not be read
      */
-    private class DelegatingSocketOutputStream extends OutputStream {
-        private List<byte[]> bufferedBytes = new ArrayList<byte[]>(0);
-        private volatile OutputStream current;
-        private volatile ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-        private volatile OutputStream realOut;
-
-        @Override
-        public void write(int b) throws IOException {
-            if (current == null) {
-                synchronized (this) {
-                    if (current == null) {
-                        if (realOut == null) {
-                            bytesOut = new ByteArrayOutputStream();
-                            current = bytesOut;
-                        }else {
-                            current = realOut;
-                        }
-                    }
-
-                }
-            }
-            current.write(b);
-        }
-
-        @Override
-        public void flush() throws IOException {
-            OutputStream curr = null;
-            synchronized (this) {
-                curr = current;
-                if (bytesOut != null) {
-                    if (bufferedBytes == null)
-                         bufferedBytes = new ArrayList<byte[]>();
-                    bufferedBytes.add(bytesOut.toByteArray());
-                    bytesOut = null;
-                    current = null;
+    static byte[] toFrames(final byte[] text) throws IOException {
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        final OutputStream framed = new BinaryFrames.FramedOutputStream(frames);
+        // the frames are written to memory, so the handler never sees an IOException
+        final OutgoingPmCommandHandler transcoder = new OutgoingPmCommandHandler() {
+            public void handleShutdown() {
+                try {
+                    // written directly since sending SHUTDOWN closes the stream
+                    new BinaryFrames.Writer(OutgoingPmCommand.SHUTDOWN.opcode).writeTo(framed);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
                 }
             }
-            if (curr != null)
-                curr.flush();
-        }
 
-        void setSocketOutputStream(OutputStream out) throws IOException {
-            synchronized (this) {
-                if (realOut != null) {
-                    throw new IllegalStateException("There is already a socket output stream for " + processName);
-                }
-                realOut = new BufferedOutputStream(out);
-                current = realOut;
-                if (bufferedBytes != null) {
-                    for (byte[] buf : bufferedBytes) {
-                        current.write(buf);
-                        current.flush();
-                    }
-                }
-                if (bytesOut != null) {
-                    byte[] bytes = bytesOut.toByteArray();
-                    realOut.write(bytes);
-                    out.flush();
+            public void handleDown(final String serverName) {
+                try {
+                    OutgoingPmCommand.DOWN.sendDown(framed, serverName);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
                 }
-
-                safeClose(bytesOut);
-                bytesOut = null;
-                bufferedBytes.clear();
-            }
-        }
-
-        @Override
-        public void close() {
-            synchronized (this) {
-                safeClose(realOut);
-                realOut = null;
-                current = null;
             }
-        }
-    }
-
-
-    private static class ProcessMonitor implements Runnable {
-        final Managed managed;
-        final Process process;
 
-        ProcessMonitor(Managed managed, Process process){
-            this.managed = managed;
-            this.process = process;
-        }
-
-        @Override
-        public void run() {
-            int exitCode = 0;
-
-            //Just discard the ouput from the process
-            InputStream processStdout = new BufferedInputStream(process.getInputStream());
-            try {
-                while (processStdout.read() != -1) {
+            public void handleReconnectServerManager(final String address, final String port) {
+                try {
+                    OutgoingPmCommand.RECONNECT_SERVER_MANAGER.sendReconnectToServerManager(framed, address, Integer.parseInt(port));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
                 }
-            } catch (IOException e) {
-            } finally {
-                safeClose(processStdout);
             }
 
-            for (;;) {
+            public void handleSamples(final String processName, final List<ProcessSample> samples) {
                 try {
-                    exitCode = process.waitFor();
-                    managed.processEnded(exitCode);
-                    break;
-                } catch (InterruptedException e) {
+                    OutgoingPmCommand.SAMPLES.sendSamples(framed, processName, samples);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
                 }
             }
+        };
+        final InputStream in = new ByteArrayInputStream(text);
+        final StringBuilder b = new StringBuilder();
+        for (;;) {
+            Status status = StreamUtils.readWord(in, b);
+            if (status == Status.END_OF_STREAM) {
+                return frames.toByteArray();
+            }
+            status = OutgoingPmCommand.valueOf(b.toString()).handleMessage(in, status, transcoder, b);
+            if (status == Status.MORE) StreamUtils.readToEol(in);
         }
     }
 
@@ -486,16 +447,29 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
          * @throws IllegalStateException if {@link #createProcess(Managed, List, Map, String)} has not yet been called
          */
         InputStream getErrorStream();
+
+        /**
+         * Get the operating system process id of the process
+         *
+         * @return the process id, or <code>-1</code> if it is unknown
+         * @throws IllegalStateException if {@link #createProcess(Managed, List, Map, String)} has not yet been called
+         */
+        int getPid();
     }
 
     static class RealProcessHandler implements ProcessHandler {
+        private final ProcessIoLoop ioLoop;
         volatile InputStream errorStream;
         volatile OutputStream commandStream;
+        volatile int pid = -1;
+
+        RealProcessHandler(final ProcessIoLoop ioLoop) {
+            this.ioLoop = ioLoop;
+        }
 
         public ProcessHandler createProcess(Managed managed, List<String> command, Map<String, String> environment, String workingDirectory) throws IOException{
             final ProcessBuilder processBuilder = new ProcessBuilder(command);
             final Map<String, String> env = processBuilder.environment();
-            final String processName = managed.getProcessName();
             env.clear();
             env.putAll(environment);
             processBuilder.directory(new File(workingDirectory));
@@ -509,11 +483,9 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
 
             errorStream = process.getErrorStream();
             commandStream = process.getOutputStream();
+            pid = getPid(process);
 
-            final Thread monitorThread = new Thread(new ProcessMonitor(managed, process));
-            monitorThread.setName("Process " + processName + " monitor thread");
-            // todo - error handling in the event that a thread can't start?
-            monitorThread.start();
+            ioLoop.watchProcess(managed, process);
 
             return this;
         }
@@ -531,6 +503,32 @@ public final class ManagedProcess implements ProcessOutputStreamHandler.Managed{
                 throw new IllegalStateException("Null errorStream, createProcess() must be called first");
             return errorStream;
         }
+
+        @Override
+        public int getPid() {
+            if (commandStream == null)
+                throw new IllegalStateException("Null commandStream, createProcess() must be called first");
+            return pid;
+        }
+
+        /**
+         * Get the id of a process.  {@link Process} has no accessor for it before Java 9, so the field of the UNIX
+         * implementation is read instead.
+         */
+        private static int getPid(final Process process) {
+            try {
+                final Method method = Process.class.getMethod("pid");
+                return ((Number) method.invoke(process)).intValue();
+            } catch (Throwable ignored) {
+            }
+            try {
+                final Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getInt(process);
+            } catch (Throwable ignored) {
+            }
+            return -1;
+        }
     }
 
 
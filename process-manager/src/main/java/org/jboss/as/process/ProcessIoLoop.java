@@ -0,0 +1,901 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.process;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.as.process.ProcessOutputStreamHandler.Managed;
+import org.jboss.logging.Logger;
+
+/**
+ * Event loop servicing all of the process manager's I/O on a fixed number of threads.
+ * <p>
+ * Command sockets are multiplexed on a single selector thread, which splits the incoming bytes into commands and
+ * hands them to a small pool of worker threads.  The commands received on a connection are run in order, one at a
+ * time.  Writes are attempted directly by the calling thread and only handed to the selector thread if the socket
+ * can not take all of the bytes.
+ * <p>
+ * The standard streams of a child process can not be registered with a selector, so they are polled together with
+ * the exit status of every child by a single reaper thread.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ProcessIoLoop {
+
+    /** The system property used to configure the number of worker threads */
+    static final String WORKER_THREADS = "jboss.process.manager.worker.threads";
+
+    private static final Logger log = Logger.getLogger(ProcessIoLoop.class);
+
+    private static final int DEFAULT_WORKER_THREADS = 2;
+    private static final int MAX_COMMAND_SIZE = 16 * 1024 * 1024;
+    private static final long INITIAL_REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(10L);
+    private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(5L);
+    private static final long REAPER_INTERVAL = 100L;
+    private static final long ACTIVE_REAPER_INTERVAL = 10L;
+
+    private final Selector selector;
+    private final ScheduledExecutorService workers;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<Runnable>();
+    private final Set<Connection> connections = new HashSet<Connection>();
+    private final List<Watch> watches = new CopyOnWriteArrayList<Watch>();
+    private final Thread selectorThread;
+    private final Thread reaperThread;
+    private volatile boolean shutdown;
+
+    ProcessIoLoop() throws IOException {
+        this(Integer.getInteger(WORKER_THREADS, DEFAULT_WORKER_THREADS).intValue());
+    }
+
+    ProcessIoLoop(final int workerThreads) throws IOException {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("workerThreads must be at least 1");
+        }
+        selector = Selector.open();
+        workers = Executors.newScheduledThreadPool(workerThreads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Process Manager worker " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        selectorThread = new Thread(new SelectorTask(), "Process Manager I/O");
+        reaperThread = new Thread(new ReaperTask(), "Process Manager reaper");
+        reaperThread.setDaemon(true);
+    }
+
+    /**
+     * Start the selector and reaper threads.
+     */
+    void start() {
+        selectorThread.start();
+        reaperThread.start();
+    }
+
+    /**
+     * Stop accepting connections, flush the commands already queued for sending and stop all threads.
+     */
+    void shutdown() {
+        shutdown = true;
+        selector.wakeup();
+        reaperThread.interrupt();
+        workers.shutdown();
+    }
+
+    /**
+     * Listen for command connections.
+     *
+     * @param address the address to bind to
+     * @param port the port to bind to, or {@code 0} for any free port
+     * @param backlog the listen backlog
+     * @param handler the handler for the commands received on accepted connections
+     * @return the bound channel
+     * @throws IOException if the channel could not be bound
+     */
+    ServerSocketChannel listen(final InetAddress address, final int port, final int backlog, final ConnectionHandler handler) throws IOException {
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(new InetSocketAddress(address, port), backlog);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            ManagedProcess.safeClose(channel);
+            throw e;
+        }
+        runInSelector(new Runnable() {
+            public void run() {
+                try {
+                    channel.register(selector, SelectionKey.OP_ACCEPT, handler);
+                    log.infof("Process manager listening on %d", channel.socket().getLocalPort());
+                } catch (ClosedChannelException e) {
+                    log.errorf("Listener on port %d was closed before it was registered", port);
+                }
+            }
+        });
+        return channel;
+    }
+
+    /**
+     * Run a task on one of the worker threads.
+     *
+     * @param task the task
+     */
+    void execute(final Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Run a task on one of the worker threads after a delay.
+     *
+     * @param task the task
+     * @param delay the delay
+     * @param unit the unit of the delay
+     */
+    void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        workers.schedule(task, delay, unit);
+    }
+
+    /**
+     * Discard the standard output of a process, and call {@link Managed#processEnded(int)} on a worker thread once
+     * the process has exited.
+     *
+     * @param managed the managed process
+     * @param process the process
+     */
+    void watchProcess(final Managed managed, final Process process) {
+        watches.add(new ProcessWatch(managed, process));
+        reaperThread.interrupt();
+    }
+
+    /**
+     * Log the lines written to the error stream of a process.  Closing the returned forwarder logs anything still
+     * buffered in the stream and stops watching it.
+     *
+     * @param processName the name of the process
+     * @param errorStream the error stream
+     * @return the forwarder, used to stop watching the stream
+     */
+    ErrorStreamForwarder watchErrorStream(final String processName, final InputStream errorStream) {
+        final ErrorStreamForwarder forwarder = new ErrorStreamForwarder(processName, errorStream, new Runnable() {
+            public void run() {
+                reaperThread.interrupt();
+            }
+        });
+        watches.add(new ErrorStreamWatch(forwarder));
+        return forwarder;
+    }
+
+    private void runInSelector(final Runnable task) {
+        if (Thread.currentThread() == selectorThread) {
+            task.run();
+        } else {
+            selectorTasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Handles the commands received on a connection.  All calls for a connection are made in order from a single
+     * worker thread at a time.
+     */
+    interface ConnectionHandler {
+
+        /**
+         * Handle a complete command.
+         *
+         * @param connection the connection the command was received on
+         * @param command a stream containing exactly the bytes of the command
+         * @throws IOException if the command could not be handled; the connection is closed
+         */
+        void handleCommand(Connection connection, InputStream command) throws IOException;
+
+        /**
+         * Handle the connection being closed, after all commands received on it have been handled.
+         *
+         * @param connection the connection
+         */
+        void handleClosed(Connection connection);
+    }
+
+    /**
+     * A command connection accepted by the loop.
+     */
+    final class Connection implements Runnable {
+        private final SocketChannel channel;
+        private final ConnectionHandler handler;
+        private final long acceptedAt = System.currentTimeMillis();
+        private final Queue<byte[]> commands = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicBoolean dispatching = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final CommandOutputStream output = new CommandOutputStream();
+        private final byte[] endOfStream = new byte[0];
+        private SelectionKey key;
+        private byte[] received = new byte[512];
+        private int receivedCount;
+        private boolean initialRequestReceived;
+        private volatile boolean binary;
+        private volatile Object attachment;
+        private volatile Runnable drainListener;
+
+        private Connection(final SocketChannel channel, final ConnectionHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        /**
+         * Get the stream used to send commands on this connection.  The bytes written are sent when the stream is
+         * flushed, and closing the stream closes the connection once they have been sent.
+         *
+         * @return the output stream
+         */
+        OutputStream getOutputStream() {
+            return output;
+        }
+
+        /**
+         * Send whole frames with a single gathering write.  Whatever the socket does not take is sent by the selector
+         * thread, after which the {@link #setDrainListener(Runnable) drain listener} is run.
+         *
+         * @param frames the frames
+         * @param count the number of frames to send
+         * @throws IOException if the connection is closed or the frames could not be written
+         */
+        void write(final ByteBuffer[] frames, final int count) throws IOException {
+            output.writeFrames(frames, count);
+        }
+
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        /**
+         * Check if bytes written to this connection are waiting for the socket.
+         *
+         * @return {@code true} if the socket has not yet taken everything written to it
+         */
+        boolean hasPendingOutput() {
+            return output.hasPending();
+        }
+
+        /**
+         * Set the task run on a worker thread once the bytes waiting for the socket have been sent.
+         *
+         * @param listener the task, or {@code null} for none
+         */
+        void setDrainListener(final Runnable listener) {
+            drainListener = listener;
+        }
+
+        Object getAttachment() {
+            return attachment;
+        }
+
+        void setAttachment(final Object attachment) {
+            this.attachment = attachment;
+        }
+
+        /**
+         * Check if the process asked for the binary framing in its initial request.
+         *
+         * @return {@code true} if the commands after the initial request use {@link BinaryFrames}
+         */
+        boolean isBinary() {
+            return binary;
+        }
+
+        InetAddress getRemoteAddress() {
+            return channel.socket().getInetAddress();
+        }
+
+        /**
+         * Close the connection immediately, discarding anything not yet sent.
+         */
+        void close() {
+            if (closed.getAndSet(true)) {
+                return;
+            }
+            ManagedProcess.safeClose(channel);
+            commands.add(endOfStream);
+            dispatch();
+            runInSelector(new Runnable() {
+                public void run() {
+                    connections.remove(Connection.this);
+                }
+            });
+        }
+
+        /** Called by the selector thread when the channel is readable */
+        private void read(final ByteBuffer buffer) {
+            try {
+                int count;
+                do {
+                    buffer.clear();
+                    count = channel.read(buffer);
+                    if (count > 0) {
+                        append(buffer.array(), count);
+                    }
+                } while (count > 0);
+                splitCommands();
+                if (count < 0) {
+                    close();
+                }
+            } catch (IOException e) {
+                log.errorf("Error reading from %s: %s", getRemoteAddress(), e.getMessage());
+                close();
+            }
+        }
+
+        private void append(final byte[] bytes, final int count) throws IOException {
+            if (receivedCount + count > received.length) {
+                if (receivedCount + count > MAX_COMMAND_SIZE) {
+                    throw new IOException("Command exceeds " + MAX_COMMAND_SIZE + " bytes");
+                }
+                final byte[] grown = new byte[Math.max(received.length << 1, receivedCount + count)];
+                System.arraycopy(received, 0, grown, 0, receivedCount);
+                received = grown;
+            }
+            System.arraycopy(bytes, 0, received, receivedCount, count);
+            receivedCount += count;
+        }
+
+        private void splitCommands() throws IOException {
+            int offset = 0;
+            int length;
+            while ((length = binary ? BinaryFrames.frameLength(received, offset, receivedCount) : commandLength(received, offset, receivedCount)) > 0) {
+                final byte[] command = new byte[length];
+                System.arraycopy(received, offset, command, 0, length);
+                commands.add(command);
+                offset += length;
+                if (!initialRequestReceived) {
+                    // the rest of the commands are split according to the framing selected by the initial request
+                    initialRequestReceived = true;
+                    binary = BinaryFrames.isRequested(command);
+                }
+            }
+            if (offset > 0) {
+                System.arraycopy(received, offset, received, 0, receivedCount - offset);
+                receivedCount -= offset;
+                dispatch();
+            }
+        }
+
+        private void dispatch() {
+            if (dispatching.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RuntimeException e) {
+                    // rejected during shutdown
+                    dispatching.set(false);
+                }
+            }
+        }
+
+        /** Run the received commands on a worker thread */
+        public void run() {
+            for (;;) {
+                byte[] command;
+                while ((command = commands.poll()) != null) {
+                    if (command == endOfStream) {
+                        handler.handleClosed(this);
+                        commands.clear();
+                        return;
+                    }
+                    if (closed.get()) {
+                        continue;
+                    }
+                    try {
+                        handler.handleCommand(this, new ByteArrayInputStream(command));
+                    } catch (Throwable t) {
+                        log.errorf(t, "Error handling command from %s, closing connection", getRemoteAddress());
+                        close();
+                    }
+                }
+                dispatching.set(false);
+                if (commands.isEmpty() || !dispatching.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isInitialRequestExpired(final long now) {
+            return attachment == null && now - acceptedAt > INITIAL_REQUEST_TIMEOUT;
+        }
+
+        /**
+         * Buffers the bytes of the commands being written until flushed.  A flush writes as much as the socket will
+         * take and leaves the rest to the selector thread.
+         */
+        private final class CommandOutputStream extends OutputStream {
+            private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            private final Queue<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+            private boolean closeRequested;
+            private boolean writeInterest;
+
+            public synchronized void write(final int b) throws IOException {
+                checkOpen();
+                buffer.write(b);
+            }
+
+            public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+                checkOpen();
+                buffer.write(b, off, len);
+            }
+
+            public synchronized void flush() throws IOException {
+                checkOpen();
+                if (buffer.size() > 0) {
+                    pending.add(ByteBuffer.wrap(buffer.toByteArray()));
+                    buffer.reset();
+                }
+                writePending();
+            }
+
+            public synchronized void close() throws IOException {
+                if (closeRequested) {
+                    return;
+                }
+                try {
+                    flush();
+                } finally {
+                    closeRequested = true;
+                    if (pending.isEmpty()) {
+                        Connection.this.close();
+                    }
+                }
+            }
+
+            synchronized void writeFrames(final ByteBuffer[] frames, final int count) throws IOException {
+                checkOpen();
+                if (buffer.size() > 0) {
+                    pending.add(ByteBuffer.wrap(buffer.toByteArray()));
+                    buffer.reset();
+                }
+                if (pending.isEmpty()) {
+                    try {
+                        channel.write(frames, 0, count);
+                    } catch (IOException e) {
+                        Connection.this.close();
+                        throw e;
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    if (frames[i].hasRemaining()) {
+                        pending.add(frames[i]);
+                    }
+                }
+                writePending();
+            }
+
+            synchronized boolean hasPending() {
+                return !pending.isEmpty();
+            }
+
+            private void checkOpen() throws IOException {
+                if (closeRequested || closed.get()) {
+                    throw new IOException("Connection is closed");
+                }
+            }
+
+            /** Write as much as possible without blocking, called with the lock held */
+            private void writePending() throws IOException {
+                try {
+                    while (!pending.isEmpty()) {
+                        final ByteBuffer next = pending.peek();
+                        channel.write(next);
+                        if (next.hasRemaining()) {
+                            setWriteInterest(true);
+                            return;
+                        }
+                        pending.poll();
+                    }
+                } catch (IOException e) {
+                    pending.clear();
+                    Connection.this.close();
+                    throw e;
+                }
+                setWriteInterest(false);
+                if (closeRequested) {
+                    Connection.this.close();
+                }
+            }
+
+            /** Called by the selector thread when the channel is writable */
+            private void writable() {
+                synchronized (this) {
+                    try {
+                        writePending();
+                    } catch (IOException e) {
+                        log.errorf("Error writing to %s: %s", getRemoteAddress(), e.getMessage());
+                        return;
+                    }
+                    if (!pending.isEmpty()) {
+                        return;
+                    }
+                }
+                final Runnable listener = drainListener;
+                if (listener != null) {
+                    try {
+                        workers.execute(listener);
+                    } catch (RuntimeException e) {
+                        // rejected during shutdown
+                    }
+                }
+            }
+
+            private void setWriteInterest(final boolean interest) {
+                if (writeInterest == interest) {
+                    return;
+                }
+                writeInterest = interest;
+                runInSelector(new Runnable() {
+                    public void run() {
+                        if (key != null && key.isValid()) {
+                            key.interestOps(interest ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Get the length of the first complete command in a buffer.  A command is a line of words encoded as
+     * {@link StreamUtils#writeChar(OutputStream, char)} does, except for {@link ProcessManagerProtocol.IncomingPmCommand#SEND_STDIN}
+     * which carries a length prefixed message that may contain any byte.
+     *
+     * @return the length of the command, or {@code -1} if the buffer does not yet contain a complete command
+     */
+    static int commandLength(final byte[] bytes, final int offset, final int end) {
+        final int[] pos = { offset };
+        final StringBuilder word = new StringBuilder();
+        int c = readWord(bytes, pos, end, word);
+        if (c == -2) {
+            return -1;
+        }
+        if (c == 0 && ProcessManagerProtocol.IncomingPmCommand.SEND_STDIN.name().contentEquals(word)) {
+            c = readWord(bytes, pos, end, null);
+            if (c == -2) {
+                return -1;
+            }
+            if (c == 0) {
+                if (end - pos[0] < 4) {
+                    return -1;
+                }
+                final int i = pos[0];
+                final int length = (bytes[i] & 0xff) << 24 | (bytes[i + 1] & 0xff) << 16 | (bytes[i + 2] & 0xff) << 8 | bytes[i + 3] & 0xff;
+                if (length < 0 || length > MAX_COMMAND_SIZE) {
+                    // corrupt, let the command parser reject it
+                    return end - offset;
+                }
+                if (end - i - 4 < length) {
+                    return -1;
+                }
+                pos[0] = i + 4 + length;
+                if (readChar(bytes, pos, end) == -2) {
+                    return -1;
+                }
+            }
+            return pos[0] - offset;
+        }
+        while (c == 0) {
+            c = readWord(bytes, pos, end, null);
+        }
+        return c == -2 ? -1 : pos[0] - offset;
+    }
+
+    /**
+     * Read a word, returning the character that ended it: {@code 0} for a word separator, {@code '\n'} or
+     * {@code -1} for the end of the command, or {@code -2} if more bytes are needed.
+     */
+    private static int readWord(final byte[] bytes, final int[] pos, final int end, final StringBuilder word) {
+        for (;;) {
+            final int c = readChar(bytes, pos, end);
+            if (c == -2 || c == -1 || c == 0 || c == '\n') {
+                return c;
+            }
+            if (word != null) {
+                word.append((char) c);
+            }
+        }
+    }
+
+    /** Decode a character the same way as {@link StreamUtils#readChar(InputStream)}, or return {@code -2} if incomplete */
+    private static int readChar(final byte[] bytes, final int[] pos, final int end) {
+        int i = pos[0];
+        if (i >= end) {
+            return -2;
+        }
+        final int a = bytes[i] & 0xff;
+        int c;
+        if (a == 0) {
+            c = -1;
+            i++;
+        } else if (a < 0xc0) {
+            c = a;
+            i++;
+        } else if (a < 0xe0) {
+            if (end - i < 2) {
+                return -2;
+            }
+            c = (a & 0x1f) << 6 | bytes[i + 1] & 0x3f;
+            i += 2;
+        } else if (a < 0xf0) {
+            if (end - i < 3) {
+                return -2;
+            }
+            c = (a & 0x0f) << 12 | (bytes[i + 1] & 0x3f) << 6 | bytes[i + 2] & 0x3f;
+            i += 3;
+        } else {
+            c = a;
+            i++;
+        }
+        pos[0] = i;
+        return c;
+    }
+
+    private final class SelectorTask implements Runnable {
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+
+        public void run() {
+            long shutdownDeadline = 0L;
+            try {
+                for (;;) {
+                    Runnable task;
+                    while ((task = selectorTasks.poll()) != null) {
+                        task.run();
+                    }
+                    if (shutdown) {
+                        final long now = System.currentTimeMillis();
+                        if (shutdownDeadline == 0L) {
+                            shutdownDeadline = now + SHUTDOWN_TIMEOUT;
+                            closeListeners();
+                        }
+                        if (!hasPendingOutput() || now > shutdownDeadline) {
+                            return;
+                        }
+                    }
+                    selector.select(1000L);
+                    final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        final SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel(), (ConnectionHandler) key.attachment());
+                            continue;
+                        }
+                        final Connection connection = (Connection) key.attachment();
+                        if (key.isWritable()) {
+                            connection.output.writable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read(readBuffer);
+                        }
+                    }
+                    expireInitialRequests();
+                }
+            } catch (Throwable t) {
+                log.error("Process manager I/O loop failed", t);
+            } finally {
+                for (Connection connection : connections.toArray(new Connection[connections.size()])) {
+                    connection.close();
+                }
+                for (SelectionKey key : selector.keys()) {
+                    ManagedProcess.safeClose(key.channel());
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void accept(final ServerSocketChannel serverChannel, final ConnectionHandler handler) {
+            SocketChannel channel = null;
+            try {
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    final Connection connection = new Connection(channel, handler);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connections.add(connection);
+                    log.debugf("Got new connection on %d", channel.socket().getLocalPort());
+                }
+            } catch (IOException e) {
+                log.errorf("Error accepting connection: %s", e.getMessage());
+                if (channel != null) {
+                    ManagedProcess.safeClose(channel);
+                }
+            }
+        }
+
+        private void expireInitialRequests() {
+            final long now = System.currentTimeMillis();
+            for (Connection connection : connections.toArray(new Connection[connections.size()])) {
+                if (connection.isInitialRequestExpired(now)) {
+                    log.errorf("Process acceptor: did not receive any data on socket within %d seconds", Long.valueOf(TimeUnit.MILLISECONDS.toSeconds(INITIAL_REQUEST_TIMEOUT)));
+                    connection.close();
+                }
+            }
+        }
+
+        private boolean hasPendingOutput() {
+            for (Connection connection : connections) {
+                if (connection.output.hasPending()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void closeListeners() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.channel() instanceof ServerSocketChannel) {
+                    ManagedProcess.safeClose(key.channel());
+                }
+            }
+        }
+    }
+
+    private abstract static class Watch {
+        static final int IDLE = 0;
+        static final int ACTIVE = 1;
+        static final int FINISHED = 2;
+
+        /**
+         * Poll the watched streams without blocking.
+         *
+         * @param buffer a buffer to read into
+         * @return {@link #FINISHED} if the watch should be removed, {@link #ACTIVE} if anything was read, or
+         * {@link #IDLE}
+         */
+        abstract int poll(byte[] buffer);
+    }
+
+    /** Discards the output of a process and reports its exit */
+    private final class ProcessWatch extends Watch {
+        private final Managed managed;
+        private final Process process;
+        private final InputStream stdout;
+
+        private ProcessWatch(final Managed managed, final Process process) {
+            this.managed = managed;
+            this.process = process;
+            this.stdout = process.getInputStream();
+        }
+
+        int poll(final byte[] buffer) {
+            final int exitCode;
+            try {
+                exitCode = process.exitValue();
+            } catch (IllegalThreadStateException stillRunning) {
+                return drain(stdout, buffer) ? ACTIVE : IDLE;
+            }
+            drain(stdout, buffer);
+            ManagedProcess.safeClose(stdout);
+            workers.execute(new Runnable() {
+                public void run() {
+                    managed.processEnded(exitCode);
+                }
+            });
+            return FINISHED;
+        }
+
+        private boolean drain(final InputStream stream, final byte[] buffer) {
+            boolean read = false;
+            try {
+                int available;
+                while ((available = stream.available()) > 0) {
+                    if (stream.read(buffer, 0, Math.min(available, buffer.length)) < 0) {
+                        break;
+                    }
+                    read = true;
+                }
+            } catch (IOException ignored) {
+            }
+            return read;
+        }
+    }
+
+    /** Forwards the error stream of a process */
+    private static final class ErrorStreamWatch extends Watch {
+        private final ErrorStreamForwarder forwarder;
+
+        private ErrorStreamWatch(final ErrorStreamForwarder forwarder) {
+            this.forwarder = forwarder;
+        }
+
+        int poll(final byte[] buffer) {
+            final long bytesRead = forwarder.getBytesRead();
+            try {
+                if (forwarder.poll(buffer)) {
+                    return FINISHED;
+                }
+            } catch (IOException e) {
+                ManagedProcess.safeClose(forwarder);
+                return FINISHED;
+            }
+            return forwarder.getBytesRead() == bytesRead ? IDLE : ACTIVE;
+        }
+    }
+
+    private final class ReaperTask implements Runnable {
+        private final byte[] buffer = new byte[65536];
+
+        public void run() {
+            while (!shutdown) {
+                boolean active = false;
+                for (Watch watch : watches) {
+                    try {
+                        switch (watch.poll(buffer)) {
+                            case Watch.FINISHED:
+                                watches.remove(watch);
+                                break;
+                            case Watch.ACTIVE:
+                                active = true;
+                                break;
+                        }
+                    } catch (Throwable t) {
+                        log.error("Error polling process streams", t);
+                        watches.remove(watch);
+                    }
+                }
+                try {
+                    // poll busy streams more often so a chatty process does not fill its pipe
+                    Thread.sleep(active ? ACTIVE_REAPER_INTERVAL : REAPER_INTERVAL);
+                } catch (InterruptedException e) {
+                    // poll again now
+                }
+            }
+        }
+    }
+}
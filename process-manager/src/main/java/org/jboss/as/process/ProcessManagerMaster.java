@@ -25,20 +25,18 @@ package org.jboss.as.process;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.as.communication.InitialSocketRequestException;
-import org.jboss.as.communication.SocketConnection;
-import org.jboss.as.communication.SocketListener;
-import org.jboss.as.communication.SocketListener.SocketHandler;
 import org.jboss.as.process.ManagedProcess.ProcessHandler;
 import org.jboss.as.process.ManagedProcess.RealProcessHandler;
 import org.jboss.as.process.ManagedProcess.StopProcessListener;
@@ -53,23 +51,38 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
 
     public static final String SERVER_MANAGER_PROCESS_NAME = "ServerManager";
 
-    private final SocketListener socketListener;
+    private final ProcessIoLoop ioLoop;
+
+    private final InetAddress address;
+
+    private final int port;
+
+    private volatile ServerSocketChannel serverChannel;
 
     private final Logger log = Logger.getLogger(ProcessManagerMaster.class);
 
-    private final Map<String, ManagedProcess> processes = new HashMap<String, ManagedProcess>();
+    /** The managed processes.  Each process is locked individually, so commands for different processes do not contend */
+    private final ConcurrentMap<String, ManagedProcess> processes = new ConcurrentHashMap<String, ManagedProcess>();
 
     private final AtomicBoolean shutdown = new AtomicBoolean();
 
     private final ProcessHandlerFactory processHandlerFactory;
 
+    private final ProcessSampler sampler;
+
     protected ProcessManagerMaster(InetAddress addr, int port) throws IOException{
         this(null, addr, port);
     }
 
     protected ProcessManagerMaster(ProcessHandlerFactory processHandlerFactory, InetAddress addr, int port) throws IOException {
-        socketListener = SocketListener.createSocketListener("PM", new ProcessAcceptor(), addr, port, 20);
-        this.processHandlerFactory = processHandlerFactory == null ? new RealProcessHandlerFactory() : processHandlerFactory;
+        if (addr == null) {
+            throw new IllegalArgumentException("Null address");
+        }
+        this.address = addr;
+        this.port = port;
+        this.ioLoop = new ProcessIoLoop();
+        this.processHandlerFactory = processHandlerFactory == null ? new RealProcessHandlerFactory(ioLoop) : processHandlerFactory;
+        this.sampler = new ProcessSampler(this, ioLoop);
         Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
 
             @Override
@@ -105,7 +118,9 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
 
     protected synchronized void start() {
         try {
-            socketListener.start();
+            ioLoop.start();
+            serverChannel = ioLoop.listen(address, port, 20, new ProcessAcceptor());
+            sampler.start();
         } catch (IOException e) {
             // AutoGenerated
             throw new RuntimeException(e);
@@ -119,10 +134,7 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
 
         log.info("Initiating shutdown of ProcessManager");
 
-        ManagedProcess serverManager = null;
-        synchronized (processes) {
-            serverManager = processes.get(SERVER_MANAGER_PROCESS_NAME);
-        }
+        final ManagedProcess serverManager = processes.get(SERVER_MANAGER_PROCESS_NAME);
         if (serverManager != null) {
             try {
                 log.info("Stopping ServerManager");
@@ -132,19 +144,18 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
             }
         }
 
-        synchronized (processes) {
-            for (ManagedProcess proc : processes.values()) {
-                try {
-                    log.info("Stopping " + proc.getProcessName());
-                    proc.stop();
-                } catch (IOException e) {
-                    log.error("Error sending SHUTDOWN to " + proc.getProcessName());
-                }
+        for (ManagedProcess proc : processes.values()) {
+            try {
+                log.info("Stopping " + proc.getProcessName());
+                proc.stop();
+            } catch (IOException e) {
+                log.error("Error sending SHUTDOWN to " + proc.getProcessName());
             }
-            processes.clear();
         }
+        processes.clear();
 
-        socketListener.shutdown();
+        sampler.stop();
+        ioLoop.shutdown();
         log.info("Shutdown ProcessManager");
     }
 
@@ -156,12 +167,27 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
         return processHandlerFactory;
     }
 
+    ProcessIoLoop getIoLoop() {
+        return ioLoop;
+    }
+
+    Collection<ManagedProcess> getManagedProcesses() {
+        return processes.values();
+    }
+
     public InetAddress getInetAddress() {
-        return socketListener.getAddress();
+        return getServerChannel().socket().getInetAddress();
     }
 
     public Integer getPort() {
-        return socketListener.getPort();
+        return getServerChannel().socket().getLocalPort();
+    }
+
+    private ServerSocketChannel getServerChannel() {
+        final ServerSocketChannel channel = serverChannel;
+        if (channel == null)
+            throw new IllegalArgumentException("PM not started");
+        return channel;
     }
 
     public void addProcess(final String processName, final List<String> command, final Map<String, String> env, final String workingDirectory) {
@@ -172,16 +198,14 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
         if (shutdown.get()) {
             return;
         }
-        final Map<String, ManagedProcess> processes = this.processes;
-        synchronized (processes) {
-            if (processes.containsKey(processName)) {
-                log.debugf("already have process %s", processName);
-                // ignore
-                return;
-            }
-
-            final ManagedProcess process = new ManagedProcess(this, processName, command, env, workingDirectory, respawnPolicy);
-            processes.put(processName, process);
+        if (processes.containsKey(processName)) {
+            log.debugf("already have process %s", processName);
+            // ignore
+            return;
+        }
+        final ManagedProcess process = new ManagedProcess(this, processName, command, env, workingDirectory, respawnPolicy);
+        if (processes.putIfAbsent(processName, process) != null) {
+            log.debugf("already have process %s", processName);
         }
     }
 
@@ -189,18 +213,15 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
         if (shutdown.get()) {
             return;
         }
-        final Map<String, ManagedProcess> processes = this.processes;
-        synchronized (processes) {
-            final ManagedProcess process = processes.get(processName);
-            if (process == null) {
-                // ignore
-                return;
-            }
-            try {
-                process.start();
-            } catch (IOException e) {
-                // todo log it
-            }
+        final ManagedProcess process = processes.get(processName);
+        if (process == null) {
+            // ignore
+            return;
+        }
+        try {
+            process.start();
+        } catch (IOException e) {
+            // todo log it
         }
     }
 
@@ -208,18 +229,15 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
         if (shutdown.get()) {
             return;
         }
-        final Map<String, ManagedProcess> processes = this.processes;
-        synchronized (processes) {
-            final ManagedProcess process = processes.get(processName);
-            if (process == null) {
-                // ignore
-                return;
-            }
-            try {
-                process.stop();
-            } catch (IOException e) {
-                // todo log it
-            }
+        final ManagedProcess process = processes.get(processName);
+        if (process == null) {
+            // ignore
+            return;
+        }
+        try {
+            process.stop();
+        } catch (IOException e) {
+            // todo log it
         }
     }
 
@@ -227,47 +245,38 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
         if (shutdown.get()) {
             return;
         }
-        final Map<String, ManagedProcess> processes = this.processes;
-        synchronized (processes) {
-            final ManagedProcess process = processes.get(processName);
-            if (process == null) {
-                // ignore
-                return;
-            }
-            synchronized (process) {
-                if (process.isStart()) {
-                    log.debugf("Ignoring remove request for running process %s", processName);
-                    return;
-                }
-                processes.remove(processName);
-            }
+        final ManagedProcess process = processes.get(processName);
+        if (process == null) {
+            // ignore
+            return;
+        }
+        if (!process.remove()) {
+            log.debugf("Ignoring remove request for running process %s", processName);
+            return;
         }
+        processes.remove(processName, process);
     }
 
     public void sendStdin(final String recipient, final byte[] msg) {
         if (shutdown.get()) {
             return;
         }
-        final Map<String, ManagedProcess> processes = this.processes;
-        synchronized (processes) {
-            final ManagedProcess process = processes.get(recipient);
-            if (process == null) {
+        final ManagedProcess process = processes.get(recipient);
+        if (process == null) {
+            // ignore
+            return;
+        }
+        synchronized (process) {
+            if (! process.isStart()) {
                 // ignore
                 return;
             }
-            synchronized (process) {
-                if (! process.isStart()) {
-                    // ignore
-                    return;
-                }
-                try {
-                    process.sendStdin( msg);
-                } catch (IOException e) {
-                    // todo log it
-                }
+            try {
+                process.sendStdin( msg);
+            } catch (IOException e) {
+                // todo log it
             }
         }
-
     }
 
     @Override
@@ -276,15 +285,12 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
             return;
         }
 
-        ManagedProcess serverManagerProcess;
-        synchronized (processes) {
-            try {
-                serverManagerProcess = processes.get(SERVER_MANAGER_PROCESS_NAME);
-                if (serverManagerProcess != null)
-                    serverManagerProcess.down(serverName);
-            } catch (IOException e) {
-                log.error("Problem notifying ServerManager of down process " + serverName);
-            }
+        try {
+            final ManagedProcess serverManagerProcess = processes.get(SERVER_MANAGER_PROCESS_NAME);
+            if (serverManagerProcess != null)
+                serverManagerProcess.down(serverName);
+        } catch (IOException e) {
+            log.error("Problem notifying ServerManager of down process " + serverName);
         }
     }
 
@@ -306,14 +312,12 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
             log.error("Port should be a number " + smPort);
              return;
         }
-        synchronized (processes) {
-            for (ManagedProcess process : processes.values()) {
-                if (!process.getProcessName().equals(SERVER_MANAGER_PROCESS_NAME)) {
-                    try {
-                        process.reconnectToServerManager(smAddress, port);
-                    } catch (IOException e) {
-                        log.warnf("Could not send RECONNECT_SERVER_MANAGER command to " + process.getProcessName());
-                    }
+        for (ManagedProcess process : processes.values()) {
+            if (!process.getProcessName().equals(SERVER_MANAGER_PROCESS_NAME)) {
+                try {
+                    process.reconnectToServerManager(smAddress, port);
+                } catch (IOException e) {
+                    log.warnf("Could not send RECONNECT_SERVER_MANAGER command to " + process.getProcessName());
                 }
             }
         }
@@ -341,12 +345,9 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
              return;
         }
 
-        ManagedProcess process;
-        synchronized (processes) {
-            process = processes.get(server);
-            if (process == null) {
-                return;
-            }
+        final ManagedProcess process = processes.get(server);
+        if (process == null) {
+            return;
         }
 
         try {
@@ -356,36 +357,42 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
         }
     }
 
+    @Override
+    public void requestSamples(String processName) {
+        if (shutdown.get()) {
+            return;
+        }
+        try {
+            final ManagedProcess serverManagerProcess = processes.get(SERVER_MANAGER_PROCESS_NAME);
+            if (serverManagerProcess != null)
+                serverManagerProcess.samples(processName, sampler.getSamples(processName));
+        } catch (IOException e) {
+            log.error("Problem sending samples of process " + processName + " to ServerManager");
+        }
+    }
 
     void registerStopProcessListener(final String name, final StopProcessListener listener) {
-        final Map<String, ManagedProcess> processes = this.processes;
-        synchronized (processes) {
-            ManagedProcess process = processes.get(name);
-            if (process == null)
-                return;
-            process.registerStopProcessListener(listener);
-        }
+        ManagedProcess process = processes.get(name);
+        if (process == null)
+            return;
+        process.registerStopProcessListener(listener);
     }
 
     List<String> getProcessNames(final boolean onlyStarted) {
-        final Map<String, ManagedProcess> processes = this.processes;
-
-        synchronized (processes) {
-            if (onlyStarted) {
-                List<String> started = new ArrayList<String>();
-                for (Map.Entry<String, ManagedProcess> entry : processes.entrySet()) {
-                    if (entry.getValue().isStart()) {
-                        started.add(entry.getKey());
-                    }
+        if (onlyStarted) {
+            List<String> started = new ArrayList<String>();
+            for (Map.Entry<String, ManagedProcess> entry : processes.entrySet()) {
+                if (entry.getValue().isStart()) {
+                    started.add(entry.getKey());
                 }
-                return started;
             }
-            else
-                return new ArrayList<String>(processes.keySet());
+            return started;
         }
+        else
+            return new ArrayList<String>(processes.keySet());
     }
 
-    protected void acceptedConnection(String processName, SocketConnection connection) {
+    protected void acceptedConnection(String processName) {
         //Hook for tests
     }
 
@@ -482,45 +489,69 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
         }
     }
 
-    class ProcessAcceptor implements SocketHandler {
+    /**
+     * Takes the first command received on a new connection, which identifies the process that connected, and
+     * hands the following commands to that process' {@link ProcessOutputStreamHandler}.
+     */
+    class ProcessAcceptor implements ProcessIoLoop.ConnectionHandler {
 
         @Override
-        public void initializeConnection(Socket socket) throws IOException, InitialSocketRequestException {
-            InputStream in = socket.getInputStream();
+        public void handleCommand(ProcessIoLoop.Connection connection, InputStream in) throws IOException {
+            final ProcessOutputStreamHandler handler = (ProcessOutputStreamHandler) connection.getAttachment();
+            if (handler != null) {
+                if (connection.isBinary()) {
+                    handler.handleFrame(in);
+                } else {
+                    handler.handleCommand(in);
+                }
+                return;
+            }
+            try {
+                initializeConnection(connection, in);
+            } catch (InitialSocketRequestException e) {
+                log.errorf("PM process acceptor: Invalid initial request: %s", e.getMessage());
+                connection.close();
+            }
+        }
+
+        @Override
+        public void handleClosed(ProcessIoLoop.Connection connection) {
+            final ProcessOutputStreamHandler handler = (ProcessOutputStreamHandler) connection.getAttachment();
+            if (handler != null) {
+                handler.handleClosed();
+            }
+        }
+
+        private void initializeConnection(ProcessIoLoop.Connection connection, InputStream in) throws IOException, InitialSocketRequestException {
             StringBuilder sb = new StringBuilder();
 
-            socket.setSoTimeout(10000);
             Status status;
             String processName;
-            try {
-                status = StreamUtils.readWord(in, sb);
-                if (status != Status.MORE) {
-                    throw new InitialSocketRequestException("Process acceptor: received '" + sb.toString() + "' but no more");
-                }
-                if (!sb.toString().equals("CONNECTED")) {
-                    throw new InitialSocketRequestException("Process acceptor: received unknown start command '" + sb.toString() + "'");
-                }
-                sb = new StringBuilder();
-                while (status == Status.MORE) {
-                    status = StreamUtils.readWord(in, sb);
+            status = StreamUtils.readWord(in, sb);
+            if (status != Status.MORE) {
+                throw new InitialSocketRequestException("Process acceptor: received '" + sb.toString() + "' but no more");
+            }
+            if (!sb.toString().equals("CONNECTED")) {
+                throw new InitialSocketRequestException("Process acceptor: received unknown start command '" + sb.toString() + "'");
+            }
+            sb = new StringBuilder();
+            status = StreamUtils.readWord(in, sb);
+            processName = sb.toString();
+            if (status == Status.MORE) {
+                // the framing option, already applied by the I/O loop
+                StreamUtils.readWord(in, sb);
+                if (!connection.isBinary()) {
+                    throw new InitialSocketRequestException("Process acceptor: received unknown option '" + sb.toString() + "' from " + processName);
                 }
-                processName = sb.toString();
-            } catch (SocketTimeoutException e) {
-                throw new InitialSocketRequestException("Process acceptor: did not receive any data on socket within 10 seconds");
             }
 
-            final Map<String, ManagedProcess> processes = ProcessManagerMaster.this.processes;
-            ManagedProcess process = null;
-            synchronized (processes) {
-                process = processes.get(processName);
-                if (process == null) {
-                    throw new InitialSocketRequestException("Process acceptor: received connect command for unknown process '" + processName + "' (" +  processes.keySet() + ")");
-                }
+            final ManagedProcess process = processes.get(processName);
+            if (process == null) {
+                throw new InitialSocketRequestException("Process acceptor: received connect command for unknown process '" + processName + "' (" +  processes.keySet() + ")");
             }
-            socket.setSoTimeout(0);
-            SocketConnection connection = SocketConnection.accepted(socket);
-            process.setSocket(connection);
-            acceptedConnection(processName, connection);
+            process.setConnection(connection);
+            connection.setAttachment(new ProcessOutputStreamHandler(ProcessManagerMaster.this, process));
+            acceptedConnection(processName);
         }
     }
 
@@ -537,10 +568,15 @@ public class ProcessManagerMaster implements ProcessOutputStreamHandler.Master{
      * ProcessHandler implementation that creates real processes.
      */
     private static class RealProcessHandlerFactory implements ProcessHandlerFactory {
+        private final ProcessIoLoop ioLoop;
+
+        RealProcessHandlerFactory(ProcessIoLoop ioLoop) {
+            this.ioLoop = ioLoop;
+        }
 
         @Override
         public ProcessHandler createHandler() {
-            return new RealProcessHandler();
+            return new RealProcessHandler(ioLoop);
         }
     }
 }
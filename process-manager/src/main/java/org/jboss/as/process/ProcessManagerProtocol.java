@@ -26,6 +26,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,7 +45,7 @@ public class ProcessManagerProtocol {
      */
     public enum IncomingPmCommand {
         /** Tells the process manager to add a process (SM->PM) */
-        ADD {
+        ADD(1) {
             @Override
             public void sendAddProcess(final OutputStream output, final String processName, final List<String> command, final Map<String, String> env, final String workingDirectory) throws IOException {
                 if (processName == null) {
@@ -59,6 +60,10 @@ public class ProcessManagerProtocol {
                 if (workingDirectory == null) {
                     throw new IllegalArgumentException("workingDirectory is null");
                 }
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(processName).writeString(workingDirectory).writeStrings(command).writeMap(env).writeTo(output);
+                    return;
+                }
                 final StringBuilder b = new StringBuilder(256);
                 b.append(this).append('\0');
                 b.append(processName).append('\0');
@@ -152,15 +157,27 @@ public class ProcessManagerProtocol {
                 master.addProcess(name, execCmd, env, workingDirectory);
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                final String name = frame.readString();
+                final String workingDirectory = frame.readString();
+                final List<String> execCmd = frame.readStrings();
+                master.addProcess(name, execCmd, frame.readMap(), workingDirectory);
+            }
         },
 
         /** Tells the process manager to start a process (SM->PM) */
-        START {
+        START(2) {
             @Override
             public void sendStartProcess(final OutputStream output, final String processName) throws IOException {
                 if (processName == null) {
                     throw new IllegalArgumentException("processName is null");
                 }
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(processName).writeTo(output);
+                    return;
+                }
                 final StringBuilder b = new StringBuilder();
                 b.append(this).append('\0');
                 b.append(processName);
@@ -183,15 +200,24 @@ public class ProcessManagerProtocol {
                 master.startProcess(name);
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                master.startProcess(frame.readString());
+            }
         },
 
         /** Tells the process manager to stop a process (SM->PM) */
-        STOP{
+        STOP(3) {
             @Override
             public void sendStopProcess(final OutputStream output, final String processName) throws IOException {
                 if (processName == null) {
                     throw new IllegalArgumentException("processName is null");
                 }
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(processName).writeTo(output);
+                    return;
+                }
                 final StringBuilder b = new StringBuilder();
                 b.append(this).append('\0');
                 b.append(processName);
@@ -214,15 +240,24 @@ public class ProcessManagerProtocol {
                 master.stopProcess(name);
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                master.stopProcess(frame.readString());
+            }
         },
 
         /** Tells the process manager to remove a process (SM->PM) */
-        REMOVE{
+        REMOVE(4) {
             @Override
             public void sendRemoveProcess(final OutputStream output, final String processName) throws IOException {
                 if (processName == null) {
                     throw new IllegalArgumentException("processName is null");
                 }
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(processName).writeTo(output);
+                    return;
+                }
                 final StringBuilder b = new StringBuilder();
                 b.append(this).append('\0');
                 b.append(processName);
@@ -245,12 +280,21 @@ public class ProcessManagerProtocol {
                 master.removeProcess(name);
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                master.removeProcess(frame.readString());
+            }
         },
 
         /** The SM has been restarted, tell all server processes to reconnect (SM->PM)*/
-        RECONNECT_SERVERS {
+        RECONNECT_SERVERS(5) {
             @Override
             public void sendReconnectServers(final OutputStream output,InetAddress addr, int port) throws IOException {
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(addr.getHostAddress()).writeInt(port).writeTo(output);
+                    return;
+                }
                 StringBuilder b = new StringBuilder();
                 b.append(this);
                 b.append('\0');
@@ -280,12 +324,22 @@ public class ProcessManagerProtocol {
                 master.reconnectServersToServerManager(smAddress, smPort);
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                final String smAddress = frame.readString();
+                master.reconnectServersToServerManager(smAddress, String.valueOf(frame.readInt()));
+            }
         },
 
         /** The SM detected a server's connection went down, tell it to reconnect (SM->PM)*/
-        RECONNECT_SERVER {
+        RECONNECT_SERVER(6) {
             @Override
             public void sendReconnectServer(final OutputStream output,String recipient, InetAddress addr, int port) throws IOException {
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(recipient).writeString(addr.getHostAddress()).writeInt(port).writeTo(output);
+                    return;
+                }
                 StringBuilder b = new StringBuilder();
                 b.append(this);
                 b.append('\0');
@@ -322,15 +376,26 @@ public class ProcessManagerProtocol {
                 master.reconnectProcessToServerManager(serverName, smAddress, smPort);
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                final String serverName = frame.readString();
+                final String smAddress = frame.readString();
+                master.reconnectProcessToServerManager(serverName, smAddress, String.valueOf(frame.readInt()));
+            }
         },
 
         /** Sends data to the process stdin (Process->PM) */
-        SEND_STDIN {
+        SEND_STDIN(7) {
             @Override
             public void sendStdin(final OutputStream output, final String recipient, final byte[] message) throws IOException {
                 if (recipient == null) {
                     throw new IllegalArgumentException("processName is null");
                 }
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(recipient).writeBytes(message).writeTo(output);
+                    return;
+                }
                 final StringBuilder b = new StringBuilder();
                 b.append(this).append('\0');
                 b.append(recipient).append('\0');
@@ -357,8 +422,71 @@ public class ProcessManagerProtocol {
                 }
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                final String recipient = frame.readString();
+                master.sendStdin(recipient, frame.readBytes());
+            }
+        },
+
+        /** Asks the process manager for the resource samples of a process (SM->PM) */
+        REQUEST_SAMPLES(8) {
+            @Override
+            public void sendRequestSamples(final OutputStream output, final String processName) throws IOException {
+                if (processName == null) {
+                    throw new IllegalArgumentException("processName is null");
+                }
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(processName).writeTo(output);
+                    return;
+                }
+                final StringBuilder b = new StringBuilder();
+                b.append(this).append('\0');
+                b.append(processName);
+                b.append('\n');
+                synchronized (output) {
+                    StreamUtils.writeString(output, b);
+                    output.flush();
+                }
+            }
+
+            @Override
+            public Status handleMessage(final InputStream inputStream, Status currentStatus, final Master master, final String processName, final StringBuilder b) throws IOException {
+                Status status = currentStatus;
+                if (status != Status.MORE) {
+                    return status;
+                }
+                status = StreamUtils.readWord(inputStream, b);
+                master.requestSamples(b.toString());
+                return status;
+            }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException {
+                master.requestSamples(frame.readString());
+            }
         };
 
+        private static final IncomingPmCommand[] BY_OPCODE = byOpcode(values());
+
+        /** The opcode of the command in the binary framing */
+        final int opcode;
+
+        IncomingPmCommand(final int opcode) {
+            this.opcode = opcode;
+        }
+
+        /**
+         * Get the command for an opcode of the binary framing.
+         *
+         * @param opcode the opcode
+         * @return the command, or {@code null} if the opcode is unknown
+         */
+        public static IncomingPmCommand forOpcode(final int opcode) {
+            return opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+        }
+
         /**
          * Tell PM to add a process
          *
@@ -489,7 +617,29 @@ public class ProcessManagerProtocol {
             throw new IllegalStateException("Illegal operation for " + this);
         }
 
+        /**
+         * SM asks PM for the resource samples of a process
+         *
+         * @param output output stream to PM
+         * @param processName the name of the sampled process
+         * @throws IOException if the command could not be sent to PM
+         * @throws IllegalStateException if this is not {@link #REQUEST_SAMPLES}
+         */
+        public void sendRequestSamples(final OutputStream output, final String processName) throws IOException {
+            throw new IllegalStateException("Illegal operation for " + this);
+        }
+
         public abstract Status handleMessage(final InputStream inputStream, final Status currentStatus, final Master master, final String processName, final StringBuilder b) throws IOException;
+
+        /**
+         * Handle a command received using the binary framing.
+         *
+         * @param frame the frame, positioned at the first field
+         * @param master the process manager
+         * @param processName the name of the process which sent the command
+         * @throws IOException if the frame is invalid
+         */
+        public abstract void handleFrame(final BinaryFrames.Reader frame, final Master master, final String processName) throws IOException;
     }
 
     /**
@@ -497,12 +647,16 @@ public class ProcessManagerProtocol {
      */
     public enum OutgoingPmCommand {
         /** Shutdown a process (PM->Process) */
-        SHUTDOWN {
+        SHUTDOWN(1) {
             @Override
             public void sendStop(final OutputStream output) throws IOException {
                 synchronized (output) {
-                    StreamUtils.writeString(output, OutgoingPmCommand.SHUTDOWN + "\n");
-                    output.flush();
+                    if (output instanceof BinaryFrames.FramedOutputStream) {
+                        new BinaryFrames.Writer(opcode).writeTo(output);
+                    } else {
+                        StreamUtils.writeString(output, OutgoingPmCommand.SHUTDOWN + "\n");
+                        output.flush();
+                    }
                     try {
                         output.close();
                     } catch (IOException ignore) {
@@ -516,12 +670,21 @@ public class ProcessManagerProtocol {
                 handler.handleShutdown();
                 return currentStatus;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final OutgoingPmCommandHandler handler) throws IOException {
+                handler.handleShutdown();
+            }
         },
 
         /** Reconnect to the SM (PM->Process). */
-        RECONNECT_SERVER_MANAGER {
+        RECONNECT_SERVER_MANAGER(2) {
             @Override
             void sendReconnectToServerManager (final OutputStream output, String addr, int port) throws IOException {
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(addr).writeInt(port).writeTo(output);
+                    return;
+                }
                 StringBuilder sb = new StringBuilder();
                 sb.append(OutgoingPmCommand.RECONNECT_SERVER_MANAGER);
                 sb.append('\0');
@@ -551,12 +714,22 @@ public class ProcessManagerProtocol {
                 }
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final OutgoingPmCommandHandler handler) throws IOException {
+                final String address = frame.readString();
+                handler.handleReconnectServerManager(address, String.valueOf(frame.readInt()));
+            }
         },
 
         /** Sent by PM if when a Process is determined to be down (PM->SM) */
-        DOWN {
+        DOWN(3) {
             @Override
             void sendDown(final OutputStream output, final String stoppedProcessName) throws IOException {
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    new BinaryFrames.Writer(opcode).writeString(stoppedProcessName).writeTo(output);
+                    return;
+                }
                 StringBuilder sb = new StringBuilder();
                 sb.append(OutgoingPmCommand.DOWN);
                 sb.append('\0');
@@ -576,8 +749,140 @@ public class ProcessManagerProtocol {
                 }
                 return status;
             }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final OutgoingPmCommandHandler handler) throws IOException {
+                handler.handleDown(frame.readString());
+            }
+        },
+
+        /** The resource samples of a process, in reply to {@link IncomingPmCommand#REQUEST_SAMPLES} (PM->SM) */
+        SAMPLES(4) {
+            @Override
+            void sendSamples(final OutputStream output, final String processName, final List<ProcessSample> samples) throws IOException {
+                if (output instanceof BinaryFrames.FramedOutputStream) {
+                    final BinaryFrames.Writer frame = new BinaryFrames.Writer(opcode).writeString(processName).writeInt(samples.size());
+                    for (ProcessSample sample : samples) {
+                        frame.writeLong(sample.getTimestamp()).writeLong(sample.getCpuTime()).writeLong(sample.getResidentMemory());
+                        frame.writeInt(sample.getThreads()).writeInt(sample.getOpenFiles());
+                    }
+                    frame.writeTo(output);
+                    return;
+                }
+                final StringBuilder sb = new StringBuilder();
+                sb.append(OutgoingPmCommand.SAMPLES);
+                sb.append('\0');
+                sb.append(processName);
+                sb.append('\0');
+                sb.append(samples.size());
+                for (ProcessSample sample : samples) {
+                    sb.append('\0').append(sample.getTimestamp());
+                    sb.append('\0').append(sample.getCpuTime());
+                    sb.append('\0').append(sample.getResidentMemory());
+                    sb.append('\0').append(sample.getThreads());
+                    sb.append('\0').append(sample.getOpenFiles());
+                }
+                sb.append('\n');
+                synchronized (output) {
+                    StreamUtils.writeString(output, sb.toString());
+                    output.flush();
+                }
+            }
+
+            @Override
+            public Status handleMessage(final InputStream inputStream, final Status currentStatus, final OutgoingPmCommandHandler handler, final StringBuilder b) throws IOException {
+                Status status = currentStatus;
+                if (status != Status.MORE) {
+                    return status;
+                }
+                status = StreamUtils.readWord(inputStream, b);
+                if (status != Status.MORE) {
+                    return status;
+                }
+                final String processName = b.toString();
+                status = StreamUtils.readWord(inputStream, b);
+                final int count;
+                try {
+                    count = Integer.parseInt(b.toString());
+                } catch (NumberFormatException e) {
+                    return status;
+                }
+                final long[] fields = new long[5];
+                final List<ProcessSample> samples = new ArrayList<ProcessSample>();
+                for (int i = 0; i < count; i++) {
+                    for (int j = 0; j < fields.length; j++) {
+                        if (status != Status.MORE) {
+                            return status;
+                        }
+                        status = StreamUtils.readWord(inputStream, b);
+                        try {
+                            fields[j] = Long.parseLong(b.toString());
+                        } catch (NumberFormatException e) {
+                            return status;
+                        }
+                    }
+                    samples.add(new ProcessSample(fields[0], fields[1], fields[2], (int) fields[3], (int) fields[4]));
+                }
+                handler.handleSamples(processName, samples);
+                return status;
+            }
+
+            @Override
+            public void handleFrame(final BinaryFrames.Reader frame, final OutgoingPmCommandHandler handler) throws IOException {
+                final String processName = frame.readString();
+                final int count = frame.readInt();
+                final List<ProcessSample> samples = new ArrayList<ProcessSample>();
+                for (int i = 0; i < count; i++) {
+                    final long timestamp = frame.readLong();
+                    final long cpuTime = frame.readLong();
+                    final long residentMemory = frame.readLong();
+                    final int threads = frame.readInt();
+                    samples.add(new ProcessSample(timestamp, cpuTime, residentMemory, threads, frame.readInt()));
+                }
+                handler.handleSamples(processName, samples);
+            }
         };
 
+        private static final OutgoingPmCommand[] BY_OPCODE = byOpcode(values());
+
+        /** The opcode of the command in the binary framing */
+        final int opcode;
+
+        OutgoingPmCommand(final int opcode) {
+            this.opcode = opcode;
+        }
+
+        /**
+         * Get the command for an opcode of the binary framing.
+         *
+         * @param opcode the opcode
+         * @return the command, or {@code null} if the opcode is unknown
+         */
+        public static OutgoingPmCommand forOpcode(final int opcode) {
+            return opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+        }
+
+        /**
+         * Read a command sent using the binary framing and pass it to a handler.  Commands with an unknown opcode are
+         * skipped.
+         *
+         * @param input the stream to read from
+         * @param handler the handler
+         * @return {@code false} if the stream has ended
+         * @throws IOException if the command could not be read
+         */
+        public static boolean readFrame(final InputStream input, final OutgoingPmCommandHandler handler) throws IOException {
+            final BinaryFrames.Reader frame = BinaryFrames.Reader.read(input);
+            if (frame == null) {
+                return false;
+            }
+            final OutgoingPmCommand command = forOpcode(frame.getOpcode());
+            if (command != null) {
+                command.handleFrame(frame, handler);
+            }
+            return true;
+        }
+
         /**
          * Tell process to stop
          *
@@ -638,13 +943,53 @@ public class ProcessManagerProtocol {
             throw new IllegalStateException("Illegal operation for " + this);
         }
 
+        /**
+         * Send the resource samples of a process to SM
+         *
+         * @param output output stream to SM
+         * @param processName the name of the sampled process
+         * @param samples the samples, oldest first
+         * @throws IOException if the command could not be sent to process
+         * @throws IllegalStateException if this is not {@link #SAMPLES}
+         */
+        void sendSamples(final OutputStream output, final String processName, final List<ProcessSample> samples) throws IOException {
+            throw new IllegalStateException("Illegal operation for " + this);
+        }
+
         public abstract Status handleMessage(final InputStream inputStream, final Status currentStatus, final OutgoingPmCommandHandler handler, final StringBuilder b) throws IOException;
+
+        /**
+         * Handle a command received using the binary framing.
+         *
+         * @param frame the frame, positioned at the first field
+         * @param handler the handler
+         * @throws IOException if the frame is invalid
+         */
+        public abstract void handleFrame(final BinaryFrames.Reader frame, final OutgoingPmCommandHandler handler) throws IOException;
+    }
+
+    private static <T extends Enum<T>> T[] byOpcode(final T[] commands) {
+        int max = 0;
+        for (T command : commands) {
+            max = Math.max(max, opcodeOf(command));
+        }
+        final T[] byOpcode = Arrays.copyOf(commands, max + 1);
+        Arrays.fill(byOpcode, null);
+        for (T command : commands) {
+            byOpcode[opcodeOf(command)] = command;
+        }
+        return byOpcode;
+    }
+
+    private static int opcodeOf(final Enum<?> command) {
+        return command instanceof IncomingPmCommand ? ((IncomingPmCommand) command).opcode : ((OutgoingPmCommand) command).opcode;
     }
 
     public interface OutgoingPmCommandHandler{
         void handleShutdown();
         void handleDown(String serverName);
         void handleReconnectServerManager(String address, String port);
+        void handleSamples(String processName, List<ProcessSample> samples);
     }
 
     public interface IncomingPmCommandHandler {
@@ -21,66 +21,80 @@
  */
 package org.jboss.as.process;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.SocketException;
 import java.util.List;
 import java.util.Map;
 
 import org.jboss.as.process.ProcessManagerProtocol.IncomingPmCommand;
 import org.jboss.logging.Logger;
 
-public final class ProcessOutputStreamHandler implements Runnable {
+/**
+ * Handles the commands a process sends to the process manager.  The {@link ProcessIoLoop} splits the bytes read from
+ * the process' socket into commands, and calls {@link #handleCommand(InputStream)} or {@link #handleFrame(InputStream)}
+ * for each of them in order, depending on the framing the process selected.
+ */
+public final class ProcessOutputStreamHandler {
 
     private final Master master;
 
     private final Managed managed;
 
-    private final InputStream inputStream;
-
     private final Logger log;
 
-    public ProcessOutputStreamHandler(Master master, Managed managed, InputStream inputStream) {
+    public ProcessOutputStreamHandler(Master master, Managed managed) {
         this.master = master;
         this.managed = managed;
-        this.inputStream = inputStream;
         this.log = Logger.getLogger(this.getClass().getName() + "-" + managed.getProcessName());
     }
 
-    public void run() {
-
+    /**
+     * Handle a single command.
+     *
+     * @param inputStream a stream containing the bytes of the command
+     * @throws IOException if the command could not be read
+     */
+    public void handleCommand(final InputStream inputStream) throws IOException {
         // FIXME reliable transmission support (JBAS-8262)
         final StringBuilder b = new StringBuilder();
-        final String processName = managed.getProcessName();
+        Status status = StreamUtils.readWord(inputStream, b);
+        if (status == Status.END_OF_STREAM) {
+            return;
+        }
         try {
-            for (;;) {
-                Status status = StreamUtils.readWord(inputStream, b);
-                if (status == Status.END_OF_STREAM) {
-                    log.info("Received end of stream, shutting down " + processName);
-                    managed.processInputClosed();
-                    // no more input
-                    return;
-                }
-                try {
-                    final IncomingPmCommand command = IncomingPmCommand.valueOf(b.toString());
-                    status = command.handleMessage(inputStream, status, master, processName, b);
-                } catch (IllegalArgumentException e) {
-                    // unknown command...
-                    log.error("Received unknown command: " + b.toString());
-                }
-                if (status == Status.MORE) StreamUtils.readToEol(inputStream);
-
-            }
-        } catch (SocketException e) {
-            log.error("Socket closed for " + processName + ", shutting down");
-            managed.processInputClosed();
-        } catch (Exception e) {
-            // exception caught, shut down channel and exit
-            log.error("Output stream handler for process " + processName + " caught an exception; shutting down", e);
-            managed.processInputClosed();
+            final IncomingPmCommand command = IncomingPmCommand.valueOf(b.toString());
+            command.handleMessage(inputStream, status, master, managed.getProcessName(), b);
+        } catch (IllegalArgumentException e) {
+            // unknown command...
+            log.error("Received unknown command: " + b.toString());
+        }
+    }
 
-        } finally {
-            ManagedProcess.safeClose(inputStream);
+    /**
+     * Handle a single command sent using the binary framing.
+     *
+     * @param inputStream a stream containing the bytes of the frame
+     * @throws IOException if the frame could not be read
+     */
+    public void handleFrame(final InputStream inputStream) throws IOException {
+        final BinaryFrames.Reader frame = BinaryFrames.Reader.read(inputStream);
+        if (frame == null) {
+            return;
+        }
+        final IncomingPmCommand command = IncomingPmCommand.forOpcode(frame.getOpcode());
+        if (command == null) {
+            log.error("Received unknown opcode: " + frame.getOpcode());
+            return;
         }
+        command.handleFrame(frame, master, managed.getProcessName());
+    }
+
+    /**
+     * Handle the socket being closed.
+     */
+    public void handleClosed() {
+        log.info("Received end of stream, shutting down " + managed.getProcessName());
+        managed.processInputClosed();
     }
 
     public interface Master {
@@ -92,6 +106,7 @@ public final class ProcessOutputStreamHandler implements Runnable {
         void downServer(String serverName);
         void reconnectServersToServerManager(String smAddress, String smPort);
         void reconnectProcessToServerManager(String server, String smAddress, String smPort);
+        void requestSamples(String processName);
         boolean isShutdown();
     }
 
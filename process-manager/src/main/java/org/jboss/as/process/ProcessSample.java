@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.process;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * The resources used by a process at one point in time, as sampled by the process manager from {@code /proc}.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class ProcessSample implements Serializable {
+
+    private static final long serialVersionUID = -2911264925513064186L;
+
+    private final long timestamp;
+    private final long cpuTime;
+    private final long residentMemory;
+    private final int threads;
+    private final int openFiles;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param timestamp the time the sample was taken, in milliseconds since the epoch
+     * @param cpuTime the user and system CPU time used by the process so far, in milliseconds
+     * @param residentMemory the resident set size of the process, in bytes
+     * @param threads the number of threads of the process
+     * @param openFiles the number of open file descriptors of the process
+     */
+    public ProcessSample(final long timestamp, final long cpuTime, final long residentMemory, final int threads, final int openFiles) {
+        this.timestamp = timestamp;
+        this.cpuTime = cpuTime;
+        this.residentMemory = residentMemory;
+        this.threads = threads;
+        this.openFiles = openFiles;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    public long getResidentMemory() {
+        return residentMemory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getOpenFiles() {
+        return openFiles;
+    }
+
+    /**
+     * Get the CPU load of the process between an earlier sample and this one.
+     *
+     * @param previous the earlier sample, may be {@code null}
+     * @return the CPU time used as a percentage of the elapsed time, which exceeds 100 if the process used several
+     * processors, or {@code -1} if it is unknown
+     */
+    public int getCpuLoad(final ProcessSample previous) {
+        if (previous == null || timestamp <= previous.timestamp || cpuTime < previous.cpuTime) {
+            return -1;
+        }
+        return (int) ((cpuTime - previous.cpuTime) * 100L / (timestamp - previous.timestamp));
+    }
+
+    @Override
+    public String toString() {
+        return new Date(timestamp) + " cpu=" + cpuTime + "ms rss=" + (residentMemory >> 10) + "kB threads=" + threads + " fds=" + openFiles;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Periodically samples the CPU time, resident memory, threads and open file descriptors of the running processes
+ * from {@code /proc}, and keeps the most recent samples of each process.  Sampling is only available on Linux; on
+ * other platforms no samples are taken.
+ * <p>
+ * A sampling run reads three small files per process into a reused buffer on a worker thread of the
+ * {@link ProcessIoLoop}, so it does not need a thread of its own.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class ProcessSampler implements Runnable {
+
+    /** The system property used to configure the sampling interval in milliseconds, {@code 0} to disable sampling */
+    static final String INTERVAL = "jboss.process.manager.sample.interval";
+
+    /** The system property used to configure the number of samples kept per process */
+    static final String HISTORY_SIZE = "jboss.process.manager.sample.history";
+
+    private static final Logger log = Logger.getLogger(ProcessSampler.class);
+
+    private static final long DEFAULT_INTERVAL = 10000L;
+    private static final int DEFAULT_HISTORY_SIZE = 60;
+
+    private static final File PROC = new File("/proc");
+    /** The CPU times in {@code stat} are in clock ticks, and USER_HZ is 100 on every Linux platform */
+    private static final long MILLIS_PER_TICK = 10L;
+    static final int UTIME_FIELD = 14;
+    static final int STIME_FIELD = 15;
+
+    private final ProcessManagerMaster master;
+    private final ProcessIoLoop ioLoop;
+    private final long interval;
+    private final int historySize;
+    private final ConcurrentMap<String, History> histories = new ConcurrentHashMap<String, History>();
+    private final byte[] buffer = new byte[8192];
+    private volatile boolean stopped;
+
+    ProcessSampler(final ProcessManagerMaster master, final ProcessIoLoop ioLoop) {
+        this(master, ioLoop, Long.getLong(INTERVAL, DEFAULT_INTERVAL).longValue(), Integer.getInteger(HISTORY_SIZE, DEFAULT_HISTORY_SIZE).intValue());
+    }
+
+    ProcessSampler(final ProcessManagerMaster master, final ProcessIoLoop ioLoop, final long interval, final int historySize) {
+        this.master = master;
+        this.ioLoop = ioLoop;
+        this.interval = interval;
+        this.historySize = Math.max(1, historySize);
+    }
+
+    /**
+     * Start sampling, unless it is disabled or {@code /proc} is not available.
+     */
+    void start() {
+        if (interval <= 0L) {
+            log.debug("Process sampling is disabled");
+            return;
+        }
+        if (!new File(PROC, "self/stat").canRead()) {
+            log.debug("Process sampling is not supported on this platform");
+            return;
+        }
+        ioLoop.schedule(this, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Get the samples kept for a process.
+     *
+     * @param processName the name of the process
+     * @return the samples, oldest first
+     */
+    List<ProcessSample> getSamples(final String processName) {
+        final History history = histories.get(processName);
+        return history == null ? Collections.<ProcessSample>emptyList() : history.toList();
+    }
+
+    public void run() {
+        if (stopped) {
+            return;
+        }
+        try {
+            sample();
+        } catch (Throwable t) {
+            log.debugf(t, "Failed to sample processes");
+        } finally {
+            if (!stopped) {
+                try {
+                    ioLoop.schedule(this, interval, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // the process manager is shutting down
+                }
+            }
+        }
+    }
+
+    private void sample() {
+        final Set<String> names = new HashSet<String>();
+        for (ManagedProcess process : master.getManagedProcesses()) {
+            final String processName = process.getProcessName();
+            names.add(processName);
+            final int pid = process.getPid();
+            if (pid <= 0) {
+                continue;
+            }
+            final ProcessSample sample = sample(pid);
+            if (sample == null) {
+                continue;
+            }
+            History history = histories.get(processName);
+            if (history == null) {
+                history = new History(historySize);
+                final History existing = histories.putIfAbsent(processName, history);
+                if (existing != null) {
+                    history = existing;
+                }
+            }
+            history.add(sample);
+        }
+        histories.keySet().retainAll(names);
+    }
+
+    /**
+     * Sample a process.
+     *
+     * @param pid the process id
+     * @return the sample, or {@code null} if the process no longer exists
+     */
+    private ProcessSample sample(final int pid) {
+        final File dir = new File(PROC, Integer.toString(pid));
+        final long timestamp = System.currentTimeMillis();
+        try {
+            int length = read(new File(dir, "stat"));
+            final long cpuTime = (statField(buffer, length, UTIME_FIELD) + statField(buffer, length, STIME_FIELD)) * MILLIS_PER_TICK;
+            length = read(new File(dir, "status"));
+            final long residentMemory = statusField(buffer, length, "VmRSS:");
+            final long threads = statusField(buffer, length, "Threads:");
+            final String[] fds = new File(dir, "fd").list();
+            return new ProcessSample(timestamp, cpuTime, residentMemory < 0L ? 0L : residentMemory << 10, (int) threads, fds == null ? -1 : fds.length);
+        } catch (IOException e) {
+            // the process has exited
+            return null;
+        }
+    }
+
+    private int read(final File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            int length = 0;
+            int count;
+            while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += count;
+            }
+            return length;
+        } finally {
+            ManagedProcess.safeClose(in);
+        }
+    }
+
+    /**
+     * Get a numeric field of {@code stat}.  The fields are separated by spaces, but the second field is the command
+     * name in parentheses and may itself contain spaces, so fields are counted from the last closing parenthesis.
+     */
+    static long statField(final byte[] buffer, final int length, final int field) {
+        int i = length - 1;
+        while (i >= 0 && buffer[i] != ')') {
+            i--;
+        }
+        // skip ") " to the third field
+        i += 2;
+        for (int f = 3; f < field && i < length; f++) {
+            while (i < length && buffer[i] != ' ') {
+                i++;
+            }
+            i++;
+        }
+        return parseLong(buffer, i, length);
+    }
+
+    /**
+     * Get the numeric value of a {@code status} line, or {@code -1} if the line is missing.
+     */
+    static long statusField(final byte[] buffer, final int length, final String name) {
+        int i = 0;
+        while (i < length) {
+            if (startsWith(buffer, i, length, name)) {
+                i += name.length();
+                while (i < length && (buffer[i] == ' ' || buffer[i] == '\t')) {
+                    i++;
+                }
+                return parseLong(buffer, i, length);
+            }
+            while (i < length && buffer[i] != '\n') {
+                i++;
+            }
+            i++;
+        }
+        return -1L;
+    }
+
+    private static boolean startsWith(final byte[] buffer, final int offset, final int length, final String prefix) {
+        if (length - offset < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseLong(final byte[] buffer, int i, final int length) {
+        long value = 0L;
+        for (; i < length && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            value = value * 10L + (buffer[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * A ring buffer of the most recent samples of a process.
+     */
+    static final class History {
+        private final ProcessSample[] samples;
+        private int next;
+        private int count;
+
+        History(final int size) {
+            samples = new ProcessSample[size];
+        }
+
+        synchronized void add(final ProcessSample sample) {
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+        }
+
+        synchronized List<ProcessSample> toList() {
+            final List<ProcessSample> list = new ArrayList<ProcessSample>(count);
+            for (int i = next - count; i < next; i++) {
+                list.add(samples[(i + samples.length) % samples.length]);
+            }
+            return list;
+        }
+    }
+}
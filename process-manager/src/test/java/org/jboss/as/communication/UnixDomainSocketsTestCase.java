@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.communication;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the AF_UNIX sockets opened through {@link UnixDomainSockets}.  The tests pass without checking anything on
+ * JVMs which do not support them.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class UnixDomainSocketsTestCase {
+
+    private File dir;
+    private File socketFile;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = File.createTempFile("uds", "");
+        dir.delete();
+        dir.mkdir();
+        socketFile = new File(dir, "test.sock");
+    }
+
+    @After
+    public void deleteDir() {
+        delete(dir);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            return;
+        }
+        final ServerSocketChannel server = UnixDomainSockets.listen(socketFile, 5);
+        try {
+            final SocketChannel client = UnixDomainSockets.connect(socketFile);
+            final SocketChannel accepted = server.accept();
+            try {
+                final byte[] request = bytes(100000);
+                final OutputStream out = UnixDomainSockets.getOutputStream(client);
+                // write from another thread, the request does not fit in the socket buffers
+                final Thread writer = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            out.write(request);
+                            out.write(7);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                writer.start();
+                final InputStream in = UnixDomainSockets.getInputStream(accepted);
+                assertArrayEquals(request, readFully(in, request.length));
+                assertEquals(7, in.read());
+                writer.join();
+
+                UnixDomainSockets.getOutputStream(accepted).write(42);
+                assertEquals(42, UnixDomainSockets.getInputStream(client).read());
+
+                client.close();
+                assertEquals(-1, in.read());
+            } finally {
+                client.close();
+                accepted.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testListenCreatesDirectory() throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            return;
+        }
+        final File nested = new File(new File(dir, "nested"), "test.sock");
+        UnixDomainSockets.listen(nested, 1).close();
+        assertTrue(nested.exists());
+    }
+
+    @Test
+    public void testListenReplacesStaleSocket() throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            return;
+        }
+        // closing the channel leaves the socket file behind, as a killed process would
+        UnixDomainSockets.listen(socketFile, 1).close();
+        assertTrue(socketFile.exists());
+
+        final ServerSocketChannel server = UnixDomainSockets.listen(socketFile, 1);
+        try {
+            UnixDomainSockets.connect(socketFile).close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testListenKeepsLiveSocket() throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            return;
+        }
+        final ServerSocketChannel server = UnixDomainSockets.listen(socketFile, 5);
+        try {
+            try {
+                UnixDomainSockets.listen(socketFile, 1).close();
+                fail("Listened on a socket file which is in use");
+            } catch (IOException expected) {
+            }
+            // the first listener still gets connections
+            final SocketChannel client = UnixDomainSockets.connect(socketFile);
+            server.accept().close();
+            client.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testListenKeepsOtherFiles() throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            return;
+        }
+        final FileOutputStream out = new FileOutputStream(socketFile);
+        out.write(bytes(10));
+        out.close();
+        try {
+            UnixDomainSockets.listen(socketFile, 1).close();
+            fail("Replaced a regular file");
+        } catch (IOException expected) {
+        }
+        assertTrue(socketFile.isFile());
+        assertEquals(10L, socketFile.length());
+
+        final File directory = new File(dir, "directory.sock");
+        directory.mkdir();
+        try {
+            UnixDomainSockets.listen(directory, 1).close();
+            fail("Replaced a directory");
+        } catch (IOException expected) {
+        }
+        assertTrue(directory.isDirectory());
+    }
+
+    @Test
+    public void testConnectWithoutListener() throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            return;
+        }
+        try {
+            UnixDomainSockets.connect(socketFile).close();
+            fail("Connected to a missing socket file");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        if (UnixDomainSockets.isSupported()) {
+            return;
+        }
+        try {
+            UnixDomainSockets.listen(socketFile, 1);
+            fail("Listened without AF_UNIX support");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    private static byte[] bytes(final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        return bytes;
+    }
+
+    private static byte[] readFully(final InputStream in, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(bytes, read, length - read);
+            if (n == -1) {
+                throw new IOException("Stream ended after " + read + " bytes");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
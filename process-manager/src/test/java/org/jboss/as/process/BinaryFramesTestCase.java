@@ -0,0 +1,292 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommand;
+import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
+import org.junit.Test;
+
+/**
+ * Tests the binary framing of the process manager protocol.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class BinaryFramesTestCase {
+
+    @Test
+    public void testFieldsRoundTrip() throws Exception {
+        final Map<String, String> env = new LinkedHashMap<String, String>();
+        env.put("JAVA_HOME", "/opt/java");
+        env.put("EMPTY", null);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BinaryFrames.Writer(7)
+            .writeInt(-42)
+            .writeLong(Long.MIN_VALUE + 3)
+            .writeString("caf\u00e9")
+            .writeString(null)
+            .writeBytes(new byte[] {1, 2, 3})
+            .writeStrings(Arrays.asList("java", "-server"))
+            .writeMap(env)
+            .writeTo(output);
+
+        final InputStream input = new ByteArrayInputStream(output.toByteArray());
+        final BinaryFrames.Reader frame = BinaryFrames.Reader.read(input);
+        assertEquals(7, frame.getOpcode());
+        assertEquals(-42, frame.readInt());
+        assertEquals(Long.MIN_VALUE + 3, frame.readLong());
+        assertEquals("caf\u00e9", frame.readString());
+        assertNull(frame.readString());
+        assertArrayEquals(new byte[] {1, 2, 3}, frame.readBytes());
+        assertEquals(Arrays.asList("java", "-server"), frame.readStrings());
+        final Map<String, String> readEnv = frame.readMap();
+        assertEquals(2, readEnv.size());
+        assertEquals("/opt/java", readEnv.get("JAVA_HOME"));
+        // like the text framing, a null value is sent as an empty string
+        assertEquals("", readEnv.get("EMPTY"));
+        assertNull(BinaryFrames.Reader.read(input));
+    }
+
+    @Test
+    public void testFrameGrowsPastInitialBuffer() throws Exception {
+        final byte[] payload = new byte[1000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BinaryFrames.Writer(1).writeBytes(payload).writeTo(output);
+        final byte[] bytes = output.toByteArray();
+        assertEquals(4 + 2 + 4 + payload.length, bytes.length);
+        assertArrayEquals(payload, BinaryFrames.Reader.read(new ByteArrayInputStream(bytes)).readBytes());
+    }
+
+    @Test
+    public void testFrameLength() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BinaryFrames.Writer(3).writeString("server-1").writeTo(output);
+        new BinaryFrames.Writer(1).writeTo(output);
+        final byte[] bytes = output.toByteArray();
+        final int first = 4 + 2 + 4 + "server-1".length();
+
+        assertEquals(-1, BinaryFrames.frameLength(bytes, 0, 3));
+        assertEquals(-1, BinaryFrames.frameLength(bytes, 0, first - 1));
+        assertEquals(first, BinaryFrames.frameLength(bytes, 0, bytes.length));
+        assertEquals(6, BinaryFrames.frameLength(bytes, first, bytes.length));
+        assertEquals(-1, BinaryFrames.frameLength(bytes, first, bytes.length - 1));
+    }
+
+    @Test
+    public void testInvalidFrameLength() throws Exception {
+        try {
+            BinaryFrames.frameLength(new byte[] {0, 0, 0, 1, 1}, 0, 5);
+            fail("Should have thrown StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+        }
+        try {
+            BinaryFrames.frameLength(new byte[] {(byte) 0x80, 0, 0, 0}, 0, 4);
+            fail("Should have thrown StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+        }
+        try {
+            BinaryFrames.Reader.read(new ByteArrayInputStream(new byte[] {0x7f, 0, 0, 0}));
+            fail("Should have thrown StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+        }
+    }
+
+    @Test
+    public void testUnsupportedVersion() throws Exception {
+        try {
+            BinaryFrames.Reader.read(new ByteArrayInputStream(new byte[] {0, 0, 0, 2, 2, 1}));
+            fail("Should have thrown StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+        }
+    }
+
+    @Test
+    public void testTruncatedFrame() throws Exception {
+        try {
+            BinaryFrames.Reader.read(new ByteArrayInputStream(new byte[] {0, 0, 0, 8, 1, 1, 0}));
+            fail("Should have thrown EOFException");
+        } catch (EOFException expected) {
+        }
+        final BinaryFrames.Reader frame = read(new BinaryFrames.Writer(1).writeInt(100));
+        try {
+            frame.readString();
+            fail("Should have thrown EOFException");
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test
+    public void testLargeCountRejected() throws Exception {
+        // counts which overflow an int when multiplied by the element size must not reach the list allocation
+        for (int count : new int[] {1 << 30, (1 << 30) + 1, 0x40000001, Integer.MAX_VALUE}) {
+            try {
+                read(new BinaryFrames.Writer(1).writeInt(count)).readStrings();
+                fail("Should have thrown EOFException for " + count);
+            } catch (EOFException expected) {
+            }
+            try {
+                read(new BinaryFrames.Writer(1).writeInt(count)).readMap();
+                fail("Should have thrown EOFException for " + count);
+            } catch (EOFException expected) {
+            }
+        }
+        // a map entry takes at least eight bytes
+        try {
+            read(new BinaryFrames.Writer(1).writeInt(2).writeInt(0).writeInt(0)).readMap();
+            fail("Should have thrown EOFException");
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test
+    public void testNegativeCountRejected() throws Exception {
+        try {
+            read(new BinaryFrames.Writer(1).writeInt(-1)).readStrings();
+            fail("Should have thrown StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+        }
+        try {
+            read(new BinaryFrames.Writer(1).writeInt(-2)).readBytes();
+            fail("Should have thrown StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+        }
+    }
+
+    @Test
+    public void testConnectOptionNegotiation() throws Exception {
+        assertTrue(BinaryFrames.isRequested(initialRequest("CONNECTED", "ServerManager", BinaryFrames.CONNECT_OPTION)));
+        assertFalse(BinaryFrames.isRequested(initialRequest("CONNECTED", "ServerManager")));
+        // the option only counts as the last element
+        assertFalse(BinaryFrames.isRequested(initialRequest("CONNECTED", BinaryFrames.CONNECT_OPTION, "ServerManager")));
+        // another framing version is not selected
+        assertFalse(BinaryFrames.isRequested(initialRequest("CONNECTED", "ServerManager", "BINARY_FRAMING_" + (BinaryFrames.VERSION + 1))));
+        assertFalse(BinaryFrames.isRequested(new byte[] {(byte) 0xff}));
+    }
+
+    @Test
+    public void testTextCommandsTranscodedToFrames() throws Exception {
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        OutgoingPmCommand.DOWN.sendDown(text, "server-1");
+        OutgoingPmCommand.RECONNECT_SERVER_MANAGER.sendReconnectToServerManager(text, "127.0.0.1", 9999);
+        OutgoingPmCommand.SAMPLES.sendSamples(text, "server-2", Collections.singletonList(new ProcessSample(1L, 2L, 3L, 4, 5)));
+        OutgoingPmCommand.SHUTDOWN.sendStop(text);
+
+        final InputStream frames = new ByteArrayInputStream(ManagedProcess.toFrames(text.toByteArray()));
+        final RecordingHandler handler = new RecordingHandler();
+        while (OutgoingPmCommand.readFrame(frames, handler)) {
+        }
+        assertEquals(Arrays.asList("DOWN server-1", "RECONNECT 127.0.0.1:9999", "SAMPLES server-2 1 2 3 4 5", "SHUTDOWN"), handler.calls);
+    }
+
+    @Test
+    public void testFramedCommandsMatchText() throws Exception {
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        final BinaryFrames.FramedOutputStream framed = new BinaryFrames.FramedOutputStream(frames);
+        OutgoingPmCommand.DOWN.sendDown(framed, "server-1");
+        OutgoingPmCommand.RECONNECT_SERVER_MANAGER.sendReconnectToServerManager(framed, "127.0.0.1", 9999);
+
+        final InputStream input = new ByteArrayInputStream(frames.toByteArray());
+        final RecordingHandler handler = new RecordingHandler();
+        assertTrue(OutgoingPmCommand.readFrame(input, handler));
+        assertTrue(OutgoingPmCommand.readFrame(input, handler));
+        assertFalse(OutgoingPmCommand.readFrame(input, handler));
+        assertEquals(Arrays.asList("DOWN server-1", "RECONNECT 127.0.0.1:9999"), handler.calls);
+    }
+
+    @Test
+    public void testUnknownOpcodeSkipped() throws Exception {
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        new BinaryFrames.Writer(200).writeString("ignored").writeTo(frames);
+        OutgoingPmCommand.DOWN.sendDown(new BinaryFrames.FramedOutputStream(frames), "server-1");
+
+        final InputStream input = new ByteArrayInputStream(frames.toByteArray());
+        final RecordingHandler handler = new RecordingHandler();
+        assertTrue(OutgoingPmCommand.readFrame(input, handler));
+        assertTrue(OutgoingPmCommand.readFrame(input, handler));
+        assertEquals(Collections.singletonList("DOWN server-1"), handler.calls);
+    }
+
+    private static BinaryFrames.Reader read(final BinaryFrames.Writer writer) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.writeTo(output);
+        return BinaryFrames.Reader.read(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    private static byte[] initialRequest(final String... elements) throws IOException {
+        // the format used by SocketConnection.connect
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < elements.length; i++) {
+            b.append(elements[i]).append(i == elements.length - 1 ? '\n' : '\0');
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StreamUtils.writeString(output, b.toString());
+        return output.toByteArray();
+    }
+
+    private static class RecordingHandler implements OutgoingPmCommandHandler {
+        final List<String> calls = new ArrayList<String>();
+
+        public void handleShutdown() {
+            calls.add("SHUTDOWN");
+        }
+
+        public void handleDown(final String serverName) {
+            calls.add("DOWN " + serverName);
+        }
+
+        public void handleReconnectServerManager(final String address, final String port) {
+            calls.add("RECONNECT " + address + ":" + port);
+        }
+
+        public void handleSamples(final String processName, final List<ProcessSample> samples) {
+            final StringBuilder b = new StringBuilder("SAMPLES ").append(processName);
+            for (ProcessSample sample : samples) {
+                b.append(' ').append(sample.getTimestamp()).append(' ').append(sample.getCpuTime()).append(' ')
+                    .append(sample.getResidentMemory()).append(' ').append(sample.getThreads()).append(' ').append(sample.getOpenFiles());
+            }
+            calls.add(b.toString());
+        }
+    }
+}
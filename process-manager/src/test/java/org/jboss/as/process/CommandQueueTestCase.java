@@ -0,0 +1,319 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the ring of the {@link CommandQueue} and its overflow policies, sending the frames over a connection of a
+ * {@link ProcessIoLoop}.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public class CommandQueueTestCase {
+
+    private static final long LONG_TIMEOUT = TimeUnit.SECONDS.toMillis(10L);
+
+    private final BlockingQueue<ProcessIoLoop.Connection> connections = new LinkedBlockingQueue<ProcessIoLoop.Connection>();
+    private ProcessIoLoop ioLoop;
+    private ServerSocketChannel serverChannel;
+    private Socket socket;
+    private BufferedReader reader;
+
+    @Before
+    public void startIoLoop() throws IOException {
+        ioLoop = new ProcessIoLoop(1);
+        ioLoop.start();
+        serverChannel = ioLoop.listen(InetAddress.getByName("127.0.0.1"), 0, 5, new ProcessIoLoop.ConnectionHandler() {
+            public void handleCommand(final ProcessIoLoop.Connection connection, final InputStream command) {
+                if (connection.getAttachment() == null) {
+                    connection.setAttachment(Boolean.TRUE);
+                    connections.add(connection);
+                }
+            }
+
+            public void handleClosed(final ProcessIoLoop.Connection connection) {
+            }
+        });
+    }
+
+    @After
+    public void stopIoLoop() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+        serverChannel.close();
+        ioLoop.shutdown();
+    }
+
+    @Test
+    public void testFullRingRejectsUntilDrained() throws Exception {
+        final CommandQueue queue = new CommandQueue("test", 4, Long.MAX_VALUE, CommandQueue.Overflow.FAIL, LONG_TIMEOUT);
+        final OutputStream out = queue.newOutputStream(false);
+        for (int i = 0; i < 4; i++) {
+            send(out, "frame-" + i);
+        }
+        assertEquals(4, queue.getQueuedFrames());
+        assertRejected(out, "frame-4");
+        assertEquals(1L, queue.getFramesRejected());
+
+        queue.attach(connect());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("frame-" + i, reader.readLine());
+        }
+        // the slots are reused once the frames in them have been sent
+        for (int i = 5; i < 9; i++) {
+            send(out, "frame-" + i);
+            assertEquals("frame-" + i, reader.readLine());
+        }
+        assertEquals(8L, queue.getFramesSent());
+        assertEquals(0, queue.getQueuedFrames());
+        assertEquals(0L, queue.getQueuedBytes());
+    }
+
+    @Test
+    public void testWraparound() throws Exception {
+        final CommandQueue queue = new CommandQueue("test", 4, Long.MAX_VALUE, CommandQueue.Overflow.BLOCK, LONG_TIMEOUT);
+        queue.attach(connect());
+        final int frames = 5000;
+        final Producer producer = new Producer(queue, "p", frames);
+        producer.start();
+        for (int i = 0; i < frames; i++) {
+            assertEquals("p-" + i, reader.readLine());
+        }
+        producer.join(LONG_TIMEOUT);
+        assertNull(producer.failure);
+        assertEquals(frames, queue.getFramesSent());
+        assertEquals(0L, queue.getFramesRejected());
+    }
+
+    @Test
+    public void testProducers() throws Exception {
+        final int producers = 4;
+        final int frames = 250;
+        final CommandQueue queue = new CommandQueue("test", producers * frames, Long.MAX_VALUE, CommandQueue.Overflow.FAIL, LONG_TIMEOUT);
+        final CountDownLatch go = new CountDownLatch(1);
+        final Producer[] threads = new Producer[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Producer(queue, "p" + p, frames, go);
+            threads[p].start();
+        }
+        go.countDown();
+        for (Producer producer : threads) {
+            producer.join(LONG_TIMEOUT);
+            assertNull(producer.failure);
+        }
+        assertEquals(producers * frames, queue.getQueuedFrames());
+
+        queue.attach(connect());
+        final int[] next = new int[producers];
+        for (int i = 0; i < producers * frames; i++) {
+            final String line = reader.readLine();
+            assertNotNull(line);
+            final int separator = line.indexOf('-');
+            final int p = Integer.parseInt(line.substring(1, separator));
+            // the frames of each producer are sent in the order they were queued
+            assertEquals(next[p]++, Integer.parseInt(line.substring(separator + 1)));
+        }
+        for (int p = 0; p < producers; p++) {
+            assertEquals(frames, next[p]);
+        }
+    }
+
+    @Test
+    public void testSingleFrameCapacity() throws Exception {
+        // rounded up to two slots, one slot could not tell a published frame from a free slot
+        final CommandQueue queue = new CommandQueue("test", 1, Long.MAX_VALUE, CommandQueue.Overflow.FAIL, LONG_TIMEOUT);
+        final OutputStream out = queue.newOutputStream(false);
+        send(out, "frame-0");
+        send(out, "frame-1");
+        assertRejected(out, "frame-2");
+        queue.attach(connect());
+        assertEquals("frame-0", reader.readLine());
+        assertEquals("frame-1", reader.readLine());
+    }
+
+    @Test
+    public void testByteLimit() throws Exception {
+        final CommandQueue queue = new CommandQueue("test", 16, 10L, CommandQueue.Overflow.FAIL, LONG_TIMEOUT);
+        final OutputStream out = queue.newOutputStream(false);
+        send(out, "12345");
+        assertEquals(6L, queue.getQueuedBytes());
+        assertRejected(out, "12345");
+        assertEquals(6L, queue.getQueuedBytes());
+        assertEquals(1, queue.getQueuedFrames());
+
+        // a frame larger than the limit still goes through an empty queue
+        final CommandQueue small = new CommandQueue("test", 16, 4L, CommandQueue.Overflow.FAIL, LONG_TIMEOUT);
+        send(small.newOutputStream(false), "larger than the limit");
+        assertEquals(1, small.getQueuedFrames());
+    }
+
+    @Test
+    public void testBlockWaitsForSpace() throws Exception {
+        final CommandQueue queue = new CommandQueue("test", 2, Long.MAX_VALUE, CommandQueue.Overflow.BLOCK, LONG_TIMEOUT);
+        final OutputStream out = queue.newOutputStream(false);
+        send(out, "frame-0");
+        send(out, "frame-1");
+
+        final CountDownLatch waited = new CountDownLatch(1);
+        final Thread waiter = new Thread(new Runnable() {
+            public void run() {
+                queue.awaitSpace();
+                waited.countDown();
+            }
+        });
+        waiter.start();
+        assertFalse(waited.await(200L, TimeUnit.MILLISECONDS));
+
+        // the drain once the process connects wakes the waiting sender
+        queue.attach(connect());
+        assertTrue(waited.await(5L, TimeUnit.SECONDS));
+        send(out, "frame-2");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("frame-" + i, reader.readLine());
+        }
+    }
+
+    @Test
+    public void testBlockTimesOut() throws Exception {
+        final CommandQueue queue = new CommandQueue("test", 2, Long.MAX_VALUE, CommandQueue.Overflow.BLOCK, 200L);
+        final OutputStream out = queue.newOutputStream(false);
+        send(out, "frame-0");
+        send(out, "frame-1");
+        final long start = System.nanoTime();
+        queue.awaitSpace();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150L));
+        assertRejected(out, "frame-2");
+    }
+
+    @Test
+    public void testFailDoesNotWait() throws Exception {
+        final CommandQueue queue = new CommandQueue("test", 2, Long.MAX_VALUE, CommandQueue.Overflow.FAIL, LONG_TIMEOUT);
+        final OutputStream out = queue.newOutputStream(false);
+        send(out, "frame-0");
+        send(out, "frame-1");
+        final long start = System.nanoTime();
+        queue.awaitSpace();
+        assertRejected(out, "frame-2");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1L));
+    }
+
+    @Test
+    public void testCloseAfterQueuedFrames() throws Exception {
+        final CommandQueue queue = new CommandQueue("test", 8, Long.MAX_VALUE, CommandQueue.Overflow.FAIL, LONG_TIMEOUT);
+        final OutputStream out = queue.newOutputStream(false);
+        send(out, "frame-0");
+        send(out, "frame-1");
+        queue.attach(connect());
+        send(out, "frame-2");
+        queue.close();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("frame-" + i, reader.readLine());
+        }
+        assertNull(reader.readLine());
+    }
+
+    private ProcessIoLoop.Connection connect() throws Exception {
+        socket = new Socket(InetAddress.getByName("127.0.0.1"), serverChannel.socket().getLocalPort());
+        socket.setSoTimeout((int) LONG_TIMEOUT);
+        socket.getOutputStream().write("CONNECTED\n".getBytes("US-ASCII"));
+        socket.getOutputStream().flush();
+        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        final ProcessIoLoop.Connection connection = connections.poll(LONG_TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("No connection accepted", connection);
+        return connection;
+    }
+
+    private static void send(final OutputStream out, final String line) throws IOException {
+        out.write((line + "\n").getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    private static void assertRejected(final OutputStream out, final String line) {
+        try {
+            send(out, line);
+            fail("Queued " + line + " in a full queue");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Sends numbered frames, waiting for space before each as a {@link ManagedProcess} does.
+     */
+    private static final class Producer extends Thread {
+        private final CommandQueue queue;
+        private final String name;
+        private final int frames;
+        private final CountDownLatch go;
+        private volatile Throwable failure;
+
+        Producer(final CommandQueue queue, final String name, final int frames) {
+            this(queue, name, frames, new CountDownLatch(0));
+        }
+
+        Producer(final CommandQueue queue, final String name, final int frames, final CountDownLatch go) {
+            this.queue = queue;
+            this.name = name;
+            this.frames = frames;
+            this.go = go;
+        }
+
+        public void run() {
+            // each sender has its own stream, the streams are not thread safe
+            final OutputStream out = queue.newOutputStream(false);
+            try {
+                go.await();
+                for (int i = 0; i < frames; i++) {
+                    queue.awaitSpace();
+                    send(out, name + "-" + i);
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the newline scan and the rate limit of the {@link ErrorStreamForwarder}.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public class ErrorStreamForwarderTestCase {
+
+    private static final Runnable NO_ACTION = new Runnable() {
+        public void run() {
+        }
+    };
+
+    @Test
+    public void testNewlineAtEveryPosition() throws Exception {
+        final byte[] buffer = new byte[32];
+        for (int newline = 0; newline < buffer.length; newline++) {
+            fill(buffer, (byte) 'x');
+            buffer[newline] = '\n';
+            for (int from = 0; from < buffer.length; from++) {
+                for (int to = from; to <= buffer.length; to++) {
+                    assertEquals("newline " + newline + " from " + from + " to " + to,
+                            naiveIndexOf(buffer, from, to), indexOfNewline(buffer, from, to));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNewlineAmongLookalikeBytes() throws Exception {
+        // bytes one off from a newline, with or without the high bit set, must not be mistaken for one
+        final byte[] lookalikes = {0x00, 0x01, 0x09, 0x0b, (byte) 0x8a, (byte) 0x80, (byte) 0xff, 0x7f};
+        final Random random = new Random(42L);
+        final byte[] buffer = new byte[67];
+        for (int run = 0; run < 10000; run++) {
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = random.nextInt(40) == 0 ? (byte) '\n' : lookalikes[random.nextInt(lookalikes.length)];
+            }
+            final int from = random.nextInt(buffer.length);
+            final int to = from + random.nextInt(buffer.length - from + 1);
+            assertEquals(naiveIndexOf(buffer, from, to), indexOfNewline(buffer, from, to));
+        }
+    }
+
+    @Test
+    public void testLinesSplitAcrossReads() throws Exception {
+        final ChunkedInputStream input = new ChunkedInputStream("first line\nsecond ".getBytes("US-ASCII"));
+        final ErrorStreamForwarder forwarder = new ErrorStreamForwarder("test", input, NO_ACTION, 0, 0);
+        final byte[] buffer = new byte[16];
+        assertFalse(forwarder.poll(buffer));
+        assertEquals(1, forwarder.getLinesForwarded());
+
+        input.feed("line\nthird line".getBytes("US-ASCII"));
+        assertFalse(forwarder.poll(buffer));
+        assertEquals(2, forwarder.getLinesForwarded());
+
+        // the last line is forwarded when the stream is closed, even without a newline
+        forwarder.close();
+        assertTrue(forwarder.poll(buffer));
+        assertEquals(3, forwarder.getLinesForwarded());
+        assertEquals("first line\nsecond line\nthird line".length(), forwarder.getBytesRead());
+        assertEquals(0, forwarder.getLinesSuppressed());
+    }
+
+    @Test
+    public void testEmptyAndLongLines() throws Exception {
+        final StringBuilder text = new StringBuilder("\n\n");
+        for (int i = 0; i < 8192 * 2 + 10; i++) {
+            text.append('a');
+        }
+        text.append("\nshort\n");
+        final ErrorStreamForwarder forwarder = new ErrorStreamForwarder("test", new ChunkedInputStream(text.toString().getBytes("US-ASCII")), NO_ACTION, 0, 0);
+        forwarder.poll(new byte[4096]);
+        // empty lines are not forwarded, a line longer than the maximum is split at the maximum
+        assertEquals(4, forwarder.getLinesForwarded());
+    }
+
+    @Test
+    public void testBurstThenSuppressed() throws Exception {
+        final ErrorStreamForwarder forwarder = new ErrorStreamForwarder("test", new ChunkedInputStream(lines(10)), NO_ACTION, 1, 3);
+        forwarder.poll(new byte[1024]);
+        assertEquals(3, forwarder.getLinesForwarded());
+        assertEquals(7, forwarder.getLinesSuppressed());
+        // suppressed lines are still read, so the process does not block on a full pipe
+        assertEquals(lines(10).length, forwarder.getBytesRead());
+    }
+
+    @Test
+    public void testTokensRefillUpToBurst() throws Exception {
+        final ChunkedInputStream input = new ChunkedInputStream(lines(2));
+        final ErrorStreamForwarder forwarder = new ErrorStreamForwarder("test", input, NO_ACTION, 1000, 2);
+        final byte[] buffer = new byte[1024];
+        forwarder.poll(buffer);
+        assertEquals(2, forwarder.getLinesForwarded());
+
+        // far more than two tokens accrue in this time, but the bucket holds at most the burst
+        Thread.sleep(50L);
+        input.feed(lines(10));
+        forwarder.poll(buffer);
+        assertEquals(4, forwarder.getLinesForwarded());
+        assertEquals(8, forwarder.getLinesSuppressed());
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        final ErrorStreamForwarder forwarder = new ErrorStreamForwarder("test", new ChunkedInputStream(lines(50000)), NO_ACTION, 0, 1);
+        forwarder.poll(new byte[8192]);
+        assertEquals(50000, forwarder.getLinesForwarded());
+        assertEquals(0, forwarder.getLinesSuppressed());
+    }
+
+    @Test
+    public void testCloseRunsAction() throws Exception {
+        final boolean[] run = new boolean[1];
+        final ErrorStreamForwarder forwarder = new ErrorStreamForwarder("test", new ChunkedInputStream(new byte[0]), new Runnable() {
+            public void run() {
+                run[0] = true;
+            }
+        }, 0, 0);
+        forwarder.close();
+        assertTrue(run[0]);
+        assertTrue(forwarder.poll(new byte[16]));
+    }
+
+    private static int indexOfNewline(final byte[] buffer, final int from, final int to) {
+        return ErrorStreamForwarder.indexOfNewline(ByteBuffer.wrap(buffer, 0, to).order(ByteOrder.LITTLE_ENDIAN), buffer, from, to);
+    }
+
+    private static int naiveIndexOf(final byte[] buffer, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void fill(final byte[] buffer, final byte value) {
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = value;
+        }
+    }
+
+    private static byte[] lines(final int count) throws IOException {
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            b.append("line ").append(i).append('\n');
+        }
+        return b.toString().getBytes("US-ASCII");
+    }
+
+    /**
+     * A stream which reports the bytes fed to it as available, like the pipe from a running process.
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private InputStream current;
+
+        ChunkedInputStream(final byte[] bytes) {
+            current = new ByteArrayInputStream(bytes);
+        }
+
+        void feed(final byte[] bytes) {
+            current = new ByteArrayInputStream(bytes);
+        }
+
+        public int read() throws IOException {
+            return current.read();
+        }
+
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return current.read(b, off, len);
+        }
+
+        public int available() throws IOException {
+            return current.available();
+        }
+    }
+}
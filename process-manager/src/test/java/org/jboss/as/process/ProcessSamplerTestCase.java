@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the parsing of {@code /proc} files and the sample history of the {@link ProcessSampler}.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public class ProcessSamplerTestCase {
+
+    private static final String STAT = "1234 (java) S 1 1234 1234 0 -1 4202496 52311 0 12 0 1520 340 0 0 20 0 45 0 8731 5062131712 61234 18446744073709551615\n";
+
+    private static final String STATUS = "Name:\tjava\n" +
+            "Umask:\t0022\n" +
+            "State:\tS (sleeping)\n" +
+            "VmPeak:\t 5062132 kB\n" +
+            "VmRSS:\t  244936 kB\n" +
+            "RssAnon:\t  220000 kB\n" +
+            "Threads:\t45\n" +
+            "SigQ:\t0/63442\n";
+
+    @Test
+    public void testStatFields() {
+        final byte[] stat = STAT.getBytes();
+        assertEquals(1520L, ProcessSampler.statField(stat, stat.length, ProcessSampler.UTIME_FIELD));
+        assertEquals(340L, ProcessSampler.statField(stat, stat.length, ProcessSampler.STIME_FIELD));
+        assertEquals(1L, ProcessSampler.statField(stat, stat.length, 4));
+    }
+
+    @Test
+    public void testStatCommandWithSpacesAndParentheses() {
+        final byte[] stat = STAT.replace("(java)", "(my ) (java 1)").getBytes();
+        assertEquals(1520L, ProcessSampler.statField(stat, stat.length, ProcessSampler.UTIME_FIELD));
+        assertEquals(340L, ProcessSampler.statField(stat, stat.length, ProcessSampler.STIME_FIELD));
+        assertEquals(1L, ProcessSampler.statField(stat, stat.length, 4));
+    }
+
+    @Test
+    public void testStatOnlyReadsValidLength() {
+        final byte[] stat = new byte[256];
+        final byte[] content = STAT.getBytes();
+        System.arraycopy(content, 0, stat, 0, content.length);
+        // stale bytes from a previous read past the end of the content
+        stat[content.length] = ')';
+        assertEquals(1520L, ProcessSampler.statField(stat, content.length, ProcessSampler.UTIME_FIELD));
+    }
+
+    @Test
+    public void testStatusFields() {
+        final byte[] status = STATUS.getBytes();
+        assertEquals(244936L, ProcessSampler.statusField(status, status.length, "VmRSS:"));
+        assertEquals(45L, ProcessSampler.statusField(status, status.length, "Threads:"));
+        assertEquals(-1L, ProcessSampler.statusField(status, status.length, "VmSwap:"));
+    }
+
+    @Test
+    public void testStatusLastLineWithoutNewline() {
+        final byte[] status = "Name:\tjava\nThreads:\t7".getBytes();
+        assertEquals(7L, ProcessSampler.statusField(status, status.length, "Threads:"));
+    }
+
+    @Test
+    public void testHistoryBeforeWrap() {
+        final ProcessSampler.History history = new ProcessSampler.History(3);
+        assertTrue(history.toList().isEmpty());
+        final ProcessSample first = sample(1);
+        final ProcessSample second = sample(2);
+        history.add(first);
+        history.add(second);
+        final List<ProcessSample> samples = history.toList();
+        assertEquals(2, samples.size());
+        assertSame(first, samples.get(0));
+        assertSame(second, samples.get(1));
+    }
+
+    @Test
+    public void testHistoryWrapEvictsOldest() {
+        final ProcessSampler.History history = new ProcessSampler.History(3);
+        final ProcessSample[] added = new ProcessSample[8];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = sample(i);
+            history.add(added[i]);
+            final List<ProcessSample> samples = history.toList();
+            assertEquals(Math.min(i + 1, 3), samples.size());
+            // oldest first, ending with the sample just added
+            for (int j = 0; j < samples.size(); j++) {
+                assertSame(added[i - samples.size() + 1 + j], samples.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void testHistoryOfOne() {
+        final ProcessSampler.History history = new ProcessSampler.History(1);
+        history.add(sample(1));
+        final ProcessSample last = sample(2);
+        history.add(last);
+        final List<ProcessSample> samples = history.toList();
+        assertEquals(1, samples.size());
+        assertSame(last, samples.get(0));
+    }
+
+    private static ProcessSample sample(final long timestamp) {
+        return new ProcessSample(timestamp, timestamp * 10L, 1024L, 1, 3);
+    }
+}
@@ -21,6 +21,7 @@
  */
 package org.jboss.as.server.manager;
 
+import java.io.File;
 
 /**
  *
@@ -51,4 +52,12 @@ public class CommunicationVariables {
     public String getServerManagerPort() {
         return String.valueOf(manager.getDirectServerCommunicationListener().getSmPort());
     }
+
+    /**
+     * @return the path of the AF_UNIX socket of the server manager, or {@code null} if it only listens on TCP
+     */
+    public String getServerManagerSocket() {
+        final File socketFile = manager.getDirectServerCommunicationListener().getSmSocketFile();
+        return socketFile == null ? null : socketFile.getAbsolutePath();
+    }
 }
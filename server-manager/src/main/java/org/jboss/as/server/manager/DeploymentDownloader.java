@@ -0,0 +1,739 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import org.jboss.as.server.manager.management.AbstractManagementRequest;
+import org.jboss.as.server.manager.management.ByteDataInput;
+import org.jboss.as.server.manager.management.ByteDataOutput;
+import org.jboss.as.server.manager.management.FileDelta;
+import org.jboss.as.server.manager.management.ManagementException;
+import org.jboss.as.server.manager.management.ManagementFuture;
+import org.jboss.as.server.manager.management.ManagementProtocol;
+import static org.jboss.as.server.manager.management.ManagementUtils.expectHeader;
+import org.jboss.logging.Logger;
+
+/**
+ * Downloads deployment content from a remote domain controller.
+ * <p>
+ * Each file of a deployment is fetched in fixed size chunks, several at once, spread over several connections to the
+ * domain controller.  Every chunk carries a CRC-32 checksum and a chunk which fails is fetched again.  The chunks
+ * received so far are recorded next to the partial file, so a download which was interrupted resumes with the missing
+ * chunks.  Files the host already holds with the right contents are not fetched, and concurrent requests for the same
+ * deployment share one download.
+ * <p>
+ * If the domain controller distributes deployments peer-to-peer, it names the server managers holding the deployment
+ * to download the chunks from, falling back to the domain controller for a peer which fails.  Once the download
+ * finishes the domain controller is told that this server manager holds the deployment and can serve it in turn.
+ *
+ * @author John Bailey
+ */
+final class DeploymentDownloader {
+    private static final Logger log = Logger.getLogger("org.jboss.as.management");
+
+    /** The system property holding the number of connections used to download a file */
+    public static final String CONNECTIONS = "jboss.server.manager.deployment.download.connections";
+
+    /** The system property holding the size of the chunks a file is downloaded in, in bytes */
+    public static final String CHUNK_SIZE = "jboss.server.manager.deployment.download.chunk.size";
+
+    private static final int DEFAULT_CONNECTIONS = 4;
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNK_ATTEMPTS = 3;
+    private static final String PART_SUFFIX = ".part";
+    private static final String PROGRESS_SUFFIX = ".progress";
+    private static final long SOURCES_RETRY_INTERVAL = 1000L;
+    private static final long PEER_CONNECT_TIMEOUT = 10L;
+
+    private final RemoteDomainControllerConnection connection;
+    private final FileRepository localFileRepository;
+    private final ScheduledExecutorService executorService;
+    private final int connections;
+    private final int chunkSize;
+    private final ConcurrentMap<String, FutureTask<File>> downloads = new ConcurrentHashMap<String, FutureTask<File>>();
+
+    DeploymentDownloader(final RemoteDomainControllerConnection connection, final FileRepository localFileRepository, final ScheduledExecutorService executorService) {
+        this(connection, localFileRepository, executorService, Integer.getInteger(CONNECTIONS, DEFAULT_CONNECTIONS).intValue(), Integer.getInteger(CHUNK_SIZE, DEFAULT_CHUNK_SIZE).intValue());
+    }
+
+    DeploymentDownloader(final RemoteDomainControllerConnection connection, final FileRepository localFileRepository, final ScheduledExecutorService executorService, final int connections, final int chunkSize) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be at least 1");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.connection = connection;
+        this.localFileRepository = localFileRepository;
+        this.executorService = executorService;
+        this.connections = connections;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Download a deployment, or wait for the download already in progress.
+     *
+     * @param relativePath the path of the deployment in the deployment repository
+     * @return the local copy of the deployment
+     * @throws ManagementException if the deployment could not be downloaded
+     */
+    File download(final String relativePath) throws ManagementException {
+        final FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+            public File call() throws Exception {
+                return downloadDeployment(relativePath);
+            }
+        });
+        final FutureTask<File> existing = downloads.putIfAbsent(relativePath, task);
+        try {
+            if (existing == null) {
+                try {
+                    task.run();
+                } finally {
+                    downloads.remove(relativePath, task);
+                }
+                return task.get();
+            }
+            log.debugf("Waiting for the download of deployment [%s] in progress", relativePath);
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ManagementException("Interrupted while downloading deployment " + relativePath, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ManagementException) {
+                throw (ManagementException) cause;
+            }
+            throw new ManagementException("Failed to download deployment " + relativePath, cause);
+        }
+    }
+
+    private File downloadDeployment(final String relativePath) throws ManagementException, IOException {
+        final File localPath = localFileRepository.getDeploymentFile(relativePath);
+        final Manifest manifest = new GetDeploymentManifestOperation(relativePath).executeForResult();
+        if (manifest == null) {
+            return localPath;
+        }
+        if (manifest.files.isEmpty() && !localPath.isDirectory() && !localPath.mkdirs()) {
+            throw new ManagementException("Unable to create local directory: " + localPath);
+        }
+        final long start = System.currentTimeMillis();
+        final List<FileDelta.FileInfo> missing = new ArrayList<FileDelta.FileInfo>();
+        for (FileDelta.FileInfo info : manifest.files) {
+            final File file = new File(localPath, info.getPath());
+            if (!file.isFile() || file.length() != info.getLength() || !Arrays.equals(FileDelta.sha1(file), info.getSha1())) {
+                missing.add(info);
+            }
+        }
+        if (missing.isEmpty()) {
+            if (manifest.peerDistribution) {
+                reportHeld(relativePath, true);
+            }
+            return localPath;
+        }
+        final Sources sources = new Sources(manifest.peerDistribution ? awaitSources(relativePath) : Collections.<String, InetSocketAddress>emptyMap());
+        boolean held = false;
+        long bytesReceived = 0L;
+        try {
+            for (FileDelta.FileInfo info : missing) {
+                final File file = new File(localPath, info.getPath());
+                final File parent = file.getParentFile();
+                if (!parent.exists() && !parent.mkdirs()) {
+                    throw new ManagementException("Unable to create local directory " + parent);
+                }
+                bytesReceived += downloadFile(relativePath, info, file, sources);
+            }
+            held = true;
+        } finally {
+            if (manifest.peerDistribution) {
+                reportHeld(relativePath, held);
+            }
+        }
+        log.infof("Downloaded deployment [%s] in %d ms: %d files unchanged, %d downloaded; %d bytes received, %d of them from peers",
+                relativePath, Long.valueOf(System.currentTimeMillis() - start), Integer.valueOf(manifest.files.size() - missing.size()),
+                Integer.valueOf(missing.size()), Long.valueOf(bytesReceived), Long.valueOf(sources.getPeerBytes()));
+        return localPath;
+    }
+
+    /**
+     * Ask the domain controller where to download a deployment from, waiting while every source is busy.
+     */
+    private Map<String, InetSocketAddress> awaitSources(final String relativePath) throws ManagementException {
+        for (;;) {
+            final Map<String, InetSocketAddress> peers = new GetDeploymentSourcesOperation(relativePath).executeForResult();
+            if (peers != null) {
+                return peers;
+            }
+            log.debugf("All sources of deployment [%s] are busy, waiting", relativePath);
+            try {
+                Thread.sleep(SOURCES_RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ManagementException("Interrupted while waiting for a source of deployment " + relativePath, e);
+            }
+        }
+    }
+
+    private void reportHeld(final String relativePath, final boolean held) {
+        try {
+            new DeploymentHeldOperation(relativePath, held).executeForResult();
+        } catch (ManagementException e) {
+            log.warnf(e, "Failed to report the download of deployment [%s] to the domain controller", relativePath);
+        }
+    }
+
+    /**
+     * Download the missing chunks of a file.
+     *
+     * @return the number of bytes received
+     */
+    private long downloadFile(final String relativePath, final FileDelta.FileInfo info, final File file, final Sources sources) throws ManagementException, IOException {
+        final File partFile = new File(file.getPath() + PART_SUFFIX);
+        final File progressFile = new File(file.getPath() + PROGRESS_SUFFIX);
+        final long length = info.getLength();
+        final int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        final BitSet received = readProgress(progressFile, partFile, info);
+        if (received.cardinality() > 0) {
+            log.infof("Resuming download of [%s%s] with %d of %d chunks already received", relativePath, info.getPath(),
+                    Integer.valueOf(received.cardinality()), Integer.valueOf(chunks));
+        }
+        final ChunkWriter writer = new ChunkWriter(partFile, progressFile, info, chunkSize, received.cardinality() == 0);
+        long bytesReceived = 0L;
+        try {
+            writer.channel.truncate(length);
+            for (int attempt = 1; ; attempt++) {
+                final List<Integer> missing = new ArrayList<Integer>();
+                for (int i = received.nextClearBit(0); i < chunks; i = received.nextClearBit(i + 1)) {
+                    missing.add(Integer.valueOf(i));
+                }
+                if (missing.isEmpty()) {
+                    break;
+                }
+                if (attempt > CHUNK_ATTEMPTS) {
+                    throw new ManagementException("Failed to download " + missing.size() + " chunks of " + info.getPath(), writer.failure);
+                }
+                bytesReceived += fetchChunks(relativePath, info, missing, writer, received, sources);
+            }
+            writer.channel.force(false);
+        } finally {
+            writer.close();
+        }
+        if (!Arrays.equals(info.getSha1(), FileDelta.sha1(partFile))) {
+            partFile.delete();
+            progressFile.delete();
+            throw new ManagementException("Downloaded file " + file + " does not match the hash of the domain controller's copy");
+        }
+        if (file.exists() && !file.delete() || !partFile.renameTo(file)) {
+            throw new ManagementException("Unable to replace " + file + " with the downloaded file");
+        }
+        progressFile.delete();
+        return bytesReceived;
+    }
+
+    /**
+     * Fetch a list of chunks, keeping a chunk per connection to each source in flight.
+     *
+     * @return the number of bytes received
+     */
+    private long fetchChunks(final String relativePath, final FileDelta.FileInfo info, final List<Integer> missing, final ChunkWriter writer, final BitSet received, final Sources sources) throws ManagementException {
+        final Semaphore inFlight = new Semaphore(connections * Math.max(1, sources.size()));
+        final CountDownLatch done = new CountDownLatch(missing.size());
+        final long[] bytesReceived = new long[1];
+        try {
+            for (Integer index : missing) {
+                inFlight.acquire();
+                final int chunk = index.intValue();
+                final long offset = (long) chunk * chunkSize;
+                final int length = (int) Math.min(chunkSize, info.getLength() - offset);
+                final Peer peer = sources.next(chunk);
+                final int connectionIndex = chunk % connections + 1;
+                final ManagementFuture<byte[]> future = peer == null
+                        ? new GetFileChunkOperation(relativePath, info.getPath(), offset, length, connectionIndex).executeAsync()
+                        : new PeerFileChunkOperation(peer, relativePath, info.getPath(), offset, length, connectionIndex).executeAsync();
+                future.addListener(new ManagementFuture.Listener<byte[]>() {
+                    public void handleResult(final byte[] result) {
+                        try {
+                            writer.write(chunk, offset, result);
+                            synchronized (received) {
+                                received.set(chunk);
+                                bytesReceived[0] += result.length;
+                            }
+                            if (peer != null) {
+                                sources.received(result.length);
+                            }
+                        } catch (IOException e) {
+                            writer.failed(new ManagementException("Failed to write chunk " + chunk + " of " + info.getPath(), e));
+                        } finally {
+                            inFlight.release();
+                            done.countDown();
+                        }
+                    }
+
+                    public void handleFailure(final ManagementException failure) {
+                        log.debugf(failure, "Failed to download chunk %d of [%s%s]", Integer.valueOf(chunk), relativePath, info.getPath());
+                        if (peer != null) {
+                            sources.failed(peer);
+                        }
+                        writer.failed(failure);
+                        inFlight.release();
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ManagementException("Interrupted while downloading " + info.getPath(), e);
+        }
+        synchronized (received) {
+            return bytesReceived[0];
+        }
+    }
+
+    /**
+     * Read the chunks of a file received by an earlier download.  The progress file starts with the hash, length and
+     * chunk size of the file being downloaded, followed by the index of each chunk written to the partial file.  A
+     * chunk which does not lie within the partial file was lost with the end of it, and is fetched again.
+     */
+    private BitSet readProgress(final File progressFile, final File partFile, final FileDelta.FileInfo info) {
+        final BitSet received = new BitSet();
+        if (!progressFile.exists() || !partFile.exists()) {
+            return received;
+        }
+        final long length = info.getLength();
+        final long partLength = partFile.length();
+        final int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(progressFile)));
+            final byte[] sha1 = new byte[info.getSha1().length];
+            input.readFully(sha1);
+            if (!Arrays.equals(sha1, info.getSha1()) || input.readLong() != length || input.readInt() != chunkSize) {
+                return received;
+            }
+            for (;;) {
+                final int chunk = input.readInt();
+                if (chunk >= 0 && chunk < chunks && Math.min((long) (chunk + 1) * chunkSize, length) <= partLength) {
+                    received.set(chunk);
+                }
+            }
+        } catch (EOFException e) {
+            // the end of the progress file, or a record cut short by the interruption
+            return received;
+        } catch (IOException e) {
+            log.debugf(e, "Ignoring unreadable download progress %s", progressFile);
+            return new BitSet();
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * The peers a deployment is downloaded from.  A peer which fails to serve a chunk is dropped, and chunks are fetched
+     * from the domain controller once no peer is left.
+     */
+    private static final class Sources {
+        private final List<Peer> peers = new ArrayList<Peer>();
+        private long peerBytes;
+
+        private Sources(final Map<String, InetSocketAddress> peers) {
+            for (Map.Entry<String, InetSocketAddress> entry : peers.entrySet()) {
+                this.peers.add(new Peer(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        private synchronized int size() {
+            return peers.size();
+        }
+
+        /**
+         * Get the peer to fetch a chunk from.
+         *
+         * @return the peer, or {@code null} to fetch the chunk from the domain controller
+         */
+        private synchronized Peer next(final int chunk) {
+            return peers.isEmpty() ? null : peers.get(chunk % peers.size());
+        }
+
+        private synchronized void failed(final Peer peer) {
+            if (peers.remove(peer)) {
+                log.warnf("Peer server manager [%s] failed to serve a chunk, no longer downloading from it", peer.id);
+            }
+        }
+
+        private synchronized void received(final int bytes) {
+            peerBytes += bytes;
+        }
+
+        private synchronized long getPeerBytes() {
+            return peerBytes;
+        }
+    }
+
+    private static final class Peer {
+        private final String id;
+        private final InetSocketAddress address;
+
+        private Peer(final String id, final InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+    }
+
+    private static final class Manifest {
+        private final List<FileDelta.FileInfo> files;
+        private final boolean peerDistribution;
+
+        private Manifest(final List<FileDelta.FileInfo> files, final boolean peerDistribution) {
+            this.files = files;
+            this.peerDistribution = peerDistribution;
+        }
+    }
+
+    /**
+     * Writes received chunks to the partial file and records them in the progress file.
+     */
+    private static final class ChunkWriter {
+        private final RandomAccessFile partFile;
+        private final FileChannel channel;
+        private final DataOutputStream progress;
+        private volatile ManagementException failure;
+
+        private ChunkWriter(final File partFile, final File progressFile, final FileDelta.FileInfo info, final int chunkSize, final boolean restart) throws IOException {
+            this.partFile = new RandomAccessFile(partFile, "rw");
+            this.channel = this.partFile.getChannel();
+            this.progress = new DataOutputStream(new FileOutputStream(progressFile, !restart));
+            if (restart) {
+                progress.write(info.getSha1());
+                progress.writeLong(info.getLength());
+                progress.writeInt(chunkSize);
+            }
+        }
+
+        private void write(final int chunk, final long offset, final byte[] data) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            synchronized (progress) {
+                progress.writeInt(chunk);
+                progress.flush();
+            }
+        }
+
+        private void failed(final ManagementException failure) {
+            this.failure = failure;
+        }
+
+        private void close() {
+            try {
+                progress.close();
+            } catch (IOException ignored) {
+            }
+            try {
+                partFile.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private final class GetDeploymentManifestOperation extends RemoteDomainControllerConnection.DomainControllerRequest<Manifest> {
+        private final String filePath;
+
+        private GetDeploymentManifestOperation(final String filePath) {
+            super(connection);
+            this.filePath = filePath;
+        }
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.DEPLOYMENT_MANIFEST_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.DEPLOYMENT_MANIFEST_RESPONSE;
+        }
+
+        protected final void sendRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException {
+            super.sendRequest(protocolVersion, output);
+            try {
+                output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
+                output.writeUTF(filePath);
+            } catch (IOException e) {
+                throw new ManagementException("Failed to send deployment manifest request", e);
+            }
+        }
+
+        protected final Manifest receiveResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
+            try {
+                expectHeader(input, ManagementProtocol.PARAM_NUM_FILES);
+                final int numFiles = input.readInt();
+                if (numFiles < 0) {
+                    return null;
+                }
+                final List<FileDelta.FileInfo> manifest = new ArrayList<FileDelta.FileInfo>(numFiles);
+                for (int i = 0; i < numFiles; i++) {
+                    expectHeader(input, ManagementProtocol.PARAM_FILE_HASH);
+                    manifest.add(FileDelta.FileInfo.readFrom(input));
+                }
+                expectHeader(input, ManagementProtocol.PARAM_PEER_DISTRIBUTION);
+                return new Manifest(manifest, input.readBoolean());
+            } catch (IOException e) {
+                throw new ManagementException("Failed to read deployment manifest response", e);
+            }
+        }
+    }
+
+    private final class GetDeploymentSourcesOperation extends RemoteDomainControllerConnection.DomainControllerRequest<Map<String, InetSocketAddress>> {
+        private final String filePath;
+
+        private GetDeploymentSourcesOperation(final String filePath) {
+            super(connection);
+            this.filePath = filePath;
+        }
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.DEPLOYMENT_SOURCES_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.DEPLOYMENT_SOURCES_RESPONSE;
+        }
+
+        protected final void sendRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException {
+            super.sendRequest(protocolVersion, output);
+            try {
+                output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
+                output.writeUTF(filePath);
+            } catch (IOException e) {
+                throw new ManagementException("Failed to send deployment sources request", e);
+            }
+        }
+
+        protected final Map<String, InetSocketAddress> receiveResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
+            try {
+                expectHeader(input, ManagementProtocol.PARAM_PEER_COUNT);
+                final int count = input.readInt();
+                if (count < 0) {
+                    return null;
+                }
+                final Map<String, InetSocketAddress> peers = new HashMap<String, InetSocketAddress>();
+                for (int i = 0; i < count; i++) {
+                    expectHeader(input, ManagementProtocol.PARAM_PEER);
+                    final String id = input.readUTF();
+                    final byte[] address = new byte[input.readInt()];
+                    input.readFully(address);
+                    peers.put(id, new InetSocketAddress(InetAddress.getByAddress(address), input.readInt()));
+                }
+                return peers;
+            } catch (IOException e) {
+                throw new ManagementException("Failed to read deployment sources response", e);
+            }
+        }
+    }
+
+    private final class DeploymentHeldOperation extends RemoteDomainControllerConnection.DomainControllerRequest<Void> {
+        private final String filePath;
+        private final boolean held;
+
+        private DeploymentHeldOperation(final String filePath, final boolean held) {
+            super(connection);
+            this.filePath = filePath;
+            this.held = held;
+        }
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.DEPLOYMENT_HELD_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.DEPLOYMENT_HELD_RESPONSE;
+        }
+
+        protected final void sendRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException {
+            super.sendRequest(protocolVersion, output);
+            try {
+                output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
+                output.writeUTF(filePath);
+                output.writeBoolean(held);
+            } catch (IOException e) {
+                throw new ManagementException("Failed to send deployment held request", e);
+            }
+        }
+    }
+
+    private final class GetFileChunkOperation extends RemoteDomainControllerConnection.DomainControllerRequest<byte[]> {
+        private final String filePath;
+        private final String path;
+        private final long offset;
+        private final int length;
+        private final int connectionIndex;
+
+        private GetFileChunkOperation(final String filePath, final String path, final long offset, final int length, final int connectionIndex) {
+            super(connection);
+            this.filePath = filePath;
+            this.path = path;
+            this.offset = offset;
+            this.length = length;
+            this.connectionIndex = connectionIndex;
+        }
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.FILE_CHUNK_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.FILE_CHUNK_RESPONSE;
+        }
+
+        protected final int getConnectionIndex() {
+            return connectionIndex;
+        }
+
+        protected final void sendRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException {
+            super.sendRequest(protocolVersion, output);
+            writeChunkRequest(output, filePath, path, offset, length);
+        }
+
+        protected final byte[] receiveResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
+            return readChunk(input, path, offset, length);
+        }
+    }
+
+    /**
+     * A request for a chunk of a deployment file held by a peer server manager.  Peers are not retried, a chunk they
+     * fail to serve is fetched elsewhere.
+     */
+    private final class PeerFileChunkOperation extends AbstractManagementRequest<byte[]> {
+        private final String filePath;
+        private final String path;
+        private final long offset;
+        private final int length;
+        private final int connectionIndex;
+
+        private PeerFileChunkOperation(final Peer peer, final String filePath, final String path, final long offset, final int length, final int connectionIndex) {
+            super(peer.address.getAddress(), peer.address.getPort(), 1, 0L, PEER_CONNECT_TIMEOUT, executorService);
+            this.filePath = filePath;
+            this.path = path;
+            this.offset = offset;
+            this.length = length;
+            this.connectionIndex = connectionIndex;
+        }
+
+        protected byte getHandlerId() {
+            return ManagementProtocol.PEER_DEPLOYMENT_REQUEST;
+        }
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.FILE_CHUNK_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.FILE_CHUNK_RESPONSE;
+        }
+
+        protected final int getConnectionIndex() {
+            return connectionIndex;
+        }
+
+        protected final void sendRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException {
+            super.sendRequest(protocolVersion, output);
+            writeChunkRequest(output, filePath, path, offset, length);
+        }
+
+        protected final byte[] receiveResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
+            return readChunk(input, path, offset, length);
+        }
+    }
+
+    private static void writeChunkRequest(final ByteDataOutput output, final String filePath, final String path, final long offset, final int length) throws ManagementException {
+        try {
+            output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
+            output.writeUTF(filePath);
+            output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
+            output.writeUTF(path);
+            output.writeByte(ManagementProtocol.PARAM_CHUNK_OFFSET);
+            output.writeLong(offset);
+            output.writeByte(ManagementProtocol.PARAM_CHUNK_LENGTH);
+            output.writeInt(length);
+        } catch (IOException e) {
+            throw new ManagementException("Failed to send file chunk request", e);
+        }
+    }
+
+    private static byte[] readChunk(final ByteDataInput input, final String path, final long offset, final int length) throws ManagementException {
+        final byte[] chunk;
+        final long checksum;
+        try {
+            expectHeader(input, ManagementProtocol.PARAM_FILE_SIZE);
+            final int size = input.readInt();
+            if (size != length) {
+                throw new ManagementException("Received " + size + " bytes of " + path + " at " + offset + ", expected " + length);
+            }
+            chunk = new byte[size];
+            input.readFully(chunk);
+            expectHeader(input, ManagementProtocol.PARAM_CHUNK_CHECKSUM);
+            checksum = input.readLong();
+        } catch (IOException e) {
+            throw new ManagementException("Failed to read file chunk response", e);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(chunk);
+        if (crc.getValue() != checksum) {
+            throw new ManagementException("Checksum mismatch for the chunk of " + path + " at " + offset);
+        }
+        return chunk;
+    }
+}
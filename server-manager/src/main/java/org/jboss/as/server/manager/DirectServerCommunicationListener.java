@@ -21,10 +21,10 @@
  */
 package org.jboss.as.server.manager;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
-import java.net.Socket;
 
 import org.jboss.as.communication.InitialSocketRequestException;
 import org.jboss.as.communication.SocketConnection;
@@ -51,14 +51,23 @@ class DirectServerCommunicationListener{
 
     private final ServerManager serverManager;
 
-    DirectServerCommunicationListener(ServerToServerManagerCommandHandler commandHandler, ServerManager serverManager, InetAddress address, int port, int backlog) throws IOException {
+    DirectServerCommunicationListener(ServerToServerManagerCommandHandler commandHandler, ServerManager serverManager, InetAddress address, int port, int backlog, File socketFile) throws IOException {
         this.serverManager = serverManager;
         this.commandHandler = commandHandler;
-        socketListener = SocketListener.createSocketListener("ServerManager", new ServerAcceptor(), address, port, backlog);
+        socketListener = SocketListener.createSocketListener("ServerManager", new ServerAcceptor(), address, port, backlog, socketFile);
     }
 
     static DirectServerCommunicationListener create(ServerToServerManagerCommandHandler commandHandler,ServerManager serverManager, InetAddress address, int port, int backlog) throws IOException {
-        DirectServerCommunicationListener listener = new DirectServerCommunicationListener(commandHandler, serverManager, address, port, backlog);
+        return create(commandHandler, serverManager, address, port, backlog, null);
+    }
+
+    /**
+     * Create and start a listener.
+     *
+     * @param socketFile the AF_UNIX socket file to listen on as well as the TCP port, or {@code null} for TCP only
+     */
+    static DirectServerCommunicationListener create(ServerToServerManagerCommandHandler commandHandler,ServerManager serverManager, InetAddress address, int port, int backlog, File socketFile) throws IOException {
+        DirectServerCommunicationListener listener = new DirectServerCommunicationListener(commandHandler, serverManager, address, port, backlog, socketFile);
         listener.start();
         return listener;
     }
@@ -79,11 +88,15 @@ class DirectServerCommunicationListener{
         return socketListener.getAddress();
     }
 
+    File getSmSocketFile() {
+        return socketListener.getSocketFile();
+    }
+
     class ServerAcceptor implements SocketHandler {
 
         @Override
-        public void initializeConnection(Socket socket) throws IOException, InitialSocketRequestException {
-            InputStream in = socket.getInputStream();
+        public void initializeConnection(SocketConnection connection) throws IOException, InitialSocketRequestException {
+            InputStream in = connection.getInputStream();
             StringBuilder sb = new StringBuilder();
 
             //TODO Timeout on the read?
@@ -106,7 +119,7 @@ class DirectServerCommunicationListener{
             if (server == null) {
                 throw new InitialSocketRequestException("Server acceptor: unknown server " + processName);
             }
-            server.setCommunicationHandler(DirectServerManagerCommunicationHandler.create(SocketConnection.accepted(socket), processName, commandHandler, serverManager));
+            server.setCommunicationHandler(DirectServerManagerCommunicationHandler.create(connection, processName, commandHandler, serverManager));
         }
     }
 }
@@ -49,4 +49,12 @@ public interface DomainControllerConnection {
      * @return The file repository
      */
     FileRepository getRemoteFileRepository();
+
+    /**
+     * Determine whether the domain controller distributes deployments peer-to-peer, in which case this server manager
+     * serves the deployments it holds to its peers.  This is known once registered.
+     *
+     * @return {@code true} if the domain controller distributes deployments peer-to-peer
+     */
+    boolean isPeerDistributionEnabled();
 }
@@ -70,7 +70,9 @@ public class DomainControllerConnectionService implements Service<Void> {
     }
 
     /**
-     * Start the service.  Setup a remote domain controller connection and hand it to the server manager.
+     * Start the service.  Setup a remote domain controller connection and hand it to the server manager.  When the
+     * service is restarted the server manager still holds the domain model of the previous connection, so only the
+     * elements which changed since are sent.
      *
      * @param context The start context
      * @throws StartException
@@ -85,7 +87,7 @@ public class DomainControllerConnectionService implements Service<Void> {
             }
         }
         final NetworkInterfaceBinding managementInterface = localManagementInterface.getValue();
-        serverManager.setDomainControllerConnection(new RemoteDomainControllerConnection(serverManager.getName(), dcAddress, domainControllerPort.getValue(), managementInterface.getAddress(), localManagementPort.getValue(), localRepository, connectionRetryLimit, connectionRetryInterval, connectTimeout, executorService.getValue()));
+        serverManager.setDomainControllerConnection(new RemoteDomainControllerConnection(serverManager.getName(), dcAddress, domainControllerPort.getValue(), managementInterface.getAddress(), localManagementPort.getValue(), localRepository, connectionRetryLimit, connectionRetryInterval, connectTimeout, executorService.getValue(), serverManager.getDomainConfig()));
     }
 
     /**
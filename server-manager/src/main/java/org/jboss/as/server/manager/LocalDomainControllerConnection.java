@@ -62,4 +62,10 @@ public class LocalDomainControllerConnection implements DomainControllerConnecti
     public FileRepository getRemoteFileRepository() {
         return fileRepository;
     }
+
+    /** {@inheritDoc} */
+    public boolean isPeerDistributionEnabled() {
+        // the deployments are served by the local domain controller
+        return false;
+    }
 }
@@ -31,9 +31,8 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.as.communication.SocketConnection;
+import org.jboss.as.process.BinaryFrames;
 import org.jboss.as.process.ManagedProcess;
-import org.jboss.as.process.Status;
-import org.jboss.as.process.StreamUtils;
 import org.jboss.as.process.ProcessManagerProtocol.IncomingPmCommand;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommand;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
@@ -64,9 +63,9 @@ public final class ProcessManagerSlave {
         if (handler == null) {
             throw new IllegalArgumentException("handler is null");
         }
-        this.socketConnection = SocketConnection.connect(addr, port, "CONNECTED", processName);
+        this.socketConnection = SocketConnection.connect(addr, port, "CONNECTED", processName, BinaryFrames.CONNECT_OPTION);
         this.input = socketConnection.getInputStream();
-        this.output = socketConnection.getOutputStream();
+        this.output = new BinaryFrames.FramedOutputStream(socketConnection.getOutputStream());
         this.handler = handler;
     }
 
@@ -102,31 +101,22 @@ public final class ProcessManagerSlave {
         IncomingPmCommand.RECONNECT_SERVER.sendReconnectServer(output, serverName, addr, port);
     }
 
+    public void requestSamples(String processName) throws IOException {
+        IncomingPmCommand.REQUEST_SAMPLES.sendRequestSamples(output, processName);
+    }
+
     private final class Controller implements Runnable {
 
         private final AtomicBoolean shutdown = new AtomicBoolean(false);
 
         public void run() {
             final InputStream input = ProcessManagerSlave.this.input;
-            final StringBuilder b = new StringBuilder();
             try {
-                for (;;) {
-                    Status status = StreamUtils.readWord(input, b);
-                    if (status == Status.END_OF_STREAM) {
-                        // no more input
-                        log.info("Received end of stream closing down");
-                        shutdown();
-                        break;
-                    }
-                    try {
-
-                        final OutgoingPmCommand command = OutgoingPmCommand.valueOf(b.toString());
-                        status = command.handleMessage(input, status, handler, b);
-                    } catch (IllegalArgumentException e) {
-                        // unknown command...
-                    }
-                    if (status == Status.MORE) StreamUtils.readToEol(input);
+                while (OutgoingPmCommand.readFrame(input, handler)) {
                 }
+                // no more input
+                log.info("Received end of stream closing down");
+                shutdown();
             } catch (IOException e) {
                 // exception caught, shut down channel and exit
                 log.info("Error, closing down", e);
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.as.process.ProcessSample;
+import org.jboss.logging.Logger;
+
+/**
+ * Asks the process manager for the resource samples of the processes of a host and exposes them over JMX.  The
+ * process manager replies asynchronously, so a request returns the last samples received for the process and asks
+ * for fresh ones, which are returned by the next request.  Only the first request for a process waits for the reply,
+ * for at most the time given by the {@value #REPLY_TIMEOUT} system property.
+ *
+ * @author Kabir Khan
+ */
+public final class ProcessTelemetry implements ProcessTelemetryMBean {
+
+    /** The name the telemetry is registered under */
+    public static final String OBJECT_NAME = "jboss.as:type=ProcessTelemetry";
+
+    /** The system property used to configure how long the first request for a process waits, in milliseconds */
+    public static final String REPLY_TIMEOUT = "jboss.server.manager.telemetry.timeout";
+
+    private static final Logger log = Logger.getLogger("org.jboss.server.manager");
+    private static final long DEFAULT_REPLY_TIMEOUT = TimeUnit.SECONDS.toMillis(5L);
+
+    private final ServerManager serverManager;
+    private final ProcessManagerSlave processManagerSlave;
+    private final long replyTimeout;
+    private final Map<String, List<ProcessSample>> samples = new HashMap<String, List<ProcessSample>>();
+    private final Map<String, Long> requested = new HashMap<String, Long>();
+
+    ProcessTelemetry(final ServerManager serverManager, final ProcessManagerSlave processManagerSlave) {
+        this(serverManager, processManagerSlave, Long.getLong(REPLY_TIMEOUT, DEFAULT_REPLY_TIMEOUT).longValue());
+    }
+
+    ProcessTelemetry(final ServerManager serverManager, final ProcessManagerSlave processManagerSlave, final long replyTimeout) {
+        this.serverManager = serverManager;
+        this.processManagerSlave = processManagerSlave;
+        this.replyTimeout = Math.max(0L, replyTimeout);
+    }
+
+    /** {@inheritDoc} */
+    public String[] getServerProcessNames() {
+        return serverManager.getServers().keySet().toArray(new String[0]);
+    }
+
+    /** {@inheritDoc} */
+    public String[] getSamples(final String processName) {
+        if (processName == null) {
+            throw new IllegalArgumentException("processName is null");
+        }
+        final boolean request;
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            // only one request is outstanding per process, unless its reply is overdue
+            final Long sent = requested.get(processName);
+            request = sent == null || now - sent.longValue() >= replyTimeout;
+            if (request) {
+                requested.put(processName, Long.valueOf(now));
+            }
+        }
+        if (request) {
+            try {
+                processManagerSlave.requestSamples(processName);
+            } catch (IOException e) {
+                log.warnf(e, "Failed to request the samples of %s", processName);
+            }
+        }
+        List<ProcessSample> received;
+        synchronized (this) {
+            received = samples.get(processName);
+            if (received == null) {
+                received = awaitSamples(processName, now + replyTimeout);
+            }
+        }
+        return received == null ? new String[0] : format(received);
+    }
+
+    /**
+     * Callback for when the process manager sends the samples of a process.
+     *
+     * @param processName the name of the sampled process
+     * @param samples the samples, oldest first
+     */
+    synchronized void samplesReceived(final String processName, final List<ProcessSample> samples) {
+        this.samples.put(processName, samples);
+        requested.remove(processName);
+        notifyAll();
+    }
+
+    /**
+     * Wait for the first samples of a process.  Must be called holding the lock.
+     */
+    private List<ProcessSample> awaitSamples(final String processName, final long deadline) {
+        List<ProcessSample> received = null;
+        boolean intr = false;
+        try {
+            long remaining = deadline - System.currentTimeMillis();
+            while ((received = samples.get(processName)) == null && remaining > 0L) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    intr = true;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return received;
+    }
+
+    private static String[] format(final List<ProcessSample> samples) {
+        final String[] lines = new String[samples.size()];
+        ProcessSample previous = null;
+        for (int i = 0; i < lines.length; i++) {
+            final ProcessSample sample = samples.get(i);
+            final int load = sample.getCpuLoad(previous);
+            lines[i] = sample + (load < 0 ? "" : " load=" + load + "%");
+            previous = sample;
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager;
+
+/**
+ * Management interface exposing the resources used by the processes of a host, as sampled by the process manager.
+ *
+ * @author Kabir Khan
+ */
+public interface ProcessTelemetryMBean {
+
+    /**
+     * Get the process names of the servers of this host.
+     *
+     * @return the process names
+     */
+    String[] getServerProcessNames();
+
+    /**
+     * Get the samples the process manager has taken of a process, oldest first.  Each sample is formatted as one
+     * line giving its time, the CPU load since the previous sample, the CPU time, resident memory, threads and open
+     * file descriptors of the process.  The samples are the last ones received from the process manager, and fresh
+     * samples are requested for the next call.
+     *
+     * @param processName the process name, e.g. {@code Server:server-one} or {@code ServerManager}
+     * @return the samples, which are empty if the process is not sampled
+     */
+    String[] getSamples(String processName);
+}
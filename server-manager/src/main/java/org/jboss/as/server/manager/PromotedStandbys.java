@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.logging.Logger;
+
+/**
+ * The standbys which have replaced a server, keyed by the process name they were launched with.  A promoted standby
+ * keeps that process name in the process manager, so the mapping is stored in a file to let a restarted server
+ * manager reconnect it to the server it replaced.
+ *
+ * @author Kabir Khan
+ */
+final class PromotedStandbys {
+    private static final Logger log = Logger.getLogger("org.jboss.server.manager");
+
+    private final File file;
+    private final Properties serverProcessNames = new Properties();
+
+    /**
+     * Create the promoted standbys stored in a file.
+     *
+     * @param file the file
+     */
+    PromotedStandbys(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the standbys promoted before the server manager restarted.
+     */
+    synchronized void load() {
+        serverProcessNames.clear();
+        if (!file.exists()) {
+            return;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            serverProcessNames.load(in);
+        } catch (IOException e) {
+            log.errorf(e, "Could not read the promoted standbys from %s", file);
+        } finally {
+            safeClose(in);
+        }
+    }
+
+    /**
+     * Forget every promoted standby, when the servers are launched afresh.
+     */
+    synchronized void clear() {
+        serverProcessNames.clear();
+        if (file.exists() && !file.delete()) {
+            log.warnf("Could not delete %s", file);
+        }
+    }
+
+    /**
+     * Record that a standby replaced a server.
+     *
+     * @param standbyProcessName the process name of the standby
+     * @param serverProcessName the process name of the server
+     */
+    synchronized void promoted(final String standbyProcessName, final String serverProcessName) {
+        serverProcessNames.setProperty(standbyProcessName, serverProcessName);
+        store();
+    }
+
+    /**
+     * Record that the process of a standby was removed from the process manager.
+     *
+     * @param standbyProcessName the process name of the standby
+     */
+    synchronized void removed(final String standbyProcessName) {
+        if (serverProcessNames.remove(standbyProcessName) != null) {
+            store();
+        }
+    }
+
+    /**
+     * Get the server a standby replaced.
+     *
+     * @param standbyProcessName the process name of the standby
+     * @return the process name of the server, or <code>null</code> if the process is not a promoted standby
+     */
+    synchronized String getServerProcessName(final String standbyProcessName) {
+        return serverProcessNames.getProperty(standbyProcessName);
+    }
+
+    /**
+     * Get the standby which replaced a server.
+     *
+     * @param serverProcessName the process name of the server
+     * @return the process name of the standby, or <code>null</code> if the server was not replaced by a standby
+     */
+    synchronized String getStandbyProcessName(final String serverProcessName) {
+        for (Map.Entry<Object, Object> entry : serverProcessNames.entrySet()) {
+            if (serverProcessName.equals(entry.getValue())) {
+                return (String) entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void store() {
+        final File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            log.errorf("Could not create %s to store the promoted standbys", parent);
+            return;
+        }
+        final File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            serverProcessNames.store(out, "Standby process name = process name of the server it replaced");
+            out.close();
+            out = null;
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            log.errorf(e, "Could not store the promoted standbys in %s", file);
+        } finally {
+            safeClose(out);
+        }
+    }
+
+    private static void safeClose(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -23,24 +23,35 @@
 package org.jboss.as.server.manager;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
+import org.jboss.as.model.AbstractModelElement;
 import org.jboss.as.model.DomainModel;
 import org.jboss.as.server.manager.management.ByteDataInput;
 import org.jboss.as.server.manager.management.ByteDataOutput;
+import org.jboss.as.server.manager.management.FileDelta;
 import org.jboss.as.server.manager.management.ManagementException;
 import org.jboss.as.server.manager.management.ManagementProtocol;
 import static org.jboss.as.server.manager.management.ManagementUtils.expectHeader;
+import static org.jboss.as.server.manager.management.ManagementUtils.marshal;
 import static org.jboss.as.server.manager.management.ManagementUtils.unmarshal;
 import org.jboss.as.server.manager.management.AbstractManagementRequest;
 import org.jboss.logging.Logger;
+import org.jboss.marshalling.Marshalling;
 
 /**
  * Connection to a remote domain controller.
+ * <p>
+ * When the server manager already holds a domain model from an earlier connection, registering sends the element
+ * hashes of that model so the domain controller only needs to send the elements which changed.
  *
  * @author John Bailey
  */
@@ -56,6 +67,8 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
     private final int localManagementPort;
     private final RemoteFileRepository remoteFileRepository;
     private final ScheduledExecutorService executorService;
+    private final DomainModel heldDomainModel;
+    private volatile boolean peerDistributionEnabled;
 
     /**
      * Create an instance.
@@ -70,8 +83,9 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
      * @param connectionRetryInterval  The interval between connection retries
      * @param connectTimeout  The timeout for connecting to the remote DC (in seconds)
      * @param executorService The executor service
+     * @param heldDomainModel The domain model the server manager received from an earlier connection, or {@code null}
      */
-    public RemoteDomainControllerConnection(final String serverManagerId, final InetAddress dcAddress, final int dcPort, final InetAddress localManagementAddress, final int localManagementPort, final FileRepository localFileRepository, final int connectionRetryLimit, final long connectionRetryInterval, final long connectTimeout, final ScheduledExecutorService executorService) {
+    public RemoteDomainControllerConnection(final String serverManagerId, final InetAddress dcAddress, final int dcPort, final InetAddress localManagementAddress, final int localManagementPort, final FileRepository localFileRepository, final int connectionRetryLimit, final long connectionRetryInterval, final long connectTimeout, final ScheduledExecutorService executorService, final DomainModel heldDomainModel) {
         this.serverManagerId = serverManagerId;
         this.dcAddress = dcAddress;
         this.dcPort = dcPort;
@@ -82,12 +96,18 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
         this.connectionRetryInterval = connectionRetryInterval;
         this.connectTimeout = connectTimeout;
         this.executorService = executorService;
+        this.heldDomainModel = heldDomainModel;
     }
 
     /** {@inheritDoc} */
-    public DomainModel register() {
+    public synchronized DomainModel register() {
         try {
-            return new RegisterOperation(localManagementAddress, localManagementPort, this).executeForResult();
+            try {
+                return new RegisterOperation(localManagementAddress, localManagementPort, heldDomainModel, this).executeForResult();
+            } catch (DomainModelSyncException e) {
+                log.warnf(e, "Failed to update the local copy of the domain model, requesting the full domain model");
+                return new RegisterOperation(localManagementAddress, localManagementPort, null, this).executeForResult();
+            }
         } catch (ManagementException e) {
             throw new RuntimeException("Failed to register with the domain controller", e);
         }
@@ -107,10 +127,15 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
         return remoteFileRepository;
     }
 
-    private abstract static class DomainControllerRequest<T> extends AbstractManagementRequest<T> {
+    /** {@inheritDoc} */
+    public boolean isPeerDistributionEnabled() {
+        return peerDistributionEnabled;
+    }
+
+    abstract static class DomainControllerRequest<T> extends AbstractManagementRequest<T> {
         protected final String serverManagerId;
 
-        private DomainControllerRequest(final RemoteDomainControllerConnection connection) {
+        DomainControllerRequest(final RemoteDomainControllerConnection connection) {
             super(connection.dcAddress, connection.dcPort, connection.connectionRetryLimit, connection.connectionRetryInterval, connection.connectTimeout, connection.executorService);
             this.serverManagerId = connection.serverManagerId;
         }
@@ -133,11 +158,15 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
     private static class RegisterOperation extends DomainControllerRequest<DomainModel> {
         private final InetAddress localManagementAddress;
         private final int localManagementPort;
+        private final DomainModel heldDomainModel;
+        private final RemoteDomainControllerConnection connection;
 
-        private RegisterOperation(final InetAddress localManagementAddress, final int localManagementPort, final RemoteDomainControllerConnection connection) {
+        private RegisterOperation(final InetAddress localManagementAddress, final int localManagementPort, final DomainModel heldDomainModel, final RemoteDomainControllerConnection connection) {
             super(connection);
             this.localManagementAddress = localManagementAddress;
             this.localManagementPort = localManagementPort;
+            this.heldDomainModel = heldDomainModel;
+            this.connection = connection;
         }
 
         public final byte getRequestCode() {
@@ -157,6 +186,18 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
                 output.write(address);
                 output.writeByte(ManagementProtocol.PARAM_SERVER_MANAGER_PORT);
                 output.writeInt(localManagementPort);
+                output.writeByte(ManagementProtocol.PARAM_ELEMENT_HASH_COUNT);
+                if (heldDomainModel == null) {
+                    output.writeInt(-1);
+                } else {
+                    final Map<String, Long> elementHashes = heldDomainModel.getElementHashes();
+                    output.writeInt(elementHashes.size());
+                    for (Map.Entry<String, Long> entry : elementHashes.entrySet()) {
+                        output.writeByte(ManagementProtocol.PARAM_ELEMENT_HASH);
+                        output.writeUTF(entry.getKey());
+                        output.writeLong(entry.getValue().longValue());
+                    }
+                }
             } catch (Exception e) {
                 throw new ManagementException("Failed to write local management connection information in request", e);
             }
@@ -164,13 +205,66 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
 
         protected final DomainModel receiveResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
             try {
-                expectHeader(input, ManagementProtocol.PARAM_DOMAIN_MODEL);
-                log.infof("Registered with remote domain controller");
-                return unmarshal(input, DomainModel.class);
+                expectHeader(input, ManagementProtocol.PARAM_PEER_DISTRIBUTION);
+                connection.peerDistributionEnabled = input.readBoolean();
+                final byte type = input.readByte();
+                switch (type) {
+                    case ManagementProtocol.PARAM_DOMAIN_MODEL: {
+                        final DomainModel domainModel = unmarshal(input, DomainModel.class);
+                        log.infof("Registered with remote domain controller");
+                        return domainModel;
+                    }
+                    case ManagementProtocol.PARAM_DOMAIN_MODEL_ELEMENT_COUNT: {
+                        final int count = input.readInt();
+                        final Map<String, AbstractModelElement<?>> changedElements = new HashMap<String, AbstractModelElement<?>>();
+                        for (int i = 0; i < count; i++) {
+                            expectHeader(input, ManagementProtocol.PARAM_DOMAIN_MODEL_ELEMENT);
+                            final String key = input.readUTF();
+                            changedElements.put(key, input.readBoolean() ? unmarshal(input, AbstractModelElement.class) : null);
+                        }
+                        if (heldDomainModel == null) {
+                            throw new ManagementException("Received changed domain model elements without holding a domain model");
+                        }
+                        if (changedElements.isEmpty()) {
+                            log.infof("Registered with remote domain controller, the domain model is unchanged");
+                            return heldDomainModel;
+                        }
+                        // The held model is in use by the server manager, so the elements replace those of a copy
+                        final DomainModel domainModel = copy(heldDomainModel);
+                        try {
+                            domainModel.applyChangedElements(changedElements);
+                        } catch (IllegalArgumentException e) {
+                            throw new DomainModelSyncException("Failed to replace domain model elements " + changedElements.keySet(), e);
+                        }
+                        log.infof("Registered with remote domain controller, replaced domain model elements %s", changedElements.keySet());
+                        return domainModel;
+                    }
+                    default:
+                        throw new ManagementException("Invalid domain model type " + type);
+                }
+            } catch (ManagementException e) {
+                throw e;
             } catch (Exception e) {
                 throw new ManagementException("Failed to read domain model from response", e);
             }
         }
+
+        private static DomainModel copy(final DomainModel domainModel) throws Exception {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            marshal(Marshalling.createByteOutput(bytes), domainModel);
+            return unmarshal(Marshalling.createByteInput(new ByteArrayInputStream(bytes.toByteArray())), DomainModel.class);
+        }
+    }
+
+    /**
+     * The held domain model could not be brought up to date.
+     */
+    private static class DomainModelSyncException extends ManagementException {
+        private static final long serialVersionUID = -4594627316375212409L;
+
+        private DomainModelSyncException(final String message, final Throwable cause) {
+            super(message, cause);
+        }
     }
 
     private static class UnregisterOperation extends DomainControllerRequest<Void> {
@@ -195,13 +289,30 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
     private static class GetFileOperation extends DomainControllerRequest<File> {
         private final byte rootId;
         private final String filePath;
-        private final FileRepository localFileRepository;
+        private final File localPath;
+        private final Map<String, FileDelta.FileInfo> heldFiles = new HashMap<String, FileDelta.FileInfo>();
 
         private GetFileOperation(final byte rootId, final String filePath, final FileRepository localFileRepository, final RemoteDomainControllerConnection connection) {
             super(connection);
             this.rootId = rootId;
             this.filePath = filePath;
-            this.localFileRepository = localFileRepository;
+            switch (rootId) {
+                case 0: {
+                    localPath = localFileRepository.getFile(filePath);
+                    break;
+                }
+                case 1: {
+                    localPath = localFileRepository.getConfigurationFile(filePath);
+                    break;
+                }
+                case 2: {
+                    localPath = localFileRepository.getDeploymentFile(filePath);
+                    break;
+                }
+                default: {
+                    localPath = null;
+                }
+            }
         }
 
         public final byte getRequestCode() {
@@ -219,30 +330,28 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
                 output.writeByte(rootId);
                 output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
                 output.writeUTF(filePath);
+                if (localPath != null) {
+                    for (FileDelta.FileInfo held : FileDelta.describe(localPath)) {
+                        heldFiles.put(held.getPath(), held);
+                    }
+                }
+                output.writeByte(ManagementProtocol.PARAM_FILE_HASH_COUNT);
+                output.writeInt(heldFiles.size());
+                for (FileDelta.FileInfo held : heldFiles.values()) {
+                    output.writeByte(ManagementProtocol.PARAM_FILE_HASH);
+                    held.writeTo(output);
+                }
             } catch (IOException e) {
                 throw new ManagementException("Failed to send sync file request", e);
             }
         }
 
         protected final File receiveResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
-            final File localPath;
-            switch (rootId) {
-                case 0: {
-                    localPath = localFileRepository.getFile(filePath);
-                    break;
-                }
-                case 1: {
-                    localPath = localFileRepository.getConfigurationFile(filePath);
-                    break;
-                }
-                case 2: {
-                    localPath = localFileRepository.getDeploymentFile(filePath);
-                    break;
-                }
-                default: {
-                    localPath = null;
-                }
-            }
+            int unchanged = 0;
+            int copied = 0;
+            int deltas = 0;
+            int full = 0;
+            long bytesReceived = 0L;
             try {
                 expectHeader(input, ManagementProtocol.PARAM_NUM_FILES);
                 int numFiles = input.readInt();
@@ -251,7 +360,7 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
                         break;
                     }
                     case 0: { // Found on DC, but was an empty dir
-                        if (!localPath.mkdirs()) {
+                        if (!localPath.isDirectory() && !localPath.mkdirs()) {
                             throw new ManagementException("Unable to create local directory: " + localPath);
                         }
                         break;
@@ -261,32 +370,43 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
                             expectHeader(input, ManagementProtocol.FILE_START);
                             expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
                             final String path = input.readUTF();
-                            expectHeader(input, ManagementProtocol.PARAM_FILE_SIZE);
-                            final long length = input.readLong();
-                            log.debugf("Received file [%s] of length %d", path, length);
                             final File file = new File(localPath, path);
                             if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
                                 throw new ManagementException("Unable to create local directory " + localPath.getParent());
                             }
-                            long totalRead = 0;
-                            OutputStream fileOut = null;
-                            try {
-                                fileOut = new BufferedOutputStream(new FileOutputStream(file));
-                                final byte[] buffer = new byte[8192];
-                                int read;
-                                while (totalRead < length && (read = input.read(buffer, 0, Math.min((int) (length - totalRead), buffer.length))) != -1) {
-                                    if (read > 0) {
-                                        fileOut.write(buffer, 0, read);
-                                        totalRead += read;
-                                    }
+                            final byte type = input.readByte();
+                            switch (type) {
+                                case ManagementProtocol.FILE_UNCHANGED: {
+                                    unchanged++;
+                                    break;
                                 }
-                            } finally {
-                                if (fileOut != null) {
-                                    fileOut.close();
+                                case ManagementProtocol.FILE_COPY: {
+                                    final String source = input.readUTF();
+                                    log.debugf("Copying file [%s] from local file [%s]", path, source);
+                                    FileDelta.copy(new File(localPath, source), file);
+                                    copied++;
+                                    break;
                                 }
-                            }
-                            if (totalRead != length) {
-                                throw new ManagementException("Did not read the entire file. Missing: " + (length - totalRead));
+                                case ManagementProtocol.FILE_DELTA: {
+                                    final byte[] sha1 = new byte[20];
+                                    input.readFully(sha1);
+                                    final int blockSize = input.readInt();
+                                    final long literalBytes = FileDelta.applyDelta(file, blockSize, sha1, input);
+                                    log.debugf("Received delta of file [%s] with %d literal bytes", path, Long.valueOf(literalBytes));
+                                    bytesReceived += literalBytes;
+                                    deltas++;
+                                    break;
+                                }
+                                case ManagementProtocol.PARAM_FILE_SIZE: {
+                                    final long length = input.readLong();
+                                    log.debugf("Received file [%s] of length %d", path, length);
+                                    receiveFile(input, file, length);
+                                    bytesReceived += length;
+                                    full++;
+                                    break;
+                                }
+                                default:
+                                    throw new ManagementException("Invalid file transfer type " + type + " for " + path);
                             }
                             expectHeader(input, ManagementProtocol.FILE_END);
                         }
@@ -295,17 +415,44 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
             } catch (IOException e) {
                 throw new ManagementException("Failed to process sync file response", e);
             }
+            log.infof("Synchronized [%s] from the domain controller: %d files unchanged, %d copied locally, %d received as deltas, %d received in full; %d bytes received",
+                    filePath, Integer.valueOf(unchanged), Integer.valueOf(copied), Integer.valueOf(deltas), Integer.valueOf(full), Long.valueOf(bytesReceived));
             return localPath;
         }
+
+        private void receiveFile(final ByteDataInput input, final File file, final long length) throws IOException, ManagementException {
+            long totalRead = 0;
+            OutputStream fileOut = null;
+            try {
+                fileOut = new BufferedOutputStream(new FileOutputStream(file));
+                final byte[] buffer = new byte[8192];
+                int read;
+                while (totalRead < length && (read = input.read(buffer, 0, Math.min((int) (length - totalRead), buffer.length))) != -1) {
+                    if (read > 0) {
+                        fileOut.write(buffer, 0, read);
+                        totalRead += read;
+                    }
+                }
+            } finally {
+                if (fileOut != null) {
+                    fileOut.close();
+                }
+            }
+            if (totalRead != length) {
+                throw new ManagementException("Did not read the entire file. Missing: " + (length - totalRead));
+            }
+        }
     }
 
     private static class RemoteFileRepository implements FileRepository {
         private final RemoteDomainControllerConnection connection;
         private final FileRepository localFileRepository;
+        private final DeploymentDownloader deploymentDownloader;
 
         private RemoteFileRepository(final RemoteDomainControllerConnection connection, final FileRepository localFileRepository) {
             this.connection = connection;
             this.localFileRepository = localFileRepository;
+            this.deploymentDownloader = new DeploymentDownloader(connection, localFileRepository, connection.executorService);
         }
 
         public final File getFile(String relativePath) {
@@ -317,7 +464,11 @@ public class RemoteDomainControllerConnection implements DomainControllerConnect
         }
 
         public final File getDeploymentFile(String relativePath) {
-            return getFile(relativePath, (byte)2);
+            try {
+                return deploymentDownloader.download(relativePath);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to get deployment file from remote repository", e);
+            }
         }
 
         private File getFile(final String relativePath, final byte repoId) {
@@ -38,12 +38,14 @@ import org.jboss.as.server.manager.ServerManagerProtocol.ServerManagerToServerPr
 public final class Server {
 
     private final String serverProcessName;
-    private final ServerModel serverConfig;
+    private volatile ServerModel serverConfig;
     private volatile DirectServerManagerCommunicationHandler communicationHandler;
 
     private final RespawnPolicy respawnPolicy;
     private final AtomicInteger respawnCount = new AtomicInteger();
     private volatile ServerState state;
+    private volatile long respawnTime;
+    private volatile boolean respawnFromStandby;
 
 //    public Server(final InputStream errorStream, final InputStream inputStream, final OutputStream outputStream) {
 //        this.processManagerSlave = null;
@@ -105,6 +107,24 @@ public final class Server {
 //        this.communicationHandler = communicationHandler;
     }
 
+    /**
+     * Create a standby, which has no configuration until it replaces a server.
+     *
+     * @param serverProcessName the process name of the standby
+     * @param respawnPolicy the respawn policy
+     */
+    Server(String serverProcessName, RespawnPolicy respawnPolicy) {
+        if (serverProcessName == null) {
+            throw new IllegalArgumentException("serverProcessName is null");
+        }
+        if (respawnPolicy == null) {
+            throw new IllegalArgumentException("respawnPolicy is null");
+        }
+        this.serverProcessName = serverProcessName;
+        this.respawnPolicy = respawnPolicy;
+        this.state = ServerState.BOOTING;
+    }
+
     public ServerState getState() {
         return state;
     }
@@ -129,11 +149,63 @@ public final class Server {
         return serverConfig;
     }
 
+    /**
+     * Gets whether this is a standby which has not been given a configuration yet.
+     *
+     * @return <code>true</code> if this is an unused standby
+     */
+    boolean isStandby() {
+        return serverConfig == null;
+    }
+
+    /**
+     * Give a standby the configuration of the server it replaces.
+     *
+     * @param serverConfig the configuration
+     */
+    void promote(ServerModel serverConfig) {
+        if (serverConfig == null) {
+            throw new IllegalArgumentException("serverConfig is null");
+        }
+        if (this.serverConfig != null) {
+            throw new IllegalStateException(serverProcessName + " is not a standby");
+        }
+        this.serverConfig = serverConfig;
+    }
+
+    /**
+     * Record that this server is being respawned, to measure how long it takes to become available again.
+     *
+     * @param fromStandby <code>true</code> if a standby JVM is taking over, <code>false</code> if a new JVM is launched
+     */
+    void respawning(boolean fromStandby) {
+        respawnFromStandby = fromStandby;
+        respawnTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Record that a respawned server is available again.
+     *
+     * @return the time in milliseconds the respawn took, or <code>-1</code> if the server was not respawned
+     */
+    long respawned() {
+        final long time = respawnTime;
+        respawnTime = 0L;
+        return time == 0L ? -1L : System.currentTimeMillis() - time;
+    }
+
+    boolean isRespawnFromStandby() {
+        return respawnFromStandby;
+    }
+
     void setCommunicationHandler(DirectServerManagerCommunicationHandler communicationHandler) {
         this.communicationHandler = communicationHandler;
     }
 
     public void start() throws IOException {
+        if (serverConfig == null) {
+            throw new IllegalStateException("Standby " + serverProcessName + " has no configuration");
+        }
         sendCommand(ServerManagerToServerProtocolCommand.START_SERVER, serverConfig);
     }
 
@@ -0,0 +1,281 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Launches the servers of a host in parallel.  At most the configured number of servers are booting at any time; a
+ * server counts as booting from its launch until it reports that it started or failed to start, or until the start
+ * timeout expires, so a server which never reports back does not hold its slot forever.  Launches can be spaced out
+ * by a stagger delay.
+ * <p>
+ * The launcher records when each server was launched, became available and finished booting, and logs the timeline
+ * of the host once every server has finished.
+ *
+ * @author Kabir Khan
+ */
+final class ServerLauncher {
+    private static final Logger log = Logger.getLogger("org.jboss.server.manager");
+
+    private final Semaphore permits;
+    private final long stagger;
+    private final long timeout;
+    private final ExecutorService executor;
+    /* Separate from the executor, whose threads may all be waiting for a permit */
+    private final ScheduledThreadPoolExecutor timer;
+    private final long startTime = System.currentTimeMillis();
+    private final Map<String, Timeline> timelines = new LinkedHashMap<String, Timeline>();
+    private long nextLaunch;
+    private int unfinished;
+    private boolean allQueued;
+
+    /**
+     * Create a launcher.
+     *
+     * @param maxConcurrent the maximum number of servers booting at once
+     * @param stagger the minimum time between two launches, in milliseconds
+     * @param timeout the time a server may boot before its slot is released, in milliseconds
+     */
+    ServerLauncher(final int maxConcurrent, final long stagger, final long timeout) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        if (timeout < 1) {
+            throw new IllegalArgumentException("timeout must be at least 1");
+        }
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.stagger = stagger;
+        this.timeout = timeout;
+        this.executor = Executors.newFixedThreadPool(maxConcurrent, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Server Launcher " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Server Launcher Timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queue a server for launch.
+     *
+     * @param processName the process name of the server
+     * @param launch the launch of the server
+     */
+    void launch(final String processName, final Launch launch) {
+        final Timeline timeline = new Timeline();
+        synchronized (this) {
+            timelines.put(processName, timeline);
+            unfinished++;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    permits.acquire();
+                    awaitStagger();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                synchronized (ServerLauncher.this) {
+                    timeline.launched = System.currentTimeMillis();
+                    timeline.holdsPermit = true;
+                    timeline.timeout = timer.schedule(new Runnable() {
+                        public void run() {
+                            timedOut(processName);
+                        }
+                    }, timeout, TimeUnit.MILLISECONDS);
+                }
+                try {
+                    launch.launch();
+                } catch (Throwable t) {
+                    log.errorf(t, "Failed to start server %s", processName);
+                    finished(processName, ServerState.FAILED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called once every server has been queued.
+     */
+    void allQueued() {
+        executor.shutdown();
+        synchronized (this) {
+            allQueued = true;
+            logTimelineIfFinished();
+        }
+    }
+
+    /**
+     * Record that a server is available.
+     *
+     * @param processName the process name of the server
+     */
+    synchronized void available(final String processName) {
+        final Timeline timeline = timelines.get(processName);
+        if (timeline != null && timeline.available == 0L) {
+            timeline.available = System.currentTimeMillis();
+            log.infof("Server %s available after %d ms", processName, Long.valueOf(timeline.available - startTime));
+        }
+    }
+
+    /**
+     * Record that a server finished booting, freeing its launch slot.
+     *
+     * @param processName the process name of the server
+     * @param state the state the server ended up in
+     */
+    void finished(final String processName, final ServerState state) {
+        boolean release = false;
+        synchronized (this) {
+            final Timeline timeline = timelines.get(processName);
+            if (timeline == null || timeline.finished != 0L) {
+                return;
+            }
+            timeline.finished = System.currentTimeMillis();
+            timeline.state = state;
+            release = releasePermit(timeline);
+            unfinished--;
+            logTimelineIfFinished();
+        }
+        if (release) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Release the launch slot of a server which has not finished booting within the timeout.  The server is still
+     * recorded when it finishes.
+     *
+     * @param processName the process name of the server
+     */
+    private void timedOut(final String processName) {
+        synchronized (this) {
+            final Timeline timeline = timelines.get(processName);
+            if (timeline == null || !releasePermit(timeline)) {
+                return;
+            }
+        }
+        log.warnf("Server %s has not finished starting after %d ms, launching the next server", processName, Long.valueOf(timeout));
+        permits.release();
+    }
+
+    /**
+     * Abandon the servers which have not been launched yet.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private boolean releasePermit(final Timeline timeline) {
+        if (!timeline.holdsPermit) {
+            return false;
+        }
+        timeline.holdsPermit = false;
+        if (timeline.timeout != null) {
+            timeline.timeout.cancel(false);
+            timer.purge();
+        }
+        return true;
+    }
+
+    private void awaitStagger() throws InterruptedException {
+        final long delay;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            final long launchAt = Math.max(now, nextLaunch);
+            nextLaunch = launchAt + stagger;
+            delay = launchAt - now;
+        }
+        if (delay > 0L) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private void logTimelineIfFinished() {
+        if (!allQueued || unfinished > 0 || timelines.isEmpty()) {
+            return;
+        }
+        final StringBuilder sb = new StringBuilder("Server startup timeline, in ms since the servers were queued:");
+        for (Map.Entry<String, Timeline> entry : timelines.entrySet()) {
+            final Timeline timeline = entry.getValue();
+            sb.append("\n  ").append(entry.getKey());
+            appendTime(sb, "launched", timeline.launched);
+            appendTime(sb, "available", timeline.available);
+            appendTime(sb, timeline.state.toString().toLowerCase(), timeline.finished);
+        }
+        log.info(sb);
+        timelines.clear();
+        timer.shutdown();
+    }
+
+    private void appendTime(final StringBuilder sb, final String event, final long time) {
+        if (time != 0L) {
+            sb.append(' ').append(event).append(" +").append(time - startTime);
+        }
+    }
+
+    /**
+     * The launch of a server.
+     */
+    interface Launch {
+
+        /**
+         * Create the server and ask the process manager to start it.
+         *
+         * @throws Exception if the server could not be launched
+         */
+        void launch() throws Exception;
+    }
+
+    private static final class Timeline {
+        private long launched;
+        private long available;
+        private long finished;
+        private ServerState state;
+        private boolean holdsPermit;
+        private ScheduledFuture<?> timeout;
+    }
+}
@@ -47,6 +47,11 @@ public final class ServerMaker {
      */
     static final String SERVER_PROCESS_NAME_PREFIX = "Server:";
 
+    /**
+     * Prefix applied to a standby's name to create it's process name.
+     */
+    static final String STANDBY_PROCESS_NAME_PREFIX = "Standby:";
+
     private final ProcessManagerSlave processManagerSlave;
 
     @SuppressWarnings("unused")
@@ -127,6 +132,28 @@ public final class ServerMaker {
         return server;
     }
 
+    /**
+     * Add a standby JVM to the process manager.  The standby boots to the point where it waits for its
+     * configuration, which it is given when it replaces a server which went down.
+     *
+     * @param standbyName the name of the standby, used in place of a server name for its directories
+     * @param jvmElement the jvm configuration of the standby's server group
+     * @param systemProperties the system properties of the standby's server group, host and domain
+     * @param respawnPolicy the respawn policy
+     * @return the standby
+     * @throws IOException if the process manager could not be told about the standby
+     */
+    public Server makeStandby(String standbyName, JvmElement jvmElement, PropertiesElement systemProperties, RespawnPolicy respawnPolicy) throws IOException {
+        String standbyProcessName = STANDBY_PROCESS_NAME_PREFIX + standbyName;
+        List<String> command = getServerLaunchCommand(standbyName, standbyProcessName, jvmElement, systemProperties);
+
+        Map<String, String> env = getServerLaunchEnvironment(jvmElement);
+
+        processManagerSlave.addProcess(standbyProcessName, command, env, environment.getHomeDir().getAbsolutePath());
+
+        return new Server(standbyProcessName, respawnPolicy);
+    }
+
     private List<String> getServerLaunchCommand(final String serverName, final String serverProcessName, final JvmElement jvm, final PropertiesElement systemProperties) {
         List<String> command = new ArrayList<String>();
 
@@ -223,6 +250,11 @@ public final class ServerMaker {
         command.add(communicationVariables.getServerManagerAddress());
         command.add(CommandLineConstants.INTERPROCESS_SM_PORT);
         command.add(communicationVariables.getServerManagerPort());
+        final String serverManagerSocket = communicationVariables.getServerManagerSocket();
+        if (serverManagerSocket != null) {
+            command.add(CommandLineConstants.INTERPROCESS_SM_SOCKET);
+            command.add(serverManagerSocket);
+        }
 
         // Pass through as args to main any sys props that are read at primordial boot
         Map<String, String> sysProps = null;
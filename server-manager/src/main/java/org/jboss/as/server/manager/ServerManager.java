@@ -29,18 +29,23 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.ObjectName;
 import javax.xml.stream.XMLInputFactory;
 
 import org.jboss.as.domain.controller.DomainController;
@@ -48,14 +53,18 @@ import org.jboss.as.model.DomainModel;
 import org.jboss.as.model.Element;
 import org.jboss.as.model.HostModel;
 import org.jboss.as.model.JvmElement;
+import org.jboss.as.model.LocalTransportElement;
 import org.jboss.as.model.ManagementElement;
 import org.jboss.as.model.ParseResult;
+import org.jboss.as.model.PropertiesElement;
 import org.jboss.as.model.RemoteDomainControllerElement;
 import org.jboss.as.model.ServerElement;
 import org.jboss.as.model.ServerGroupDeploymentElement;
 import org.jboss.as.model.ServerGroupElement;
 import org.jboss.as.model.ServerModel;
+import org.jboss.as.model.StandbyPoolElement;
 import org.jboss.as.model.socket.ServerInterfaceElement;
+import org.jboss.as.process.ProcessSample;
 import org.jboss.as.process.RespawnPolicy;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommand;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
@@ -67,6 +76,7 @@ import org.jboss.as.server.manager.management.DomainControllerOperationHandler;
 import org.jboss.as.server.manager.management.ManagementCommunicationService;
 import org.jboss.as.server.manager.management.ManagementCommunicationServiceInjector;
 import org.jboss.as.server.manager.management.ManagementOperationHandlerService;
+import org.jboss.as.server.manager.management.PeerDeploymentOperationHandler;
 import org.jboss.as.server.manager.management.ServerManagerOperationHandler;
 import org.jboss.as.services.net.NetworkInterfaceBinding;
 import org.jboss.as.services.net.NetworkInterfaceService;
@@ -113,14 +123,20 @@ public class ServerManager implements ShutdownListener {
     private DomainModel domainConfig;
     private DomainControllerConnection domainControllerConnection;
     private ServerMaker serverMaker;
+    private volatile ServerLauncher serverLauncher;
+    private volatile ProcessTelemetry processTelemetry;
     private final ServiceContainer serviceContainer = ServiceContainer.Factory.create();
     private final AtomicBoolean serversStarted = new AtomicBoolean();
     private final AtomicBoolean stopping = new AtomicBoolean();
+    private final AtomicBoolean peerDeploymentsServed = new AtomicBoolean();
 
     // TODO figure out concurrency controls
 //    private final Lock hostLock = new ReentrantLock();
 //    private final Lock domainLock = new ReentrantLock();
     private final Map<String, Server> servers = Collections.synchronizedMap(new HashMap<String, Server>());
+    private final Map<String, StandbyPool> standbyPools = new ConcurrentHashMap<String, StandbyPool>();
+    private final AtomicInteger standbyCount = new AtomicInteger();
+    private final PromotedStandbys promotedStandbys;
 
     public ServerManager(ServerManagerEnvironment environment) {
         if (environment == null) {
@@ -131,6 +147,7 @@ public class ServerManager implements ShutdownListener {
         this.extensionRegistrar = StandardElementReaderRegistrar.Factory.getRegistrar();
         this.processManagerCommmandHandler = new ProcessManagerCommandHandler();
         this.fileRepository = new LocalFileRepository(environment);
+        this.promotedStandbys = new PromotedStandbys(new File(environment.getDomainDataDir(), "promoted-standbys.properties"));
     }
 
     public String getName() {
@@ -156,6 +173,7 @@ public class ServerManager implements ShutdownListener {
         // Start communication with the ProcessManager. This also
         // creates a daemon thread to keep this process alive
         launchProcessManagerSlave();
+        registerProcessTelemetry();
 
         initializeServerMaker();
 
@@ -190,25 +208,129 @@ public class ServerManager implements ShutdownListener {
     }
 
     public void startServers() {
+        final ServerLauncher launcher = new ServerLauncher(environment.getServerStartConcurrency(), environment.getServerStartStagger(),
+                environment.getServerStartTimeout());
+        this.serverLauncher = launcher;
+        // every process is launched afresh, so no standby has replaced a server yet
+        promotedStandbys.clear();
         for (ServerElement serverEl : hostConfig.getServers()) {
             // TODO take command line input on what servers to start
             if (serverEl.isStart()) {
-                log.info("Starting server " + serverEl.getName());
-                ServerModel serverConf = new ServerModel(domainConfig, hostConfig, serverEl.getName());
-                JvmElement jvmElement = getServerJvmElement(domainConfig, hostConfig, serverEl.getName());
-                try {
-
-                    Server server = serverMaker.makeServer(serverConf, jvmElement, getRespawnPolicy(serverConf));
-                    servers.put(getServerProcessName(serverConf), server);
-                    // Now that the server is in the servers map we can start it
-                    startServer(serverConf, server);
-                } catch (IOException e) {
-                    // FIXME handle failure to start server
-                    log.error("Failed to start server " + serverEl.getName(), e);
-                }
+                final String serverName = serverEl.getName();
+                launcher.launch(getServerProcessName(serverName), new ServerLauncher.Launch() {
+                    public void launch() throws IOException {
+                        log.info("Starting server " + serverName);
+                        ServerModel serverConf = new ServerModel(domainConfig, hostConfig, serverName);
+                        JvmElement jvmElement = getServerJvmElement(domainConfig, hostConfig, serverName);
+                        Server server = serverMaker.makeServer(serverConf, jvmElement, getRespawnPolicy(serverConf));
+                        servers.put(getServerProcessName(serverConf), server);
+                        // Now that the server is in the servers map we can start it
+                        startServer(serverConf, server);
+                    }
+                });
             }
             else log.info("Server " + serverEl.getName() + " is configured to not be started");
         }
+        // Standbys are only needed once a server goes down, so they are launched last
+        for (StandbyPoolElement poolEl : hostConfig.getStandbyPools()) {
+            if (poolEl.getSize() == 0) {
+                continue;
+            }
+            final StandbyPool pool = new StandbyPool(poolEl.getServerGroup(), poolEl.getSize());
+            standbyPools.put(pool.getServerGroup(), pool);
+            for (int i = 0; i < pool.getSize(); i++) {
+                final String standbyName = nextStandbyName(pool);
+                launcher.launch(ServerMaker.STANDBY_PROCESS_NAME_PREFIX + standbyName, new ServerLauncher.Launch() {
+                    public void launch() throws IOException {
+                        launchStandby(pool, standbyName);
+                    }
+                });
+            }
+        }
+        launcher.allQueued();
+    }
+
+    private String nextStandbyName(final StandbyPool pool) {
+        return "standby-" + pool.getServerGroup() + "-" + standbyCount.incrementAndGet();
+    }
+
+    private void launchStandby(final StandbyPool pool, final String standbyName) throws IOException {
+        log.info("Starting standby " + standbyName + " for server group " + pool.getServerGroup());
+        JvmElement jvmElement = getStandbyJvmElement(domainConfig, hostConfig, pool.getServerGroup());
+        PropertiesElement systemProperties = getStandbySystemProperties(domainConfig, hostConfig, pool.getServerGroup());
+        Server standby = serverMaker.makeStandby(standbyName, jvmElement, systemProperties, getRespawnPolicy(null));
+        pool.add(standby);
+        processManagerSlave.startProcess(standby.getServerProcessName());
+    }
+
+    /**
+     * Replace a server which went down with a standby of its server group, and launch a new standby in place of the
+     * one used.  A standby is launched with the JVM configuration and system properties of its server group, so a
+     * server which declares its own <code>jvm</code> or system properties is never replaced by one.
+     * <p>
+     * The standby keeps its process name in the process manager, but is stored under the process name of the server
+     * it replaced, as a restarted server manager would store it.
+     *
+     * @param failed the server which went down
+     * @return <code>true</code> if a standby took over, <code>false</code> if none was available
+     */
+    private boolean promoteStandby(final Server failed) {
+        final ServerModel serverConf = failed.getServerConfig();
+        final ServerElement serverEl = hostConfig.getServer(serverConf.getServerName());
+        final StandbyPool pool = serverEl == null ? null : standbyPools.get(serverEl.getServerGroup());
+        if (pool == null) {
+            return false;
+        }
+        if (!isStandbyCompatible(serverEl)) {
+            log.infof("Server %s declares its own JVM configuration or system properties, which a standby of server group %s does not have",
+                    serverEl.getName(), pool.getServerGroup());
+            return false;
+        }
+        final Server standby = pool.takeReady();
+        if (standby == null) {
+            log.infof("No standby is ready to replace server %s", failed.getServerProcessName());
+            return false;
+        }
+        final String failedName = failed.getServerProcessName();
+        final String serverProcessName = getServerProcessName(serverConf);
+        log.infof("Replacing server %s with standby %s", serverProcessName, standby.getServerProcessName());
+        try {
+            processManagerSlave.stopProcess(failedName);
+            processManagerSlave.removeProcess(failedName);
+        } catch (IOException e) {
+            log.errorf(e, "Could not remove server %s from PM", failedName);
+        }
+        promotedStandbys.removed(failedName);
+
+        standby.promote(serverConf);
+        standby.respawning(true);
+        servers.put(serverProcessName, standby);
+        promotedStandbys.promoted(standby.getServerProcessName(), serverProcessName);
+        try {
+            standby.start();
+            standby.setState(ServerState.STARTING);
+        } catch (IOException e) {
+            log.errorf(e, "Could not start standby %s", standby.getServerProcessName());
+            standby.setState(ServerState.FAILED);
+            respawn(standby);
+        }
+
+        try {
+            launchStandby(pool, nextStandbyName(pool));
+        } catch (IOException e) {
+            log.errorf(e, "Could not launch a new standby for server group %s", pool.getServerGroup());
+        }
+        return true;
+    }
+
+    private Server getStandby(String processName) {
+        for (StandbyPool pool : standbyPools.values()) {
+            final Server standby = pool.get(processName);
+            if (standby != null) {
+                return standby;
+            }
+        }
+        return null;
     }
 
     private void startServer(final ServerModel serverModel, final Server server) throws IOException {
@@ -230,7 +352,7 @@ public class ServerManager implements ShutdownListener {
         return id.substring(0, 2) + "/" + id.substring(2);
     }
 
-    private RespawnPolicy getRespawnPolicy(ServerModel serverConf) {
+    private static RespawnPolicy getRespawnPolicy(ServerModel serverConf) {
         //TODO JBAS-8390 Read respawn policy from host or domain?
         return RespawnPolicy.DefaultRespawnPolicy.INSTANCE;
     }
@@ -241,15 +363,50 @@ public class ServerManager implements ShutdownListener {
      */
     private void reconnectServers() {
         //Create the server proxies
+        reconnectServers(promotedStandbys, domainConfig, hostConfig, servers, new ServerFactory() {
+            public Server makeServer(ServerModel serverConf) throws IOException {
+                JvmElement jvmElement = getServerJvmElement(domainConfig, hostConfig, serverConf.getServerName());
+                return serverMaker.makeServer(serverConf, jvmElement, getRespawnPolicy(serverConf));
+            }
+        });
+
+        //Tell PM to tell servers to reconnect
+        try {
+            processManagerSlave.reconnectServers(directServerCommunicationListener.getSmAddress(), directServerCommunicationListener.getSmPort());
+        } catch (IOException e) {
+            log.error("Failed to send RECONNECT_SERVERS", e);
+        }
+    }
+
+    /**
+     * Create the proxies of the servers which are still running after a restart of the server manager.  A server
+     * which a standby replaced before the restart runs in that standby, which the process manager still knows by the
+     * standby's name.
+     *
+     * @param promotedStandbys the standbys promoted before the restart
+     * @param domainConfig the domain configuration
+     * @param hostConfig the host configuration
+     * @param servers the servers, keyed by their process name
+     * @param factory the factory of the servers which run in their own process
+     */
+    static void reconnectServers(PromotedStandbys promotedStandbys, DomainModel domainConfig, HostModel hostConfig,
+            Map<String, Server> servers, ServerFactory factory) {
+        promotedStandbys.load();
         for (ServerElement serverEl : hostConfig.getServers()) {
             // TODO take command line input on what servers to start
             if (serverEl.isStart()) {
                 log.info("Creating reconnected server " + serverEl.getName());
                 ServerModel serverConf = new ServerModel(domainConfig, hostConfig, serverEl.getName());
-                JvmElement jvmElement = getServerJvmElement(domainConfig, hostConfig, serverEl.getName());
+                final String standbyProcessName = promotedStandbys.getStandbyProcessName(getServerProcessName(serverConf));
+                if (standbyProcessName != null) {
+                    log.infof("Server %s is running in standby %s", serverEl.getName(), standbyProcessName);
+                    Server server = new Server(standbyProcessName, getRespawnPolicy(serverConf));
+                    server.promote(serverConf);
+                    servers.put(getServerProcessName(serverConf), server);
+                    continue;
+                }
                 try {
-
-                    Server server = serverMaker.makeServer(serverConf, jvmElement, getRespawnPolicy(serverConf));
+                    Server server = factory.makeServer(serverConf);
                     servers.put(getServerProcessName(serverConf), server);
                 } catch (IOException e) {
                     // FIXME handle failure to start server
@@ -258,13 +415,13 @@ public class ServerManager implements ShutdownListener {
             }
             else log.info("Server " + serverEl.getName() + " is configured to not be started");
         }
+    }
 
-        //Tell PM to tell servers to reconnect
-        try {
-            processManagerSlave.reconnectServers(directServerCommunicationListener.getSmAddress(), directServerCommunicationListener.getSmPort());
-        } catch (IOException e) {
-            log.error("Failed to send RECONNECT_SERVERS", e);
-        }
+    /**
+     * Makes the proxy of a server which runs in its own process.
+     */
+    interface ServerFactory {
+        Server makeServer(ServerModel serverConf) throws IOException;
     }
 
     /**
@@ -275,7 +432,7 @@ public class ServerManager implements ShutdownListener {
         if (stopping.get())
             return;
 
-        Server server = servers.get(processName);
+        Server server = getServer(processName);
 
         if (server == null) {
             log.errorf("No server called %s with a closed connection", processName);
@@ -307,7 +464,7 @@ public class ServerManager implements ShutdownListener {
      */
     void availableServer(String serverName) {
         try {
-            Server server = servers.get(serverName);
+            Server server = getServer(serverName);
             if (server == null) {
                 log.errorf("No server called %s available", serverName);
                 return;
@@ -315,6 +472,16 @@ public class ServerManager implements ShutdownListener {
             checkState(server, ServerState.BOOTING);
 
             server.setState(ServerState.AVAILABLE);
+            serverLaunchEvent(serverName, ServerState.AVAILABLE);
+            if (server.isStandby()) {
+                // a standby waits for the configuration of the server it replaces
+                log.infof("Standby %s is ready", serverName);
+                final ServerLauncher launcher = serverLauncher;
+                if (launcher != null) {
+                    launcher.finished(serverName, ServerState.AVAILABLE);
+                }
+                return;
+            }
             log.infof("Sending config to server %s", serverName);
             server.start();
             server.setState(ServerState.STARTING);
@@ -332,7 +499,12 @@ public class ServerManager implements ShutdownListener {
         }
 
         log.info("Stopping ServerManager");
+        final ServerLauncher launcher = serverLauncher;
+        if (launcher != null) {
+            launcher.shutdown();
+        }
         directServerCommunicationListener.shutdown();
+        unregisterProcessTelemetry();
         if(domainControllerConnection != null) {
             domainControllerConnection.unregister();
         }
@@ -349,7 +521,7 @@ public class ServerManager implements ShutdownListener {
         if (stopping.get())
             return;
 
-        Server server = servers.get(serverName);
+        Server server = servers.get(getServerKey(serverName));
         if (server == null) {
             log.errorf("No server called %s exists for stop", serverName);
             return;
@@ -370,6 +542,7 @@ public class ServerManager implements ShutdownListener {
                 return;
             log.errorf(e, "Could not stop server %s", serverName);
         }
+        promotedStandbys.removed(serverName);
     }
 
     /**
@@ -378,13 +551,19 @@ public class ServerManager implements ShutdownListener {
      * @param serverName the name of the server
      */
     void startedServer(String serverName) {
-        Server server = servers.get(serverName);
+        Server server = servers.get(getServerKey(serverName));
         if (server == null) {
             log.errorf("No server called %s exists for start", serverName);
             return;
         }
         checkState(server, ServerState.STARTING);
         server.setState(ServerState.STARTED);
+        serverLaunchEvent(serverName, ServerState.STARTED);
+        final long respawnTime = server.respawned();
+        if (respawnTime >= 0L) {
+            log.infof("Server %s available %d ms after it went down, in a %s JVM", serverName, Long.valueOf(respawnTime),
+                    server.isRespawnFromStandby() ? "standby" : "new");
+        }
     }
 
     /**
@@ -393,18 +572,19 @@ public class ServerManager implements ShutdownListener {
      * @param serverName the name of the server
      */
     void failedStartServer(String serverName) {
-        Server server = servers.get(serverName);
+        Server server = servers.get(getServerKey(serverName));
         if (server == null) {
             log.errorf("No server called %s exists", serverName);
             return;
         }
         checkState(server, ServerState.STARTING);
         server.setState(ServerState.FAILED);
+        serverLaunchEvent(serverName, ServerState.FAILED);
         respawn(server);
     }
 
     void reconnectedServer(String serverName, ServerState state) {
-        Server server = servers.get(serverName);
+        Server server = getServer(serverName);
         if (server == null) {
             log.errorf("No server found for reconnected server %s", serverName);
             return;
@@ -412,7 +592,7 @@ public class ServerManager implements ShutdownListener {
 
         server.setState(state);
 
-        if (state.isRestartOnReconnect()) {
+        if (state.isRestartOnReconnect() && !server.isStandby()) {
             try {
                 server.start();
             } catch (IOException e) {
@@ -438,6 +618,7 @@ public class ServerManager implements ShutdownListener {
             } catch (IOException e) {
                 log.errorf(e, "Error stopping respawned server % s", server.getServerProcessName());
             }
+            promotedStandbys.removed(server.getServerProcessName());
             return;
         }
 
@@ -453,24 +634,85 @@ public class ServerManager implements ShutdownListener {
     }
 
     public void downServer(String downServerName) {
-        Server server = servers.get(downServerName);
+        Server server = servers.get(getServerKey(downServerName));
         if (server == null) {
-            log.errorf("No server called %s exists", downServerName);
-            return;
+            server = getStandby(downServerName);
+            if (server == null) {
+                log.errorf("No server called %s exists", downServerName);
+                return;
+            }
         }
         server.setState(ServerState.FAILED);
+        serverLaunchEvent(downServerName, ServerState.FAILED);
+        if (!server.isStandby()) {
+            if (promoteStandby(server)) {
+                return;
+            }
+            server.respawning(false);
+        }
         respawn(server);
     }
 
+    /**
+     * Record a step of the boot of a server with the launcher, if the servers are being launched.
+     *
+     * @param serverName the process name of the server
+     * @param state the state the server reached
+     */
+    private void serverLaunchEvent(String serverName, ServerState state) {
+        final ServerLauncher launcher = serverLauncher;
+        if (launcher == null) {
+            return;
+        }
+        if (state == ServerState.AVAILABLE) {
+            launcher.available(serverName);
+        } else {
+            launcher.finished(serverName, state);
+        }
+    }
+
     private void launchProcessManagerSlave() {
         this.processManagerSlave = ProcessManagerSlaveFactory.getInstance().getProcessManagerSlave(environment, hostConfig, processManagerCommmandHandler);
         Thread t = new Thread(this.processManagerSlave.getController(), "Server Manager Process");
         t.start();
     }
 
+    /**
+     * Get the AF_UNIX socket file the servers connect to, if the host is configured to use one.
+     */
+    private File getServerManagerSocketFile() {
+        final LocalTransportElement localTransport = hostConfig.getLocalTransport();
+        if (localTransport == null || localTransport.getType() != LocalTransportElement.Type.UNIX) {
+            return null;
+        }
+        final File dir = localTransport.getPath() != null ? new File(localTransport.getPath()) : environment.getDomainTempDir();
+        return new File(dir, "server-manager.sock");
+    }
+
+    private void registerProcessTelemetry() {
+        final ProcessTelemetry telemetry = new ProcessTelemetry(this, processManagerSlave);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(telemetry, new ObjectName(ProcessTelemetry.OBJECT_NAME));
+            this.processTelemetry = telemetry;
+        } catch (Exception e) {
+            log.warn("Could not register the process telemetry", e);
+        }
+    }
+
+    private void unregisterProcessTelemetry() {
+        if (processTelemetry == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(ProcessTelemetry.OBJECT_NAME));
+        } catch (Exception e) {
+            log.debug("Could not unregister the process telemetry", e);
+        }
+    }
+
     private void launchDirectServerCommunicationHandler() {
         try {
-            this.directServerCommunicationListener = DirectServerCommunicationListener.create(serverCommandHandler, this, environment.getServerManagerAddress(), environment.getServerManagerPort(), 20);
+            this.directServerCommunicationListener = DirectServerCommunicationListener.create(serverCommandHandler, this, environment.getServerManagerAddress(), environment.getServerManagerPort(), 20, getServerManagerSocketFile());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -607,13 +849,41 @@ public class ServerManager implements ShutdownListener {
             return;
         }
         final DomainModel domainModel = domainControllerConnection.register();
+        if (domainControllerConnection.isPeerDistributionEnabled()) {
+            activatePeerDeploymentHandler();
+        }
         setDomain(domainModel);
     }
 
+    /**
+     * Serve the deployments this server manager holds to its peers, once the domain controller distributes
+     * deployments peer-to-peer.
+     */
+    private void activatePeerDeploymentHandler() {
+        if (!peerDeploymentsServed.compareAndSet(false, true)) {
+            return;
+        }
+        final BatchBuilder batchBuilder = serviceContainer.batchBuilder();
+        final ManagementOperationHandlerService<PeerDeploymentOperationHandler> operationHandlerService
+                = new ManagementOperationHandlerService<PeerDeploymentOperationHandler>(new PeerDeploymentOperationHandler(fileRepository));
+        batchBuilder.addService(ManagementCommunicationService.SERVICE_NAME.append("server", "manager", "peer"), operationHandlerService)
+            .addDependency(ManagementCommunicationService.SERVICE_NAME, ManagementCommunicationService.class, new ManagementCommunicationServiceInjector(operationHandlerService));
+        try {
+            batchBuilder.install();
+        } catch (ServiceRegistryException e) {
+            peerDeploymentsServed.set(false);
+            log.errorf(e, "Failed to serve deployments to peer server managers");
+        }
+    }
+
     HostModel getHostConfig() {
         return hostConfig;
     }
 
+    DomainModel getDomainConfig() {
+        return domainConfig;
+    }
+
     protected HostModel parseHost() {
 
         if (!hostXML.exists()) {
@@ -653,6 +923,55 @@ public class ServerManager implements ShutdownListener {
         }
     }
 
+    /**
+     * Combines information from the domain, server group and host levels to come
+     * up with the JVM configuration for the standbys of a server group.
+     *
+     * @param domain the domain configuration object
+     * @param host the host configuration object
+     * @param serverGroupName the name of the server group
+     * @return the JVM configuration object
+     */
+    private JvmElement getStandbyJvmElement(DomainModel domain, HostModel host, String serverGroupName) {
+        ServerGroupElement serverGroup = domain.getServerGroup(serverGroupName);
+        if (serverGroup == null)
+            throw new IllegalStateException("Server group" + serverGroupName + " is not listed in Domain");
+
+        JvmElement groupVM = serverGroup.getJvm();
+        if (groupVM == null) {
+            throw new IllegalStateException(Element.SERVER_GROUP.getLocalName() + " " + serverGroupName +
+                    " has not declared a JVM configuration, which its standbys require");
+        }
+        JvmElement hostVM = host.getJvm(groupVM.getName());
+        return hostVM == null ? new JvmElement(groupVM) : new JvmElement(groupVM, hostVM);
+    }
+
+    /**
+     * Combines the system properties of the domain, server group and host levels
+     * for the standbys of a server group.
+     *
+     * @param domain the domain configuration object
+     * @param host the host configuration object
+     * @param serverGroupName the name of the server group
+     * @return the system properties
+     */
+    private PropertiesElement getStandbySystemProperties(DomainModel domain, HostModel host, String serverGroupName) {
+        ServerGroupElement serverGroup = domain.getServerGroup(serverGroupName);
+        return new PropertiesElement(Element.SYSTEM_PROPERTIES, true, domain.getSystemProperties(),
+                serverGroup == null ? null : serverGroup.getSystemProperties(), host.getSystemProperties());
+    }
+
+    /**
+     * Gets whether a standby, which is launched with the configuration of its server group, can run a server.
+     *
+     * @param server the server
+     * @return <code>false</code> if the server declares its own JVM configuration or system properties
+     */
+    private static boolean isStandbyCompatible(ServerElement server) {
+        final PropertiesElement systemProperties = server.getSystemProperties();
+        return server.getJvm() == null && (systemProperties == null || systemProperties.size() == 0);
+    }
+
     /**
      * Combines information from the domain, server group, host and server levels
      * to come up with an overall JVM configuration for a server.
@@ -695,7 +1014,20 @@ public class ServerManager implements ShutdownListener {
     }
 
     Server getServer(String name) {
-        return servers.get(name);
+        final Server server = servers.get(getServerKey(name));
+        return server != null ? server : getStandby(name);
+    }
+
+    /**
+     * Get the key of a process in the servers map, which is the process name of the server a promoted standby
+     * replaced.
+     *
+     * @param processName the process name
+     * @return the key
+     */
+    private String getServerKey(String processName) {
+        final String serverProcessName = promotedStandbys.getServerProcessName(processName);
+        return serverProcessName != null ? serverProcessName : processName;
     }
 
     static String getServerProcessName(ServerModel serverConfig) {
@@ -778,6 +1110,14 @@ public class ServerManager implements ShutdownListener {
             ServerManager.this.downServer(serverName);
         }
 
+        @Override
+        public void handleSamples(String processName, List<ProcessSample> samples) {
+            final ProcessTelemetry telemetry = processTelemetry;
+            if (telemetry != null) {
+                telemetry.samplesReceived(processName, samples);
+            }
+        }
+
 //        public void registerServer(String serverName, Server server) {
 //            if (serverName == null) {
 //                throw new IllegalArgumentException("serverName is null");
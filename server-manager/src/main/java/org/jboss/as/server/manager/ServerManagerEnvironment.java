@@ -93,6 +93,32 @@ public class ServerManagerEnvironment {
      */
     public static final String DOMAIN_TEMP_DIR = "jboss.domain.temp.dir";
 
+    /**
+     * Constant that holds the name of the environment property
+     * for specifying the maximum number of servers booting at once.
+     *
+     * <p>Defaults to the number of available processors.
+     */
+    public static final String SERVER_START_CONCURRENCY = "jboss.domain.server.start.concurrency";
+
+    /**
+     * Constant that holds the name of the environment property
+     * for specifying the minimum delay in milliseconds between
+     * two server launches.
+     *
+     * <p>Defaults to <tt>0</tt>.
+     */
+    public static final String SERVER_START_STAGGER = "jboss.domain.server.start.stagger";
+
+    /**
+     * Constant that holds the name of the environment property
+     * for specifying the time in milliseconds a server may take
+     * to boot before its launch slot is given to the next server.
+     *
+     * <p>Defaults to <tt>300000</tt>.
+     */
+    public static final String SERVER_START_TIMEOUT = "jboss.domain.server.start.timeout";
+
     private final Properties props;
     private final String processName;
     private final InetAddress processManagerAddress;
@@ -110,6 +136,9 @@ public class ServerManagerEnvironment {
     private final File domainTempDir;
     private final File defaultJVM;
     private final boolean isRestart;
+    private final int serverStartConcurrency;
+    private final long serverStartStagger;
+    private final long serverStartTimeout;
 
     private final InputStream stdin;
     private final PrintStream stdout;
@@ -229,6 +258,10 @@ public class ServerManagerEnvironment {
         } else {
             this.defaultJVM = null;
         }
+
+        this.serverStartConcurrency = Math.max(1, getIntFromProperty(SERVER_START_CONCURRENCY, Runtime.getRuntime().availableProcessors()));
+        this.serverStartStagger = Math.max(0, getIntFromProperty(SERVER_START_STAGGER, 0));
+        this.serverStartTimeout = Math.max(1, getIntFromProperty(SERVER_START_TIMEOUT, 300000));
     }
 
     /**
@@ -357,6 +390,33 @@ public class ServerManagerEnvironment {
         return defaultJVM;
     }
 
+    /**
+     * Gets the maximum number of servers booting at once.
+     *
+     * @return the maximum number of servers booting at once
+     */
+    public int getServerStartConcurrency() {
+        return serverStartConcurrency;
+    }
+
+    /**
+     * Gets the minimum delay between two server launches.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getServerStartStagger() {
+        return serverStartStagger;
+    }
+
+    /**
+     * Gets the time a server may take to boot before its launch slot is released.
+     *
+     * @return the timeout in milliseconds
+     */
+    public long getServerStartTimeout() {
+        return serverStartTimeout;
+    }
+
     private static InetAddress findLocalhost() {
         // FIXME implement findLocalhost
         throw new UnsupportedOperationException("implement me");
@@ -375,4 +435,16 @@ public class ServerManagerEnvironment {
 
        return null;
     }
+
+    private int getIntFromProperty(final String name, final int defaultValue) {
+       String value = props.getProperty(name, null);
+       if (value != null) {
+          try {
+             return Integer.parseInt(value.trim());
+          } catch (NumberFormatException e) {
+             throw new IllegalArgumentException("Property " + name + " should be a number: " + value);
+          }
+       }
+       return defaultValue;
+    }
 }
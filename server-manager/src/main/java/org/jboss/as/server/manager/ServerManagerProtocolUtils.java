@@ -29,11 +29,13 @@ import java.io.IOException;
 import org.jboss.as.server.manager.ServerManagerProtocol.Command;
 import org.jboss.as.server.manager.ServerManagerProtocol.ServerManagerToServerProtocolCommand;
 import org.jboss.as.server.manager.ServerManagerProtocol.ServerToServerManagerProtocolCommand;
+import org.jboss.as.server.manager.management.MarshallerPool;
+import org.jboss.as.server.manager.management.ModelClassTable;
+import org.jboss.as.server.manager.management.ModelObjectTable;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.MarshallerFactory;
 import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
-import org.jboss.marshalling.ModularClassTable;
 import org.jboss.marshalling.Unmarshaller;
 import org.jboss.modules.ModuleClassLoader;
 import org.jboss.modules.ModuleLoadException;
@@ -45,17 +47,18 @@ import org.jboss.modules.ModuleLoadException;
  * @version $Revision: 1.1 $
  */
 public class ServerManagerProtocolUtils {
-    private static final MarshallerFactory MARSHALLER_FACTORY;
-    private static final MarshallingConfiguration CONFIG;
+    private static final MarshallerPool MARSHALLERS;
     static {
+        final MarshallerFactory factory;
         try {
-            MARSHALLER_FACTORY = Marshalling.getMarshallerFactory("river", ModuleClassLoader.forModuleName("org.jboss.marshalling.river"));
+            factory = Marshalling.getMarshallerFactory("river", ModuleClassLoader.forModuleName("org.jboss.marshalling.river"));
         } catch (ModuleLoadException e) {
             throw new RuntimeException(e);
         }
         final MarshallingConfiguration config = new MarshallingConfiguration();
-        config.setClassTable(ModularClassTable.getInstance());
-        CONFIG = config;
+        config.setClassTable(ModelClassTable.getInstance());
+        config.setObjectTable(ModelObjectTable.getInstance());
+        MARSHALLERS = new MarshallerPool(factory, config);
     }
 
     public static byte[] createCommandBytes(ServerManagerToServerProtocolCommand protocol, Object data) throws IOException {
@@ -70,15 +73,20 @@ public class ServerManagerProtocolUtils {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
         byte[] objectBytes = null;
         if (data != null) {
-            final Marshaller marshaller = MARSHALLER_FACTORY.createMarshaller(CONFIG);
+            final Marshaller marshaller = MARSHALLERS.getMarshaller();
+            boolean finished = false;
             try {
                 marshaller.start(Marshalling.createByteOutput(baos));
                 marshaller.writeObject(data);
                 marshaller.finish();
-                marshaller.close();
+                finished = true;
                 objectBytes = baos.toByteArray();
             } finally {
-                safeClose(marshaller);
+                if (finished) {
+                    MARSHALLERS.returnMarshaller(marshaller);
+                } else {
+                    safeClose(marshaller);
+                }
             }
         }
         return objectBytes;
@@ -94,15 +102,20 @@ public class ServerManagerProtocolUtils {
             throw new IllegalArgumentException("No data in command ");
 
         final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(command.getData());
-        final Unmarshaller unmarshaller = MARSHALLER_FACTORY.createUnmarshaller(CONFIG);
+        final Unmarshaller unmarshaller = MARSHALLERS.getUnmarshaller();
+        boolean finished = false;
         try {
             unmarshaller.start(Marshalling.createByteInput(byteArrayInputStream));
             final T obj = unmarshaller.readObject(clazz);
             unmarshaller.finish();
-            unmarshaller.close();
+            finished = true;
             return obj;
         } finally {
-            safeClose(unmarshaller);
+            if (finished) {
+                MARSHALLERS.returnUnmarshaller(unmarshaller);
+            } else {
+                safeClose(unmarshaller);
+            }
         }
     }
 
@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The standby JVMs kept running for a server group.
+ *
+ * @author Kabir Khan
+ */
+final class StandbyPool {
+
+    private final String serverGroup;
+    private final int size;
+    private final List<Server> standbys = new ArrayList<Server>();
+
+    StandbyPool(final String serverGroup, final int size) {
+        this.serverGroup = serverGroup;
+        this.size = size;
+    }
+
+    String getServerGroup() {
+        return serverGroup;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    synchronized void add(final Server standby) {
+        standbys.add(standby);
+    }
+
+    /**
+     * Get a standby of this pool.
+     *
+     * @param processName the process name of the standby
+     * @return the standby, or <code>null</code> if it is not in this pool
+     */
+    synchronized Server get(final String processName) {
+        for (Server standby : standbys) {
+            if (standby.getServerProcessName().equals(processName)) {
+                return standby;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove a standby which is ready to take over a server from the pool.
+     *
+     * @return the standby, or <code>null</code> if none is ready
+     */
+    synchronized Server takeReady() {
+        final Iterator<Server> it = standbys.iterator();
+        while (it.hasNext()) {
+            final Server standby = it.next();
+            if (standby.getState() == ServerState.AVAILABLE) {
+                it.remove();
+                return standby;
+            }
+        }
+        return null;
+    }
+}
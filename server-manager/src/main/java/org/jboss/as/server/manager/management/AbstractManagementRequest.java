@@ -38,17 +38,20 @@ public abstract class AbstractManagementRequest<T> extends ManagementRequest<T>
         super(address, port, connectionRetryLimit, connectionRetryInterval, connectTimeout, executorService);
     }
 
-    public final T execute(final int protocolVersion, final ByteDataOutput output, final ByteDataInput input) throws ManagementException {
+    protected final void writeRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException {
         try {
-            // First send request
             output.writeByte(ManagementProtocol.REQUEST_OPERATION);
             output.writeByte(getRequestCode());
             output.writeByte(ManagementProtocol.REQUEST_START);
             sendRequest(protocolVersion, output);
             output.writeByte(ManagementProtocol.REQUEST_END);
-            output.flush();
+        } catch (IOException e) {
+            throw new ManagementException("Failed to send remote domain controller operation", e);
+        }
+    }
 
-            // Now process the response
+    protected final T readResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
+        try {
             expectHeader(input, ManagementProtocol.RESPONSE_START);
             byte responseCode = input.readByte();
             if (responseCode != getResponseCode()) {
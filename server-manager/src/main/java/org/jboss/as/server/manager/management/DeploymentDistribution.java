@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which server managers hold which deployments, and chooses where a server manager downloads a deployment
+ * from.  Once a server manager has downloaded a deployment it serves it to others, so the number of sources grows
+ * with every completed download and the domain controller only serves the first copies.
+ * <p>
+ * Each source, the domain controller included, serves at most {@link #FAN_OUT} downloads at once, and the domain
+ * controller only serves a deployment no peer holds yet.  A server manager which finds every source busy asks again
+ * later.  A download which is not reported finished within
+ * {@link #ASSIGNMENT_TIMEOUT} no longer counts against its sources.
+ *
+ * @author John Bailey
+ */
+final class DeploymentDistribution {
+
+    /** The system property enabling peer-to-peer distribution of deployment content */
+    public static final String PEER_DISTRIBUTION = "jboss.domain.controller.deployment.peer.distribution";
+
+    /** The system property holding the maximum number of downloads a source serves at once */
+    public static final String FAN_OUT = "jboss.domain.controller.deployment.peer.fanout";
+
+    /** The system property holding the time after which an unfinished download is forgotten, in milliseconds */
+    public static final String ASSIGNMENT_TIMEOUT = "jboss.domain.controller.deployment.peer.assignment.timeout";
+
+    private static final int DEFAULT_FAN_OUT = 4;
+    private static final long DEFAULT_ASSIGNMENT_TIMEOUT = 300000L;
+    private static final int PEERS_PER_DOWNLOAD = 2;
+    private static final String DOMAIN_CONTROLLER = "";
+
+    private final boolean enabled;
+    private final int fanOut;
+    private final long assignmentTimeout;
+    private final Map<String, InetSocketAddress> addresses = new HashMap<String, InetSocketAddress>();
+    private final Map<String, Set<String>> holders = new HashMap<String, Set<String>>();
+    private final Map<String, Map<String, Assignment>> assignments = new HashMap<String, Map<String, Assignment>>();
+
+    DeploymentDistribution() {
+        this(Boolean.getBoolean(PEER_DISTRIBUTION), Integer.getInteger(FAN_OUT, DEFAULT_FAN_OUT).intValue(), Long.getLong(ASSIGNMENT_TIMEOUT, DEFAULT_ASSIGNMENT_TIMEOUT).longValue());
+    }
+
+    DeploymentDistribution(final boolean enabled, final int fanOut, final long assignmentTimeout) {
+        if (fanOut < 1) {
+            throw new IllegalArgumentException("fanOut must be at least 1");
+        }
+        this.enabled = enabled;
+        this.fanOut = fanOut;
+        this.assignmentTimeout = assignmentTimeout;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record the management address of a registered server manager.
+     */
+    synchronized void addServerManager(final String serverManagerId, final InetAddress address, final int port) {
+        addresses.put(serverManagerId, new InetSocketAddress(address, port));
+    }
+
+    /**
+     * Forget a server manager which unregistered, with the deployments it held and the downloads it was running.
+     */
+    synchronized void removeServerManager(final String serverManagerId) {
+        addresses.remove(serverManagerId);
+        assignments.remove(serverManagerId);
+        for (Set<String> deploymentHolders : holders.values()) {
+            deploymentHolders.remove(serverManagerId);
+        }
+    }
+
+    /**
+     * Choose the sources a server manager downloads a deployment from.
+     *
+     * @param serverManagerId the id of the server manager
+     * @param deployment the path of the deployment
+     * @return the ids and addresses of the peers to download from, an empty map to download from the domain
+     * controller, or {@code null} if every source is busy
+     */
+    synchronized Map<String, InetSocketAddress> chooseSources(final String serverManagerId, final String deployment) {
+        expireAssignments();
+        release(serverManagerId, deployment);
+        final Map<String, Integer> load = getLoad();
+        final List<String> candidates = new ArrayList<String>();
+        boolean peerHeld = false;
+        final Set<String> deploymentHolders = holders.get(deployment);
+        if (deploymentHolders != null) {
+            for (String holder : deploymentHolders) {
+                if (!holder.equals(serverManagerId) && addresses.containsKey(holder)) {
+                    peerHeld = true;
+                    if (loadOf(load, holder) < fanOut) {
+                        candidates.add(holder);
+                    }
+                }
+            }
+        }
+        final List<String> sources;
+        if (!candidates.isEmpty()) {
+            Collections.sort(candidates, new Comparator<String>() {
+                public int compare(final String o1, final String o2) {
+                    return loadOf(load, o1) - loadOf(load, o2);
+                }
+            });
+            sources = candidates.subList(0, Math.min(PEERS_PER_DOWNLOAD, candidates.size()));
+        } else if (!peerHeld && loadOf(load, DOMAIN_CONTROLLER) < fanOut) {
+            sources = Collections.singletonList(DOMAIN_CONTROLLER);
+        } else {
+            return null;
+        }
+        Map<String, Assignment> serverManagerAssignments = assignments.get(serverManagerId);
+        if (serverManagerAssignments == null) {
+            serverManagerAssignments = new HashMap<String, Assignment>();
+            assignments.put(serverManagerId, serverManagerAssignments);
+        }
+        serverManagerAssignments.put(deployment, new Assignment(new ArrayList<String>(sources)));
+        final Map<String, InetSocketAddress> peers = new HashMap<String, InetSocketAddress>();
+        for (String source : sources) {
+            if (!DOMAIN_CONTROLLER.equals(source)) {
+                peers.put(source, addresses.get(source));
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * Record that a server manager finished downloading a deployment.
+     *
+     * @param serverManagerId the id of the server manager
+     * @param deployment the path of the deployment
+     * @param held {@code true} if the server manager now holds the deployment and can serve it
+     */
+    synchronized void downloadFinished(final String serverManagerId, final String deployment, final boolean held) {
+        release(serverManagerId, deployment);
+        if (held && addresses.containsKey(serverManagerId)) {
+            Set<String> deploymentHolders = holders.get(deployment);
+            if (deploymentHolders == null) {
+                deploymentHolders = new HashSet<String>();
+                holders.put(deployment, deploymentHolders);
+            }
+            deploymentHolders.add(serverManagerId);
+        }
+    }
+
+    private void release(final String serverManagerId, final String deployment) {
+        final Map<String, Assignment> serverManagerAssignments = assignments.get(serverManagerId);
+        if (serverManagerAssignments != null) {
+            serverManagerAssignments.remove(deployment);
+        }
+    }
+
+    private void expireAssignments() {
+        final long expired = System.currentTimeMillis() - assignmentTimeout;
+        for (Map<String, Assignment> serverManagerAssignments : assignments.values()) {
+            final Iterator<Assignment> it = serverManagerAssignments.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().time < expired) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private Map<String, Integer> getLoad() {
+        final Map<String, Integer> load = new HashMap<String, Integer>();
+        for (Map<String, Assignment> serverManagerAssignments : assignments.values()) {
+            for (Assignment assignment : serverManagerAssignments.values()) {
+                for (String source : assignment.sources) {
+                    load.put(source, Integer.valueOf(loadOf(load, source) + 1));
+                }
+            }
+        }
+        return load;
+    }
+
+    private static int loadOf(final Map<String, Integer> load, final String source) {
+        final Integer count = load.get(source);
+        return count == null ? 0 : count.intValue();
+    }
+
+    private static final class Assignment {
+        private final List<String> sources;
+        private final long time = System.currentTimeMillis();
+
+        private Assignment(final List<String> sources) {
+            this.sources = sources;
+        }
+    }
+}
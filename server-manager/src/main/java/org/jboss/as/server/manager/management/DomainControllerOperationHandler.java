@@ -28,11 +28,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import org.jboss.as.domain.controller.DomainController;
 import org.jboss.as.domain.controller.DomainControllerClient;
+import org.jboss.as.domain.controller.DomainModelDelta;
+import org.jboss.as.model.AbstractModelElement;
 import org.jboss.as.server.manager.FileRepository;
 import org.jboss.as.server.manager.RemoteDomainControllerClient;
 import static org.jboss.as.server.manager.management.ManagementUtils.expectHeader;
@@ -60,6 +67,7 @@ public class DomainControllerOperationHandler implements ManagementOperationHand
     private final InjectedValue<DomainController> domainControllerValue = new InjectedValue<DomainController>();
     private final InjectedValue<ScheduledExecutorService> executorServiceValue = new InjectedValue<ScheduledExecutorService>();
     private final InjectedValue<FileRepository> localFileRepositoryValue = new InjectedValue<FileRepository>();
+    private final DeploymentDistribution deploymentDistribution = new DeploymentDistribution();
 
     private DomainController domainController;
     private ScheduledExecutorService executorService;
@@ -139,6 +147,14 @@ public class DomainControllerOperationHandler implements ManagementOperationHand
                 return new GetFileOperation();
             case ManagementProtocol.UNREGISTER_REQUEST:
                 return new UnregisterOperation();
+            case ManagementProtocol.DEPLOYMENT_MANIFEST_REQUEST:
+                return new GetDeploymentManifestOperation();
+            case ManagementProtocol.FILE_CHUNK_REQUEST:
+                return new GetFileChunkOperation();
+            case ManagementProtocol.DEPLOYMENT_SOURCES_REQUEST:
+                return new GetDeploymentSourcesOperation();
+            case ManagementProtocol.DEPLOYMENT_HELD_REQUEST:
+                return new DeploymentHeldOperation();
             default: {
                 return null;
             }
@@ -162,6 +178,8 @@ public class DomainControllerOperationHandler implements ManagementOperationHand
     }
 
     private class RegisterOperation extends DomainControllerOperation {
+        private Map<String, Long> elementHashes;
+        private String serverManagerId;
 
         public final byte getRequestCode() {
             return ManagementProtocol.REGISTER_REQUEST;
@@ -180,18 +198,54 @@ public class DomainControllerOperationHandler implements ManagementOperationHand
                 expectHeader(input, ManagementProtocol.PARAM_SERVER_MANAGER_PORT);
                 final int port = input.readInt();
                 final InetAddress address = InetAddress.getByAddress(addressBytes);
+                readDomainModelCopy(input);
                 final DomainControllerClient client = new RemoteDomainControllerClient(serverManagerId, address, port, executorService);
                 domainController.addClient(client);
+                deploymentDistribution.addServerManager(serverManagerId, address, port);
+                this.serverManagerId = serverManagerId;
                 log.infof("Server manager registered [%s]", client);
             } catch (Exception e) {
                 throw new ManagementException("Unable to read server manager connection information from request", e);
             }
         }
 
+        private void readDomainModelCopy(final ByteDataInput input) throws IOException, ManagementException {
+            expectHeader(input, ManagementProtocol.PARAM_ELEMENT_HASH_COUNT);
+            final int count = input.readInt();
+            if (count < 0) { // The server manager holds no copy
+                return;
+            }
+            elementHashes = new HashMap<String, Long>();
+            for (int i = 0; i < count; i++) {
+                expectHeader(input, ManagementProtocol.PARAM_ELEMENT_HASH);
+                final String key = input.readUTF();
+                elementHashes.put(key, Long.valueOf(input.readLong()));
+            }
+        }
+
         protected final void sendResponse(final ByteDataOutput output) throws ManagementException {
             try {
-                output.writeByte(ManagementProtocol.PARAM_DOMAIN_MODEL);
-                marshal(output, domainController.getDomainModel());
+                output.writeByte(ManagementProtocol.PARAM_PEER_DISTRIBUTION);
+                output.writeBoolean(deploymentDistribution.isEnabled());
+                final DomainModelDelta delta = domainController.getDomainModelDelta(elementHashes);
+                if (delta.getChangedElements() != null) {
+                    final Map<String, AbstractModelElement<?>> changedElements = delta.getChangedElements();
+                    log.debugf("Sending changed domain model elements %s to server manager [%s]", changedElements.keySet(), serverManagerId);
+                    output.writeByte(ManagementProtocol.PARAM_DOMAIN_MODEL_ELEMENT_COUNT);
+                    output.writeInt(changedElements.size());
+                    for (Map.Entry<String, AbstractModelElement<?>> entry : changedElements.entrySet()) {
+                        output.writeByte(ManagementProtocol.PARAM_DOMAIN_MODEL_ELEMENT);
+                        output.writeUTF(entry.getKey());
+                        output.writeBoolean(entry.getValue() != null);
+                        if (entry.getValue() != null) {
+                            marshal(output, entry.getValue());
+                        }
+                    }
+                } else {
+                    log.debugf("Sending full domain model to server manager [%s]", serverManagerId);
+                    output.writeByte(ManagementProtocol.PARAM_DOMAIN_MODEL);
+                    marshal(output, delta.getDomainModel());
+                }
             } catch (Exception e) {
                 throw new ManagementException("Unable to write domain configuration to server manager", e);
             }
@@ -210,11 +264,23 @@ public class DomainControllerOperationHandler implements ManagementOperationHand
         protected final void readRequest(final String serverManagerId, final ByteDataInput input) throws ManagementException {
             log.infof("Server manager unregistered [%s]", serverManagerId);
             domainController.removeClient(serverManagerId);
+            deploymentDistribution.removeServerManager(serverManagerId);
         }
     }
 
     private class GetFileOperation extends DomainControllerOperation {
+        private final Map<String, FileDelta.FileInfo> heldFiles = new HashMap<String, FileDelta.FileInfo>();
+        private final Map<String, FileDelta.FileInfo> heldFilesByHash = new HashMap<String, FileDelta.FileInfo>();
+        private final Map<String, File> files = new HashMap<String, File>();
+        private String serverManagerId;
+        private String filePath;
         private File localPath;
+        private int unchanged;
+        private int copied;
+        private int deltas;
+        private int full;
+        private long bytesSent;
+        private long totalBytes;
 
         public final byte getRequestCode() {
             return ManagementProtocol.SYNC_FILE_REQUEST;
@@ -226,17 +292,25 @@ public class DomainControllerOperationHandler implements ManagementOperationHand
 
         protected final void readRequest(final String serverManagerId, final ByteDataInput input) throws ManagementException {
             final byte rootId;
-            final String filePath;
             try {
                 expectHeader(input, ManagementProtocol.PARAM_ROOT_ID);
                 rootId = input.readByte();
                 expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
                 filePath = input.readUTF();
+                expectHeader(input, ManagementProtocol.PARAM_FILE_HASH_COUNT);
+                final int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    expectHeader(input, ManagementProtocol.PARAM_FILE_HASH);
+                    final FileDelta.FileInfo held = FileDelta.FileInfo.readFrom(input);
+                    heldFiles.put(held.getPath(), held);
+                    heldFilesByHash.put(bytesToHexString(held.getSha1()), held);
+                }
             } catch (Exception e) {
                 throw new ManagementException("Unable to read file request attributes", e);
             }
+            this.serverManagerId = serverManagerId;
 
-            log.infof("Server manager [%s] requested file [%s] from root [%d]", serverManagerId, filePath, rootId);
+            log.infof("Server manager [%s] requested file [%s] from root [%d], holding %d files", serverManagerId, filePath, rootId, heldFiles.size());
             switch (rootId) {
                 case 0: {
                     localPath = localFileRepository.getFile(filePath);
@@ -261,63 +335,264 @@ public class DomainControllerOperationHandler implements ManagementOperationHand
                 output.writeByte(ManagementProtocol.PARAM_NUM_FILES);
                 if (localPath == null || !localPath.exists()) {
                     output.writeInt(-1);
-                } else if (localPath.isFile()) {
-                    output.writeInt(1);
-                    writeFile(localPath, output);
-                } else {
-                    final List<File> childFiles = getChildFiles(localPath);
-                    output.writeInt(childFiles.size());
-                    for (File child : childFiles) {
-                        writeFile(child, output);
-                    }
+                    return;
+                }
+                final List<File> childFiles = localPath.isFile() ? Collections.singletonList(localPath) : getChildFiles(localPath);
+                for (File child : childFiles) {
+                    files.put(getRelativePath(localPath, child), child);
+                }
+                output.writeInt(childFiles.size());
+                for (File child : childFiles) {
+                    writeFile(child, output);
                 }
             } catch (Exception e) {
                 throw new ManagementException("Unable to write response to server manager", e);
             }
+            log.infof("Sent [%s] to server manager [%s]: %d files unchanged, %d copied locally, %d sent as deltas, %d sent in full; %d of %d bytes sent",
+                    filePath, serverManagerId, Integer.valueOf(unchanged), Integer.valueOf(copied), Integer.valueOf(deltas), Integer.valueOf(full),
+                    Long.valueOf(bytesSent), Long.valueOf(totalBytes));
         }
 
-        private List<File> getChildFiles(final File base) {
-            final List<File> childFiles = new ArrayList<File>();
-            getChildFiles(base, childFiles);
-            return childFiles;
+        private void writeFile(final File file, final DataOutput output) throws IOException {
+            final String path = getRelativePath(localPath, file);
+            final long length = file.length();
+            totalBytes += length;
+            output.writeByte(ManagementProtocol.FILE_START);
+            output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
+            output.writeUTF(path);
+            final byte[] sha1 = FileDelta.sha1(file);
+            final FileDelta.FileInfo held = heldFiles.get(path);
+            final FileDelta.FileInfo sameContent;
+            if (held != null && Arrays.equals(held.getSha1(), sha1)) {
+                output.writeByte(ManagementProtocol.FILE_UNCHANGED);
+                unchanged++;
+            } else if ((sameContent = findCopySource(sha1)) != null) {
+                output.writeByte(ManagementProtocol.FILE_COPY);
+                output.writeUTF(sameContent.getPath());
+                copied++;
+            } else if (held != null && held.getSignature() != null && length >= FileDelta.DELTA_THRESHOLD) {
+                output.writeByte(ManagementProtocol.FILE_DELTA);
+                output.write(sha1);
+                output.writeInt(held.getSignature().getBlockSize());
+                bytesSent += FileDelta.writeDelta(file, held.getSignature(), output);
+                deltas++;
+            } else {
+                output.writeByte(ManagementProtocol.PARAM_FILE_SIZE);
+                output.writeLong(length);
+                InputStream inputStream = null;
+                try {
+                    inputStream = new FileInputStream(file);
+                    byte[] buffer = new byte[8192];
+                    int len;
+                    while ((len = inputStream.read(buffer)) != -1) {
+                        output.write(buffer, 0, len);
+                    }
+                } finally {
+                    if(inputStream != null) {
+                        try {
+                            inputStream.close();
+                        } catch(IOException ignored){}
+                    }
+                }
+                bytesSent += length;
+                full++;
+            }
+            output.writeByte(ManagementProtocol.FILE_END);
         }
 
-        private void getChildFiles(final File base, final List<File> childFiles) {
-            for(File child : base.listFiles()) {
-                if(child.isFile()) {
-                    childFiles.add(child);
-                } else {
-                    getChildFiles(child, childFiles);
+        /**
+         * Find a file held by the server manager with the given contents, which is not replaced by this request so
+         * it can be copied locally.
+         */
+        private FileDelta.FileInfo findCopySource(final byte[] sha1) throws IOException {
+            final FileDelta.FileInfo held = heldFilesByHash.get(bytesToHexString(sha1));
+            if (held == null) {
+                return null;
+            }
+            final File file = files.get(held.getPath());
+            return file == null || Arrays.equals(held.getSha1(), FileDelta.sha1(file)) ? held : null;
+        }
+    }
+
+    private class GetDeploymentManifestOperation extends DomainControllerOperation {
+        private String filePath;
+        private File localPath;
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.DEPLOYMENT_MANIFEST_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.DEPLOYMENT_MANIFEST_RESPONSE;
+        }
+
+        protected final void readRequest(final String serverManagerId, final ByteDataInput input) throws ManagementException {
+            try {
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                filePath = input.readUTF();
+            } catch (IOException e) {
+                throw new ManagementException("Unable to read deployment manifest request attributes", e);
+            }
+            log.debugf("Server manager [%s] requested the manifest of deployment [%s]", serverManagerId, filePath);
+            localPath = FileChunks.resolveDeployment(localFileRepository, filePath);
+        }
+
+        protected final void sendResponse(final ByteDataOutput output) throws ManagementException {
+            try {
+                output.writeByte(ManagementProtocol.PARAM_NUM_FILES);
+                if (localPath == null || !localPath.exists()) {
+                    output.writeInt(-1);
+                    return;
                 }
+                final List<File> childFiles = localPath.isFile() ? Collections.singletonList(localPath) : getChildFiles(localPath);
+                output.writeInt(childFiles.size());
+                for (File child : childFiles) {
+                    output.writeByte(ManagementProtocol.PARAM_FILE_HASH);
+                    new FileDelta.FileInfo(getRelativePath(localPath, child), child.length(), FileDelta.sha1(child), null).writeTo(output);
+                }
+                output.writeByte(ManagementProtocol.PARAM_PEER_DISTRIBUTION);
+                output.writeBoolean(deploymentDistribution.isEnabled());
+            } catch (IOException e) {
+                throw new ManagementException("Unable to write deployment manifest to server manager", e);
             }
         }
+    }
+
+    private class GetFileChunkOperation extends DomainControllerOperation {
+        private File file;
+        private long offset;
+        private int length;
 
-        private String getRelativePath(final File parent, final File child) {
-            return child.getAbsolutePath().substring(parent.getAbsolutePath().length());
+        public final byte getRequestCode() {
+            return ManagementProtocol.FILE_CHUNK_REQUEST;
         }
 
-        private void writeFile(final File file, final DataOutput output) throws IOException {
-            output.writeByte(ManagementProtocol.FILE_START);
-            output.writeByte(ManagementProtocol.PARAM_FILE_PATH);
-            output.writeUTF(getRelativePath(localPath, file));
-            output.writeByte(ManagementProtocol.PARAM_FILE_SIZE);
-            output.writeLong(file.length());
-            InputStream inputStream = null;
+        protected final byte getResponseCode() {
+            return ManagementProtocol.FILE_CHUNK_RESPONSE;
+        }
+
+        protected final void readRequest(final String serverManagerId, final ByteDataInput input) throws ManagementException {
+            final String filePath;
+            final String path;
             try {
-                inputStream = new FileInputStream(file);
-                byte[] buffer = new byte[8192];
-                int len;
-                while ((len = inputStream.read(buffer)) != -1) {
-                    output.write(buffer, 0, len);
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                filePath = input.readUTF();
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                path = input.readUTF();
+                expectHeader(input, ManagementProtocol.PARAM_CHUNK_OFFSET);
+                offset = input.readLong();
+                expectHeader(input, ManagementProtocol.PARAM_CHUNK_LENGTH);
+                length = input.readInt();
+            } catch (IOException e) {
+                throw new ManagementException("Unable to read file chunk request attributes", e);
+            }
+            file = FileChunks.resolve(localFileRepository, filePath, path, offset, length);
+        }
+
+        protected final void sendResponse(final ByteDataOutput output) throws ManagementException {
+            try {
+                FileChunks.writeChunk(file, offset, length, output);
+            } catch (IOException e) {
+                throw new ManagementException("Unable to write chunk of file " + file + " to server manager", e);
+            }
+        }
+    }
+
+    private class GetDeploymentSourcesOperation extends DomainControllerOperation {
+        private Map<String, InetSocketAddress> peers;
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.DEPLOYMENT_SOURCES_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.DEPLOYMENT_SOURCES_RESPONSE;
+        }
+
+        protected final void readRequest(final String serverManagerId, final ByteDataInput input) throws ManagementException {
+            final String filePath;
+            try {
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                filePath = input.readUTF();
+            } catch (IOException e) {
+                throw new ManagementException("Unable to read deployment sources request attributes", e);
+            }
+            peers = deploymentDistribution.chooseSources(serverManagerId, filePath);
+            log.debugf("Server manager [%s] downloads deployment [%s] from %s", serverManagerId, filePath,
+                    peers == null ? "nowhere, all sources are busy" : peers.isEmpty() ? "the domain controller" : peers.keySet().toString());
+        }
+
+        protected final void sendResponse(final ByteDataOutput output) throws ManagementException {
+            try {
+                output.writeByte(ManagementProtocol.PARAM_PEER_COUNT);
+                if (peers == null) {
+                    output.writeInt(-1);
+                    return;
                 }
-            } finally {
-                if(inputStream != null) {
-                    try {
-                        inputStream.close();
-                    } catch(IOException ignored){}
+                output.writeInt(peers.size());
+                for (Map.Entry<String, InetSocketAddress> peer : peers.entrySet()) {
+                    final byte[] address = peer.getValue().getAddress().getAddress();
+                    output.writeByte(ManagementProtocol.PARAM_PEER);
+                    output.writeUTF(peer.getKey());
+                    output.writeInt(address.length);
+                    output.write(address);
+                    output.writeInt(peer.getValue().getPort());
                 }
+            } catch (IOException e) {
+                throw new ManagementException("Unable to write deployment sources to server manager", e);
             }
-            output.writeByte(ManagementProtocol.FILE_END);
         }
     }
+
+    private class DeploymentHeldOperation extends DomainControllerOperation {
+        public final byte getRequestCode() {
+            return ManagementProtocol.DEPLOYMENT_HELD_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.DEPLOYMENT_HELD_RESPONSE;
+        }
+
+        protected final void readRequest(final String serverManagerId, final ByteDataInput input) throws ManagementException {
+            try {
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                final String filePath = input.readUTF();
+                final boolean held = input.readBoolean();
+                deploymentDistribution.downloadFinished(serverManagerId, filePath, held);
+                if (held) {
+                    log.debugf("Server manager [%s] holds deployment [%s]", serverManagerId, filePath);
+                }
+            } catch (IOException e) {
+                throw new ManagementException("Unable to read deployment held request attributes", e);
+            }
+        }
+    }
+
+    private static List<File> getChildFiles(final File base) {
+        final List<File> childFiles = new ArrayList<File>();
+        getChildFiles(base, childFiles);
+        return childFiles;
+    }
+
+    private static void getChildFiles(final File base, final List<File> childFiles) {
+        for(File child : base.listFiles()) {
+            if(child.isFile()) {
+                childFiles.add(child);
+            } else {
+                getChildFiles(child, childFiles);
+            }
+        }
+    }
+
+    private static String getRelativePath(final File parent, final File child) {
+        return child.getAbsolutePath().substring(parent.getAbsolutePath().length());
+    }
+
+    private static String bytesToHexString(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length << 1);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+import org.jboss.as.server.manager.FileRepository;
+
+/**
+ * Serves chunks of deployment files, for the file chunk requests handled by the domain controller and by server
+ * managers which share deployment content with their peers.
+ *
+ * @author John Bailey
+ */
+final class FileChunks {
+
+    /**
+     * The longest chunk served, as a chunk is read into memory.  This is the download chunk size configured for the
+     * deployment downloader, which requests the chunks.
+     */
+    private static final int MAX_CHUNK_LENGTH = Integer.getInteger("jboss.server.manager.deployment.download.chunk.size", 1024 * 1024).intValue();
+
+    private FileChunks() {
+    }
+
+    /**
+     * Resolve a deployment, checking that it lies within the deployment root of the repository.  The deployment root
+     * is the deployment file of the empty path.
+     *
+     * @param repository the repository holding the deployment
+     * @param deploymentPath the path of the deployment relative to the deployment root
+     * @return the canonical file of the deployment
+     * @throws ManagementException if the deployment lies outside the deployment root
+     */
+    static File resolveDeployment(final FileRepository repository, final String deploymentPath) throws ManagementException {
+        final File deployment;
+        try {
+            final String root = repository.getDeploymentFile("").getCanonicalPath();
+            deployment = repository.getDeploymentFile(deploymentPath).getCanonicalFile();
+            if (!deployment.getPath().startsWith(root + File.separator)) {
+                throw new ManagementException("Deployment [" + deploymentPath + "] is not in the deployment repository");
+            }
+        } catch (IOException e) {
+            throw new ManagementException("Unable to resolve deployment [" + deploymentPath + "]", e);
+        }
+        return deployment;
+    }
+
+    /**
+     * Resolve a file of a deployment, checking that it lies within the deployment and holds the requested chunk, and
+     * that the chunk is no longer than the configured download chunk size.
+     *
+     * @param repository the repository holding the deployment
+     * @param deploymentPath the path of the deployment relative to the deployment root
+     * @param path the path of the file relative to the deployment, empty if the deployment is a single file
+     * @param offset the offset of the chunk
+     * @param length the length of the chunk
+     * @return the canonical file
+     * @throws ManagementException if the chunk is too long, or the file is not part of the deployment or does not
+     *         hold the chunk
+     */
+    static File resolve(final FileRepository repository, final String deploymentPath, final String path, final long offset, final int length) throws ManagementException {
+        return resolve(repository, deploymentPath, path, offset, length, MAX_CHUNK_LENGTH);
+    }
+
+    static File resolve(final FileRepository repository, final String deploymentPath, final String path, final long offset, final int length, final int maxLength) throws ManagementException {
+        if (length > maxLength) {
+            throw new ManagementException("Chunk length " + length + " of file [" + path + "] of deployment [" + deploymentPath + "] exceeds the maximum of " + maxLength);
+        }
+        final File deployment = resolveDeployment(repository, deploymentPath);
+        final File file;
+        try {
+            file = new File(deployment, path).getCanonicalFile();
+            if (!file.equals(deployment) && !file.getPath().startsWith(deployment.getPath() + File.separator)) {
+                throw new ManagementException("File [" + path + "] is not part of deployment [" + deploymentPath + "]");
+            }
+        } catch (IOException e) {
+            throw new ManagementException("Unable to resolve file [" + path + "] of deployment [" + deploymentPath + "]", e);
+        }
+        if (!file.isFile() || offset < 0 || length < 0 || offset + length > file.length()) {
+            throw new ManagementException("Invalid chunk [" + offset + ", " + length + "] of file [" + path + "] of deployment [" + deploymentPath + "]");
+        }
+        return file;
+    }
+
+    /**
+     * Write a chunk of a file followed by its CRC-32 checksum.
+     *
+     * @param file the file
+     * @param offset the offset of the chunk
+     * @param length the length of the chunk
+     * @param output the output to write to
+     * @throws IOException if the chunk could not be read or written
+     */
+    static void writeChunk(final File file, final long offset, final int length, final DataOutput output) throws IOException {
+        final byte[] chunk = new byte[length];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(offset);
+            raf.readFully(chunk);
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(chunk);
+        output.writeByte(ManagementProtocol.PARAM_FILE_SIZE);
+        output.writeInt(length);
+        output.write(chunk);
+        output.writeByte(ManagementProtocol.PARAM_CHUNK_CHECKSUM);
+        output.writeLong(crc.getValue());
+    }
+}
@@ -0,0 +1,663 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The content hashes and block deltas used to synchronize files from the domain controller.
+ * <p>
+ * A server manager describes the files it already holds by their SHA-1 hash, and files of at least
+ * {@link #DELTA_THRESHOLD} bytes also by a {@link Signature} of their blocks.  A changed file is then sent as a delta
+ * against the server manager's copy: blocks found in the copy using a rolling checksum are sent as references, the
+ * rest as literal bytes.  The server manager rebuilds the file by copying the referenced blocks from its copy with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * The hashes and signatures of the most recently used files are cached until their size or modification time changes.
+ *
+ * @author John Bailey
+ */
+public final class FileDelta {
+
+    /** The minimum size of a file sent as a delta */
+    public static final long DELTA_THRESHOLD = 256 * 1024;
+
+    private static final int MIN_BLOCK_SIZE = 2048;
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+    private static final int MAX_LITERAL_SIZE = 64 * 1024;
+    private static final int SHA1_LENGTH = 20;
+
+    /** The system property used to configure the number of files whose hashes and signatures are cached */
+    public static final String CACHE_SIZE = "jboss.management.file.cache.size";
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final Map<String, CachedFile> cache = new FileCache(Integer.getInteger(CACHE_SIZE, DEFAULT_CACHE_SIZE).intValue());
+
+    private FileDelta() {
+    }
+
+    /**
+     * Get the SHA-1 hash of the contents of a file.  Hashes are cached until the size or modification time of the
+     * file changes.
+     *
+     * @param file the file
+     * @return the hash
+     * @throws IOException if the file could not be read
+     */
+    public static byte[] sha1(final File file) throws IOException {
+        final CachedFile cached = cached(file);
+        if (cached != null) {
+            return cached.sha1;
+        }
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final byte[] sha1 = computeSha1(file);
+        cache(file, new CachedFile(length, lastModified, sha1, null));
+        return sha1;
+    }
+
+    /**
+     * Get the signature of the blocks of a file.  Signatures are cached with the hash of the file.
+     *
+     * @param file the file
+     * @return the signature
+     * @throws IOException if the file could not be read
+     */
+    public static Signature signature(final File file) throws IOException {
+        final CachedFile cached = cached(file);
+        if (cached != null && cached.signature != null) {
+            return cached.signature;
+        }
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final byte[] sha1 = cached != null ? cached.sha1 : computeSha1(file);
+        final Signature signature = Signature.create(file);
+        cache(file, new CachedFile(length, lastModified, sha1, signature));
+        return signature;
+    }
+
+    private static CachedFile cached(final File file) {
+        final CachedFile cached;
+        synchronized (cache) {
+            cached = cache.get(file.getAbsolutePath());
+        }
+        if (cached != null && cached.length == file.length() && cached.lastModified == file.lastModified()) {
+            return cached;
+        }
+        return null;
+    }
+
+    private static void cache(final File file, final CachedFile cached) {
+        synchronized (cache) {
+            cache.put(file.getAbsolutePath(), cached);
+        }
+    }
+
+    private static byte[] computeSha1(final File file) throws IOException {
+        final MessageDigest digest = digest("SHA-1");
+        final InputStream input = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[MAX_LITERAL_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            safeClose(input);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Describe a file, or every file below a directory.  The paths of the descriptions are relative to the root, the
+     * root itself if it is a file has the path {@code ""}.
+     *
+     * @param root the file or directory
+     * @return the descriptions, empty if the root does not exist
+     * @throws IOException if a file could not be read
+     */
+    public static List<FileInfo> describe(final File root) throws IOException {
+        final List<FileInfo> files = new ArrayList<FileInfo>();
+        if (root.isFile()) {
+            files.add(describe(root, ""));
+        } else if (root.isDirectory()) {
+            describeChildren(root, root.getAbsolutePath().length(), files);
+        }
+        return files;
+    }
+
+    private static void describeChildren(final File dir, final int rootLength, final List<FileInfo> files) throws IOException {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isFile()) {
+                files.add(describe(child, child.getAbsolutePath().substring(rootLength)));
+            } else {
+                describeChildren(child, rootLength, files);
+            }
+        }
+    }
+
+    private static FileInfo describe(final File file, final String path) throws IOException {
+        final long length = file.length();
+        return new FileInfo(path, length, sha1(file), length >= DELTA_THRESHOLD ? signature(file) : null);
+    }
+
+    /**
+     * Write a file as a delta against a signature of an older version of it.
+     *
+     * @param file the file to send
+     * @param basis the signature of the receiver's copy
+     * @param output the output
+     * @return the number of literal bytes written
+     * @throws IOException if the file could not be read or the delta written
+     */
+    public static long writeDelta(final File file, final Signature basis, final DataOutput output) throws IOException {
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final FileChannel channel = input.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " is too large to be sent as a delta");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            return new DeltaWriter(buffer, (int) size, basis, output).write();
+        } finally {
+            safeClose(input);
+        }
+    }
+
+    /**
+     * Rebuild a file from a delta against the receiver's copy, replacing the copy.
+     *
+     * @param file the receiver's copy of the file
+     * @param blockSize the block size of the signature the delta was written against
+     * @param sha1 the expected hash of the rebuilt file
+     * @param input the input to read the delta from
+     * @return the number of literal bytes read
+     * @throws IOException if the delta could not be read, or the rebuilt file does not match the hash
+     * @throws ManagementException if the delta is invalid
+     */
+    public static long applyDelta(final File file, final int blockSize, final byte[] sha1, final DataInput input) throws IOException, ManagementException {
+        final File rebuilt = File.createTempFile(file.getName(), ".part", file.getParentFile());
+        long literalBytes = 0L;
+        boolean done = false;
+        final FileInputStream basisInput = new FileInputStream(file);
+        try {
+            final FileOutputStream rebuiltOutput = new FileOutputStream(rebuilt);
+            try {
+                final FileChannel basisChannel = basisInput.getChannel();
+                final FileChannel rebuiltChannel = rebuiltOutput.getChannel();
+                final long basisSize = basisChannel.size();
+                final byte[] buffer = new byte[MAX_LITERAL_SIZE];
+                byte op;
+                while ((op = input.readByte()) != ManagementProtocol.DELTA_END) {
+                    switch (op) {
+                        case ManagementProtocol.DELTA_COPY: {
+                            final long position = (long) input.readInt() * blockSize;
+                            final long count = Math.min((long) input.readInt() * blockSize, basisSize - position);
+                            if (position < 0L || count <= 0L) {
+                                throw new ManagementException("Invalid block reference in delta of " + file);
+                            }
+                            transferFully(basisChannel, position, count, rebuiltChannel);
+                            break;
+                        }
+                        case ManagementProtocol.DELTA_DATA: {
+                            final int length = input.readInt();
+                            if (length < 0 || length > buffer.length) {
+                                throw new ManagementException("Invalid literal length " + length + " in delta of " + file);
+                            }
+                            input.readFully(buffer, 0, length);
+                            final ByteBuffer literal = ByteBuffer.wrap(buffer, 0, length);
+                            while (literal.hasRemaining()) {
+                                rebuiltChannel.write(literal);
+                            }
+                            literalBytes += length;
+                            break;
+                        }
+                        default:
+                            throw new ManagementException("Invalid delta operation " + op + " for " + file);
+                    }
+                }
+            } finally {
+                safeClose(rebuiltOutput);
+            }
+            done = true;
+        } finally {
+            safeClose(basisInput);
+            if (!done) {
+                rebuilt.delete();
+            }
+        }
+        if (!Arrays.equals(sha1, computeSha1(rebuilt))) {
+            rebuilt.delete();
+            throw new ManagementException("Rebuilt file " + file + " does not match the hash of the domain controller's copy");
+        }
+        replace(rebuilt, file);
+        cache(file, new CachedFile(file.length(), file.lastModified(), sha1, null));
+        return literalBytes;
+    }
+
+    /**
+     * Copy a file which has the same contents as a file sent by the domain controller.
+     *
+     * @param source the file to copy
+     * @param target the file to create or replace
+     * @throws IOException if the file could not be copied
+     */
+    public static void copy(final File source, final File target) throws IOException {
+        final File copy = File.createTempFile(target.getName(), ".part", target.getParentFile());
+        boolean done = false;
+        final FileInputStream input = new FileInputStream(source);
+        try {
+            final FileOutputStream output = new FileOutputStream(copy);
+            try {
+                final FileChannel channel = input.getChannel();
+                transferFully(channel, 0L, channel.size(), output.getChannel());
+            } finally {
+                safeClose(output);
+            }
+            done = true;
+        } finally {
+            safeClose(input);
+            if (!done) {
+                copy.delete();
+            }
+        }
+        replace(copy, target);
+    }
+
+    private static void transferFully(final FileChannel source, long position, long count, final FileChannel target) throws IOException {
+        while (count > 0L) {
+            final long transferred = source.transferTo(position, count, target);
+            if (transferred <= 0L) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static void replace(final File replacement, final File file) throws IOException {
+        if (!replacement.renameTo(file)) {
+            // renaming over an existing file fails on some platforms
+            if (!file.delete() || !replacement.renameTo(file)) {
+                replacement.delete();
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    static int weakChecksum(final ByteBuffer buffer, final int offset, final int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            final int value = buffer.get(offset + i) & 0xff;
+            a += value;
+            b += (length - i) * value;
+        }
+        return (a & 0xffff) | (b << 16);
+    }
+
+    static long strongChecksum(final MessageDigest digest, final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer block = buffer.duplicate();
+        block.limit(offset + length).position(offset);
+        digest.reset();
+        digest.update(block);
+        final byte[] hash = digest.digest();
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | hash[i] & 0xffL;
+        }
+        return value;
+    }
+
+    static MessageDigest digest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void safeClose(final java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The description of a file held by a server manager.
+     */
+    public static final class FileInfo {
+        private final String path;
+        private final long length;
+        private final byte[] sha1;
+        private final Signature signature;
+
+        FileInfo(final String path, final long length, final byte[] sha1, final Signature signature) {
+            this.path = path;
+            this.length = length;
+            this.sha1 = sha1;
+            this.signature = signature;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public byte[] getSha1() {
+            return sha1;
+        }
+
+        /**
+         * Get the signature of the file's blocks.
+         *
+         * @return the signature, or {@code null} if the file is smaller than {@link FileDelta#DELTA_THRESHOLD}
+         */
+        public Signature getSignature() {
+            return signature;
+        }
+
+        public void writeTo(final DataOutput output) throws IOException {
+            output.writeUTF(path);
+            output.writeLong(length);
+            output.write(sha1);
+            output.writeBoolean(signature != null);
+            if (signature != null) {
+                signature.writeTo(output);
+            }
+        }
+
+        public static FileInfo readFrom(final DataInput input) throws IOException {
+            final String path = input.readUTF();
+            final long length = input.readLong();
+            final byte[] sha1 = new byte[SHA1_LENGTH];
+            input.readFully(sha1);
+            final Signature signature = input.readBoolean() ? Signature.readFrom(input) : null;
+            return new FileInfo(path, length, sha1, signature);
+        }
+    }
+
+    /**
+     * The weak and strong checksums of the full blocks of a file.
+     */
+    public static final class Signature {
+        private final int blockSize;
+        private final int[] weak;
+        private final long[] strong;
+
+        private Signature(final int blockSize, final int[] weak, final long[] strong) {
+            this.blockSize = blockSize;
+            this.weak = weak;
+            this.strong = strong;
+        }
+
+        /**
+         * Get the block size for a file, about the square root of its length so the signature and the delta of a
+         * small change stay small.
+         */
+        static int blockSize(final long length) {
+            final int size = (int) Math.sqrt((double) length) & ~(MIN_BLOCK_SIZE - 1);
+            return Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+        }
+
+        public static Signature create(final File file) throws IOException {
+            final FileInputStream input = new FileInputStream(file);
+            try {
+                final FileChannel channel = input.getChannel();
+                final long size = channel.size();
+                final int blockSize = blockSize(size);
+                final long count = size / blockSize;
+                if (count > Integer.MAX_VALUE) {
+                    throw new IOException("File " + file + " is too large to be sent as a delta");
+                }
+                final int[] weak = new int[(int) count];
+                final long[] strong = new long[(int) count];
+                final MessageDigest digest = digest("MD5");
+                final ByteBuffer block = ByteBuffer.allocate(blockSize);
+                for (int i = 0; i < count; i++) {
+                    block.clear();
+                    while (block.hasRemaining()) {
+                        if (channel.read(block, (long) i * blockSize + block.position()) < 0) {
+                            throw new IOException("Unexpected end of file " + file);
+                        }
+                    }
+                    weak[i] = weakChecksum(block, 0, blockSize);
+                    strong[i] = strongChecksum(digest, block, 0, blockSize);
+                }
+                return new Signature(blockSize, weak, strong);
+            } finally {
+                safeClose(input);
+            }
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public int getBlockCount() {
+            return weak.length;
+        }
+
+        void writeTo(final DataOutput output) throws IOException {
+            output.writeInt(blockSize);
+            output.writeInt(weak.length);
+            for (int i = 0; i < weak.length; i++) {
+                output.writeInt(weak[i]);
+                output.writeLong(strong[i]);
+            }
+        }
+
+        static Signature readFrom(final DataInput input) throws IOException {
+            final int blockSize = input.readInt();
+            final int count = input.readInt();
+            if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE || count < 0) {
+                throw new IOException("Invalid signature with " + count + " blocks of " + blockSize + " bytes");
+            }
+            final int[] weak = new int[count];
+            final long[] strong = new long[count];
+            for (int i = 0; i < count; i++) {
+                weak[i] = input.readInt();
+                strong[i] = input.readLong();
+            }
+            return new Signature(blockSize, weak, strong);
+        }
+    }
+
+    /**
+     * Finds the blocks of a signature in a file with a rolling checksum, and writes the delta.
+     */
+    private static final class DeltaWriter {
+        private final ByteBuffer buffer;
+        private final int size;
+        private final Signature basis;
+        private final DataOutput output;
+        private final byte[] literal = new byte[MAX_LITERAL_SIZE];
+        private int copyStart = -1;
+        private int copyCount;
+        private long literalBytes;
+
+        private DeltaWriter(final ByteBuffer buffer, final int size, final Signature basis, final DataOutput output) {
+            this.buffer = buffer;
+            this.size = size;
+            this.basis = basis;
+            this.output = output;
+        }
+
+        long write() throws IOException {
+            final int blockSize = basis.blockSize;
+            final Map<Integer, List<Integer>> blocks = new HashMap<Integer, List<Integer>>(basis.weak.length << 1);
+            for (int i = 0; i < basis.weak.length; i++) {
+                final Integer key = Integer.valueOf(basis.weak[i]);
+                List<Integer> candidates = blocks.get(key);
+                if (candidates == null) {
+                    candidates = new ArrayList<Integer>(1);
+                    blocks.put(key, candidates);
+                }
+                candidates.add(Integer.valueOf(i));
+            }
+            final MessageDigest digest = digest("MD5");
+            int position = 0;
+            int literalStart = 0;
+            int a = 0;
+            int b = 0;
+            boolean rolling = false;
+            while (position + blockSize <= size) {
+                if (!rolling) {
+                    final int checksum = weakChecksum(buffer, position, blockSize);
+                    a = checksum & 0xffff;
+                    b = checksum >>> 16;
+                    rolling = true;
+                }
+                final List<Integer> candidates = blocks.get(Integer.valueOf((a & 0xffff) | (b << 16)));
+                int match = -1;
+                if (candidates != null) {
+                    final long strong = strongChecksum(digest, buffer, position, blockSize);
+                    for (Integer candidate : candidates) {
+                        if (basis.strong[candidate.intValue()] == strong) {
+                            match = candidate.intValue();
+                            break;
+                        }
+                    }
+                }
+                if (match >= 0) {
+                    writeLiteral(literalStart, position);
+                    writeCopy(match);
+                    position += blockSize;
+                    literalStart = position;
+                    rolling = false;
+                } else {
+                    final int out = buffer.get(position) & 0xff;
+                    if (position + blockSize < size) {
+                        final int in = buffer.get(position + blockSize) & 0xff;
+                        a = a - out + in;
+                        b = b - blockSize * out + a;
+                    }
+                    position++;
+                    if (position - literalStart == MAX_LITERAL_SIZE) {
+                        writeLiteral(literalStart, position);
+                        literalStart = position;
+                    }
+                }
+            }
+            writeLiteral(literalStart, size);
+            flushCopy();
+            output.writeByte(ManagementProtocol.DELTA_END);
+            return literalBytes;
+        }
+
+        private void writeCopy(final int block) throws IOException {
+            if (copyStart >= 0 && copyStart + copyCount == block) {
+                copyCount++;
+                return;
+            }
+            flushCopy();
+            copyStart = block;
+            copyCount = 1;
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyStart >= 0) {
+                output.writeByte(ManagementProtocol.DELTA_COPY);
+                output.writeInt(copyStart);
+                output.writeInt(copyCount);
+                copyStart = -1;
+            }
+        }
+
+        private void writeLiteral(final int start, final int end) throws IOException {
+            if (end <= start) {
+                return;
+            }
+            flushCopy();
+            final ByteBuffer source = buffer.duplicate();
+            source.limit(end).position(start);
+            while (source.hasRemaining()) {
+                final int length = Math.min(source.remaining(), literal.length);
+                source.get(literal, 0, length);
+                output.writeByte(ManagementProtocol.DELTA_DATA);
+                output.writeInt(length);
+                output.write(literal, 0, length);
+                literalBytes += length;
+            }
+        }
+    }
+
+    private static final class CachedFile {
+        private final long length;
+        private final long lastModified;
+        private final byte[] sha1;
+        private final Signature signature;
+
+        private CachedFile(final long length, final long lastModified, final byte[] sha1, final Signature signature) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * The cached files, evicting the least recently used once full.
+     */
+    private static final class FileCache extends LinkedHashMap<String, CachedFile> {
+        private static final long serialVersionUID = 3412096215290125816L;
+
+        private final int maxSize;
+
+        private FileCache(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedFile> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -22,13 +22,13 @@
 
 package org.jboss.as.server.manager.management;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import org.jboss.as.communication.InitialSocketRequestException;
 import org.jboss.as.communication.SocketConnection;
 import org.jboss.as.communication.SocketListener;
@@ -46,7 +46,8 @@ import org.jboss.msc.value.InjectedValue;
 /**
  * Service responsible for accepting remote communication to server manager processes.  This will wait on a {@link java.net.ServerSocket}
  * for requests and will and the requesting socket over to a {@link org.jboss.as.server.manager.management.ManagementOperationHandler} to
- * process the request.
+ * process the request.  A socket opened for the {@link ManagementProtocol#MULTIPLEXED_CONNECTION} handler is kept open as a
+ * {@link ManagementConnection}, each request received on it being run on its own thread.
  *
  * @author John E. Bailey
  */
@@ -141,35 +142,57 @@ public class ManagementCommunicationService implements Service<ManagementCommuni
         }
 
         @Override
-        public void initializeConnection(final Socket socket) throws IOException, InitialSocketRequestException {
-            executorService.execute(new RequestTask(SocketConnection.accepted(socket)));
+        public void initializeConnection(final SocketConnection connection) throws IOException, InitialSocketRequestException {
+            executorService.execute(new RequestTask(connection, executorService));
         }
     }
 
     private class RequestTask implements Runnable {
         private final SocketConnection socketConnection;
+        private final ExecutorService executorService;
 
-        private RequestTask(final SocketConnection socketConnection) {
+        private RequestTask(final SocketConnection socketConnection, final ExecutorService executorService) {
             this.socketConnection = socketConnection;
+            this.executorService = executorService;
         }
 
         public void run() {
+            boolean handedOff = false;
             try {
-                final ByteDataInput input = new SimpleByteDataInput(socketConnection.getInputStream());
-                final ByteDataOutput output =  new SimpleByteDataOutput(socketConnection.getOutputStream());
+                // Read the header without buffering, the frames of a multiplexed connection follow it
+                final DataInputStream headerInput = new DataInputStream(socketConnection.getInputStream());
+                final DataOutputStream headerOutput = new DataOutputStream(socketConnection.getOutputStream());
 
                 // Start by reading the request header
-                final ManagementRequestHeader requestHeader = new ManagementRequestHeader(input);
+                final ManagementRequestHeader requestHeader = new ManagementRequestHeader(headerInput);
 
                 // Work with the lowest protocol version
                 int workingVersion = Math.min(ManagementProtocol.VERSION, requestHeader.getVersion());
 
                 // Now write the response header
                 final ManagementResponseHeader responseHeader = new ManagementResponseHeader(workingVersion, requestHeader.getRequestId());
-                responseHeader.write(output);
-                output.flush();
+                responseHeader.write(headerOutput);
+                headerOutput.flush();
 
                 byte handlerId = requestHeader.getOperationHandlerId();
+                if (handlerId == ManagementProtocol.MULTIPLEXED_CONNECTION) {
+                    // The connection is read for as long as it is open, so it gets its own thread rather than one of the pool
+                    final ManagementConnection connection = new ManagementConnection("SM-Management client connection", null, socketConnection.getInputStream(),
+                            socketConnection.getOutputStream(), workingVersion, new ChannelRequestHandler(executorService));
+                    final Thread thread = new Thread(new Runnable() {
+                        public void run() {
+                            try {
+                                connection.run();
+                            } finally {
+                                socketConnection.close();
+                            }
+                        }
+                    }, "SM-Management connection reader");
+                    thread.setDaemon(true);
+                    thread.start();
+                    handedOff = true;
+                    return;
+                }
                 if (handlerId == -1) {
                     throw new ManagementException("Management request failed.  Invalid handler id");
                 }
@@ -177,11 +200,60 @@ public class ManagementCommunicationService implements Service<ManagementCommuni
                 if (handler == null) {
                     throw new ManagementException("Management request failed.  NO handler found for id" + handlerId);
                 }
+                final ByteDataInput input = new SimpleByteDataInput(socketConnection.getInputStream());
+                final ByteDataOutput output =  new SimpleByteDataOutput(socketConnection.getOutputStream());
                 handler.handleRequest(workingVersion, input, output);
             } catch (Exception e) {
                 log.error("Failed to process management request", e);
             } finally {
-                socketConnection.close();
+                if (!handedOff) {
+                    socketConnection.close();
+                }
+            }
+        }
+    }
+
+    private class ChannelRequestHandler implements ManagementConnection.ChannelHandler {
+        private final ExecutorService executorService;
+
+        private ChannelRequestHandler(final ExecutorService executorService) {
+            this.executorService = executorService;
+        }
+
+        public void handleChannel(final ManagementConnection connection, final ManagementConnection.Channel channel, final byte handlerId) {
+            try {
+                executorService.execute(new ChannelRequestTask(connection, channel, handlerId));
+            } catch (RejectedExecutionException e) {
+                log.errorf("Rejected management request %d: %s", Integer.valueOf(channel.getRequestId()), e.getMessage());
+                channel.close();
+            }
+        }
+    }
+
+    private class ChannelRequestTask implements Runnable {
+        private final ManagementConnection connection;
+        private final ManagementConnection.Channel channel;
+        private final byte handlerId;
+
+        private ChannelRequestTask(final ManagementConnection connection, final ManagementConnection.Channel channel, final byte handlerId) {
+            this.connection = connection;
+            this.channel = channel;
+            this.handlerId = handlerId;
+        }
+
+        public void run() {
+            try {
+                final ManagementOperationHandler handler = handlers.get(handlerId);
+                if (handler == null) {
+                    throw new ManagementException("Management request failed.  NO handler found for id" + handlerId);
+                }
+                final ByteDataOutput output = new SimpleByteDataOutput(channel.getOutputStream());
+                handler.handleRequest(connection.getProtocolVersion(), new SimpleByteDataInput(channel.getInputStream()), output);
+                output.flush();
+            } catch (Exception e) {
+                log.errorf(e, "Failed to process management request %d", Integer.valueOf(channel.getRequestId()));
+            } finally {
+                channel.close();
             }
         }
     }
@@ -0,0 +1,722 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.logging.Logger;
+
+/**
+ * A persistent connection to a remote management endpoint which carries any number of concurrent requests.  The
+ * connection is opened with a {@link ManagementRequestHeader} for the {@link ManagementProtocol#MULTIPLEXED_CONNECTION}
+ * handler, after which each request runs on its own {@link Channel}.  The bytes of all the channels are sent as frames,
+ * each made up of a frame type byte and the id of the request, followed by
+ * <ul>
+ *   <li>{@code CHANNEL_OPEN}: the id of the operation handler of the request</li>
+ *   <li>{@code CHANNEL_DATA}: the length of the data and the data</li>
+ *   <li>{@code CHANNEL_END}: nothing, the sender will not write more data to the channel</li>
+ *   <li>{@code CHANNEL_ACK}: the number of bytes of the channel the receiver has read or dropped</li>
+ * </ul>
+ * Frames of different requests can be interleaved, so responses arrive in the order the handlers produce them rather
+ * than the order the requests were sent.
+ * <p>
+ * Each side of a channel may have at most {@code WINDOW} bytes sent and not yet acknowledged, so a request which is
+ * not read holds at most that much memory of the receiver.  A writer waits for the acknowledgements, while the thread
+ * reading the connection never waits for a request; the connection is closed if the remote side exceeds the window.
+ *
+ * @author John Bailey
+ */
+final class ManagementConnection implements Runnable {
+    private static final Logger log = Logger.getLogger("org.jboss.as.management");
+    static final int CHUNK_SIZE = 8192;
+    static final int WINDOW = 8 * CHUNK_SIZE;
+
+    private final String name;
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private final int protocolVersion;
+    private final ChannelHandler channelHandler;
+    private final ConcurrentMap<Integer, Channel> channels = new ConcurrentHashMap<Integer, Channel>();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private volatile Runnable idleListener;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private boolean closed;
+
+    /**
+     * Handles the channels opened by the remote side of a connection.
+     */
+    interface ChannelHandler {
+
+        /**
+         * Handle a new channel.  Called by the thread reading the connection, so the request should be run on another
+         * thread.
+         *
+         * @param connection the connection
+         * @param channel the channel
+         * @param handlerId the id of the operation handler of the request
+         */
+        void handleChannel(ManagementConnection connection, Channel channel, byte handlerId);
+    }
+
+    /**
+     * Create a connection over streams on which the opening headers have already been exchanged.
+     *
+     * @param name the name of the connection, used in messages
+     * @param socket the socket closed with the connection, or {@code null} if its owner closes it
+     * @param input the input of the connection
+     * @param output the output of the connection
+     * @param protocolVersion the protocol version agreed in the headers
+     * @param channelHandler the handler of the channels opened by the remote side, or {@code null} if it may not open any
+     */
+    ManagementConnection(final String name, final Socket socket, final InputStream input, final OutputStream output, final int protocolVersion, final ChannelHandler channelHandler) {
+        this.name = name;
+        this.socket = socket;
+        this.input = new DataInputStream(input);
+        this.output = new DataOutputStream(output);
+        this.protocolVersion = protocolVersion;
+        this.channelHandler = channelHandler;
+    }
+
+    /**
+     * Connect to a remote management endpoint, and start the thread reading the connection.
+     *
+     * @param address the address of the endpoint
+     * @param connectTimeout the connect timeout in milliseconds
+     * @return the connection
+     * @throws IOException if the connection could not be established
+     * @throws ManagementException if the endpoint sent an invalid response
+     */
+    static ManagementConnection connect(final InetSocketAddress address, final int connectTimeout) throws IOException, ManagementException {
+        final Socket socket = new Socket();
+        boolean ok = false;
+        try {
+            socket.connect(address, connectTimeout);
+            socket.setSoTimeout(connectTimeout);
+            socket.setTcpNoDelay(true);
+            final InputStream input = new BufferedInputStream(socket.getInputStream());
+            final OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+            final DataOutputStream dataOutput = new DataOutputStream(output);
+            new ManagementRequestHeader(ManagementProtocol.VERSION, 0, (byte) ManagementProtocol.MULTIPLEXED_CONNECTION).write(dataOutput);
+            dataOutput.flush();
+            final ManagementResponseHeader responseHeader = new ManagementResponseHeader(new DataInputStream(input));
+            if (responseHeader.getResponseId() != 0) {
+                throw new ManagementException("Invalid response id " + responseHeader.getResponseId() + " opening a connection to " + address);
+            }
+            // requests wait for their own responses, an idle connection is not timed out
+            socket.setSoTimeout(0);
+            final ManagementConnection connection = new ManagementConnection(address.toString(), socket, input, output, responseHeader.getVersion(), null);
+            final Thread thread = new Thread(connection, "Management connection to " + address);
+            thread.setDaemon(true);
+            thread.start();
+            ok = true;
+            return connection;
+        } finally {
+            if (!ok) {
+                safeClose(socket);
+            }
+        }
+    }
+
+    /**
+     * Get the protocol version agreed when the connection was opened.
+     *
+     * @return the protocol version
+     */
+    int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Open a channel for a new request.
+     *
+     * @param handlerId the id of the operation handler for the request
+     * @param readTimeout how long a read of the response may wait for data, in milliseconds, or {@code 0} to wait forever
+     * @return the channel, or {@code null} if the connection is closed
+     * @throws IOException if the request could not be sent
+     */
+    Channel openChannel(final byte handlerId, final long readTimeout) throws IOException {
+        final Channel channel;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            final int requestId = nextRequestId.incrementAndGet();
+            channel = new Channel(requestId, readTimeout);
+            channels.put(Integer.valueOf(requestId), channel);
+            lastUsed = System.currentTimeMillis();
+        }
+        synchronized (output) {
+            output.writeByte(ManagementProtocol.CHANNEL_OPEN);
+            output.writeInt(channel.requestId);
+            output.writeByte(handlerId);
+        }
+        return channel;
+    }
+
+    /**
+     * Set the task run when the last open channel of this connection is closed.
+     *
+     * @param idleListener the task
+     */
+    void setIdleListener(final Runnable idleListener) {
+        this.idleListener = idleListener;
+    }
+
+    /**
+     * Close the connection if it has had no open channels for a while.
+     *
+     * @param idleTimeout the time the connection must have been idle, in milliseconds
+     * @return {@code true} if the connection is closed
+     */
+    boolean closeIfIdle(final long idleTimeout) {
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            if (!channels.isEmpty() || System.currentTimeMillis() - lastUsed < idleTimeout) {
+                return false;
+            }
+        }
+        log.debugf("Closing idle management connection %s", name);
+        close(null);
+        return true;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /** Read the frames of the connection until it is closed */
+    public void run() {
+        IOException failure = null;
+        try {
+            for (;;) {
+                final int type = input.read();
+                if (type == -1) {
+                    break;
+                }
+                final Integer requestId = Integer.valueOf(input.readInt());
+                switch (type) {
+                    case ManagementProtocol.CHANNEL_OPEN: {
+                        final byte handlerId = input.readByte();
+                        if (channelHandler == null) {
+                            throw new IOException("Unexpected request " + requestId + " on " + name);
+                        }
+                        final Channel channel = new Channel(requestId.intValue(), 0L);
+                        synchronized (this) {
+                            if (closed) {
+                                return;
+                            }
+                            channels.put(requestId, channel);
+                        }
+                        channelHandler.handleChannel(this, channel, handlerId);
+                        break;
+                    }
+                    case ManagementProtocol.CHANNEL_DATA: {
+                        final int length = input.readInt();
+                        if (length < 0 || length > CHUNK_SIZE) {
+                            throw new IOException("Invalid data length " + length + " on " + name);
+                        }
+                        final byte[] data = new byte[length];
+                        input.readFully(data);
+                        final Channel channel = channels.get(requestId);
+                        if (channel == null || !channel.input.receive(data)) {
+                            // the data of a request which was already closed is dropped, and its window returned
+                            sendAck(requestId.intValue(), length);
+                        }
+                        break;
+                    }
+                    case ManagementProtocol.CHANNEL_END: {
+                        final Channel channel = channels.get(requestId);
+                        if (channel != null) {
+                            channel.input.end();
+                        }
+                        break;
+                    }
+                    case ManagementProtocol.CHANNEL_ACK: {
+                        final int count = input.readInt();
+                        if (count <= 0 || count > WINDOW) {
+                            throw new IOException("Invalid acknowledgement of " + count + " bytes on " + name);
+                        }
+                        final Channel channel = channels.get(requestId);
+                        if (channel != null) {
+                            channel.output.acknowledge(count);
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Invalid frame type " + type + " on " + name);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            close(failure);
+        }
+    }
+
+    private void close(final IOException failure) {
+        final List<Channel> open;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            open = new ArrayList<Channel>(channels.values());
+            channels.clear();
+        }
+        if (failure != null && !open.isEmpty()) {
+            log.errorf("Management connection %s failed with %d requests in progress: %s", name, Integer.valueOf(open.size()), failure.getMessage());
+        }
+        final IOException reason = failure != null ? failure : new EOFException("Management connection " + name + " was closed");
+        for (Channel channel : open) {
+            channel.input.fail(reason);
+            channel.output.fail(reason);
+        }
+        safeClose(socket);
+    }
+
+    private void sendData(final int requestId, final byte[] bytes, final int length) throws IOException {
+        synchronized (output) {
+            output.writeByte(ManagementProtocol.CHANNEL_DATA);
+            output.writeInt(requestId);
+            output.writeInt(length);
+            output.write(bytes, 0, length);
+            output.flush();
+        }
+    }
+
+    private void sendAck(final int requestId, final int count) throws IOException {
+        synchronized (output) {
+            output.writeByte(ManagementProtocol.CHANNEL_ACK);
+            output.writeInt(requestId);
+            output.writeInt(count);
+            output.flush();
+        }
+    }
+
+    private void sendEnd(final int requestId) throws IOException {
+        synchronized (output) {
+            output.writeByte(ManagementProtocol.CHANNEL_END);
+            output.writeInt(requestId);
+            output.flush();
+        }
+    }
+
+    private void channelClosed(final Channel channel) {
+        final boolean idle;
+        synchronized (this) {
+            channels.remove(Integer.valueOf(channel.requestId));
+            lastUsed = System.currentTimeMillis();
+            idle = !closed && channels.isEmpty();
+        }
+        final Runnable idleListener = this.idleListener;
+        if (idle && idleListener != null) {
+            idleListener.run();
+        }
+    }
+
+    private static void safeClose(final Socket socket) {
+        if (socket == null) {
+            // the owner of an accepted connection closes it
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The streams of one request on a connection.
+     */
+    final class Channel {
+        private final int requestId;
+        private final ChannelInputStream input;
+        private final ChannelOutputStream output = new ChannelOutputStream();
+        private final long readTimeout;
+
+        private Channel(final int requestId, final long readTimeout) {
+            this.requestId = requestId;
+            this.readTimeout = readTimeout;
+            this.input = new ChannelInputStream();
+        }
+
+        int getRequestId() {
+            return requestId;
+        }
+
+        int getProtocolVersion() {
+            return protocolVersion;
+        }
+
+        InputStream getInputStream() {
+            return input;
+        }
+
+        OutputStream getOutputStream() {
+            return output;
+        }
+
+        /**
+         * Set a task to run once the remote side has sent the first data or the end of the channel, or the connection
+         * failed, so a read of the input does not wait for the remote side to start responding.  The task is run by the
+         * connection's reader thread, or immediately if the input is already readable.
+         *
+         * @param listener the task
+         */
+        void setReadListener(final Runnable listener) {
+            input.setReadListener(listener);
+        }
+
+        /**
+         * Finish the request, sending the end of the channel to the remote side if it was not yet sent.  Data not yet
+         * read is dropped.
+         */
+        void close() {
+            try {
+                output.close();
+            } catch (IOException ignored) {
+            } finally {
+                channelClosed(this);
+                input.discard();
+            }
+        }
+
+        /** Return the window for data which was read or dropped, ignoring a connection which failed */
+        private void acknowledge(final int count) {
+            if (count > 0 && !isClosed()) {
+                try {
+                    sendAck(requestId, count);
+                } catch (IOException e) {
+                    log.debugf("Could not acknowledge data of request %d on %s: %s", Integer.valueOf(requestId), name, e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Buffers the data received for the channel until it is read, at most {@code WINDOW} bytes.
+         */
+        private final class ChannelInputStream extends InputStream {
+            private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+            private byte[] current;
+            private int position;
+            private int buffered;
+            private int unacknowledged;
+            private boolean ended;
+            private boolean discarded;
+            private IOException failure;
+            private Runnable readListener;
+
+            /**
+             * Buffer data received for the channel.
+             *
+             * @param chunk the data
+             * @return {@code false} if the channel was closed and the data dropped
+             * @throws IOException if the remote side sent more than the window
+             */
+            boolean receive(final byte[] chunk) throws IOException {
+                final Runnable listener;
+                synchronized (this) {
+                    if (discarded) {
+                        return false;
+                    }
+                    if (buffered + unacknowledged + chunk.length > WINDOW) {
+                        throw new IOException("Request " + requestId + " on " + name + " sent more than " + WINDOW + " unacknowledged bytes");
+                    }
+                    chunks.add(chunk);
+                    buffered += chunk.length;
+                    notifyAll();
+                    listener = takeReadListener();
+                }
+                if (listener != null) {
+                    listener.run();
+                }
+                return true;
+            }
+
+            /** Drop the data not yet read, returning its window to the remote side */
+            void discard() {
+                final int count;
+                synchronized (this) {
+                    if (discarded) {
+                        return;
+                    }
+                    discarded = true;
+                    count = buffered + unacknowledged;
+                    chunks.clear();
+                    current = null;
+                    buffered = 0;
+                    unacknowledged = 0;
+                    notifyAll();
+                }
+                acknowledge(count);
+            }
+
+            void end() {
+                final Runnable listener;
+                synchronized (this) {
+                    ended = true;
+                    notifyAll();
+                    listener = takeReadListener();
+                }
+                if (listener != null) {
+                    listener.run();
+                }
+            }
+
+            void fail(final IOException failure) {
+                final Runnable listener;
+                synchronized (this) {
+                    this.failure = failure;
+                    notifyAll();
+                    listener = takeReadListener();
+                }
+                if (listener != null) {
+                    listener.run();
+                }
+            }
+
+            void setReadListener(final Runnable listener) {
+                synchronized (this) {
+                    if (chunks.isEmpty() && !ended && failure == null) {
+                        readListener = listener;
+                        return;
+                    }
+                }
+                listener.run();
+            }
+
+            /** Called with the lock held */
+            private Runnable takeReadListener() {
+                final Runnable listener = readListener;
+                readListener = null;
+                return listener;
+            }
+
+            public int read() throws IOException {
+                final int b;
+                final int ack;
+                synchronized (this) {
+                    if (!fill()) {
+                        return -1;
+                    }
+                    b = current[position++] & 0xff;
+                    ack = consumed(1);
+                }
+                acknowledge(ack);
+                return b;
+            }
+
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                final int count;
+                final int ack;
+                synchronized (this) {
+                    if (!fill()) {
+                        return -1;
+                    }
+                    count = Math.min(len, current.length - position);
+                    System.arraycopy(current, position, b, off, count);
+                    position += count;
+                    ack = consumed(count);
+                }
+                acknowledge(ack);
+                return count;
+            }
+
+            public synchronized int available() {
+                return buffered;
+            }
+
+            /** Record bytes read, returning the number to acknowledge, called with the lock held */
+            private int consumed(final int count) {
+                buffered -= count;
+                unacknowledged += count;
+                // acknowledge in batches, but before the remote side runs out of window
+                if (unacknowledged < WINDOW / 2 && buffered > 0) {
+                    return 0;
+                }
+                final int ack = unacknowledged;
+                unacknowledged = 0;
+                return ack;
+            }
+
+            /** Wait for unread data, called with the lock held */
+            private boolean fill() throws IOException {
+                long remaining = readTimeout;
+                while (current == null || position == current.length) {
+                    if (discarded) {
+                        throw new IOException("Request " + requestId + " on " + name + " is finished");
+                    }
+                    if (!chunks.isEmpty()) {
+                        current = chunks.removeFirst();
+                        position = 0;
+                        continue;
+                    }
+                    if (ended) {
+                        return false;
+                    }
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (readTimeout == 0L) {
+                        waitForData(0L);
+                    } else {
+                        if (remaining <= 0L) {
+                            throw new SocketTimeoutException("No response to request " + requestId + " on " + name + " after " + readTimeout + " ms");
+                        }
+                        final long start = System.currentTimeMillis();
+                        waitForData(remaining);
+                        remaining -= System.currentTimeMillis() - start;
+                    }
+                }
+                return true;
+            }
+
+            private void waitForData(final long timeout) throws IOException {
+                try {
+                    wait(timeout);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for request " + requestId);
+                }
+            }
+        }
+
+        /**
+         * Sends the data written to the channel as frames of at most {@code CHUNK_SIZE} bytes when flushed, waiting
+         * for the remote side to acknowledge earlier data when the window is used up.
+         */
+        private final class ChannelOutputStream extends OutputStream {
+            private final byte[] buffer = new byte[CHUNK_SIZE];
+            private int count;
+            private int window = WINDOW;
+            private boolean closed;
+            private IOException failure;
+
+            synchronized void acknowledge(final int count) {
+                window = Math.min(WINDOW, window + count);
+                notifyAll();
+            }
+
+            synchronized void fail(final IOException failure) {
+                this.failure = failure;
+                notifyAll();
+            }
+
+            public synchronized void write(final int b) throws IOException {
+                checkOpen();
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[count++] = (byte) b;
+            }
+
+            public synchronized void write(final byte[] b, int off, int len) throws IOException {
+                checkOpen();
+                while (len > 0) {
+                    if (count == buffer.length) {
+                        flushBuffer();
+                    }
+                    final int chunk = Math.min(len, buffer.length - count);
+                    System.arraycopy(b, off, buffer, count, chunk);
+                    count += chunk;
+                    off += chunk;
+                    len -= chunk;
+                }
+            }
+
+            public synchronized void flush() throws IOException {
+                checkOpen();
+                flushBuffer();
+            }
+
+            public synchronized void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (!ManagementConnection.this.isClosed()) {
+                    flushBuffer();
+                    sendEnd(requestId);
+                }
+            }
+
+            private void checkOpen() throws IOException {
+                if (closed) {
+                    throw new IOException("Request " + requestId + " on " + name + " is finished");
+                }
+            }
+
+            private void flushBuffer() throws IOException {
+                if (count > 0) {
+                    awaitWindow();
+                    sendData(requestId, buffer, count);
+                    window -= count;
+                    count = 0;
+                }
+            }
+
+            /** Wait until the remote side can take the buffer, called with the lock held */
+            private void awaitWindow() throws IOException {
+                long remaining = readTimeout;
+                while (window < count) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (readTimeout != 0L && remaining <= 0L) {
+                        throw new SocketTimeoutException("Request " + requestId + " on " + name + " was not read for " + readTimeout + " ms");
+                    }
+                    final long start = System.currentTimeMillis();
+                    try {
+                        wait(readTimeout == 0L ? 0L : remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting to send request " + requestId);
+                    }
+                    remaining -= System.currentTimeMillis() - start;
+                }
+            }
+        }
+    }
+}
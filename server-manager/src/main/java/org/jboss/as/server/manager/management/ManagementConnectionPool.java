@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The persistent {@link ManagementConnection connections} to remote management endpoints, one per endpoint and
+ * connection index.  A connection is opened by the first request to an endpoint, shared by all later requests with the
+ * same index and closed once it has had no requests in progress for the idle timeout.  Requests use index {@code 0}
+ * unless they spread bulk transfers over several connections.
+ *
+ * @author John Bailey
+ */
+final class ManagementConnectionPool {
+
+    /** The system property used to configure how long an unused connection is kept open, in milliseconds */
+    static final String IDLE_TIMEOUT = "jboss.management.connection.idle.timeout";
+
+    private static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    private final Map<Key, ManagementConnection> connections = new HashMap<Key, ManagementConnection>();
+    private final Map<Key, ConnectLock> connectLocks = new HashMap<Key, ConnectLock>();
+    private final long idleTimeout;
+
+    ManagementConnectionPool() {
+        this(Long.getLong(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT).longValue());
+    }
+
+    ManagementConnectionPool(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Open a channel for a request to a remote endpoint, connecting to it if there is no open connection.
+     *
+     * @param address the address of the endpoint
+     * @param port the port of the endpoint
+     * @param connectionIndex the index of the connection to the endpoint to use
+     * @param handlerId the id of the operation handler for the request
+     * @param timeout the connect and read timeout, in milliseconds
+     * @param executorService the executor used to expire the connection once it is idle
+     * @return the channel
+     * @throws IOException if the connection could not be established or the request could not be sent
+     * @throws ManagementException if the endpoint sent an invalid response
+     */
+    ManagementConnection.Channel openChannel(final InetAddress address, final int port, final int connectionIndex, final byte handlerId, final int timeout, final ScheduledExecutorService executorService) throws IOException, ManagementException {
+        final Key key = new Key(new InetSocketAddress(address, port), connectionIndex);
+        ManagementConnection connection;
+        synchronized (this) {
+            connection = connections.get(key);
+        }
+        if (connection != null) {
+            final ManagementConnection.Channel channel = connection.openChannel(handlerId, timeout);
+            if (channel != null) {
+                return channel;
+            }
+            remove(key, connection);
+        }
+        // only one request connects to an endpoint, the others wait for its connection
+        final ConnectLock connectLock;
+        synchronized (this) {
+            ConnectLock lock = connectLocks.get(key);
+            if (lock == null) {
+                lock = new ConnectLock();
+                connectLocks.put(key, lock);
+            }
+            lock.users++;
+            connectLock = lock;
+        }
+        try {
+            synchronized (connectLock) {
+                synchronized (this) {
+                    connection = connections.get(key);
+                }
+                if (connection == null || connection.isClosed()) {
+                    final ManagementConnection created = ManagementConnection.connect(key.address, timeout);
+                    created.setIdleListener(new Runnable() {
+                        public void run() {
+                            scheduleExpiry(key, created, executorService);
+                        }
+                    });
+                    synchronized (this) {
+                        connections.put(key, created);
+                    }
+                    connection = created;
+                }
+            }
+        } finally {
+            // the lock is only kept while requests are connecting, so endpoints which are gone do not accumulate
+            synchronized (this) {
+                if (--connectLock.users == 0) {
+                    connectLocks.remove(key);
+                }
+            }
+        }
+        final ManagementConnection.Channel channel = connection.openChannel(handlerId, timeout);
+        if (channel == null) {
+            throw new IOException("Management connection to " + key.address + " was closed");
+        }
+        return channel;
+    }
+
+    private void scheduleExpiry(final Key key, final ManagementConnection connection, final ScheduledExecutorService executorService) {
+        final Runnable expiry = new Runnable() {
+            public void run() {
+                if (connection.closeIfIdle(idleTimeout)) {
+                    remove(key, connection);
+                }
+            }
+        };
+        try {
+            executorService.schedule(expiry, idleTimeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the executor is shutting down, the connection will not be used again
+            if (connection.closeIfIdle(0L)) {
+                remove(key, connection);
+            }
+        }
+    }
+
+    /**
+     * Get the number of endpoints requests are connecting to.
+     *
+     * @return the number of endpoints
+     */
+    synchronized int getPendingConnects() {
+        return connectLocks.size();
+    }
+
+    private synchronized void remove(final Key key, final ManagementConnection connection) {
+        if (connections.get(key) == connection) {
+            connections.remove(key);
+        }
+    }
+
+    private static final class ConnectLock {
+        private int users;
+    }
+
+    private static final class Key {
+        private final InetSocketAddress address;
+        private final int index;
+
+        private Key(final InetSocketAddress address, final int index) {
+            this.address = address;
+            this.index = index;
+        }
+
+        public boolean equals(final Object other) {
+            return other instanceof Key && ((Key) other).address.equals(address) && ((Key) other).index == index;
+        }
+
+        public int hashCode() {
+            return address.hashCode() * 31 + index;
+        }
+    }
+}
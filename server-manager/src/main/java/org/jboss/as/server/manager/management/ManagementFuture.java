@@ -0,0 +1,267 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.jboss.logging.Logger;
+
+/**
+ * The result of a {@link ManagementRequest} executed asynchronously.  Besides waiting for the result, callers can
+ * register a {@link Listener} which is called once the request completes.
+ *
+ * @param <T> the type of the result
+ *
+ * @author John Bailey
+ */
+public final class ManagementFuture<T> implements Future<T> {
+    private static final Logger log = Logger.getLogger("org.jboss.as.management");
+
+    private enum State {
+        WAITING,
+        SENT,
+        DONE,
+        FAILED,
+        CANCELLED,
+    }
+
+    private State state = State.WAITING;
+    private T result;
+    private ManagementException failure;
+    private List<Listener<? super T>> listeners;
+    private Runnable cancelHandler;
+
+    /**
+     * Listener called when a request completes.  Listeners are called by the thread which completes the request, or by
+     * the thread adding them if the request is already complete, so they should not block.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Listener<T> {
+
+        /**
+         * The request completed.
+         *
+         * @param result the result of the request
+         */
+        void handleResult(T result);
+
+        /**
+         * The request failed or was cancelled.
+         *
+         * @param failure the reason
+         */
+        void handleFailure(ManagementException failure);
+    }
+
+    ManagementFuture() {
+    }
+
+    /**
+     * Add a listener to be called when the request completes.  If it is already complete the listener is called
+     * immediately.
+     *
+     * @param listener the listener
+     */
+    public void addListener(final Listener<? super T> listener) {
+        synchronized (this) {
+            if (state == State.WAITING || state == State.SENT) {
+                if (listeners == null) {
+                    listeners = new ArrayList<Listener<? super T>>(2);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        invoke(listener);
+    }
+
+    /** {@inheritDoc} */
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        final Runnable cancelHandler;
+        synchronized (this) {
+            if (!complete(State.CANCELLED, null, new ManagementException("Request was cancelled"))) {
+                return false;
+            }
+            cancelHandler = this.cancelHandler;
+        }
+        if (cancelHandler != null) {
+            cancelHandler.run();
+        }
+        invokeListeners();
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean isDone() {
+        return state != State.WAITING && state != State.SENT;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!isDone()) {
+            wait();
+        }
+        return getResult();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toMillis(timeout);
+        final long deadline = System.currentTimeMillis() + remaining;
+        while (!isDone()) {
+            if (remaining <= 0L) {
+                throw new TimeoutException("Request did not complete in " + timeout + " " + unit);
+            }
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        switch (state) {
+            case CANCELLED:
+                throw new CancellationException();
+            case FAILED:
+                throw new ExecutionException(failure);
+            default:
+                return result;
+        }
+    }
+
+    /**
+     * Wait until the request has been sent, or has failed.
+     *
+     * @throws ManagementException if the request failed before it was sent
+     */
+    synchronized void awaitSent() throws ManagementException {
+        boolean intr = false;
+        try {
+            while (state == State.WAITING) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    intr = true;
+                }
+            }
+            if (state == State.FAILED || state == State.CANCELLED) {
+                throw failure;
+            }
+        } finally {
+            if (intr) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Set the task which stops the request if it is cancelled.  The task is run immediately if it already was.
+     */
+    void setCancelHandler(final Runnable cancelHandler) {
+        synchronized (this) {
+            if (state != State.CANCELLED) {
+                this.cancelHandler = cancelHandler;
+                return;
+            }
+        }
+        cancelHandler.run();
+    }
+
+    synchronized void setSent() {
+        if (state == State.WAITING) {
+            state = State.SENT;
+            notifyAll();
+        }
+    }
+
+    boolean setResult(final T result) {
+        synchronized (this) {
+            if (!complete(State.DONE, result, null)) {
+                return false;
+            }
+        }
+        invokeListeners();
+        return true;
+    }
+
+    boolean setFailure(final ManagementException failure) {
+        synchronized (this) {
+            if (!complete(State.FAILED, null, failure)) {
+                return false;
+            }
+        }
+        invokeListeners();
+        return true;
+    }
+
+    /** Called with the lock held */
+    private boolean complete(final State state, final T result, final ManagementException failure) {
+        if (isDone()) {
+            return false;
+        }
+        this.state = state;
+        this.result = result;
+        this.failure = failure;
+        cancelHandler = null;
+        notifyAll();
+        return true;
+    }
+
+    private void invokeListeners() {
+        final List<Listener<? super T>> listeners;
+        synchronized (this) {
+            listeners = this.listeners;
+            this.listeners = null;
+        }
+        if (listeners != null) {
+            for (Listener<? super T> listener : listeners) {
+                invoke(listener);
+            }
+        }
+    }
+
+    private void invoke(final Listener<? super T> listener) {
+        final State state;
+        synchronized (this) {
+            state = this.state;
+        }
+        try {
+            if (state == State.DONE) {
+                listener.handleResult(result);
+            } else {
+                listener.handleFailure(failure);
+            }
+        } catch (Throwable t) {
+            log.errorf(t, "Management request listener %s failed", listener);
+        }
+    }
+}
@@ -75,4 +75,46 @@ public interface ManagementProtocol {
     int UPDATE_HOST_MODEL_RESPONSE = 0x36;
     int IS_ACTIVE_REQUEST = 0x37;
     int IS_ACTIVE_RESPONSE = 0x38;
+
+    // Multiplexed connections
+    int MULTIPLEXED_CONNECTION = 0x39; // The handler id of a request header opening a multiplexed connection
+    int CHANNEL_OPEN = 0x3A;
+    int CHANNEL_DATA = 0x3B;
+    int CHANNEL_END = 0x3C;
+    int CHANNEL_ACK = 0x59; // Returns the window of a channel as the receiver reads its data
+
+    // Domain model synchronization, part of the register request and response
+    int PARAM_ELEMENT_HASH_COUNT = 0x3F;
+    int PARAM_ELEMENT_HASH = 0x40;
+    int PARAM_DOMAIN_MODEL_ELEMENT_COUNT = 0x41;
+    int PARAM_DOMAIN_MODEL_ELEMENT = 0x42;
+
+    // Content-addressed file synchronization, part of the sync file request and response
+    int PARAM_FILE_HASH_COUNT = 0x43;
+    int PARAM_FILE_HASH = 0x44;
+    int FILE_UNCHANGED = 0x45;
+    int FILE_COPY = 0x46;
+    int FILE_DELTA = 0x47;
+    int DELTA_COPY = 0x48;
+    int DELTA_DATA = 0x49;
+    int DELTA_END = 0x4A;
+
+    // Chunked deployment content download
+    int DEPLOYMENT_MANIFEST_REQUEST = 0x4B;
+    int DEPLOYMENT_MANIFEST_RESPONSE = 0x4C;
+    int FILE_CHUNK_REQUEST = 0x4D;
+    int FILE_CHUNK_RESPONSE = 0x4E;
+    int PARAM_CHUNK_OFFSET = 0x4F;
+    int PARAM_CHUNK_LENGTH = 0x50;
+    int PARAM_CHUNK_CHECKSUM = 0x51;
+
+    // Peer-to-peer deployment content distribution
+    int PARAM_PEER_DISTRIBUTION = 0x52;
+    int DEPLOYMENT_SOURCES_REQUEST = 0x53;
+    int DEPLOYMENT_SOURCES_RESPONSE = 0x54;
+    int PARAM_PEER_COUNT = 0x55;
+    int PARAM_PEER = 0x56;
+    int DEPLOYMENT_HELD_REQUEST = 0x57;
+    int DEPLOYMENT_HELD_RESPONSE = 0x58;
+    int PEER_DEPLOYMENT_REQUEST = 0x5A; // The handler id of requests for the deployment content held by a peer
 }
@@ -22,22 +22,28 @@
 
 package org.jboss.as.server.manager.management;
 
-import java.io.IOException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Base management request used for remote requests.  Provides the basic mechanism for connecting to a remote server manager
  * for performing a task.  It will manage connecting and retreiving the correct response.
+ * <p>
+ * Requests to the same remote endpoint share a persistent {@link ManagementConnection}, each running on its own channel
+ * of the connection so any number of them can be in progress at once.  A request only uses a thread of the executor
+ * while connecting, writing the request and reading the response, so requests waiting for their response to start do
+ * not hold any thread.  The response is read as it arrives, and each read waits at most the connect timeout for more
+ * of it, as the read timeout of a socket would.
  *
  * @author John Bailey
  */
 public abstract class ManagementRequest<T> {
+    private static final ManagementConnectionPool connectionPool = new ManagementConnectionPool();
     private final InetAddress address;
     private final int port;
     private final int connectionRetryLimit;
@@ -71,17 +77,44 @@ public abstract class ManagementRequest<T> {
      */
     protected abstract byte getHandlerId();
 
+    /**
+     * Get the index of the connection to the remote endpoint to run the request on.  Requests with the same index share
+     * one connection; bulk transfers can spread their requests over several indexes to use several connections.
+     *
+     * @return The connection index
+     */
+    protected int getConnectionIndex() {
+        return 0;
+    }
+
     /**
      * Execute the request by connecting and then delegating to the implementation's execute
      * and return a future used to get the response when complete.
      *
      * @return A future to retrieve the result when the request is complete
-     * @throws ManagementException If any problems occur with the request
+     * @throws ManagementException If the request could not be sent
      */
     public final Future<T> execute() throws ManagementException {
-        final InitiatingFuture<T> initiatingFuture = new InitiatingFuture<T>();
-        executorService.execute(new InitiateRequestTask<T>(this, initiatingFuture));
-        return initiatingFuture.get();
+        final ManagementFuture<T> future = executeAsync();
+        future.awaitSent();
+        return future;
+    }
+
+    /**
+     * Execute the request without waiting for it to be sent.  No thread is held while the request is connecting or
+     * waiting for the response to start; listeners added to the returned future are called once the response has been
+     * read.
+     *
+     * @return A future to retrieve the result when the request is complete
+     */
+    public final ManagementFuture<T> executeAsync() {
+        final ManagementFuture<T> future = new ManagementFuture<T>();
+        try {
+            executorService.execute(new InitiateRequestTask(future));
+        } catch (RejectedExecutionException e) {
+            future.setFailure(new ManagementException("Failed to initiate request to remote domain controller", e));
+        }
+        return future;
     }
 
     /**
@@ -92,155 +125,154 @@ public abstract class ManagementRequest<T> {
      */
     public T executeForResult() throws ManagementException {
             try {
-                return execute().get();
-            } catch (ManagementException e) {
-                throw e;
+                return executeAsync().get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ManagementException) {
+                    throw ManagementException.class.cast(e.getCause());
+                }
+                throw new ManagementException("Failed to execute remote request", e.getCause());
             } catch (Exception e) {
                 throw new ManagementException("Failed to execute remote request", e);
             }
         }
 
     /**
-     * Execute the request body.  This is run after the connection is established and the headers are exchanged.
+     * Write the request body.  This is run after the connection is established and the headers are exchanged.
      *
      * @param protocolVersion The active protocol version for the request
      * @param output The output to write to
+     * @throws ManagementException If any errors occur
+     */
+    protected abstract void writeRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException;
+
+    /**
+     * Read the response body.  This is run once the first bytes of the response have been received; reads wait for
+     * the rest of the response as it arrives, each for at most the connect timeout.
+     *
+     * @param protocolVersion The active protocol version for the request
      * @param input The input to read from
      * @return The result of the request
      * @throws ManagementException If any errors occur
      */
-    protected abstract T execute(final int protocolVersion, final ByteDataOutput output, final ByteDataInput input) throws ManagementException;
+    protected abstract T readResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException;
 
-    private class InitiateRequestTask<T> implements Runnable {
-        private final ManagementRequest<T> request;
-        private final InitiatingFuture<T> initiatingFuture;
-        private int requestId;
+    private static ManagementException toManagementException(final String message, final Throwable t) {
+        if (t instanceof ManagementException) {
+            return ManagementException.class.cast(t);
+        }
+        return new ManagementException(message, t);
+    }
 
-        private InitiateRequestTask(final ManagementRequest<T> request, final InitiatingFuture<T> initiatingFuture) {
-            this.request = request;
-            this.initiatingFuture = initiatingFuture;
+    private class InitiateRequestTask implements Runnable {
+        private final ManagementFuture<T> future;
+        private int attempt;
+
+        private InitiateRequestTask(final ManagementFuture<T> future) {
+            this.future = future;
         }
 
         public final void run() {
-            final int requestId = this.requestId++;
-            Socket socket = null;
+            if (future.isDone()) {
+                return;
+            }
+            ManagementConnection.Channel channel = null;
             try {
-                socket = new Socket();
                 final int timeout = (int) TimeUnit.SECONDS.toMillis(connectTimeout);
-                socket.connect(new InetSocketAddress(address, port), timeout);
-                socket.setSoTimeout(timeout);
-
-                final ByteDataInput input = new SimpleByteDataInput(socket.getInputStream());
-                final ByteDataOutput output = new SimpleByteDataOutput(socket.getOutputStream());
-
-                // Start by writing the header
-                final ManagementRequestHeader managementRequestHeader = new ManagementRequestHeader(ManagementProtocol.VERSION, requestId, getHandlerId());
-                managementRequestHeader.write(output);
-                output.flush();
-
-                // Now read the response header
-                final ManagementResponseHeader responseHeader = new ManagementResponseHeader(input);
-
-                if (requestId != responseHeader.getResponseId()) {
-                    // TODO: Exception???
-                    safeClose(socket);
-                    return;
-                }
-                // Schedule execution the operation
-                Future<T> resultFuture = executorService.submit(new ExecuteTask<T>(request, responseHeader.getVersion(), socket, input, output));
-                initiatingFuture.set(resultFuture);
+                channel = connectionPool.openChannel(address, port, getConnectionIndex(), getHandlerId(), timeout, executorService);
             } catch (Throwable e) {
-                safeClose(socket);
-                if(requestId < connectionRetryLimit) {
-                    executorService.schedule(this, connectionRetryInterval, TimeUnit.SECONDS);
-                } else {
-                    initiatingFuture.setException(new ManagementException("Failed to initiate request to remote domain controller", e));
+                if(attempt++ < connectionRetryLimit) {
+                    try {
+                        executorService.schedule(this, connectionRetryInterval, TimeUnit.SECONDS);
+                        return;
+                    } catch (RejectedExecutionException ignored) {
+                    }
                 }
+                future.setFailure(toManagementException("Failed to initiate request to remote domain controller", e));
+                return;
             }
-        }
-    }
-
-    private final class InitiatingFuture<T> {
-        private volatile Future<T> requestFuture;
-        private volatile Exception exception;
-
-        Future<T> get() throws ManagementException {
-            boolean intr = false;
+            final ManagementConnection.Channel openChannel = channel;
+            future.setCancelHandler(new Runnable() {
+                public void run() {
+                    openChannel.close();
+                }
+            });
             try {
-                synchronized (this) {
-                    while (this.requestFuture == null && exception == null) {
-                        try {
-                            wait();
-                        } catch (InterruptedException e) {
-                            intr = true;
-                        }
+                final ByteDataOutput output = new SimpleByteDataOutput(channel.getOutputStream());
+                writeRequest(channel.getProtocolVersion(), output);
+                output.flush();
+            } catch (Throwable e) {
+                channel.close();
+                future.setFailure(toManagementException("Failed to send request to remote domain controller", e));
+                return;
+            }
+            future.setSent();
+            final ResponseTask responseTask = new ResponseTask(channel, future);
+            try {
+                // the reads of the response time out by themselves once it has started
+                responseTask.timeoutTask = executorService.schedule(new Runnable() {
+                    public void run() {
+                        responseTask.timeout();
                     }
-                }
-                if (exception != null) {
-                    if(exception instanceof ManagementException) {
-                        throw ManagementException.class.cast(exception);
+                }, connectTimeout, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // without a timeout the request waits for the connection to fail
+            }
+            channel.setReadListener(new Runnable() {
+                public void run() {
+                    try {
+                        executorService.execute(responseTask);
+                    } catch (RejectedExecutionException e) {
+                        responseTask.fail(new ManagementException("Failed to read response from remote domain controller", e));
                     }
-                    throw new ManagementException(exception);
                 }
-                return requestFuture;
-            } finally {
-                if (intr) Thread.currentThread().interrupt();
-            }
-        }
-
-        void set(final Future<T> operationFuture) {
-            synchronized (this) {
-                this.requestFuture = operationFuture;
-                notifyAll();
-            }
-        }
-
-        void setException(final Exception exception) {
-            synchronized (this) {
-                this.exception = exception;
-                notifyAll();
-            }
+            });
         }
     }
 
-    private class ExecuteTask<T> implements Callable<T> {
-        private final ManagementRequest<T> request;
-        private final int protocolVersion;
-        private final Socket socket;
-        private final ByteDataInput input;
-        private final ByteDataOutput output;
-
-        private ExecuteTask(final ManagementRequest<T> request, final int protocolVersion, final Socket socket, final ByteDataInput input, final ByteDataOutput output) {
-            this.request = request;
-            this.protocolVersion = protocolVersion;
-            this.socket = socket;
-            this.input = input;
-            this.output = output;
+    private class ResponseTask implements Runnable {
+        private final ManagementConnection.Channel channel;
+        private final ManagementFuture<T> future;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile Future<?> timeoutTask;
+
+        private ResponseTask(final ManagementConnection.Channel channel, final ManagementFuture<T> future) {
+            this.channel = channel;
+            this.future = future;
         }
 
-        public T call() throws Exception {
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            cancelTimeout();
             try {
-                return request.execute(protocolVersion, output, input);
+                final ByteDataInput input = new SimpleByteDataInput(channel.getInputStream());
+                future.setResult(readResponse(channel.getProtocolVersion(), input));
+            } catch (Throwable e) {
+                future.setFailure(toManagementException("Failed to read response from remote domain controller", e));
             } finally {
-                safeClose(socket);
+                channel.close();
             }
         }
-    }
 
-    private void safeClose(final Socket socket) {
-        if (socket == null)
-            return;
-        try {
-            socket.shutdownOutput();
-        } catch (IOException ignored) {
+        void timeout() {
+            fail(new ManagementException("No response from remote domain controller after " + connectTimeout + " seconds"));
         }
-        try {
-            socket.shutdownInput();
-        } catch (IOException ignored) {
+
+        void fail(final ManagementException failure) {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            cancelTimeout();
+            channel.close();
+            future.setFailure(failure);
         }
-        try {
-            socket.close();
-        } catch (IOException ignored) {
+
+        private void cancelTimeout() {
+            final Future<?> timeoutTask = this.timeoutTask;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
         }
     }
 }
@@ -30,7 +30,6 @@ import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.MarshallerFactory;
 import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
-import org.jboss.marshalling.ModularClassTable;
 import org.jboss.marshalling.Unmarshaller;
 import org.jboss.modules.ModuleClassLoader;
 import org.jboss.modules.ModuleLoadException;
@@ -41,29 +40,31 @@ import org.jboss.modules.ModuleLoadException;
  * @author John Bailey
  */
 public class ManagementUtils {
-    private static final MarshallerFactory MARSHALLER_FACTORY;
-    private static final MarshallingConfiguration CONFIG;
+    private static final MarshallerPool MARSHALLERS;
 
     static {
+        final MarshallerFactory factory;
         try {
-            MARSHALLER_FACTORY = Marshalling.getMarshallerFactory("river", ModuleClassLoader.forModuleName("org.jboss.marshalling.river"));
+            factory = Marshalling.getMarshallerFactory("river", ModuleClassLoader.forModuleName("org.jboss.marshalling.river"));
         } catch (ModuleLoadException e) {
             throw new RuntimeException(e);
         }
         final MarshallingConfiguration config = new MarshallingConfiguration();
-        config.setClassTable(ModularClassTable.getInstance());
-        CONFIG = config;
+        config.setClassTable(ModelClassTable.getInstance());
+        config.setObjectTable(ModelObjectTable.getInstance());
+        MARSHALLERS = new MarshallerPool(factory, config);
     }
 
     private ManagementUtils() {}
 
     public static <T> T unmarshal(final ByteInput input, final Class<T> expectedType) throws Exception {
-        final Unmarshaller unmarshaller = MARSHALLER_FACTORY.createUnmarshaller(CONFIG);
+        final Unmarshaller unmarshaller = MARSHALLERS.getUnmarshaller();
         final ChunkyByteInput chunked = new ChunkyByteInput(input);
         try {
             unmarshaller.start(chunked);
             final T result = unmarshaller.readObject(expectedType);
             unmarshaller.finish();
+            MARSHALLERS.returnUnmarshaller(unmarshaller);
             return result;
         } finally {
             chunked.close();
@@ -71,12 +72,13 @@ public class ManagementUtils {
     }
 
     public static void marshal(final ByteOutput output, final Object object) throws Exception {
-        final Marshaller marshaller = MARSHALLER_FACTORY.createMarshaller(CONFIG);
+        final Marshaller marshaller = MARSHALLERS.getMarshaller();
         final ChunkyByteOutput chunked = new ChunkyByteOutput(output);
         try {
             marshaller.start(chunked);
             marshaller.writeObject(object);
             marshaller.finish();
+            MARSHALLERS.returnMarshaller(marshaller);
         } finally {
             chunked.close();
         }
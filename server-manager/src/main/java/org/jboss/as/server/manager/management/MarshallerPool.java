@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallerFactory;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.Unmarshaller;
+
+/**
+ * A bounded pool of marshallers and unmarshallers sharing one configuration, so every message does not pay for
+ * creating and tearing down the marshaller's internal tables and buffers.
+ * <p>
+ * Only return an instance after a successful {@code finish()}, which discards the class and instance caches of the
+ * stream; an instance left in an unknown state by a failure is simply dropped.
+ *
+ * @author John Bailey
+ */
+public final class MarshallerPool {
+
+    /** The system property holding the maximum number of idle marshallers and unmarshallers kept by each pool */
+    public static final String POOL_SIZE = "jboss.server.manager.marshaller.pool.size";
+
+    private static final int DEFAULT_POOL_SIZE = 16;
+
+    private final MarshallerFactory factory;
+    private final MarshallingConfiguration configuration;
+    private final BlockingQueue<Marshaller> marshallers;
+    private final BlockingQueue<Unmarshaller> unmarshallers;
+
+    /**
+     * Create a pool holding at most {@link #POOL_SIZE} idle instances of each kind.
+     *
+     * @param factory the factory creating the instances
+     * @param configuration the configuration of the instances
+     */
+    public MarshallerPool(final MarshallerFactory factory, final MarshallingConfiguration configuration) {
+        this(factory, configuration, Integer.getInteger(POOL_SIZE, DEFAULT_POOL_SIZE).intValue());
+    }
+
+    /**
+     * Create a pool.
+     *
+     * @param factory the factory creating the instances
+     * @param configuration the configuration of the instances
+     * @param size the maximum number of idle instances of each kind
+     */
+    public MarshallerPool(final MarshallerFactory factory, final MarshallingConfiguration configuration, final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        this.factory = factory;
+        this.configuration = configuration;
+        this.marshallers = new ArrayBlockingQueue<Marshaller>(size);
+        this.unmarshallers = new ArrayBlockingQueue<Unmarshaller>(size);
+    }
+
+    /**
+     * Take an idle marshaller, or create one if there is none.
+     *
+     * @return the marshaller
+     * @throws IOException if a marshaller could not be created
+     */
+    public Marshaller getMarshaller() throws IOException {
+        final Marshaller marshaller = marshallers.poll();
+        return marshaller != null ? marshaller : factory.createMarshaller(configuration);
+    }
+
+    /**
+     * Return a finished marshaller to the pool.  It is discarded if the pool is full.
+     *
+     * @param marshaller the marshaller
+     */
+    public void returnMarshaller(final Marshaller marshaller) {
+        marshallers.offer(marshaller);
+    }
+
+    /**
+     * Take an idle unmarshaller, or create one if there is none.
+     *
+     * @return the unmarshaller
+     * @throws IOException if an unmarshaller could not be created
+     */
+    public Unmarshaller getUnmarshaller() throws IOException {
+        final Unmarshaller unmarshaller = unmarshallers.poll();
+        return unmarshaller != null ? unmarshaller : factory.createUnmarshaller(configuration);
+    }
+
+    /**
+     * Return a finished unmarshaller to the pool.  It is discarded if the pool is full.
+     *
+     * @param unmarshaller the unmarshaller
+     */
+    public void returnUnmarshaller(final Unmarshaller unmarshaller) {
+        unmarshallers.offer(unmarshaller);
+    }
+}
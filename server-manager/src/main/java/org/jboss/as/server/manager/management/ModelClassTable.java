@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.jboss.as.model.AbstractDomainModelUpdate;
+import org.jboss.as.model.AbstractHostModelUpdate;
+import org.jboss.as.model.AbstractModel;
+import org.jboss.as.model.AbstractModelElement;
+import org.jboss.as.model.AbstractModelElementUpdate;
+import org.jboss.as.model.AbstractModelRootElement;
+import org.jboss.as.model.AbstractModelUpdate;
+import org.jboss.as.model.AbstractPropertyUpdate;
+import org.jboss.as.model.AbstractServerModelUpdate;
+import org.jboss.as.model.AbstractSubsystemElement;
+import org.jboss.as.model.ChildElement;
+import org.jboss.as.model.DeploymentRepositoryElement;
+import org.jboss.as.model.DeploymentUnitElement;
+import org.jboss.as.model.DomainModel;
+import org.jboss.as.model.DomainSystemPropertyUpdate;
+import org.jboss.as.model.ExtensionElement;
+import org.jboss.as.model.HostModel;
+import org.jboss.as.model.HostSystemPropertyUpdate;
+import org.jboss.as.model.JvmElement;
+import org.jboss.as.model.LocalDomainControllerElement;
+import org.jboss.as.model.LocalTransportElement;
+import org.jboss.as.model.ManagementElement;
+import org.jboss.as.model.NamespaceAttribute;
+import org.jboss.as.model.ProfileElement;
+import org.jboss.as.model.ProfileIncludeElement;
+import org.jboss.as.model.PropertiesElement;
+import org.jboss.as.model.PropertyAdd;
+import org.jboss.as.model.PropertyRemove;
+import org.jboss.as.model.QNameComparator;
+import org.jboss.as.model.RemoteDomainControllerElement;
+import org.jboss.as.model.ServerElement;
+import org.jboss.as.model.ServerGroupAdd;
+import org.jboss.as.model.ServerGroupDeploymentElement;
+import org.jboss.as.model.ServerGroupDeploymentStartStopUpdate;
+import org.jboss.as.model.ServerGroupElement;
+import org.jboss.as.model.ServerModel;
+import org.jboss.as.model.ServerModelDeploymentAddUpdate;
+import org.jboss.as.model.ServerModelDeploymentFullReplaceUpdate;
+import org.jboss.as.model.ServerModelDeploymentRemoveUpdate;
+import org.jboss.as.model.ServerModelDeploymentReplaceUpdate;
+import org.jboss.as.model.ServerModelDeploymentStartStopUpdate;
+import org.jboss.as.model.ServerSystemPropertyUpdate;
+import org.jboss.as.model.SimpleRefResolver;
+import org.jboss.as.model.StandbyPoolElement;
+import org.jboss.as.model.UpdateFailedException;
+import org.jboss.as.model.socket.AbstractInterfaceCriteriaElement;
+import org.jboss.as.model.socket.AbstractInterfaceElement;
+import org.jboss.as.model.socket.AnyInterfaceCriteria;
+import org.jboss.as.model.socket.CompoundCriteriaElement;
+import org.jboss.as.model.socket.InetAddressMatchCriteriaElement;
+import org.jboss.as.model.socket.InetAddressMatchInterfaceCriteria;
+import org.jboss.as.model.socket.InterfaceElement;
+import org.jboss.as.model.socket.LinkLocalInterfaceCriteria;
+import org.jboss.as.model.socket.LoopbackInterfaceCriteria;
+import org.jboss.as.model.socket.NicCriteriaElement;
+import org.jboss.as.model.socket.NicInterfaceCriteria;
+import org.jboss.as.model.socket.NicMatchCriteriaElement;
+import org.jboss.as.model.socket.NicMatchInterfaceCriteria;
+import org.jboss.as.model.socket.NotInterfaceCriteria;
+import org.jboss.as.model.socket.PointToPointInterfaceCriteria;
+import org.jboss.as.model.socket.PublicAddressInterfaceCriteria;
+import org.jboss.as.model.socket.ServerInterfaceElement;
+import org.jboss.as.model.socket.SimpleCriteriaElement;
+import org.jboss.as.model.socket.SiteLocalInterfaceCriteria;
+import org.jboss.as.model.socket.SocketBindingElement;
+import org.jboss.as.model.socket.SocketBindingGroupElement;
+import org.jboss.as.model.socket.SocketBindingGroupIncludeElement;
+import org.jboss.as.model.socket.SocketBindingGroupRefElement;
+import org.jboss.as.model.socket.SubnetMatchCriteriaElement;
+import org.jboss.as.model.socket.SubnetMatchInterfaceCriteria;
+import org.jboss.as.model.socket.SupportsMulticastInterfaceCriteria;
+import org.jboss.as.model.socket.UpInterfaceCriteria;
+import org.jboss.as.model.socket.VirtualInterfaceCriteria;
+import org.jboss.marshalling.ClassTable;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.ModularClassTable;
+import org.jboss.marshalling.Unmarshaller;
+
+/**
+ * A class table which writes the domain model element and update classes as a single byte index, instead of
+ * describing them by name in every message.  Other classes are written by the {@link ModularClassTable}.
+ * <p>
+ * Both ends of a connection must use the same table, so new classes are only ever added to the end of the list.
+ *
+ * @author John Bailey
+ */
+public final class ModelClassTable implements ClassTable {
+
+    private static final Class<?>[] CLASSES = {
+        DomainModel.class,
+        HostModel.class,
+        ServerModel.class,
+        ChildElement.class,
+        NamespaceAttribute.class,
+        QNameComparator.class,
+        UpdateFailedException.class,
+        SimpleRefResolver.class,
+        // base classes
+        AbstractModel.class,
+        AbstractModelRootElement.class,
+        AbstractModelElement.class,
+        AbstractSubsystemElement.class,
+        AbstractModelElementUpdate.class,
+        AbstractModelUpdate.class,
+        AbstractDomainModelUpdate.class,
+        AbstractHostModelUpdate.class,
+        AbstractServerModelUpdate.class,
+        AbstractPropertyUpdate.class,
+        // elements
+        DeploymentRepositoryElement.class,
+        DeploymentUnitElement.class,
+        ExtensionElement.class,
+        JvmElement.class,
+        LocalDomainControllerElement.class,
+        LocalTransportElement.class,
+        ManagementElement.class,
+        ProfileElement.class,
+        ProfileIncludeElement.class,
+        PropertiesElement.class,
+        RemoteDomainControllerElement.class,
+        ServerElement.class,
+        ServerGroupDeploymentElement.class,
+        ServerGroupElement.class,
+        StandbyPoolElement.class,
+        // updates
+        DomainSystemPropertyUpdate.class,
+        HostSystemPropertyUpdate.class,
+        PropertyAdd.class,
+        PropertyRemove.class,
+        ServerGroupAdd.class,
+        ServerGroupDeploymentStartStopUpdate.class,
+        ServerModelDeploymentAddUpdate.class,
+        ServerModelDeploymentFullReplaceUpdate.class,
+        ServerModelDeploymentRemoveUpdate.class,
+        ServerModelDeploymentReplaceUpdate.class,
+        ServerModelDeploymentStartStopUpdate.class,
+        ServerSystemPropertyUpdate.class,
+        // sockets and interfaces
+        AbstractInterfaceElement.class,
+        InterfaceElement.class,
+        ServerInterfaceElement.class,
+        SocketBindingElement.class,
+        SocketBindingGroupElement.class,
+        SocketBindingGroupIncludeElement.class,
+        SocketBindingGroupRefElement.class,
+        AbstractInterfaceCriteriaElement.class,
+        CompoundCriteriaElement.class,
+        InetAddressMatchCriteriaElement.class,
+        NicCriteriaElement.class,
+        NicMatchCriteriaElement.class,
+        SimpleCriteriaElement.class,
+        SubnetMatchCriteriaElement.class,
+        AnyInterfaceCriteria.class,
+        InetAddressMatchInterfaceCriteria.class,
+        LinkLocalInterfaceCriteria.class,
+        LoopbackInterfaceCriteria.class,
+        NicInterfaceCriteria.class,
+        NicMatchInterfaceCriteria.class,
+        NotInterfaceCriteria.class,
+        PointToPointInterfaceCriteria.class,
+        PublicAddressInterfaceCriteria.class,
+        SiteLocalInterfaceCriteria.class,
+        SubnetMatchInterfaceCriteria.class,
+        SupportsMulticastInterfaceCriteria.class,
+        UpInterfaceCriteria.class,
+        VirtualInterfaceCriteria.class,
+    };
+
+    private static final ModelClassTable INSTANCE = new ModelClassTable(ModularClassTable.getInstance());
+
+    private final ClassTable delegate;
+    private final Map<Class<?>, Writer> writers = new IdentityHashMap<Class<?>, Writer>();
+
+    /**
+     * Create a table.
+     *
+     * @param delegate the table for the classes which are not model classes
+     */
+    public ModelClassTable(final ClassTable delegate) {
+        this.delegate = delegate;
+        for (int i = 0; i < CLASSES.length; i++) {
+            final int index = i + 1;
+            writers.put(CLASSES[i], new Writer() {
+                public void writeClass(final Marshaller marshaller, final Class<?> clazz) throws IOException {
+                    marshaller.writeByte(index);
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the table which writes the classes which are not model classes with the {@link ModularClassTable}.
+     *
+     * @return the table
+     */
+    public static ModelClassTable getInstance() {
+        return INSTANCE;
+    }
+
+    /** {@inheritDoc} */
+    public Writer getClassWriter(final Class<?> clazz) throws IOException {
+        final Writer writer = writers.get(clazz);
+        if (writer != null) {
+            return writer;
+        }
+        final Writer delegateWriter = delegate.getClassWriter(clazz);
+        if (delegateWriter == null) {
+            return null;
+        }
+        return new Writer() {
+            public void writeClass(final Marshaller marshaller, final Class<?> clazz) throws IOException {
+                marshaller.writeByte(0);
+                delegateWriter.writeClass(marshaller, clazz);
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    public Class<?> readClass(final Unmarshaller unmarshaller) throws IOException, ClassNotFoundException {
+        final int index = unmarshaller.readUnsignedByte();
+        if (index == 0) {
+            return delegate.readClass(unmarshaller);
+        }
+        if (index > CLASSES.length) {
+            throw new InvalidClassException("Unknown model class index " + index);
+        }
+        return CLASSES[index - 1];
+    }
+}
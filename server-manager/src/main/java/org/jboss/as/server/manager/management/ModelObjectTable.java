@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.jboss.as.model.QNameComparator;
+import org.jboss.as.model.socket.LinkLocalInterfaceCriteria;
+import org.jboss.as.model.socket.LoopbackInterfaceCriteria;
+import org.jboss.as.model.socket.PointToPointInterfaceCriteria;
+import org.jboss.as.model.socket.PublicAddressInterfaceCriteria;
+import org.jboss.as.model.socket.SiteLocalInterfaceCriteria;
+import org.jboss.as.model.socket.SupportsMulticastInterfaceCriteria;
+import org.jboss.as.model.socket.UpInterfaceCriteria;
+import org.jboss.as.model.socket.VirtualInterfaceCriteria;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.ObjectTable;
+import org.jboss.marshalling.Unmarshaller;
+
+/**
+ * An object table which writes the stateless singletons of the domain model as a single byte index, so they are
+ * neither serialized nor resolved again when read.
+ * <p>
+ * Both ends of a connection must use the same table, so new objects are only ever added to the end of the list.
+ *
+ * @author John Bailey
+ */
+public final class ModelObjectTable implements ObjectTable {
+
+    private static final Object[] OBJECTS = {
+        QNameComparator.getInstance(),
+        LinkLocalInterfaceCriteria.INSTANCE,
+        LoopbackInterfaceCriteria.INSTANCE,
+        PointToPointInterfaceCriteria.INSTANCE,
+        PublicAddressInterfaceCriteria.INSTANCE,
+        SiteLocalInterfaceCriteria.INSTANCE,
+        SupportsMulticastInterfaceCriteria.INSTANCE,
+        UpInterfaceCriteria.INSTANCE,
+        VirtualInterfaceCriteria.INSTANCE,
+    };
+
+    private static final ModelObjectTable INSTANCE = new ModelObjectTable();
+
+    private final Map<Object, Writer> writers = new IdentityHashMap<Object, Writer>();
+
+    private ModelObjectTable() {
+        for (int i = 0; i < OBJECTS.length; i++) {
+            final int index = i;
+            writers.put(OBJECTS[i], new Writer() {
+                public void writeObject(final Marshaller marshaller, final Object object) throws IOException {
+                    marshaller.writeByte(index);
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the table.
+     *
+     * @return the table
+     */
+    public static ModelObjectTable getInstance() {
+        return INSTANCE;
+    }
+
+    /** {@inheritDoc} */
+    public Writer getObjectWriter(final Object object) throws IOException {
+        return writers.get(object);
+    }
+
+    /** {@inheritDoc} */
+    public Object readObject(final Unmarshaller unmarshaller) throws IOException, ClassNotFoundException {
+        final int index = unmarshaller.readUnsignedByte();
+        if (index >= OBJECTS.length) {
+            throw new InvalidObjectException("Unknown model object index " + index);
+        }
+        return OBJECTS[index];
+    }
+}
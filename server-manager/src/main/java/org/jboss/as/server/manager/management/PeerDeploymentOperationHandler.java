@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import java.io.File;
+import java.io.IOException;
+import org.jboss.as.server.manager.FileRepository;
+import static org.jboss.as.server.manager.management.ManagementUtils.expectHeader;
+
+/**
+ * {@link org.jboss.as.server.manager.management.ManagementOperationHandler} implementation serving the deployment
+ * content a server manager holds to its peers.  It is only registered once the domain controller reports that it
+ * distributes deployments peer-to-peer.
+ *
+ * @author John Bailey
+ */
+public class PeerDeploymentOperationHandler implements ManagementOperationHandler {
+
+    private final FileRepository localFileRepository;
+
+    /**
+     * Create a new instance.
+     *
+     * @param localFileRepository The local file repository, whose deployments are served to peer server managers
+     */
+    public PeerDeploymentOperationHandler(final FileRepository localFileRepository) {
+        this.localFileRepository = localFileRepository;
+    }
+
+    public final void handleRequest(final int protocolVersion, final ByteDataInput input, final ByteDataOutput output) throws ManagementException {
+        final byte commandCode;
+        try {
+            expectHeader(input, ManagementProtocol.REQUEST_OPERATION);
+            commandCode = input.readByte();
+        } catch (IOException e) {
+            throw new ManagementException("Request failed to read command code", e);
+        }
+        if (commandCode != ManagementProtocol.FILE_CHUNK_REQUEST) {
+            throw new ManagementException("Invalid command code " + commandCode + " received from peer server manager");
+        }
+        try {
+            new GetFileChunkOperation().handle(input, output);
+        } catch (Exception e) {
+            throw new ManagementException("Failed to execute peer deployment operation", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public final byte getIdentifier() {
+        return ManagementProtocol.PEER_DEPLOYMENT_REQUEST;
+    }
+
+    private class GetFileChunkOperation extends ManagementResponse {
+        private File file;
+        private long offset;
+        private int length;
+
+        public final byte getRequestCode() {
+            return ManagementProtocol.FILE_CHUNK_REQUEST;
+        }
+
+        protected final byte getResponseCode() {
+            return ManagementProtocol.FILE_CHUNK_RESPONSE;
+        }
+
+        protected final void readRequest(final ByteDataInput input) throws ManagementException {
+            final String filePath;
+            final String path;
+            try {
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                filePath = input.readUTF();
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                path = input.readUTF();
+                expectHeader(input, ManagementProtocol.PARAM_CHUNK_OFFSET);
+                offset = input.readLong();
+                expectHeader(input, ManagementProtocol.PARAM_CHUNK_LENGTH);
+                length = input.readInt();
+            } catch (IOException e) {
+                throw new ManagementException("Unable to read file chunk request attributes", e);
+            }
+            file = FileChunks.resolve(localFileRepository, filePath, path, offset, length);
+        }
+
+        protected final void sendResponse(final ByteDataOutput output) throws ManagementException {
+            try {
+                FileChunks.writeChunk(file, offset, length, output);
+            } catch (IOException e) {
+                throw new ManagementException("Unable to write chunk of file " + file + " to peer server manager", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.jboss.as.server.manager.management.ManagementUtils.expectHeader;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.jboss.as.server.manager.management.ByteDataInput;
+import org.jboss.as.server.manager.management.ByteDataOutput;
+import org.jboss.as.server.manager.management.ManagementException;
+import org.jboss.as.server.manager.management.ManagementOperationHandler;
+import org.jboss.as.server.manager.management.ManagementProtocol;
+import org.jboss.as.server.manager.management.ManagementResponse;
+import org.jboss.as.server.manager.management.StubManagementServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link DeploymentDownloader} resumes interrupted downloads, fetches corrupted chunks again, and shares
+ * one download between concurrent requests, against a stub domain controller.
+ *
+ * @author John Bailey
+ */
+public class DeploymentDownloaderTestCase {
+
+    private static final String DEPLOYMENT = "app.war";
+    private static final String LARGE = "lib/large.jar";
+    private static final String SMALL = "index.html";
+    private static final int CHUNK_SIZE = 1024;
+    /** Ten full chunks and a partial one */
+    private static final int LARGE_LENGTH = 10 * CHUNK_SIZE + 500;
+
+    private final StubDomainController domainController = new StubDomainController();
+    private ScheduledExecutorService executorService;
+    private StubManagementServer server;
+    private File root;
+    private File deployment;
+    private byte[] large;
+    private DeploymentDownloader downloader;
+
+    @Before
+    public void setup() throws IOException {
+        large = new byte[LARGE_LENGTH];
+        new Random(42L).nextBytes(large);
+        domainController.files.put(LARGE, large);
+        domainController.files.put(SMALL, "<html/>".getBytes("US-ASCII"));
+
+        root = File.createTempFile("deployments", "");
+        root.delete();
+        root.mkdirs();
+        deployment = new File(root, DEPLOYMENT);
+
+        executorService = Executors.newScheduledThreadPool(4);
+        server = new StubManagementServer(domainController);
+        final FileRepository localRepository = new FileRepository() {
+            public File getFile(final String relativePath) {
+                return new File(root, relativePath);
+            }
+
+            public File getConfigurationFile(final String relativePath) {
+                return new File(root, relativePath);
+            }
+
+            public File getDeploymentFile(final String relativePath) {
+                return new File(root, relativePath);
+            }
+        };
+        final RemoteDomainControllerConnection connection = new RemoteDomainControllerConnection("test-sm", server.getAddress(), server.getPort(),
+                server.getAddress(), 0, localRepository, 0, 1L, 5L, executorService, null);
+        downloader = new DeploymentDownloader(connection, localRepository, executorService, 2, CHUNK_SIZE);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        server.close();
+        executorService.shutdownNow();
+        delete(root);
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        assertEquals(deployment, downloader.download(DEPLOYMENT));
+        assertDownloaded();
+        assertEquals(chunks(0, 11), domainController.requested(LARGE));
+        assertEquals(chunks(0, 1), domainController.requested(SMALL));
+    }
+
+    @Test
+    public void testUnchangedFilesNotFetched() throws Exception {
+        write(new File(deployment, LARGE), large);
+        downloader.download(DEPLOYMENT);
+        assertDownloaded();
+        assertTrue(domainController.requested(LARGE).isEmpty());
+        assertEquals(chunks(0, 1), domainController.requested(SMALL));
+    }
+
+    @Test
+    public void testResumeFromProgress() throws Exception {
+        // the first five chunks were received, and the last record was cut short by the interruption
+        final File file = new File(deployment, LARGE);
+        write(new File(file.getPath() + ".part"), Arrays.copyOf(large, 5 * CHUNK_SIZE));
+        writeProgress(file, sha1(large), CHUNK_SIZE, chunks(0, 5), true);
+
+        downloader.download(DEPLOYMENT);
+        assertDownloaded();
+        assertEquals(chunks(5, 11), domainController.requested(LARGE));
+    }
+
+    @Test
+    public void testResumeFromTruncatedPartialFile() throws Exception {
+        // five chunks were recorded, but the partial file lost its end and only holds three and a half of them
+        final File file = new File(deployment, LARGE);
+        write(new File(file.getPath() + ".part"), Arrays.copyOf(large, 3 * CHUNK_SIZE + CHUNK_SIZE / 2));
+        writeProgress(file, sha1(large), CHUNK_SIZE, chunks(0, 5), false);
+
+        downloader.download(DEPLOYMENT);
+        assertDownloaded();
+        assertEquals(chunks(3, 11), domainController.requested(LARGE));
+    }
+
+    @Test
+    public void testProgressOfOtherContentIgnored() throws Exception {
+        final File file = new File(deployment, LARGE);
+        write(new File(file.getPath() + ".part"), new byte[LARGE_LENGTH]);
+        writeProgress(file, new byte[20], CHUNK_SIZE, chunks(0, 11), false);
+
+        downloader.download(DEPLOYMENT);
+        assertDownloaded();
+        assertEquals(chunks(0, 11), domainController.requested(LARGE));
+    }
+
+    @Test
+    public void testCorruptChunkFetchedAgain() throws Exception {
+        domainController.corruptOnce.add(Integer.valueOf(3));
+        downloader.download(DEPLOYMENT);
+        assertDownloaded();
+        final List<Integer> expected = chunks(0, 11);
+        expected.add(Integer.valueOf(3));
+        Collections.sort(expected);
+        assertEquals(expected, domainController.requested(LARGE));
+    }
+
+    @Test
+    public void testCorruptChunkFailsThenResumes() throws Exception {
+        domainController.corruptAlways.add(Integer.valueOf(3));
+        try {
+            downloader.download(DEPLOYMENT);
+            fail("The download should fail once every attempt at a chunk failed");
+        } catch (ManagementException expected) {
+        }
+        final File file = new File(deployment, LARGE);
+        assertFalse(file.exists());
+        assertTrue(new File(file.getPath() + ".part").exists());
+        assertTrue(new File(file.getPath() + ".progress").exists());
+
+        // the chunks received by the failed download are kept
+        domainController.corruptAlways.clear();
+        domainController.reset();
+        downloader.download(DEPLOYMENT);
+        assertDownloaded();
+        assertEquals(chunks(3, 4), domainController.requested(LARGE));
+    }
+
+    @Test
+    public void testConcurrentDownloadsShared() throws Exception {
+        domainController.manifestGate = new CountDownLatch(1);
+        final File[] results = new File[2];
+        final Throwable[] failures = new Throwable[2];
+        final Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        results[index] = downloader.download(DEPLOYMENT);
+                    } catch (Throwable t) {
+                        failures[index] = t;
+                    }
+                }
+            });
+        }
+        threads[0].start();
+        assertTrue(domainController.manifestRequested.await(5L, TimeUnit.SECONDS));
+        threads[1].start();
+        // give the second download the chance to ask for the manifest if it did not join the first
+        Thread.sleep(100L);
+        domainController.manifestGate.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10L));
+        }
+        for (int i = 0; i < threads.length; i++) {
+            if (failures[i] != null) {
+                throw new AssertionError(failures[i]);
+            }
+            assertEquals(deployment, results[i]);
+        }
+        assertEquals(1, domainController.manifestRequests.get());
+        assertEquals(chunks(0, 11), domainController.requested(LARGE));
+        assertDownloaded();
+    }
+
+    private void assertDownloaded() throws IOException {
+        for (Map.Entry<String, byte[]> entry : domainController.files.entrySet()) {
+            final File file = new File(deployment, entry.getKey());
+            assertArrayEquals(entry.getValue(), read(file));
+            assertFalse(new File(file.getPath() + ".part").exists());
+            assertFalse(new File(file.getPath() + ".progress").exists());
+        }
+    }
+
+    private static List<Integer> chunks(final int from, final int to) {
+        final List<Integer> chunks = new ArrayList<Integer>();
+        for (int i = from; i < to; i++) {
+            chunks.add(Integer.valueOf(i));
+        }
+        return chunks;
+    }
+
+    /** Write a progress file as an interrupted download leaves it */
+    private static void writeProgress(final File file, final byte[] sha1, final int chunkSize, final List<Integer> chunks, final boolean cutShort) throws IOException {
+        final DataOutputStream output = new DataOutputStream(new FileOutputStream(file.getPath() + ".progress"));
+        try {
+            output.write(sha1);
+            output.writeLong(LARGE_LENGTH);
+            output.writeInt(chunkSize);
+            for (Integer chunk : chunks) {
+                output.writeInt(chunk.intValue());
+            }
+            if (cutShort) {
+                output.writeShort(0);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] sha1(final byte[] bytes) throws Exception {
+        return MessageDigest.getInstance("SHA-1").digest(bytes);
+    }
+
+    private static void write(final File file, final byte[] bytes) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] read(final File file) throws IOException {
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            final byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return bytes;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * A domain controller serving the manifest and the chunks of one deployment, which records the chunks requested and
+     * can corrupt chunks on their way to the server manager.
+     */
+    private static final class StubDomainController implements ManagementOperationHandler {
+        private final Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private final Set<Integer> corruptOnce = Collections.synchronizedSet(new HashSet<Integer>());
+        private final Set<Integer> corruptAlways = Collections.synchronizedSet(new HashSet<Integer>());
+        private final AtomicInteger manifestRequests = new AtomicInteger();
+        private final CountDownLatch manifestRequested = new CountDownLatch(1);
+        private volatile CountDownLatch manifestGate;
+
+        public byte getIdentifier() {
+            return ManagementProtocol.DOMAIN_CONTROLLER_REQUEST;
+        }
+
+        public void handleRequest(final int protocolVersion, final ByteDataInput input, final ByteDataOutput output) throws ManagementException {
+            final byte commandCode;
+            try {
+                expectHeader(input, ManagementProtocol.REQUEST_OPERATION);
+                commandCode = input.readByte();
+            } catch (IOException e) {
+                throw new ManagementException("Failed to read command code", e);
+            }
+            switch (commandCode) {
+                case ManagementProtocol.DEPLOYMENT_MANIFEST_REQUEST:
+                    new ManifestOperation().handle(input, output);
+                    break;
+                case ManagementProtocol.FILE_CHUNK_REQUEST:
+                    new ChunkOperation().handle(input, output);
+                    break;
+                default:
+                    throw new ManagementException("Unexpected command code " + commandCode);
+            }
+        }
+
+        /** Get the chunks of a file requested so far, in order of their index */
+        private List<Integer> requested(final String path) {
+            final List<Integer> chunks = new ArrayList<Integer>();
+            synchronized (requests) {
+                for (String request : requests) {
+                    if (request.startsWith(path + "@")) {
+                        chunks.add(Integer.valueOf(request.substring(path.length() + 1)));
+                    }
+                }
+            }
+            Collections.sort(chunks);
+            return chunks;
+        }
+
+        private void reset() {
+            requests.clear();
+            manifestRequests.set(0);
+        }
+
+        private abstract class StubOperation extends ManagementResponse {
+            protected void readRequest(final ByteDataInput input) throws ManagementException {
+                try {
+                    expectHeader(input, ManagementProtocol.PARAM_SERVER_MANAGER_ID);
+                    input.readUTF();
+                    expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                    assertEquals(DEPLOYMENT, input.readUTF());
+                    readParameters(input);
+                } catch (IOException e) {
+                    throw new ManagementException("Failed to read request", e);
+                }
+            }
+
+            protected void readParameters(final ByteDataInput input) throws IOException, ManagementException {
+            }
+        }
+
+        private final class ManifestOperation extends StubOperation {
+            public byte getRequestCode() {
+                return ManagementProtocol.DEPLOYMENT_MANIFEST_REQUEST;
+            }
+
+            protected byte getResponseCode() {
+                return ManagementProtocol.DEPLOYMENT_MANIFEST_RESPONSE;
+            }
+
+            protected void sendResponse(final ByteDataOutput output) throws ManagementException {
+                manifestRequests.incrementAndGet();
+                manifestRequested.countDown();
+                try {
+                    final CountDownLatch gate = manifestGate;
+                    if (gate != null && !gate.await(10L, TimeUnit.SECONDS)) {
+                        throw new ManagementException("The manifest was never released");
+                    }
+                    output.writeByte(ManagementProtocol.PARAM_NUM_FILES);
+                    output.writeInt(files.size());
+                    for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+                        output.writeByte(ManagementProtocol.PARAM_FILE_HASH);
+                        output.writeUTF(entry.getKey());
+                        output.writeLong(entry.getValue().length);
+                        output.write(sha1(entry.getValue()));
+                        output.writeBoolean(false);
+                    }
+                    output.writeByte(ManagementProtocol.PARAM_PEER_DISTRIBUTION);
+                    output.writeBoolean(false);
+                } catch (ManagementException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ManagementException("Failed to write manifest", e);
+                }
+            }
+        }
+
+        private final class ChunkOperation extends StubOperation {
+            private String path;
+            private long offset;
+            private int length;
+
+            public byte getRequestCode() {
+                return ManagementProtocol.FILE_CHUNK_REQUEST;
+            }
+
+            protected byte getResponseCode() {
+                return ManagementProtocol.FILE_CHUNK_RESPONSE;
+            }
+
+            protected void readParameters(final ByteDataInput input) throws IOException, ManagementException {
+                expectHeader(input, ManagementProtocol.PARAM_FILE_PATH);
+                path = input.readUTF();
+                expectHeader(input, ManagementProtocol.PARAM_CHUNK_OFFSET);
+                offset = input.readLong();
+                expectHeader(input, ManagementProtocol.PARAM_CHUNK_LENGTH);
+                length = input.readInt();
+            }
+
+            protected void sendResponse(final ByteDataOutput output) throws ManagementException {
+                final Integer chunk = Integer.valueOf((int) (offset / CHUNK_SIZE));
+                requests.add(path + "@" + chunk);
+                final byte[] data = Arrays.copyOfRange(files.get(path), (int) offset, (int) offset + length);
+                final CRC32 crc = new CRC32();
+                crc.update(data);
+                if (LARGE.equals(path) && (corruptOnce.remove(chunk) || corruptAlways.contains(chunk))) {
+                    // damaged on the way, the checksum no longer matches
+                    data[length / 2] ^= 1;
+                }
+                try {
+                    output.writeByte(ManagementProtocol.PARAM_FILE_SIZE);
+                    output.writeInt(length);
+                    output.write(data);
+                    output.writeByte(ManagementProtocol.PARAM_CHUNK_CHECKSUM);
+                    output.writeLong(crc.getValue());
+                } catch (IOException e) {
+                    throw new ManagementException("Failed to write chunk", e);
+                }
+            }
+        }
+    }
+}
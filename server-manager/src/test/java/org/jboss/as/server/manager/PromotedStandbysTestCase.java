@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link PromotedStandbys} survive a restart of the server manager.
+ *
+ * @author Kabir Khan
+ */
+public class PromotedStandbysTestCase {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = File.createTempFile("promoted-standbys", "");
+        dir.delete();
+        file = new File(new File(dir, "data"), "promoted-standbys.properties");
+    }
+
+    @After
+    public void deleteDir() {
+        file.delete();
+        file.getParentFile().delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testPromotedSurvivesRestart() {
+        final PromotedStandbys promoted = new PromotedStandbys(file);
+        promoted.promoted("Standby:main-server-group-1", "Server:server-one");
+        promoted.promoted("Standby:main-server-group-2", "Server:server-two");
+        assertEquals("Server:server-one", promoted.getServerProcessName("Standby:main-server-group-1"));
+
+        final PromotedStandbys restarted = new PromotedStandbys(file);
+        assertNull(restarted.getServerProcessName("Standby:main-server-group-1"));
+        restarted.load();
+        assertEquals("Server:server-one", restarted.getServerProcessName("Standby:main-server-group-1"));
+        assertEquals("Standby:main-server-group-2", restarted.getStandbyProcessName("Server:server-two"));
+        assertNull(restarted.getStandbyProcessName("Server:server-three"));
+        assertNull(restarted.getServerProcessName("Server:server-one"));
+    }
+
+    @Test
+    public void testRemovedIsForgotten() {
+        final PromotedStandbys promoted = new PromotedStandbys(file);
+        promoted.promoted("Standby:main-server-group-1", "Server:server-one");
+        promoted.removed("Standby:main-server-group-1");
+        promoted.removed("Standby:unknown");
+        assertNull(promoted.getStandbyProcessName("Server:server-one"));
+
+        final PromotedStandbys restarted = new PromotedStandbys(file);
+        restarted.load();
+        assertNull(restarted.getStandbyProcessName("Server:server-one"));
+    }
+
+    @Test
+    public void testClearDeletesFile() {
+        final PromotedStandbys promoted = new PromotedStandbys(file);
+        promoted.promoted("Standby:main-server-group-1", "Server:server-one");
+        assertTrue(file.exists());
+        promoted.clear();
+        assertFalse(file.exists());
+        assertNull(promoted.getServerProcessName("Standby:main-server-group-1"));
+    }
+
+    @Test
+    public void testLoadWithoutFile() {
+        final PromotedStandbys promoted = new PromotedStandbys(file);
+        promoted.load();
+        assertNull(promoted.getStandbyProcessName("Server:server-one"));
+        promoted.clear();
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the bounded parallel launch of servers by the {@link ServerLauncher}.
+ *
+ * @author Kabir Khan
+ */
+public class ServerLauncherTestCase {
+
+    private static final long LONG_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private final BlockingQueue<String> launched = new LinkedBlockingQueue<String>();
+    private final AtomicInteger booting = new AtomicInteger();
+    private final AtomicInteger maxBooting = new AtomicInteger();
+    private ServerLauncher launcher;
+
+    @After
+    public void shutdown() {
+        if (launcher != null) {
+            launcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrencyBounded() throws Exception {
+        launcher = new ServerLauncher(2, 0L, LONG_TIMEOUT);
+        for (int i = 0; i < 6; i++) {
+            launcher.launch("Server:server-" + i, new RecordingLaunch("Server:server-" + i));
+        }
+        launcher.allQueued();
+
+        final Set<String> seen = new HashSet<String>();
+        for (int i = 0; i < 6; i++) {
+            final String name = next();
+            assertTrue(seen.add(name));
+            // give a third launch the chance to start if the bound did not hold
+            Thread.sleep(20L);
+            booting.decrementAndGet();
+            launcher.finished(name, ServerState.STARTED);
+        }
+        assertEquals(2, maxBooting.get());
+        assertNull(launched.poll(50L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFailedLaunchReleasesSlot() throws Exception {
+        launcher = new ServerLauncher(1, 0L, LONG_TIMEOUT);
+        launcher.launch("Server:broken", new ServerLauncher.Launch() {
+            public void launch() throws Exception {
+                launched.add("Server:broken");
+                throw new IllegalStateException("Expected failure");
+            }
+        });
+        launcher.launch("Server:working", new RecordingLaunch("Server:working"));
+        launcher.allQueued();
+
+        assertEquals("Server:broken", next());
+        assertEquals("Server:working", next());
+    }
+
+    @Test
+    public void testTimeoutReleasesSlot() throws Exception {
+        launcher = new ServerLauncher(1, 0L, 300L);
+        launcher.launch("Server:hung", new RecordingLaunch("Server:hung"));
+        launcher.launch("Server:second", new RecordingLaunch("Server:second"));
+        launcher.launch("Server:third", new RecordingLaunch("Server:third"));
+        launcher.allQueued();
+
+        final long start = System.nanoTime();
+        assertEquals("Server:hung", next());
+        // the hung server never reports back, the timeout hands its slot to the next server
+        assertEquals("Server:second", next());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250L));
+
+        // the late report of the hung server must not release a second slot
+        launcher.finished("Server:hung", ServerState.STARTED);
+        assertNull(launched.poll(100L, TimeUnit.MILLISECONDS));
+
+        launcher.finished("Server:second", ServerState.STARTED);
+        assertEquals("Server:third", next());
+        launcher.finished("Server:third", ServerState.FAILED);
+    }
+
+    @Test
+    public void testFinishedBeforeTimeoutCancelsIt() throws Exception {
+        launcher = new ServerLauncher(1, 0L, 200L);
+        launcher.launch("Server:first", new RecordingLaunch("Server:first"));
+        launcher.launch("Server:second", new RecordingLaunch("Server:second"));
+        launcher.launch("Server:third", new RecordingLaunch("Server:third"));
+        launcher.allQueued();
+
+        launcher.finished(next(), ServerState.STARTED);
+        assertEquals("Server:second", next());
+        // the timeout of the first server has been cancelled, so it can not free a slot for the third
+        Thread.sleep(100L);
+        launcher.finished("Server:first", ServerState.STARTED);
+        assertNull(launched.poll(50L, TimeUnit.MILLISECONDS));
+        launcher.finished("Server:second", ServerState.STARTED);
+        assertEquals("Server:third", next());
+    }
+
+    @Test
+    public void testRepeatedAndUnknownReportsIgnored() throws Exception {
+        launcher = new ServerLauncher(1, 0L, LONG_TIMEOUT);
+        launcher.launch("Server:first", new RecordingLaunch("Server:first"));
+        launcher.launch("Server:second", new RecordingLaunch("Server:second"));
+        launcher.launch("Server:third", new RecordingLaunch("Server:third"));
+        launcher.allQueued();
+
+        assertEquals("Server:first", next());
+        launcher.available("Server:first");
+        launcher.finished("Server:unknown", ServerState.STARTED);
+        assertNull(launched.poll(50L, TimeUnit.MILLISECONDS));
+
+        launcher.finished("Server:first", ServerState.STARTED);
+        assertEquals("Server:second", next());
+        launcher.finished("Server:first", ServerState.FAILED);
+        assertNull(launched.poll(50L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testStagger() throws Exception {
+        launcher = new ServerLauncher(3, 100L, LONG_TIMEOUT);
+        for (int i = 0; i < 3; i++) {
+            launcher.launch("Server:server-" + i, new RecordingLaunch("Server:server-" + i));
+        }
+        launcher.allQueued();
+
+        final long start = System.nanoTime();
+        next();
+        next();
+        next();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(180L));
+    }
+
+    @Test
+    public void testShutdownAbandonsQueuedServers() throws Exception {
+        launcher = new ServerLauncher(1, 0L, LONG_TIMEOUT);
+        launcher.launch("Server:first", new RecordingLaunch("Server:first"));
+        launcher.launch("Server:second", new RecordingLaunch("Server:second"));
+        launcher.allQueued();
+
+        assertEquals("Server:first", next());
+        launcher.shutdown();
+        launcher.finished("Server:first", ServerState.STARTED);
+        assertNull(launched.poll(100L, TimeUnit.MILLISECONDS));
+    }
+
+    private String next() throws InterruptedException {
+        final String name = launched.poll(5L, TimeUnit.SECONDS);
+        assertNotNull("No server launched", name);
+        return name;
+    }
+
+    private class RecordingLaunch implements ServerLauncher.Launch {
+        private final String processName;
+
+        RecordingLaunch(final String processName) {
+            this.processName = processName;
+        }
+
+        public void launch() {
+            final int count = booting.incrementAndGet();
+            int max;
+            while ((max = maxBooting.get()) < count && !maxBooting.compareAndSet(max, count)) {
+            }
+            launched.add(processName);
+        }
+    }
+}
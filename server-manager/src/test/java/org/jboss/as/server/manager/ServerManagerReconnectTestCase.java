@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+
+import org.jboss.as.model.DomainModel;
+import org.jboss.as.model.DomainModelParser;
+import org.jboss.as.model.Element;
+import org.jboss.as.model.HostModel;
+import org.jboss.as.model.HostModelParser;
+import org.jboss.as.model.Namespace;
+import org.jboss.as.model.ParseResult;
+import org.jboss.as.model.ServerModel;
+import org.jboss.as.process.RespawnPolicy;
+import org.jboss.staxmapper.XMLElementReader;
+import org.jboss.staxmapper.XMLMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a restarted server manager reconnects the servers which standbys replaced to those standbys.
+ *
+ * @author Kabir Khan
+ */
+public class ServerManagerReconnectTestCase {
+
+    private File dir;
+    private File file;
+    private DomainModel domain;
+    private HostModel host;
+    private final Map<String, Server> servers = new HashMap<String, Server>();
+    private final List<String> made = new ArrayList<String>();
+
+    @Before
+    public void setup() throws Exception {
+        dir = File.createTempFile("promoted-standbys", "");
+        dir.delete();
+        file = new File(new File(dir, "data"), "promoted-standbys.properties");
+        domain = parse(Element.DOMAIN, DomainModelParser.getInstance(), DOMAIN_XML);
+        host = parse(Element.HOST, HostModelParser.getInstance(), HOST_XML);
+    }
+
+    @After
+    public void deleteDir() {
+        file.delete();
+        file.getParentFile().delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testPromotedStandbyReconnected() {
+        // before the restart a standby replaced server-one
+        new PromotedStandbys(file).promoted("Standby:main-server-group-1", "Server:server-one");
+
+        final PromotedStandbys restarted = new PromotedStandbys(file);
+        ServerManager.reconnectServers(restarted, domain, host, servers, new RecordingFactory());
+
+        final Server one = servers.get("Server:server-one");
+        assertNotNull(one);
+        assertEquals("Standby:main-server-group-1", one.getServerProcessName());
+        assertEquals("Server:server-two", servers.get("Server:server-two").getServerProcessName());
+        assertFalse(servers.containsKey("Server:server-three"));
+        assertEquals(2, servers.size());
+        // no new process is added for the server the standby runs
+        assertEquals(1, made.size());
+        assertEquals("server-two", made.get(0));
+        // the standby is still found by its own process name
+        assertEquals("Server:server-one", restarted.getServerProcessName("Standby:main-server-group-1"));
+    }
+
+    @Test
+    public void testNothingPromoted() {
+        ServerManager.reconnectServers(new PromotedStandbys(file), domain, host, servers, new RecordingFactory());
+
+        assertEquals("Server:server-one", servers.get("Server:server-one").getServerProcessName());
+        assertEquals("Server:server-two", servers.get("Server:server-two").getServerProcessName());
+        assertEquals(2, made.size());
+    }
+
+    @Test
+    public void testFailedServerSkipped() {
+        ServerManager.reconnectServers(new PromotedStandbys(file), domain, host, servers, new ServerManager.ServerFactory() {
+            public Server makeServer(final ServerModel serverConf) throws IOException {
+                if (serverConf.getServerName().equals("server-one")) {
+                    throw new IOException("Expected failure");
+                }
+                return new Server(serverConf, RespawnPolicy.DefaultRespawnPolicy.INSTANCE);
+            }
+        });
+
+        assertFalse(servers.containsKey("Server:server-one"));
+        assertNotNull(servers.get("Server:server-two"));
+    }
+
+    private static <T> T parse(final Element root, final XMLElementReader<ParseResult<T>> parser, final String xml) throws Exception {
+        final XMLMapper mapper = XMLMapper.Factory.create();
+        mapper.registerRootElement(new QName(Namespace.CURRENT.getUriString(), root.getLocalName()), parser);
+        final ParseResult<T> result = new ParseResult<T>();
+        mapper.parseDocument(result, XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)));
+        return result.getResult();
+    }
+
+    private static final String DOMAIN_XML = "<domain xmlns=\"" + Namespace.CURRENT.getUriString() + "\">"
+            + "<profiles><profile name=\"default\"/></profiles>"
+            + "<interfaces><interface name=\"public\"><any-address/></interface></interfaces>"
+            + "<socket-binding-groups><socket-binding-group name=\"standard-sockets\" default-interface=\"public\">"
+            + "<socket-binding name=\"http\" port=\"8080\"/>"
+            + "</socket-binding-group></socket-binding-groups>"
+            + "<system-properties><property name=\"prop1\" value=\"value1\"/></system-properties>"
+            + "<server-groups><server-group name=\"main-server-group\" profile=\"default\">"
+            + "<socket-binding-group ref=\"standard-sockets\"/>"
+            + "</server-group></server-groups>"
+            + "</domain>";
+
+    private static final String HOST_XML = "<host xmlns=\"" + Namespace.CURRENT.getUriString() + "\">"
+            + "<domain-controller><local/></domain-controller>"
+            + "<management interface=\"public\" port=\"9999\"/>"
+            + "<interfaces><interface name=\"public\"><any-address/></interface></interfaces>"
+            + "<servers>"
+            + "<server name=\"server-one\" group=\"main-server-group\" start=\"true\"/>"
+            + "<server name=\"server-two\" group=\"main-server-group\" start=\"true\">"
+            + "<socket-binding-group ref=\"standard-sockets\" port-offset=\"100\"/></server>"
+            + "<server name=\"server-three\" group=\"main-server-group\" start=\"false\">"
+            + "<socket-binding-group ref=\"standard-sockets\" port-offset=\"200\"/></server>"
+            + "</servers></host>";
+
+    private class RecordingFactory implements ServerManager.ServerFactory {
+        public Server makeServer(final ServerModel serverConf) {
+            made.add(serverConf.getServerName());
+            return new Server(serverConf, RespawnPolicy.DefaultRespawnPolicy.INSTANCE);
+        }
+    }
+}
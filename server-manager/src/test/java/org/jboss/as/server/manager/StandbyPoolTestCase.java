@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.as.process.RespawnPolicy;
+import org.junit.Test;
+
+/**
+ * Tests the selection of standbys from a {@link StandbyPool}.
+ *
+ * @author Kabir Khan
+ */
+public class StandbyPoolTestCase {
+
+    @Test
+    public void testTakeReadyOnlyTakesAvailableStandbys() {
+        final StandbyPool pool = new StandbyPool("main-server-group", 3);
+        final Server booting = standby("Standby:booting", ServerState.BOOTING);
+        final Server failed = standby("Standby:failed", ServerState.FAILED);
+        final Server available = standby("Standby:available", ServerState.AVAILABLE);
+        pool.add(booting);
+        pool.add(failed);
+        pool.add(available);
+
+        assertSame(available, pool.takeReady());
+        assertNull(pool.takeReady());
+
+        booting.setState(ServerState.AVAILABLE);
+        assertSame(booting, pool.takeReady());
+        assertNull(pool.takeReady());
+    }
+
+    @Test
+    public void testTakeReadyInLaunchOrder() {
+        final StandbyPool pool = new StandbyPool("main-server-group", 2);
+        final Server first = standby("Standby:first", ServerState.AVAILABLE);
+        final Server second = standby("Standby:second", ServerState.AVAILABLE);
+        pool.add(first);
+        pool.add(second);
+
+        assertSame(first, pool.takeReady());
+        assertSame(second, pool.takeReady());
+    }
+
+    @Test
+    public void testTakenStandbyLeavesPool() {
+        final StandbyPool pool = new StandbyPool("main-server-group", 2);
+        final Server standby = standby("Standby:one", ServerState.AVAILABLE);
+        pool.add(standby);
+        pool.add(standby("Standby:two", ServerState.BOOTING));
+
+        assertSame(standby, pool.get("Standby:one"));
+        assertSame(standby, pool.takeReady());
+        assertNull(pool.get("Standby:one"));
+        assertEquals("Standby:two", pool.get("Standby:two").getServerProcessName());
+        assertNull(pool.get("Server:one"));
+    }
+
+    @Test
+    public void testEmptyPool() {
+        final StandbyPool pool = new StandbyPool("other-server-group", 0);
+        assertEquals("other-server-group", pool.getServerGroup());
+        assertEquals(0, pool.getSize());
+        assertNull(pool.takeReady());
+        assertNull(pool.get("Standby:one"));
+    }
+
+    @Test
+    public void testStandbyHasNoConfiguration() {
+        final Server standby = standby("Standby:one", ServerState.AVAILABLE);
+        assertTrue(standby.isStandby());
+        assertNull(standby.getServerConfig());
+    }
+
+    private static Server standby(final String processName, final ServerState state) {
+        final Server standby = new Server(processName, RespawnPolicy.DefaultRespawnPolicy.INSTANCE);
+        standby.setState(state);
+        return standby;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests how the {@link DeploymentDistribution} spreads downloads over the domain controller and the server managers
+ * holding a deployment.
+ *
+ * @author John Bailey
+ */
+public class DeploymentDistributionTestCase {
+
+    private static final String DEPLOYMENT = "app.war";
+    private static final long NO_TIMEOUT = 300000L;
+
+    @Test
+    public void testFirstDownloadFromDomainController() throws Exception {
+        final DeploymentDistribution distribution = distribution(4, NO_TIMEOUT, "sm1");
+        assertTrue(distribution.chooseSources("sm1", DEPLOYMENT).isEmpty());
+    }
+
+    @Test
+    public void testDomainControllerFanOut() throws Exception {
+        final DeploymentDistribution distribution = distribution(2, NO_TIMEOUT, "sm1", "sm2", "sm3");
+        assertTrue(distribution.chooseSources("sm1", DEPLOYMENT).isEmpty());
+        assertTrue(distribution.chooseSources("sm2", DEPLOYMENT).isEmpty());
+        // the domain controller is serving as many downloads as it may
+        assertNull(distribution.chooseSources("sm3", DEPLOYMENT));
+
+        // the first server manager to finish serves the next
+        distribution.downloadFinished("sm1", DEPLOYMENT, true);
+        assertEquals(ids("sm1"), distribution.chooseSources("sm3", DEPLOYMENT).keySet());
+    }
+
+    @Test
+    public void testPeerFanOut() throws Exception {
+        final DeploymentDistribution distribution = distribution(1, NO_TIMEOUT, "sm1", "sm2", "sm3", "sm4", "sm5");
+        distribution.chooseSources("sm1", DEPLOYMENT);
+        distribution.downloadFinished("sm1", DEPLOYMENT, true);
+        distribution.chooseSources("sm2", DEPLOYMENT);
+        distribution.downloadFinished("sm2", DEPLOYMENT, true);
+
+        final Map<String, InetSocketAddress> sources = distribution.chooseSources("sm3", DEPLOYMENT);
+        assertEquals(ids("sm1", "sm2"), sources.keySet());
+        assertEquals(address("sm1"), sources.get("sm1"));
+        // both holders are busy, and the domain controller does not serve a deployment a peer holds
+        assertNull(distribution.chooseSources("sm4", DEPLOYMENT));
+
+        // three idle holders serve two downloads from two peers and one
+        distribution.downloadFinished("sm3", DEPLOYMENT, true);
+        assertEquals(2, distribution.chooseSources("sm4", DEPLOYMENT).size());
+        assertEquals(1, distribution.chooseSources("sm5", DEPLOYMENT).size());
+    }
+
+    @Test
+    public void testLeastLoadedPeersChosen() throws Exception {
+        final DeploymentDistribution distribution = distribution(4, NO_TIMEOUT, "sm1", "sm2", "sm3", "sm4", "sm5");
+        for (String holder : new String[] {"sm1", "sm2", "sm3"}) {
+            distribution.chooseSources(holder, DEPLOYMENT);
+            distribution.downloadFinished(holder, DEPLOYMENT, true);
+        }
+        final Set<String> first = distribution.chooseSources("sm4", DEPLOYMENT).keySet();
+        assertEquals(2, first.size());
+        final Set<String> second = distribution.chooseSources("sm5", DEPLOYMENT).keySet();
+        // the holder left idle by the first download is one of the sources of the second
+        final Set<String> idle = ids("sm1", "sm2", "sm3");
+        idle.removeAll(first);
+        assertTrue(second.containsAll(idle));
+    }
+
+    @Test
+    public void testAskingAgainReleasesEarlierSources() throws Exception {
+        final DeploymentDistribution distribution = distribution(1, NO_TIMEOUT, "sm1", "sm2");
+        assertTrue(distribution.chooseSources("sm1", DEPLOYMENT).isEmpty());
+        // a server manager asking again does not wait for its own earlier download
+        assertTrue(distribution.chooseSources("sm1", DEPLOYMENT).isEmpty());
+        assertNull(distribution.chooseSources("sm2", DEPLOYMENT));
+    }
+
+    @Test
+    public void testUnfinishedDownloadExpires() throws Exception {
+        final DeploymentDistribution distribution = distribution(1, 100L, "sm1", "sm2");
+        assertTrue(distribution.chooseSources("sm1", DEPLOYMENT).isEmpty());
+        assertNull(distribution.chooseSources("sm2", DEPLOYMENT));
+        // the first server manager never reports back
+        Thread.sleep(200L);
+        assertTrue(distribution.chooseSources("sm2", DEPLOYMENT).isEmpty());
+    }
+
+    @Test
+    public void testFailedDownloadNotServed() throws Exception {
+        final DeploymentDistribution distribution = distribution(4, NO_TIMEOUT, "sm1", "sm2");
+        distribution.chooseSources("sm1", DEPLOYMENT);
+        distribution.downloadFinished("sm1", DEPLOYMENT, false);
+        assertTrue(distribution.chooseSources("sm2", DEPLOYMENT).isEmpty());
+    }
+
+    @Test
+    public void testFallbackToDomainControllerWhenHoldersLeave() throws Exception {
+        final DeploymentDistribution distribution = distribution(1, NO_TIMEOUT, "sm1", "sm2", "sm3");
+        distribution.chooseSources("sm1", DEPLOYMENT);
+        distribution.downloadFinished("sm1", DEPLOYMENT, true);
+        assertEquals(ids("sm1"), distribution.chooseSources("sm2", DEPLOYMENT).keySet());
+
+        // the only holder unregisters in the middle of the download, so it is fetched from the domain controller again
+        distribution.removeServerManager("sm1");
+        assertTrue(distribution.chooseSources("sm2", DEPLOYMENT).isEmpty());
+        // a holder does not download from itself
+        distribution.downloadFinished("sm2", DEPLOYMENT, true);
+        assertTrue(distribution.chooseSources("sm2", DEPLOYMENT).isEmpty());
+    }
+
+    private static DeploymentDistribution distribution(final int fanOut, final long assignmentTimeout, final String... serverManagerIds) throws Exception {
+        final DeploymentDistribution distribution = new DeploymentDistribution(true, fanOut, assignmentTimeout);
+        for (String id : serverManagerIds) {
+            final InetSocketAddress address = address(id);
+            distribution.addServerManager(id, address.getAddress(), address.getPort());
+        }
+        return distribution;
+    }
+
+    private static InetSocketAddress address(final String serverManagerId) throws Exception {
+        return new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 9999 + serverManagerId.hashCode() % 100);
+    }
+
+    private static Set<String> ids(final String... ids) {
+        final Set<String> set = new HashSet<String>();
+        for (String id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+}
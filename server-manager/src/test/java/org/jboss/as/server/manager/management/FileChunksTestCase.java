@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.jboss.as.server.manager.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link FileChunks} only serves files which lie within a deployment of the deployment repository.
+ *
+ * @author John Bailey
+ */
+public class FileChunksTestCase {
+
+    private File dir;
+    private File root;
+    private FileRepository repository;
+
+    @Before
+    public void setup() throws IOException {
+        dir = File.createTempFile("file-chunks", "");
+        dir.delete();
+        root = new File(dir, "deployments");
+        write(new File(root, "app.war/index.html"));
+        write(new File(root, "app.war/WEB-INF/web.xml"));
+        write(new File(root, "app.war-other/secret.txt"));
+        write(new File(root, "single.jar"));
+        write(new File(dir, "deployments-other/secret.txt"));
+        write(new File(dir, "secret.txt"));
+        repository = new FileRepository() {
+            public File getFile(final String relativePath) {
+                return new File(dir, relativePath);
+            }
+
+            public File getConfigurationFile(final String relativePath) {
+                return new File(dir, relativePath);
+            }
+
+            public File getDeploymentFile(final String relativePath) {
+                return new File(root, relativePath);
+            }
+        };
+    }
+
+    @After
+    public void cleanup() {
+        delete(dir);
+    }
+
+    @Test
+    public void testFilesOfDeployment() throws Exception {
+        assertEquals(new File(root, "app.war/WEB-INF/web.xml").getCanonicalFile(), FileChunks.resolve(repository, "app.war", "/WEB-INF/web.xml", 0L, 4));
+        assertEquals(new File(root, "app.war/index.html").getCanonicalFile(), FileChunks.resolve(repository, "app.war", "/WEB-INF/../index.html", 0L, 4));
+        // a deployment of a single file is sent with an empty path
+        assertEquals(new File(root, "single.jar").getCanonicalFile(), FileChunks.resolve(repository, "single.jar", "", 0L, 4));
+    }
+
+    @Test
+    public void testDeploymentOutsideRoot() throws Exception {
+        assertRejected("..", "/secret.txt");
+        assertRejected("../deployments-other", "/secret.txt");
+        assertRejected("app.war/../..", "/secret.txt");
+        assertRejected("", "/app.war/index.html");
+        assertRejected(".", "/single.jar");
+    }
+
+    @Test
+    public void testFileOutsideDeployment() throws Exception {
+        assertRejected("app.war", "/../single.jar");
+        assertRejected("app.war", "/../app.war-other/secret.txt");
+        assertRejected("app.war", "/../../secret.txt");
+    }
+
+    @Test
+    public void testInvalidChunk() throws Exception {
+        assertRejected("app.war", "/WEB-INF");
+        assertRejected("app.war", "/missing.html");
+        try {
+            FileChunks.resolve(repository, "app.war", "/index.html", 2L, 4);
+            fail("A chunk beyond the end of the file should be rejected");
+        } catch (ManagementException expected) {
+        }
+    }
+
+    @Test
+    public void testChunkLongerThanMaximum() throws Exception {
+        assertEquals(new File(root, "single.jar").getCanonicalFile(), FileChunks.resolve(repository, "single.jar", "", 0L, 4, 4));
+        try {
+            FileChunks.resolve(repository, "single.jar", "", 0L, 4, 3);
+            fail("A chunk longer than the maximum should be rejected");
+        } catch (ManagementException expected) {
+        }
+        try {
+            FileChunks.resolve(repository, "single.jar", "", 0L, Integer.MAX_VALUE);
+            fail("A chunk longer than the download chunk size should be rejected");
+        } catch (ManagementException expected) {
+        }
+    }
+
+    private void assertRejected(final String deploymentPath, final String path) {
+        try {
+            FileChunks.resolve(repository, deploymentPath, path, 0L, 1);
+            fail("File [" + path + "] of deployment [" + deploymentPath + "] should be rejected");
+        } catch (ManagementException expected) {
+        }
+    }
+
+    private static void write(final File file) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write("test".getBytes("US-ASCII"));
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a file sent as a delta against the {@link FileDelta.Signature} of an older copy is rebuilt exactly.
+ *
+ * @author John Bailey
+ */
+public class FileDeltaTestCase {
+
+    /** The length of the held copy, giving blocks of the minimum size */
+    private static final int LENGTH = 1024 * 1024;
+    private static final int BLOCK_SIZE = FileDelta.Signature.blockSize(LENGTH);
+
+    private File dir;
+    private File held;
+    private File source;
+    private byte[] basis;
+
+    @Before
+    public void setup() throws IOException {
+        dir = File.createTempFile("file-delta", "");
+        dir.delete();
+        dir.mkdirs();
+        held = new File(dir, "held.jar");
+        source = new File(dir, "source.jar");
+        basis = new byte[LENGTH];
+        new Random(42L).nextBytes(basis);
+    }
+
+    @After
+    public void cleanup() {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testUnchanged() throws Exception {
+        assertEquals(0L, roundTrip(basis));
+    }
+
+    @Test
+    public void testInsertAtBlockBoundary() throws Exception {
+        final byte[] inserted = bytes(100, 1L);
+        assertEquals(inserted.length, roundTrip(concat(range(0, 10 * BLOCK_SIZE), inserted, range(10 * BLOCK_SIZE, LENGTH))));
+    }
+
+    @Test
+    public void testInsertWithinBlock() throws Exception {
+        final int at = 10 * BLOCK_SIZE + BLOCK_SIZE / 2;
+        final byte[] inserted = bytes(100, 2L);
+        final long literalBytes = roundTrip(concat(range(0, at), inserted, range(at, LENGTH)));
+        // only the block the bytes were inserted into is sent
+        assertTrue(literalBytes <= inserted.length + BLOCK_SIZE);
+    }
+
+    @Test
+    public void testDeleteBlock() throws Exception {
+        assertEquals(0L, roundTrip(concat(range(0, 10 * BLOCK_SIZE), range(11 * BLOCK_SIZE, LENGTH))));
+    }
+
+    @Test
+    public void testDeleteWithinBlock() throws Exception {
+        final int at = 10 * BLOCK_SIZE + 10;
+        final long literalBytes = roundTrip(concat(range(0, at), range(at + 100, LENGTH)));
+        assertTrue(literalBytes < BLOCK_SIZE);
+    }
+
+    @Test
+    public void testShiftByOneByte() throws Exception {
+        // every block moves off its boundary, the rolling checksum must still find all but the first
+        final long literalBytes = roundTrip(range(1, LENGTH));
+        assertTrue(literalBytes < BLOCK_SIZE);
+        final long insertedBytes = roundTrip(concat(new byte[] {7}, range(0, LENGTH)));
+        assertTrue(insertedBytes < BLOCK_SIZE);
+    }
+
+    @Test
+    public void testAppendAndTruncate() throws Exception {
+        final byte[] appended = bytes(BLOCK_SIZE + 17, 3L);
+        assertEquals(appended.length, roundTrip(concat(basis, appended)));
+        final long literalBytes = roundTrip(range(0, LENGTH - BLOCK_SIZE - 17));
+        assertTrue(literalBytes < BLOCK_SIZE);
+    }
+
+    @Test
+    public void testReordered() throws Exception {
+        assertEquals(0L, roundTrip(concat(range(20 * BLOCK_SIZE, LENGTH), range(0, 20 * BLOCK_SIZE))));
+    }
+
+    @Test
+    public void testHashMismatchKeepsCopy() throws Exception {
+        write(held, basis);
+        final byte[] target = concat(range(0, 10 * BLOCK_SIZE), bytes(100, 4L), range(10 * BLOCK_SIZE, LENGTH));
+        write(source, target);
+        final byte[] delta = delta(FileDelta.Signature.create(held));
+        try {
+            FileDelta.applyDelta(held, BLOCK_SIZE, new byte[20], new DataInputStream(new ByteArrayInputStream(delta)));
+            fail("Rebuilt file should not match the hash");
+        } catch (ManagementException expected) {
+        }
+        assertArrayEquals(basis, read(held));
+        assertEquals(2, dir.listFiles().length);
+    }
+
+    @Test
+    public void testSignatureCached() throws Exception {
+        write(held, basis);
+        final FileDelta.Signature signature = FileDelta.signature(held);
+        assertSame(signature, FileDelta.signature(held));
+
+        final byte[] changed = basis.clone();
+        changed[0]++;
+        write(held, changed);
+        held.setLastModified(held.lastModified() + 2000L);
+        final FileDelta.Signature rebuiltSignature = FileDelta.signature(held);
+        assertNotSame(signature, rebuiltSignature);
+        assertArrayEquals(sha1(changed), FileDelta.sha1(held));
+    }
+
+    @Test
+    public void testRebuiltFileHashCached() throws Exception {
+        final byte[] target = concat(range(0, 10 * BLOCK_SIZE), bytes(100, 5L), range(10 * BLOCK_SIZE, LENGTH));
+        roundTrip(target);
+        assertArrayEquals(sha1(target), FileDelta.sha1(held));
+        final File[] files = dir.listFiles();
+        assertEquals(2, files.length);
+    }
+
+    /**
+     * Send the target over the basis as a delta, and check the held copy is rebuilt as the target.
+     *
+     * @return the number of literal bytes sent
+     */
+    private long roundTrip(final byte[] target) throws Exception {
+        write(held, basis);
+        write(source, target);
+
+        // the signature goes over the wire too
+        final ByteArrayOutputStream signatureBytes = new ByteArrayOutputStream();
+        FileDelta.Signature.create(held).writeTo(new DataOutputStream(signatureBytes));
+        final FileDelta.Signature signature = FileDelta.Signature.readFrom(new DataInputStream(new ByteArrayInputStream(signatureBytes.toByteArray())));
+        assertEquals(BLOCK_SIZE, signature.getBlockSize());
+        assertEquals(LENGTH / BLOCK_SIZE, signature.getBlockCount());
+
+        final ByteArrayOutputStream deltaBytes = new ByteArrayOutputStream();
+        final long written = FileDelta.writeDelta(source, signature, new DataOutputStream(deltaBytes));
+        final long read = FileDelta.applyDelta(held, signature.getBlockSize(), sha1(target), new DataInputStream(new ByteArrayInputStream(deltaBytes.toByteArray())));
+        assertEquals(written, read);
+        assertArrayEquals(target, read(held));
+        return read;
+    }
+
+    private byte[] delta(final FileDelta.Signature signature) throws IOException {
+        final ByteArrayOutputStream deltaBytes = new ByteArrayOutputStream();
+        FileDelta.writeDelta(source, signature, new DataOutputStream(deltaBytes));
+        return deltaBytes.toByteArray();
+    }
+
+    private byte[] range(final int from, final int to) {
+        final byte[] range = new byte[to - from];
+        System.arraycopy(basis, from, range, 0, range.length);
+        return range;
+    }
+
+    private static byte[] bytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sha1(final byte[] bytes) throws Exception {
+        return MessageDigest.getInstance("SHA-1").digest(bytes);
+    }
+
+    private static void write(final File file, final byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] read(final File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
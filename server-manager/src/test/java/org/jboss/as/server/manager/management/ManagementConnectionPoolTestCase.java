@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link ManagementConnectionPool} shares a connection to an endpoint and only keeps the lock used to
+ * connect to it while requests are connecting.
+ *
+ * @author John Bailey
+ */
+public class ManagementConnectionPoolTestCase {
+
+    private static final int TIMEOUT = 5000;
+    private static final byte HANDLER_ID = 0x11;
+
+    private final AtomicInteger accepted = new AtomicInteger();
+    private ScheduledExecutorService executorService;
+    private ServerSocket serverSocket;
+
+    @Before
+    public void startServer() throws IOException {
+        executorService = Executors.newScheduledThreadPool(2);
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (;;) {
+                        accept(serverSocket.accept());
+                    }
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        serverSocket.close();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareConnection() throws Exception {
+        final ManagementConnectionPool pool = new ManagementConnectionPool(60000L);
+        final ExecutorService requests = Executors.newFixedThreadPool(10);
+        try {
+            final List<Future<ManagementConnection.Channel>> channels = new ArrayList<Future<ManagementConnection.Channel>>();
+            for (int i = 0; i < 10; i++) {
+                channels.add(requests.submit(new Callable<ManagementConnection.Channel>() {
+                    public ManagementConnection.Channel call() throws Exception {
+                        return pool.openChannel(serverSocket.getInetAddress(), serverSocket.getLocalPort(), 0, HANDLER_ID, TIMEOUT, executorService);
+                    }
+                }));
+            }
+            for (Future<ManagementConnection.Channel> channel : channels) {
+                assertNotNull(channel.get());
+                channel.get().close();
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+        assertEquals(1, accepted.get());
+        assertEquals(0, pool.getPendingConnects());
+    }
+
+    @Test
+    public void testConnectionIndexes() throws Exception {
+        final ManagementConnectionPool pool = new ManagementConnectionPool(60000L);
+        for (int i = 0; i < 3; i++) {
+            pool.openChannel(serverSocket.getInetAddress(), serverSocket.getLocalPort(), i, HANDLER_ID, TIMEOUT, executorService).close();
+            pool.openChannel(serverSocket.getInetAddress(), serverSocket.getLocalPort(), i, HANDLER_ID, TIMEOUT, executorService).close();
+        }
+        assertEquals(3, accepted.get());
+        assertEquals(0, pool.getPendingConnects());
+    }
+
+    @Test
+    public void testFailedConnectReleasesLock() throws Exception {
+        final ManagementConnectionPool pool = new ManagementConnectionPool(60000L);
+        final InetAddress address = serverSocket.getInetAddress();
+        final int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        for (int i = 0; i < 5; i++) {
+            try {
+                pool.openChannel(address, port, i, HANDLER_ID, TIMEOUT, executorService);
+                fail("Connected to a closed endpoint");
+            } catch (IOException expected) {
+            }
+        }
+        assertEquals(0, pool.getPendingConnects());
+    }
+
+    /** Open a multiplexed connection on an accepted socket, closing every request without a response */
+    private void accept(final Socket socket) throws IOException {
+        accepted.incrementAndGet();
+        final InputStream input = new BufferedInputStream(socket.getInputStream());
+        final OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+        try {
+            final ManagementRequestHeader requestHeader = new ManagementRequestHeader(new DataInputStream(input));
+            final DataOutputStream headerOutput = new DataOutputStream(output);
+            new ManagementResponseHeader(ManagementProtocol.VERSION, requestHeader.getRequestId()).write(headerOutput);
+            headerOutput.flush();
+        } catch (ManagementException e) {
+            throw new IOException(e.getMessage());
+        }
+        final ManagementConnection connection = new ManagementConnection("test server", socket, input, output, ManagementProtocol.VERSION,
+                new ManagementConnection.ChannelHandler() {
+                    public void handleChannel(final ManagementConnection connection, final ManagementConnection.Channel channel, final byte handlerId) {
+                        channel.close();
+                    }
+                });
+        final Thread reader = new Thread(connection);
+        reader.setDaemon(true);
+        reader.start();
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the channels of a {@link ManagementConnection}: the open, data and end frames, interleaved requests, and the
+ * window which bounds the data buffered for a request which is not read.
+ *
+ * @author John Bailey
+ */
+public class ManagementConnectionTestCase {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    private static final byte HANDLER_ID = 0x11;
+
+    private final BlockingQueue<Byte> handlerIds = new LinkedBlockingQueue<Byte>();
+    private volatile Handler handler;
+    private ServerSocket serverSocket;
+    private Socket serverSide;
+    private Socket clientSide;
+    private ManagementConnection client;
+
+    @Before
+    public void connect() throws IOException {
+        serverSocket = new ServerSocket(0, 5, InetAddress.getByName("127.0.0.1"));
+        clientSide = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        serverSide = serverSocket.accept();
+        serverSocket.close();
+    }
+
+    @After
+    public void disconnect() throws IOException {
+        clientSide.close();
+        serverSide.close();
+    }
+
+    @Test
+    public void testOpenDataEnd() throws Exception {
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                final byte[] bytes = readAll(request);
+                for (int i = bytes.length - 1; i >= 0; i--) {
+                    response.write(bytes[i]);
+                }
+            }
+        };
+        startConnections();
+
+        final ManagementConnection.Channel channel = client.openChannel(HANDLER_ID, TIMEOUT);
+        final byte[] request = bytes(ManagementConnection.CHUNK_SIZE * 2 + 17, 3);
+        channel.getOutputStream().write(request);
+        // closing the output sends the end of the request
+        channel.getOutputStream().close();
+        final byte[] response = readAll(channel.getInputStream());
+        channel.close();
+
+        assertEquals(Byte.valueOf(HANDLER_ID), handlerIds.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(request.length, response.length);
+        for (int i = 0; i < request.length; i++) {
+            assertEquals(request[i], response[request.length - 1 - i]);
+        }
+    }
+
+    @Test
+    public void testEmptyRequestAndResponse() throws Exception {
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                assertEquals(0, readAll(request).length);
+            }
+        };
+        startConnections();
+
+        final ManagementConnection.Channel channel = client.openChannel(HANDLER_ID, TIMEOUT);
+        channel.getOutputStream().close();
+        assertEquals(-1, channel.getInputStream().read());
+        channel.close();
+    }
+
+    @Test
+    public void testInterleavedChannels() throws Exception {
+        // every request is echoed while it is sent, and is larger than the window in both directions
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                final byte[] buffer = new byte[5000];
+                int read;
+                while ((read = request.read(buffer)) != -1) {
+                    response.write(buffer, 0, read);
+                    response.flush();
+                }
+            }
+        };
+        startConnections();
+
+        final int channels = 8;
+        final int size = ManagementConnection.WINDOW * 3 + 123;
+        final List<Thread> threads = new ArrayList<Thread>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicInteger echoed = new AtomicInteger();
+        for (int c = 0; c < channels; c++) {
+            final byte[] request = bytes(size, c);
+            final ManagementConnection.Channel channel = client.openChannel(HANDLER_ID, TIMEOUT);
+            threads.add(start(new Runnable() {
+                public void run() {
+                    try {
+                        final OutputStream output = channel.getOutputStream();
+                        for (int offset = 0; offset < size; offset += 1000) {
+                            output.write(request, offset, Math.min(1000, size - offset));
+                        }
+                        output.close();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+            threads.add(start(new Runnable() {
+                public void run() {
+                    try {
+                        assertArrayEquals(request, readAll(channel.getInputStream()));
+                        channel.close();
+                        echoed.incrementAndGet();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT * 2);
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(channels, echoed.get());
+    }
+
+    @Test
+    public void testStalledChannelDoesNotBlockOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                final int id = request.read();
+                if (id == 1) {
+                    release.await();
+                }
+                response.write(id);
+            }
+        };
+        startConnections();
+
+        final ManagementConnection.Channel stalled = client.openChannel(HANDLER_ID, TIMEOUT);
+        stalled.getOutputStream().write(1);
+        stalled.getOutputStream().close();
+        final ManagementConnection.Channel other = client.openChannel(HANDLER_ID, TIMEOUT);
+        other.getOutputStream().write(2);
+        other.getOutputStream().close();
+
+        // the response to the later request arrives first
+        assertEquals(2, other.getInputStream().read());
+        assertEquals(-1, other.getInputStream().read());
+        other.close();
+        release.countDown();
+        assertEquals(1, stalled.getInputStream().read());
+        stalled.close();
+    }
+
+    @Test
+    public void testSenderWaitsForUnreadRequest() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger buffered = new AtomicInteger();
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                release.await();
+                buffered.set(request.available());
+                new DataOutputStream(response).writeInt(readAll(request).length);
+            }
+        };
+        startConnections();
+
+        final ManagementConnection.Channel channel = client.openChannel(HANDLER_ID, TIMEOUT);
+        final int size = ManagementConnection.WINDOW * 10;
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread writer = start(new Runnable() {
+            public void run() {
+                try {
+                    final OutputStream output = channel.getOutputStream();
+                    final byte[] chunk = new byte[1024];
+                    while (written.get() < size) {
+                        output.write(chunk);
+                        written.addAndGet(chunk.length);
+                    }
+                    output.close();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+
+        Thread.sleep(500L);
+        // the window has been sent and the next chunk is buffered by the writer, which waits
+        assertTrue(writer.isAlive());
+        assertTrue("Wrote " + written.get(), written.get() <= ManagementConnection.WINDOW + ManagementConnection.CHUNK_SIZE);
+
+        release.countDown();
+        writer.join(TIMEOUT);
+        assertEquals(null, failure.get());
+        assertTrue("Buffered " + buffered.get(), buffered.get() <= ManagementConnection.WINDOW);
+        assertEquals(size, new DataInputStream(channel.getInputStream()).readInt());
+        channel.close();
+    }
+
+    @Test
+    public void testClosedChannelDoesNotStallSender() throws Exception {
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                // the request is closed without reading it, the data which arrives later is dropped
+            }
+        };
+        startConnections();
+
+        final ManagementConnection.Channel channel = client.openChannel(HANDLER_ID, TIMEOUT);
+        final OutputStream output = channel.getOutputStream();
+        final byte[] chunk = new byte[4096];
+        for (int i = 0; i < ManagementConnection.WINDOW * 4 / chunk.length; i++) {
+            output.write(chunk);
+        }
+        output.close();
+        assertEquals(-1, channel.getInputStream().read());
+        channel.close();
+    }
+
+    @Test
+    public void testConnectionFailureFailsChannels() throws Exception {
+        final CountDownLatch handling = new CountDownLatch(1);
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                handling.countDown();
+                Thread.sleep(TIMEOUT * 2);
+            }
+        };
+        startConnections();
+
+        final ManagementConnection.Channel channel = client.openChannel(HANDLER_ID, 0L);
+        final AtomicReference<Throwable> writeFailure = new AtomicReference<Throwable>();
+        final Thread writer = start(new Runnable() {
+            public void run() {
+                try {
+                    final OutputStream output = channel.getOutputStream();
+                    for (;;) {
+                        output.write(new byte[1024]);
+                    }
+                } catch (Throwable t) {
+                    writeFailure.set(t);
+                }
+            }
+        });
+        assertTrue(handling.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        serverSide.close();
+
+        try {
+            channel.getInputStream().read();
+            fail("The response was read from a closed connection");
+        } catch (IOException expected) {
+        }
+        writer.join(TIMEOUT);
+        assertTrue(writeFailure.get() instanceof IOException);
+        assertTrue(client.isClosed());
+        channel.close();
+    }
+
+    @Test
+    public void testWindowExceededClosesConnection() throws Exception {
+        final AtomicReference<Throwable> readFailure = new AtomicReference<Throwable>();
+        final CountDownLatch failed = new CountDownLatch(1);
+        handler = new Handler() {
+            public void handle(final InputStream request, final OutputStream response) throws Exception {
+                try {
+                    Thread.sleep(200L);
+                    readAll(request);
+                } catch (IOException e) {
+                    readFailure.set(e);
+                    failed.countDown();
+                }
+            }
+        };
+        startServer();
+
+        // a peer which ignores the window
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(clientSide.getOutputStream()));
+        output.writeByte(ManagementProtocol.CHANNEL_OPEN);
+        output.writeInt(1);
+        output.writeByte(HANDLER_ID);
+        final byte[] chunk = new byte[ManagementConnection.CHUNK_SIZE];
+        for (int i = 0; i <= ManagementConnection.WINDOW / chunk.length; i++) {
+            output.writeByte(ManagementProtocol.CHANNEL_DATA);
+            output.writeInt(1);
+            output.writeInt(chunk.length);
+            output.write(chunk);
+        }
+        output.flush();
+
+        assertTrue(failed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNotNull(readFailure.get());
+        clientSide.setSoTimeout((int) TIMEOUT);
+        try {
+            assertEquals(-1, clientSide.getInputStream().read());
+        } catch (SocketTimeoutException e) {
+            fail("The connection was not closed");
+        }
+    }
+
+    private void startConnections() throws IOException {
+        startServer();
+        client = new ManagementConnection("test client", clientSide, new BufferedInputStream(clientSide.getInputStream()),
+                new BufferedOutputStream(clientSide.getOutputStream()), ManagementProtocol.VERSION, null);
+        start(client);
+    }
+
+    private void startServer() throws IOException {
+        final ManagementConnection server = new ManagementConnection("test server", serverSide, new BufferedInputStream(serverSide.getInputStream()),
+                new BufferedOutputStream(serverSide.getOutputStream()), ManagementProtocol.VERSION,
+                new ManagementConnection.ChannelHandler() {
+                    public void handleChannel(final ManagementConnection connection, final ManagementConnection.Channel channel, final byte handlerId) {
+                        handlerIds.add(Byte.valueOf(handlerId));
+                        start(new Runnable() {
+                            public void run() {
+                                try {
+                                    handler.handle(channel.getInputStream(), channel.getOutputStream());
+                                    channel.getOutputStream().flush();
+                                } catch (Exception e) {
+                                    // the connection failed
+                                } finally {
+                                    channel.close();
+                                }
+                            }
+                        });
+                    }
+                });
+        start(server);
+    }
+
+    private static Thread start(final Runnable task) {
+        final Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[3000];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] bytes(final int length, final int seed) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private interface Handler {
+        void handle(InputStream request, OutputStream response) throws Exception;
+    }
+}
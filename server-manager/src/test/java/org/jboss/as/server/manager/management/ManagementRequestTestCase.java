@@ -0,0 +1,251 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link ManagementRequest} reads its response as it arrives, and times out only when no more of the
+ * response arrives in time.
+ *
+ * @author John Bailey
+ */
+public class ManagementRequestTestCase {
+
+    /** The connect timeout of the requests, in seconds */
+    private static final long TIMEOUT = 1L;
+    private static final byte HANDLER_ID = 0x11;
+    private static final int PIECE = 20000;
+
+    private ScheduledExecutorService executorService;
+    private ServerSocket serverSocket;
+    private volatile Responder responder;
+
+    @Before
+    public void startServer() throws IOException {
+        executorService = Executors.newScheduledThreadPool(4);
+        serverSocket = new ServerSocket(0, 5, InetAddress.getByName("127.0.0.1"));
+        final Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (;;) {
+                        accept(serverSocket.accept());
+                    }
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        serverSocket.close();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSlowResponseLargerThanChunk() throws Exception {
+        // the response takes about twice the timeout, but no read waits longer than a quarter of it
+        responder = new Responder() {
+            public void respond(final InputStream request, final OutputStream response) throws Exception {
+                for (int i = 0; i < 8; i++) {
+                    response.write(piece(i));
+                    response.flush();
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(TIMEOUT) / 4);
+                }
+            }
+        };
+        final byte[] result = new TestRequest(8, null).executeForResult();
+        for (int i = 0; i < 8; i++) {
+            final byte[] piece = new byte[PIECE];
+            System.arraycopy(result, i * PIECE, piece, 0, PIECE);
+            assertArrayEquals(piece(i), piece);
+        }
+    }
+
+    @Test
+    public void testResponseReadAsItArrives() throws Exception {
+        final CountDownLatch firstPieceRead = new CountDownLatch(1);
+        responder = new Responder() {
+            public void respond(final InputStream request, final OutputStream response) throws Exception {
+                response.write(piece(0));
+                response.flush();
+                // the rest is only sent once the client has read the first piece
+                if (!firstPieceRead.await(10L, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("The first piece was not read before the response ended");
+                }
+                response.write(piece(1));
+            }
+        };
+        new TestRequest(2, firstPieceRead).executeForResult();
+    }
+
+    @Test
+    public void testStalledResponseTimesOut() throws Exception {
+        responder = new Responder() {
+            public void respond(final InputStream request, final OutputStream response) throws Exception {
+                response.write(piece(0));
+                response.flush();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(TIMEOUT * 4));
+            }
+        };
+        final long start = System.nanoTime();
+        assertFails(new TestRequest(2, null));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(TIMEOUT * 3));
+    }
+
+    @Test
+    public void testNoResponseTimesOut() throws Exception {
+        responder = new Responder() {
+            public void respond(final InputStream request, final OutputStream response) throws Exception {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(TIMEOUT * 4));
+            }
+        };
+        final long start = System.nanoTime();
+        assertFails(new TestRequest(1, null));
+        final long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(TimeUnit.SECONDS.toMillis(TIMEOUT) - 100L));
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(TIMEOUT * 3));
+    }
+
+    private static void assertFails(final TestRequest request) throws Exception {
+        try {
+            request.executeAsync().get();
+            fail("The request did not time out");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof ManagementException);
+        }
+    }
+
+    private static byte[] piece(final int index) {
+        final byte[] piece = new byte[PIECE];
+        for (int i = 0; i < PIECE; i++) {
+            piece[i] = (byte) (i * 7 + index);
+        }
+        return piece;
+    }
+
+    /** Open a multiplexed connection on an accepted socket, as the management communication service does */
+    private void accept(final Socket socket) throws IOException {
+        final InputStream input = new BufferedInputStream(socket.getInputStream());
+        final OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+        try {
+            final ManagementRequestHeader requestHeader = new ManagementRequestHeader(new DataInputStream(input));
+            final DataOutputStream headerOutput = new DataOutputStream(output);
+            new ManagementResponseHeader(ManagementProtocol.VERSION, requestHeader.getRequestId()).write(headerOutput);
+            headerOutput.flush();
+        } catch (ManagementException e) {
+            throw new IOException(e.getMessage());
+        }
+        final ManagementConnection connection = new ManagementConnection("test server", socket, input, output, ManagementProtocol.VERSION,
+                new ManagementConnection.ChannelHandler() {
+                    public void handleChannel(final ManagementConnection connection, final ManagementConnection.Channel channel, final byte handlerId) {
+                        final Thread thread = new Thread(new Runnable() {
+                            public void run() {
+                                try {
+                                    new DataInputStream(channel.getInputStream()).readInt();
+                                    responder.respond(channel.getInputStream(), channel.getOutputStream());
+                                    channel.getOutputStream().flush();
+                                } catch (Exception e) {
+                                    // the client gave up on the request
+                                } finally {
+                                    channel.close();
+                                }
+                            }
+                        });
+                        thread.setDaemon(true);
+                        thread.start();
+                    }
+                });
+        final Thread reader = new Thread(connection);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private interface Responder {
+        void respond(InputStream request, OutputStream response) throws Exception;
+    }
+
+    private final class TestRequest extends ManagementRequest<byte[]> {
+        private final int pieces;
+        private final CountDownLatch firstPieceRead;
+
+        private TestRequest(final int pieces, final CountDownLatch firstPieceRead) throws IOException {
+            super(InetAddress.getByName("127.0.0.1"), serverSocket.getLocalPort(), 0, 1L, TIMEOUT, executorService);
+            this.pieces = pieces;
+            this.firstPieceRead = firstPieceRead;
+        }
+
+        protected byte getHandlerId() {
+            return HANDLER_ID;
+        }
+
+        protected void writeRequest(final int protocolVersion, final ByteDataOutput output) throws ManagementException {
+            try {
+                output.writeInt(pieces);
+            } catch (IOException e) {
+                throw new ManagementException("Could not write the request", e);
+            }
+        }
+
+        protected byte[] readResponse(final int protocolVersion, final ByteDataInput input) throws ManagementException {
+            final byte[] response = new byte[pieces * PIECE];
+            try {
+                input.readFully(response, 0, PIECE);
+                if (firstPieceRead != null) {
+                    firstPieceRead.countDown();
+                }
+                input.readFully(response, PIECE, response.length - PIECE);
+            } catch (IOException e) {
+                throw new ManagementException("Could not read the response", e);
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+
+import org.jboss.as.model.AbstractDomainModelUpdate;
+import org.jboss.as.model.AbstractHostModelUpdate;
+import org.jboss.as.model.AbstractModel;
+import org.jboss.as.model.AbstractModelElement;
+import org.jboss.as.model.AbstractModelElementUpdate;
+import org.jboss.as.model.AbstractModelRootElement;
+import org.jboss.as.model.AbstractModelUpdate;
+import org.jboss.as.model.AbstractPropertyUpdate;
+import org.jboss.as.model.AbstractServerModelUpdate;
+import org.jboss.as.model.AbstractSubsystemElement;
+import org.jboss.as.model.ChildElement;
+import org.jboss.as.model.DeploymentRepositoryElement;
+import org.jboss.as.model.DeploymentUnitElement;
+import org.jboss.as.model.DomainModel;
+import org.jboss.as.model.DomainModelParser;
+import org.jboss.as.model.DomainSystemPropertyUpdate;
+import org.jboss.as.model.Element;
+import org.jboss.as.model.ExtensionElement;
+import org.jboss.as.model.HostModel;
+import org.jboss.as.model.HostModelParser;
+import org.jboss.as.model.HostSystemPropertyUpdate;
+import org.jboss.as.model.JvmElement;
+import org.jboss.as.model.LocalDomainControllerElement;
+import org.jboss.as.model.LocalTransportElement;
+import org.jboss.as.model.ManagementElement;
+import org.jboss.as.model.Namespace;
+import org.jboss.as.model.NamespaceAttribute;
+import org.jboss.as.model.ParseResult;
+import org.jboss.as.model.ProfileElement;
+import org.jboss.as.model.ProfileIncludeElement;
+import org.jboss.as.model.PropertiesElement;
+import org.jboss.as.model.PropertyAdd;
+import org.jboss.as.model.PropertyRemove;
+import org.jboss.as.model.QNameComparator;
+import org.jboss.as.model.RemoteDomainControllerElement;
+import org.jboss.as.model.ServerElement;
+import org.jboss.as.model.ServerGroupAdd;
+import org.jboss.as.model.ServerGroupDeploymentElement;
+import org.jboss.as.model.ServerGroupDeploymentStartStopUpdate;
+import org.jboss.as.model.ServerGroupElement;
+import org.jboss.as.model.ServerModel;
+import org.jboss.as.model.ServerModelDeploymentAddUpdate;
+import org.jboss.as.model.ServerModelDeploymentFullReplaceUpdate;
+import org.jboss.as.model.ServerModelDeploymentRemoveUpdate;
+import org.jboss.as.model.ServerModelDeploymentReplaceUpdate;
+import org.jboss.as.model.ServerModelDeploymentStartStopUpdate;
+import org.jboss.as.model.ServerSystemPropertyUpdate;
+import org.jboss.as.model.SimpleRefResolver;
+import org.jboss.as.model.StandbyPoolElement;
+import org.jboss.as.model.UpdateFailedException;
+import org.jboss.as.model.socket.AbstractInterfaceCriteriaElement;
+import org.jboss.as.model.socket.AbstractInterfaceElement;
+import org.jboss.as.model.socket.AnyInterfaceCriteria;
+import org.jboss.as.model.socket.CompoundCriteriaElement;
+import org.jboss.as.model.socket.InetAddressMatchCriteriaElement;
+import org.jboss.as.model.socket.InetAddressMatchInterfaceCriteria;
+import org.jboss.as.model.socket.InterfaceElement;
+import org.jboss.as.model.socket.LinkLocalInterfaceCriteria;
+import org.jboss.as.model.socket.LoopbackInterfaceCriteria;
+import org.jboss.as.model.socket.NicCriteriaElement;
+import org.jboss.as.model.socket.NicInterfaceCriteria;
+import org.jboss.as.model.socket.NicMatchCriteriaElement;
+import org.jboss.as.model.socket.NicMatchInterfaceCriteria;
+import org.jboss.as.model.socket.NotInterfaceCriteria;
+import org.jboss.as.model.socket.PointToPointInterfaceCriteria;
+import org.jboss.as.model.socket.PublicAddressInterfaceCriteria;
+import org.jboss.as.model.socket.ServerInterfaceElement;
+import org.jboss.as.model.socket.SimpleCriteriaElement;
+import org.jboss.as.model.socket.SiteLocalInterfaceCriteria;
+import org.jboss.as.model.socket.SocketBindingElement;
+import org.jboss.as.model.socket.SocketBindingGroupElement;
+import org.jboss.as.model.socket.SocketBindingGroupIncludeElement;
+import org.jboss.as.model.socket.SocketBindingGroupRefElement;
+import org.jboss.as.model.socket.SubnetMatchCriteriaElement;
+import org.jboss.as.model.socket.SubnetMatchInterfaceCriteria;
+import org.jboss.as.model.socket.SupportsMulticastInterfaceCriteria;
+import org.jboss.as.model.socket.UpInterfaceCriteria;
+import org.jboss.as.model.socket.VirtualInterfaceCriteria;
+import org.jboss.marshalling.ClassTable;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.Marshalling;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.ObjectTable;
+import org.jboss.marshalling.Unmarshaller;
+import org.jboss.staxmapper.XMLElementReader;
+import org.jboss.staxmapper.XMLMapper;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ModelClassTable} and {@link ModelObjectTable}.  Both ends of a connection must use the same
+ * tables, so the positions of the classes and objects are pinned here: a change to this list which does not only
+ * append to it breaks the protocol with every other process.
+ *
+ * @author John Bailey
+ */
+public class ModelTablesTestCase {
+
+    private static final Class<?>[] CLASSES = {
+        DomainModel.class,
+        HostModel.class,
+        ServerModel.class,
+        ChildElement.class,
+        NamespaceAttribute.class,
+        QNameComparator.class,
+        UpdateFailedException.class,
+        SimpleRefResolver.class,
+        AbstractModel.class,
+        AbstractModelRootElement.class,
+        AbstractModelElement.class,
+        AbstractSubsystemElement.class,
+        AbstractModelElementUpdate.class,
+        AbstractModelUpdate.class,
+        AbstractDomainModelUpdate.class,
+        AbstractHostModelUpdate.class,
+        AbstractServerModelUpdate.class,
+        AbstractPropertyUpdate.class,
+        DeploymentRepositoryElement.class,
+        DeploymentUnitElement.class,
+        ExtensionElement.class,
+        JvmElement.class,
+        LocalDomainControllerElement.class,
+        LocalTransportElement.class,
+        ManagementElement.class,
+        ProfileElement.class,
+        ProfileIncludeElement.class,
+        PropertiesElement.class,
+        RemoteDomainControllerElement.class,
+        ServerElement.class,
+        ServerGroupDeploymentElement.class,
+        ServerGroupElement.class,
+        StandbyPoolElement.class,
+        DomainSystemPropertyUpdate.class,
+        HostSystemPropertyUpdate.class,
+        PropertyAdd.class,
+        PropertyRemove.class,
+        ServerGroupAdd.class,
+        ServerGroupDeploymentStartStopUpdate.class,
+        ServerModelDeploymentAddUpdate.class,
+        ServerModelDeploymentFullReplaceUpdate.class,
+        ServerModelDeploymentRemoveUpdate.class,
+        ServerModelDeploymentReplaceUpdate.class,
+        ServerModelDeploymentStartStopUpdate.class,
+        ServerSystemPropertyUpdate.class,
+        AbstractInterfaceElement.class,
+        InterfaceElement.class,
+        ServerInterfaceElement.class,
+        SocketBindingElement.class,
+        SocketBindingGroupElement.class,
+        SocketBindingGroupIncludeElement.class,
+        SocketBindingGroupRefElement.class,
+        AbstractInterfaceCriteriaElement.class,
+        CompoundCriteriaElement.class,
+        InetAddressMatchCriteriaElement.class,
+        NicCriteriaElement.class,
+        NicMatchCriteriaElement.class,
+        SimpleCriteriaElement.class,
+        SubnetMatchCriteriaElement.class,
+        AnyInterfaceCriteria.class,
+        InetAddressMatchInterfaceCriteria.class,
+        LinkLocalInterfaceCriteria.class,
+        LoopbackInterfaceCriteria.class,
+        NicInterfaceCriteria.class,
+        NicMatchInterfaceCriteria.class,
+        NotInterfaceCriteria.class,
+        PointToPointInterfaceCriteria.class,
+        PublicAddressInterfaceCriteria.class,
+        SiteLocalInterfaceCriteria.class,
+        SubnetMatchInterfaceCriteria.class,
+        SupportsMulticastInterfaceCriteria.class,
+        UpInterfaceCriteria.class,
+        VirtualInterfaceCriteria.class,
+    };
+
+    private static final Object[] OBJECTS = {
+        QNameComparator.getInstance(),
+        LinkLocalInterfaceCriteria.INSTANCE,
+        LoopbackInterfaceCriteria.INSTANCE,
+        PointToPointInterfaceCriteria.INSTANCE,
+        PublicAddressInterfaceCriteria.INSTANCE,
+        SiteLocalInterfaceCriteria.INSTANCE,
+        SupportsMulticastInterfaceCriteria.INSTANCE,
+        UpInterfaceCriteria.INSTANCE,
+        VirtualInterfaceCriteria.INSTANCE,
+    };
+
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    @Test
+    public void testClassPositions() throws Exception {
+        final ModelClassTable table = new ModelClassTable(new NameClassTable());
+        for (int i = 0; i < CLASSES.length; i++) {
+            final StubMarshaller marshaller = new StubMarshaller();
+            final ClassTable.Writer writer = table.getClassWriter(CLASSES[i]);
+            assertNotNull(CLASSES[i].getName(), writer);
+            writer.writeClass(marshaller.proxy(), CLASSES[i]);
+            assertEquals(CLASSES[i].getName(), singleton(i + 1), marshaller.written);
+
+            assertSame(CLASSES[i], table.readClass(new StubUnmarshaller(i + 1).proxy()));
+        }
+    }
+
+    @Test
+    public void testUnknownClassIndex() throws Exception {
+        final ModelClassTable table = new ModelClassTable(new NameClassTable());
+        for (int index = CLASSES.length + 1; index < 256; index++) {
+            try {
+                table.readClass(new StubUnmarshaller(index).proxy());
+                fail("Read class for index " + index);
+            } catch (InvalidClassException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testOtherClassesDelegated() throws Exception {
+        final ModelClassTable table = new ModelClassTable(new NameClassTable());
+        final StubMarshaller marshaller = new StubMarshaller();
+        table.getClassWriter(String.class).writeClass(marshaller.proxy(), String.class);
+        final List<Object> expected = new ArrayList<Object>();
+        expected.add(Integer.valueOf(0));
+        expected.add(String.class.getName());
+        assertEquals(expected, marshaller.written);
+
+        assertSame(String.class, table.readClass(new StubUnmarshaller(0, String.class.getName()).proxy()));
+
+        // a class the delegate does not write either is described by the marshaller
+        assertNull(new ModelClassTable(new NoClassTable()).getClassWriter(String.class));
+    }
+
+    @Test
+    public void testObjectPositions() throws Exception {
+        final ModelObjectTable table = ModelObjectTable.getInstance();
+        for (int i = 0; i < OBJECTS.length; i++) {
+            final StubMarshaller marshaller = new StubMarshaller();
+            final ObjectTable.Writer writer = table.getObjectWriter(OBJECTS[i]);
+            assertNotNull(OBJECTS[i].getClass().getName(), writer);
+            writer.writeObject(marshaller.proxy(), OBJECTS[i]);
+            assertEquals(OBJECTS[i].getClass().getName(), singleton(i), marshaller.written);
+
+            assertSame(OBJECTS[i], table.readObject(new StubUnmarshaller(i).proxy()));
+        }
+        for (int index = OBJECTS.length; index < 256; index++) {
+            try {
+                table.readObject(new StubUnmarshaller(index).proxy());
+                fail("Read object for index " + index);
+            } catch (InvalidObjectException expected) {
+            }
+        }
+        assertNull(table.getObjectWriter(new Object()));
+    }
+
+    @Test
+    public void testModelRoundTrip() throws Exception {
+        final HostModel host = parse(Element.HOST, HostModelParser.getInstance(), hostXml(5, 2));
+        final DomainModel domain = parse(Element.DOMAIN, DomainModelParser.getInstance(), domainXml(2));
+        final MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setClassTable(new ModelClassTable(new NoClassTable()));
+        configuration.setObjectTable(ModelObjectTable.getInstance());
+        final MarshallerPool pool = new MarshallerPool(Marshalling.getMarshallerFactory("river", ModelTablesTestCase.class.getClassLoader()), configuration, 1);
+
+        // twice, so the second round trip uses the marshaller and unmarshaller returned to the pool
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final Marshaller marshaller = pool.getMarshaller();
+            marshaller.start(Marshalling.createByteOutput(output));
+            marshaller.writeObject(host);
+            marshaller.writeObject(domain);
+            marshaller.writeObject(LoopbackInterfaceCriteria.INSTANCE);
+            marshaller.finish();
+            pool.returnMarshaller(marshaller);
+            final byte[] bytes = output.toByteArray();
+            // the model classes are written by index, never by name
+            final String text = new String(bytes, "ISO-8859-1");
+            assertFalse(text.contains(HostModel.class.getName()));
+            assertFalse(text.contains(DomainModel.class.getName()));
+            assertFalse(text.contains(ServerElement.class.getName()));
+
+            final Unmarshaller unmarshaller = pool.getUnmarshaller();
+            unmarshaller.start(Marshalling.createByteInput(new ByteArrayInputStream(bytes)));
+            final HostModel hostCopy = unmarshaller.readObject(HostModel.class);
+            final DomainModel domainCopy = unmarshaller.readObject(DomainModel.class);
+            final Object criteria = unmarshaller.readObject();
+            unmarshaller.finish();
+            pool.returnUnmarshaller(unmarshaller);
+
+            assertNotSame(host, hostCopy);
+            assertEquals(host.elementHash(), hostCopy.elementHash());
+            assertEquals(host.getServers().size(), hostCopy.getServers().size());
+            assertEquals(host.getServer("server-3").getServerGroup(), hostCopy.getServer("server-3").getServerGroup());
+            assertNotSame(domain, domainCopy);
+            assertEquals(domain.elementHash(), domainCopy.elementHash());
+            assertEquals(domain.getElementHashes(), domainCopy.getElementHashes());
+            assertNotNull(domainCopy.getServerGroup("group-1"));
+            // the stateless singletons are not copied
+            assertSame(LoopbackInterfaceCriteria.INSTANCE, criteria);
+        }
+    }
+
+    private static List<Object> singleton(final int value) {
+        final List<Object> list = new ArrayList<Object>();
+        list.add(Integer.valueOf(value));
+        return list;
+    }
+
+    private static <T> T parse(final Element root, final XMLElementReader<ParseResult<T>> parser, final String xml) throws Exception {
+        final XMLMapper mapper = XMLMapper.Factory.create();
+        mapper.registerRootElement(new QName(Namespace.CURRENT.getUriString(), root.getLocalName()), parser);
+        final ParseResult<T> result = new ParseResult<T>();
+        mapper.parseDocument(result, XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)));
+        return result.getResult();
+    }
+
+    private static String hostXml(final int servers, final int groups) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<host xmlns=\"").append(Namespace.CURRENT.getUriString()).append("\">");
+        xml.append("<domain-controller><local/></domain-controller>");
+        xml.append("<management interface=\"public\" port=\"9999\"/>");
+        xml.append("<interfaces><interface name=\"public\"><any-address/></interface></interfaces>");
+        xml.append("<jvms><jvm name=\"default\"><system-properties><property name=\"foo\" value=\"bar\"/></system-properties></jvm></jvms>");
+        xml.append("<servers>");
+        for (int i = 0; i < servers; i++) {
+            xml.append("<server name=\"server-").append(i).append("\" group=\"group-").append(i % groups).append("\" start=\"true\">");
+            xml.append("<interface-specs><interface name=\"internal\"><inet-address value=\"10.0.0.").append(i + 1).append("\"/></interface></interface-specs>");
+            xml.append("<socket-binding-group ref=\"standard-sockets\" port-offset=\"").append(i * 100).append("\"/>");
+            xml.append("</server>");
+        }
+        xml.append("</servers></host>");
+        return xml.toString();
+    }
+
+    private static String domainXml(final int groups) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<domain xmlns=\"").append(Namespace.CURRENT.getUriString()).append("\">");
+        xml.append("<profiles><profile name=\"default\"/></profiles>");
+        xml.append("<interfaces><interface name=\"external\"><any-address/></interface>");
+        xml.append("<interface name=\"internal\"><not><loopback/></not><up/><site-local-address/></interface></interfaces>");
+        xml.append("<socket-binding-groups><socket-binding-group name=\"standard-sockets\" default-interface=\"external\">");
+        xml.append("<socket-binding name=\"http\" port=\"8080\"/>");
+        xml.append("</socket-binding-group></socket-binding-groups>");
+        xml.append("<deployments>");
+        for (int i = 0; i < groups; i++) {
+            xml.append("<deployment name=\"app-").append(i).append(".war\" runtime-name=\"app-").append(i)
+                .append(".war\" sha1=\"").append(SHA1).append("\"/>");
+        }
+        xml.append("</deployments><server-groups>");
+        for (int i = 0; i < groups; i++) {
+            xml.append("<server-group name=\"group-").append(i).append("\" profile=\"default\">");
+            xml.append("<socket-binding-group ref=\"standard-sockets\"/>");
+            xml.append("</server-group>");
+        }
+        xml.append("</server-groups></domain>");
+        return xml.toString();
+    }
+
+    /**
+     * Records the bytes and strings written to it.
+     */
+    private static final class StubMarshaller implements InvocationHandler {
+        private final List<Object> written = new ArrayList<Object>();
+
+        Marshaller proxy() {
+            return (Marshaller) Proxy.newProxyInstance(Marshaller.class.getClassLoader(), new Class<?>[] {Marshaller.class}, this);
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().equals("writeByte") || method.getName().equals("writeUTF")) {
+                written.add(args[0]);
+                return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /**
+     * Reads the given unsigned bytes and strings in turn.
+     */
+    private static final class StubUnmarshaller implements InvocationHandler {
+        private final LinkedList<Object> values = new LinkedList<Object>();
+
+        StubUnmarshaller(final Object... values) {
+            for (Object value : values) {
+                this.values.add(value);
+            }
+        }
+
+        Unmarshaller proxy() {
+            return (Unmarshaller) Proxy.newProxyInstance(Unmarshaller.class.getClassLoader(), new Class<?>[] {Unmarshaller.class}, this);
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().equals("readUnsignedByte") || method.getName().equals("readUTF")) {
+                if (values.isEmpty()) {
+                    throw new IOException("Nothing more to read");
+                }
+                return values.removeFirst();
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /**
+     * Writes every class by name, standing in for the {@code ModularClassTable}.
+     */
+    private static final class NameClassTable implements ClassTable {
+        public Writer getClassWriter(final Class<?> clazz) {
+            return new Writer() {
+                public void writeClass(final Marshaller marshaller, final Class<?> clazz) throws IOException {
+                    marshaller.writeUTF(clazz.getName());
+                }
+            };
+        }
+
+        public Class<?> readClass(final Unmarshaller unmarshaller) throws IOException, ClassNotFoundException {
+            return Class.forName(unmarshaller.readUTF());
+        }
+    }
+
+    /**
+     * Writes no class, so the marshaller describes the classes which are not model classes by name.
+     */
+    private static final class NoClassTable implements ClassTable {
+        public Writer getClassWriter(final Class<?> clazz) {
+            return null;
+        }
+
+        public Class<?> readClass(final Unmarshaller unmarshaller) throws IOException {
+            throw new IOException("No classes are written by this table");
+        }
+    }
+}
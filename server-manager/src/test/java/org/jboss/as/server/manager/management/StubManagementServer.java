@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.as.server.manager.management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A management server for tests, which hands each request received over a multiplexed connection to a handler as the
+ * management communication service does.
+ *
+ * @author John Bailey
+ */
+public final class StubManagementServer {
+    private final ManagementOperationHandler handler;
+    private final InetAddress address;
+    private final ServerSocket serverSocket;
+
+    /**
+     * Start a server on an ephemeral port of the loopback address.
+     *
+     * @param handler the handler of every request
+     * @throws IOException if the server socket could not be bound
+     */
+    public StubManagementServer(final ManagementOperationHandler handler) throws IOException {
+        this.handler = handler;
+        address = InetAddress.getByName("127.0.0.1");
+        serverSocket = new ServerSocket(0, 5, address);
+        final Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (;;) {
+                        accept(serverSocket.accept());
+                    }
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept(final Socket socket) throws IOException {
+        final InputStream input = new BufferedInputStream(socket.getInputStream());
+        final OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+        try {
+            final ManagementRequestHeader requestHeader = new ManagementRequestHeader(new DataInputStream(input));
+            final DataOutputStream headerOutput = new DataOutputStream(output);
+            new ManagementResponseHeader(ManagementProtocol.VERSION, requestHeader.getRequestId()).write(headerOutput);
+            headerOutput.flush();
+        } catch (ManagementException e) {
+            throw new IOException(e.getMessage());
+        }
+        final ManagementConnection connection = new ManagementConnection("stub server", socket, input, output, ManagementProtocol.VERSION,
+                new ManagementConnection.ChannelHandler() {
+                    public void handleChannel(final ManagementConnection connection, final ManagementConnection.Channel channel, final byte handlerId) {
+                        final Thread thread = new Thread(new Runnable() {
+                            public void run() {
+                                try {
+                                    final ByteDataOutput output = new SimpleByteDataOutput(channel.getOutputStream());
+                                    handler.handleRequest(ManagementProtocol.VERSION, new SimpleByteDataInput(channel.getInputStream()), output);
+                                    output.flush();
+                                } catch (Exception e) {
+                                    // the request fails without a response
+                                } finally {
+                                    channel.close();
+                                }
+                            }
+                        });
+                        thread.setDaemon(true);
+                        thread.start();
+                    }
+                });
+        final Thread reader = new Thread(connection);
+        reader.setDaemon(true);
+        reader.start();
+    }
+}
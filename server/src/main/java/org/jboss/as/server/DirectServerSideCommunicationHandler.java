@@ -23,6 +23,7 @@
 package org.jboss.as.server;
 
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -44,8 +45,8 @@ public class DirectServerSideCommunicationHandler extends ServerCommunicationHan
 
     private final ServerManagerToServerCommandHandler handler;
 
-    private DirectServerSideCommunicationHandler(String processName, InetAddress addr, Integer port, ServerManagerToServerCommandHandler handler){
-        super(processName, addr, port);
+    private DirectServerSideCommunicationHandler(String processName, File socketFile, InetAddress addr, Integer port, ServerManagerToServerCommandHandler handler){
+        super(processName, socketFile, addr, port, null);
         if (handler == null) {
             throw new IllegalArgumentException("handler is null");
         }
@@ -53,7 +54,14 @@ public class DirectServerSideCommunicationHandler extends ServerCommunicationHan
     }
 
     public static DirectServerSideCommunicationHandler create(String processName, InetAddress addr, Integer port, ServerManagerToServerCommandHandler handler){
-        DirectServerSideCommunicationHandler comm = new DirectServerSideCommunicationHandler(processName, addr, port, handler);
+        return create(processName, null, addr, port, handler);
+    }
+
+    /**
+     * Connect to the server manager, over its AF_UNIX socket if one is given and can be used
+     */
+    public static DirectServerSideCommunicationHandler create(String processName, File socketFile, InetAddress addr, Integer port, ServerManagerToServerCommandHandler handler){
+        DirectServerSideCommunicationHandler comm = new DirectServerSideCommunicationHandler(processName, socketFile, addr, port, handler);
         comm.start();
         return comm;
     }
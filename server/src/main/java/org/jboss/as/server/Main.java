@@ -129,6 +129,7 @@ public final class Main {
         String procName = null;
         Integer smPort = null;
         InetAddress smAddress = null;
+        File smSocket = null;
         boolean standalone = false;
         final int argsLength = args.length;
         for (int i = 0; i < argsLength; i++) {
@@ -178,6 +179,8 @@ public final class Main {
                         System.err.printf("Value for %s is not a known host -- %s\n", CommandLineConstants.INTERPROCESS_SM_ADDRESS, args[i]);
                         return null;
                     }
+                } else if (CommandLineConstants.INTERPROCESS_SM_SOCKET.equals(arg)) {
+                    smSocket = new File(args[++i]);
                 }else if (arg.equals(CommandLineConstants.STANDALONE)) {
                     // Start in standalone mode
                     standalone = true;
@@ -204,7 +207,7 @@ public final class Main {
             }
         }
 
-        return new ServerEnvironment(systemProperties, stdin, stdout, stderr, procName, pmAddress, pmPort, smAddress, smPort, standalone);
+        return new ServerEnvironment(systemProperties, stdin, stdout, stderr, procName, pmAddress, pmPort, smAddress, smPort, smSocket, standalone);
     }
 
     private static URL makeURL(String urlspec) throws MalformedURLException {
@@ -27,8 +27,7 @@ import java.io.InputStream;
 import java.net.InetAddress;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.jboss.as.process.Status;
-import org.jboss.as.process.StreamUtils;
+import org.jboss.as.process.BinaryFrames;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommand;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
 import org.jboss.logging.Logger;
@@ -46,7 +45,7 @@ public class ProcessManagerServerCommunicationHandler extends ServerCommunicatio
     private final OutgoingPmCommandHandler handler;
 
     private ProcessManagerServerCommunicationHandler(String processName, InetAddress addr, Integer port, OutgoingPmCommandHandler handler){
-        super(processName, addr, port);
+        super(processName, addr, port, BinaryFrames.CONNECT_OPTION);
         if (handler == null) {
             throw new IllegalArgumentException("Null handler");
         }
@@ -75,24 +74,11 @@ public class ProcessManagerServerCommunicationHandler extends ServerCommunicatio
 
         public void run() {
             final InputStream input = ProcessManagerServerCommunicationHandler.this.getInput();
-            final StringBuilder b = new StringBuilder();
             try {
-                for (;;) {
-                    Status status = StreamUtils.readWord(input, b);
-                    if (status == Status.END_OF_STREAM) {
-                        // no more input
-                        shutdown();
-                        break;
-                    }
-                    try {
-                        final OutgoingPmCommand command = OutgoingPmCommand.valueOf(b.toString());
-                        status = command.handleMessage(input, status, handler, b);
-                    } catch (IllegalArgumentException e) {
-                        // unknown command...
-                        logger.error("Received unknown command: " + b.toString());
-                    }
-                    if (status == Status.MORE) StreamUtils.readToEol(input);
+                while (OutgoingPmCommand.readFrame(input, handler)) {
                 }
+                // no more input
+                shutdown();
             } catch (IOException e) {
                 // exception caught, shut down channel and exit
                 shutdown();
@@ -28,12 +28,14 @@ package org.jboss.as.server;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.as.model.ServerModel;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommand;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
+import org.jboss.as.process.ProcessSample;
 import org.jboss.as.server.manager.ServerManagerProtocolUtils;
 import org.jboss.as.server.manager.ServerState;
 import org.jboss.as.server.manager.ServerManagerProtocol.ServerManagerToServerCommandHandler;
@@ -112,7 +114,7 @@ public class Server extends AbstractServer {
             log.errorf("Could not parse %s into a port", port);
             return;
         }
-        this.serverCommunicationHandler = DirectServerSideCommunicationHandler.create(getEnvironment().getProcessName(), addr, portNumber, serverManagerCommandHandler);
+        this.serverCommunicationHandler = DirectServerSideCommunicationHandler.create(getEnvironment().getProcessName(), getEnvironment().getServerManagerSocket(), addr, portNumber, serverManagerCommandHandler);
         sendMessage(ServerToServerManagerProtocolCommand.SERVER_RECONNECT_STATUS, state);
     }
 
@@ -142,7 +144,7 @@ public class Server extends AbstractServer {
     private void launchCommunicationHandlers() {
         ServerEnvironment env = getEnvironment();
         this.processManagerCommunicationHandler = ProcessManagerServerCommunicationHandler.create(env.getProcessName(), env.getProcessManagerAddress(), env.getProcessManagerPort(), pmCommandHandler);
-        this.serverCommunicationHandler = DirectServerSideCommunicationHandler.create(env.getProcessName(), env.getServerManagerAddress(), env.getServerManagerPort(), serverManagerCommandHandler);
+        this.serverCommunicationHandler = DirectServerSideCommunicationHandler.create(env.getProcessName(), env.getServerManagerSocket(), env.getServerManagerAddress(), env.getServerManagerPort(), serverManagerCommandHandler);
     }
 
     protected void sendMessageToSm(ServerToServerManagerProtocolCommand command) {
@@ -200,6 +202,11 @@ public class Server extends AbstractServer {
             Server.this.reconnectToServerManager(address, port);
         }
 
+        @Override
+        public void handleSamples(String processName, List<ProcessSample> samples) {
+            log.warn("Unknown command " + OutgoingPmCommand.SAMPLES + " for Server");
+        }
+
         @Override
         public void handleShutdown() {
             Server.this.stop();
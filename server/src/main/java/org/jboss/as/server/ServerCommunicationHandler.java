@@ -22,6 +22,7 @@
 
 package org.jboss.as.server;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
@@ -43,11 +44,40 @@ public abstract class ServerCommunicationHandler {
     final SocketConnection managerConnection;
 
     public ServerCommunicationHandler(String processName, InetAddress addr, Integer port){
+        this(processName, addr, port, null);
+    }
+
+    /**
+     * Connect to the manager
+     *
+     * @param processName the name of this process
+     * @param addr the address of the manager
+     * @param port the port of the manager
+     * @param option an extra element for the initial request, or {@code null}
+     */
+    protected ServerCommunicationHandler(String processName, InetAddress addr, Integer port, String option){
+        this(processName, null, addr, port, option);
+    }
+
+    /**
+     * Connect to the manager, over an AF_UNIX socket if possible
+     *
+     * @param processName the name of this process
+     * @param socketFile the AF_UNIX socket file of the manager, or {@code null} to use TCP
+     * @param addr the address of the manager, used if the socket file can not be
+     * @param port the port of the manager
+     * @param option an extra element for the initial request, or {@code null}
+     */
+    protected ServerCommunicationHandler(String processName, File socketFile, InetAddress addr, Integer port, String option){
         if (processName == null) {
             throw new IllegalArgumentException("processName is null");
         }
 
-        this.managerConnection = SocketConnection.connect(addr, port, "CONNECTED", processName);
+        if (option == null) {
+            this.managerConnection = SocketConnection.connect(socketFile, addr, port, "CONNECTED", processName);
+        } else {
+            this.managerConnection = SocketConnection.connect(socketFile, addr, port, "CONNECTED", processName, option);
+        }
         this.input = managerConnection.getInputStream();
         this.output = managerConnection.getOutputStream();
     }
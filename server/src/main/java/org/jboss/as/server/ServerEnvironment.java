@@ -114,6 +114,7 @@ public class ServerEnvironment {
     private final Integer processManagerPort;
     private final InetAddress serverManagerAddress;
     private final Integer serverManagerPort;
+    private final File serverManagerSocket;
     private final File homeDir;
     private final File modulesDir;
     private final File serverBaseDir;
@@ -129,7 +130,7 @@ public class ServerEnvironment {
     private final PrintStream stderr;
 
     public ServerEnvironment(Properties props, InputStream stdin, PrintStream stdout, PrintStream stderr,
-            String processName, InetAddress processManagerAddress, Integer processManagerPort, InetAddress serverManagerAddress, Integer serverManagerPort, boolean standalone) {
+            String processName, InetAddress processManagerAddress, Integer processManagerPort, InetAddress serverManagerAddress, Integer serverManagerPort, File serverManagerSocket, boolean standalone) {
         this.standalone = standalone;
         if (props == null) {
             throw new IllegalArgumentException("props is null");
@@ -171,6 +172,7 @@ public class ServerEnvironment {
         this.processManagerAddress = processManagerAddress;
         this.serverManagerAddress = serverManagerAddress;
         this.serverManagerPort = serverManagerPort;
+        this.serverManagerSocket = serverManagerSocket;
 
         // Must have HOME_DIR
         this.homeDir = getFileFromProperty(HOME_DIR);
@@ -304,6 +306,17 @@ public class ServerEnvironment {
         return serverManagerPort;
     }
 
+    /**
+     * Gets the AF_UNIX socket file, if any, of the server manager, which is used in preference
+     * to its address and port if possible.
+     *
+     * @return the server manager's socket file, or <code>null</code> if
+     *         none was provided
+     */
+    public File getServerManagerSocket() {
+        return serverManagerSocket;
+    }
+
     /**
      * Get the process name of this process, needed to inform the process manager we have started
      *
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.communication;
+
+import org.jboss.as.communication.SocketListener.SocketHandler;
+import org.jboss.as.process.StreamUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the round trip latency of a small command between two processes of a host over a TCP loopback
+ * connection and over an AF_UNIX socket.  The listener echoes every command back, as the server manager answers a
+ * command from a server.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalTransportBenchmark {
+
+    @Param({"tcp", "unix"})
+    private String transport;
+
+    @Param({"64", "4096"})
+    private int commandSize;
+
+    private File socketFile;
+    private SocketListener listener;
+    private SocketConnection connection;
+    private byte[] command;
+    private byte[] reply;
+
+    @Setup
+    public void setup() throws IOException {
+        if ("unix".equals(transport)) {
+            if (!UnixDomainSockets.isSupported()) {
+                throw new IllegalStateException("AF_UNIX sockets are not supported by this JVM");
+            }
+            socketFile = File.createTempFile("transport", ".sock");
+            socketFile.delete();
+        }
+        final InetAddress address = InetAddress.getByName("127.0.0.1");
+        listener = SocketListener.createSocketListener("Benchmark", new EchoHandler(), address, 0, 10, socketFile);
+        listener.start();
+        connection = SocketConnection.connect(socketFile, address, listener.getPort(), "CONNECTED", "Benchmark");
+        if ("unix".equals(transport) && !connection.isUnixDomain()) {
+            throw new IllegalStateException("Could not connect to " + socketFile);
+        }
+        command = new byte[commandSize];
+        for (int i = 0; i < command.length; i++) {
+            command[i] = (byte) i;
+        }
+        reply = new byte[commandSize];
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+        listener.shutdown();
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws IOException {
+        final OutputStream output = connection.getOutputStream();
+        output.write(command);
+        output.flush();
+        StreamUtils.readFully(connection.getInputStream(), reply, 0, reply.length);
+        return reply;
+    }
+
+    private static class EchoHandler implements SocketHandler {
+
+        public void initializeConnection(final SocketConnection connection) throws IOException {
+            final InputStream input = connection.getInputStream();
+            int c;
+            do {
+                c = StreamUtils.readChar(input);
+            } while (c != '\n' && c != -1);
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    final OutputStream output = connection.getOutputStream();
+                    final byte[] buffer = new byte[8192];
+                    try {
+                        int count;
+                        while ((count = input.read(buffer)) != -1) {
+                            output.write(buffer, 0, count);
+                            if (input.available() == 0) {
+                                output.flush();
+                            }
+                        }
+                    } catch (IOException ignore) {
+                    } finally {
+                        connection.close();
+                    }
+                }
+            }, "Echo");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NamingException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the basic operations of the in memory naming store against contexts of varying width and depth.
+ *
+ * @author John E. Bailey
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryNamingStoreBenchmark {
+
+    /* The number of bindings in the benchmarked context */
+    @Param({"10", "100", "1000"})
+    private int width;
+
+    /* The number of name components of the benchmarked bindings */
+    @Param({"1", "4", "8"})
+    private int depth;
+
+    private InMemoryNamingStore store;
+    private Name contextName;
+    private Name[] names;
+    private Name unboundName;
+    private int next;
+
+    @Setup
+    public void setup() throws NamingException {
+        store = new InMemoryNamingStore();
+        contextName = new CompositeName();
+        for (int i = 1; i < depth; i++) {
+            final Name subcontextName = child(contextName, "context" + i);
+            store.createSubcontext(null, subcontextName);
+            contextName = subcontextName;
+        }
+        names = new Name[width];
+        for (int i = 0; i < width; i++) {
+            names[i] = child(contextName, "binding" + i);
+            store.bind(null, names[i], "value" + i, String.class.getName());
+        }
+        unboundName = child(contextName, "unbound");
+    }
+
+    @Benchmark
+    public Object lookup() throws NamingException {
+        return store.lookup(nextName());
+    }
+
+    @Benchmark
+    public List<NameClassPair> list() throws NamingException {
+        return store.list(contextName);
+    }
+
+    @Benchmark
+    public void rebind() throws NamingException {
+        store.rebind(null, nextName(), "value", String.class.getName());
+    }
+
+    @Benchmark
+    public void bindAndUnbind() throws NamingException {
+        store.bind(null, unboundName, "value", String.class.getName());
+        store.unbind(null, unboundName);
+    }
+
+    private Name nextName() {
+        final Name name = names[next];
+        next = (next + 1) % width;
+        return name;
+    }
+
+    private static Name child(final Name parent, final String component) throws NamingException {
+        final Name name = (Name) parent.clone();
+        name.add(component);
+        return name;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.naming.CompositeName;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+import javax.naming.spi.ObjectFactory;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@code NamingContext} lookups by string and by name, including lookups which dereference a
+ * {@code Reference} with and without the lookup cache and lookup metrics.
+ * <p>
+ * Run with the gc profiler ({@code -prof gc}), as the {@code benchmark-tests} profile does, to get the bytes each
+ * lookup allocates as the {@code gc.alloc.rate.norm} secondary result.  A string lookup of an existing binding
+ * without lookup metrics allocates nothing at every depth.
+ *
+ * @author John E. Bailey
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamingContextLookupBenchmark {
+
+    /* The number of name components of the looked up names */
+    @Param({"2", "4", "8"})
+    private int depth;
+
+    @Param({"false", "true"})
+    private boolean lookupCache;
+
+    @Param({"false", "true"})
+    private boolean lookupMetrics;
+
+    private NamingContext context;
+    private String bindingName;
+    private Name parsedBindingName;
+    private String referenceName;
+
+    @Setup
+    public void setup() throws NamingException {
+        final InMemoryNamingStore store = new InMemoryNamingStore(null, lookupCache ? new LookupCache() : null, lookupMetrics ? new LookupMetrics() : null);
+        context = new NamingContext(new CompositeName(), store, null);
+        final StringBuilder contextName = new StringBuilder();
+        for (int i = 1; i < depth; i++) {
+            if (contextName.length() > 0) {
+                contextName.append('/');
+            }
+            contextName.append("context").append(i);
+            context.createSubcontext(contextName.toString());
+        }
+        final String prefix = contextName.length() > 0 ? contextName.append('/').toString() : "";
+        bindingName = prefix + "binding";
+        parsedBindingName = new CompositeName(bindingName);
+        referenceName = prefix + "reference";
+        context.bind(bindingName, "value");
+        context.bind(referenceName, new Reference(Object.class.getName(), new StringRefAddr(LookupCache.CACHEABLE_ADDR_TYPE, "true"), ValueObjectFactory.class.getName(), null));
+    }
+
+    @Benchmark
+    public Object lookupString() throws NamingException {
+        return context.lookup(bindingName);
+    }
+
+    @Benchmark
+    public Object lookupName() throws NamingException {
+        return context.lookup(parsedBindingName);
+    }
+
+    @Benchmark
+    public Object lookupReference() throws NamingException {
+        return context.lookup(referenceName);
+    }
+
+    public static class ValueObjectFactory implements ObjectFactory {
+        public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
+            return new Object();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.naming.Binding;
+import javax.naming.CompositeName;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.event.EventContext;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingExceptionEvent;
+import javax.naming.event.ObjectChangeListener;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for firing naming events with a varying number of registered listeners.  The listeners are spread over
+ * the object, one level and subtree scopes.  Events are object changes to the same name, so queued events are
+ * coalesced and the listener queues do not grow during the run.
+ *
+ * @author John E. Bailey
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamingEventCoordinatorBenchmark {
+
+    @Param({"0", "10", "1000"})
+    private int listeners;
+
+    private NamingEventCoordinator coordinator;
+    private NamingContext context;
+    private Name name;
+    private Name unmatchedName;
+    private Binding binding;
+
+    @Setup
+    public void setup() throws NamingException {
+        coordinator = new NamingEventCoordinator();
+        context = new NamingContext(new CompositeName(), new InMemoryNamingStore(coordinator), null);
+        name = new CompositeName("test/binding");
+        unmatchedName = new CompositeName("other/binding");
+        binding = new Binding("binding", "value");
+        final int[] scopes = {EventContext.OBJECT_SCOPE, EventContext.ONELEVEL_SCOPE, EventContext.SUBTREE_SCOPE};
+        final String[] targets = {"test/binding", "test", ""};
+        for (int i = 0; i < listeners; i++) {
+            coordinator.addListener(targets[i % 3], scopes[i % 3], new NoopListener());
+        }
+    }
+
+    @Benchmark
+    public void fireEvent() {
+        coordinator.fireEvent(context, name, binding, binding, NamingEvent.OBJECT_CHANGED, "rebind", NamingEventCoordinator.DEFAULT_SCOPES);
+    }
+
+    @Benchmark
+    public void fireUnmatchedEvent() {
+        coordinator.fireEvent(context, unmatchedName, binding, binding, NamingEvent.OBJECT_CHANGED, "rebind", NamingEventCoordinator.DEFAULT_SCOPES);
+    }
+
+    private static class NoopListener implements ObjectChangeListener {
+        public void objectChanged(NamingEvent evt) {
+        }
+
+        public void namingExceptionThrown(NamingExceptionEvent evt) {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.naming.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks comparing {@code FastCopyHashMap} and {@code HashTrieMap} with the JDK maps.  The copy benchmark models a
+ * copy on write update, which copies the map and puts one entry; the trie produces the updated version directly.
+ *
+ * @author John E. Bailey
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+
+    @Param({"FastCopyHashMap", "HashMap", "ConcurrentHashMap", "HashTrieMap"})
+    private String type;
+
+    @Param({"16", "1024"})
+    private int size;
+
+    private String[] keys;
+    private Map<String, Object> map;
+    private HashTrieMap<String, Object> trie;
+    private int next;
+
+    @Setup
+    public void setup() {
+        keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "key" + i;
+        }
+        if ("FastCopyHashMap".equals(type)) {
+            map = new FastCopyHashMap<String, Object>();
+        } else if ("HashMap".equals(type)) {
+            map = new HashMap<String, Object>();
+        } else if ("ConcurrentHashMap".equals(type)) {
+            map = new ConcurrentHashMap<String, Object>();
+        } else if ("HashTrieMap".equals(type)) {
+            trie = HashTrieMap.empty();
+            for (String key : keys) {
+                trie = trie.plus(key, key);
+            }
+            return;
+        } else {
+            throw new IllegalArgumentException("Unknown map type " + type);
+        }
+        for (String key : keys) {
+            map.put(key, key);
+        }
+    }
+
+    @Benchmark
+    public Object get() {
+        final String key = nextKey();
+        return trie != null ? trie.get(key) : map.get(key);
+    }
+
+    @Benchmark
+    public Object put() {
+        final String key = nextKey();
+        if (trie != null) {
+            return trie = trie.plus(key, key);
+        }
+        return map.put(key, key);
+    }
+
+    @Benchmark
+    public Object copyAndPut() {
+        final String key = nextKey();
+        if (trie != null) {
+            return trie.plus(key, key);
+        }
+        final Map<String, Object> copy;
+        if (map instanceof FastCopyHashMap) {
+            copy = ((FastCopyHashMap<String, Object>) map).clone();
+        } else if (map instanceof ConcurrentHashMap) {
+            copy = new ConcurrentHashMap<String, Object>(map);
+        } else {
+            copy = new HashMap<String, Object>(map);
+        }
+        copy.put(key, key);
+        return copy;
+    }
+
+    private String nextKey() {
+        final String key = keys[next];
+        next = (next + 1) % size;
+        return key;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.process;
+
+import org.jboss.as.process.ProcessManagerProtocol.IncomingPmCommand;
+import org.jboss.as.process.ProcessOutputStreamHandler.Managed;
+import org.jboss.as.process.ProcessOutputStreamHandler.Master;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for a round trip of the {@code ADD}, {@code START} and {@code SEND_STDIN} commands through the text and
+ * the binary framing of the process manager protocol.  Each operation writes the command to a buffered stream, as a
+ * process does on its socket, then reads it back and dispatches it the way the process manager does.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessManagerProtocolBenchmark {
+
+    @Param({"text", "binary"})
+    private String framing;
+
+    @Param({"1024"})
+    private int stdinSize;
+
+    private ByteArrayOutputStream bytes;
+    private OutputStream output;
+    private ProcessOutputStreamHandler handler;
+    private BlackholeMaster master;
+    private List<String> command;
+    private Map<String, String> env;
+    private byte[] stdin;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        bytes = new ByteArrayOutputStream(8192);
+        final OutputStream buffered = new BufferedOutputStream(bytes);
+        output = "binary".equals(framing) ? new BinaryFrames.FramedOutputStream(buffered) : buffered;
+        master = new BlackholeMaster(blackhole);
+        handler = new ProcessOutputStreamHandler(master, new Managed() {
+            public String getProcessName() {
+                return "ServerManager";
+            }
+
+            public void processInputClosed() {
+            }
+
+            public void processEnded(final int exitCode) {
+            }
+        });
+        command = new ArrayList<String>();
+        command.add("/usr/bin/java");
+        command.add("-Xmx512m");
+        command.add("-Djava.net.preferIPv4Stack=true");
+        command.add("-jar");
+        command.add("jboss-modules.jar");
+        command.add("-mp");
+        command.add("modules");
+        command.add("org.jboss.as.server");
+        env = new HashMap<String, String>();
+        for (int i = 0; i < 20; i++) {
+            env.put("VARIABLE_" + i, "/some/value/for/variable/" + i);
+        }
+        stdin = new byte[stdinSize];
+        for (int i = 0; i < stdin.length; i++) {
+            stdin[i] = (byte) i;
+        }
+    }
+
+    @Benchmark
+    public void add() throws IOException {
+        bytes.reset();
+        IncomingPmCommand.ADD.sendAddProcess(output, "Server:server-one", command, env, "/opt/jboss");
+        receive();
+    }
+
+    @Benchmark
+    public void start() throws IOException {
+        bytes.reset();
+        IncomingPmCommand.START.sendStartProcess(output, "Server:server-one");
+        receive();
+    }
+
+    @Benchmark
+    public void sendStdin() throws IOException {
+        bytes.reset();
+        IncomingPmCommand.SEND_STDIN.sendStdin(output, "Server:server-one", stdin);
+        receive();
+    }
+
+    private void receive() throws IOException {
+        final ByteArrayInputStream input = new ByteArrayInputStream(bytes.toByteArray());
+        if (output instanceof BinaryFrames.FramedOutputStream) {
+            handler.handleFrame(input);
+        } else {
+            handler.handleCommand(input);
+        }
+    }
+
+    private static class BlackholeMaster implements Master {
+        private final Blackhole blackhole;
+
+        BlackholeMaster(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        public void addProcess(final String processName, final List<String> command, final Map<String, String> env, final String workingDirectory) {
+            blackhole.consume(processName);
+            blackhole.consume(command);
+            blackhole.consume(env);
+            blackhole.consume(workingDirectory);
+        }
+
+        public void startProcess(final String processName) {
+            blackhole.consume(processName);
+        }
+
+        public void stopProcess(final String processName) {
+            blackhole.consume(processName);
+        }
+
+        public void removeProcess(final String processName) {
+            blackhole.consume(processName);
+        }
+
+        public void sendStdin(final String recipient, final byte[] msg) {
+            blackhole.consume(recipient);
+            blackhole.consume(msg);
+        }
+
+        public void downServer(final String serverName) {
+            blackhole.consume(serverName);
+        }
+
+        public void reconnectServersToServerManager(final String smAddress, final String smPort) {
+            blackhole.consume(smAddress);
+        }
+
+        public void reconnectProcessToServerManager(final String server, final String smAddress, final String smPort) {
+            blackhole.consume(server);
+        }
+
+        public void requestSamples(final String processName) {
+            blackhole.consume(processName);
+        }
+
+        public boolean isShutdown() {
+            return false;
+        }
+    }
+}
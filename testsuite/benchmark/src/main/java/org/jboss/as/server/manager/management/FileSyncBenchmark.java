@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks synchronizing a changed file from the domain controller to a server manager restarting with an older
+ * copy of it: sending the whole file, or sending a delta against the signature of the server manager's copy.  The
+ * bytes each sends are reported by the {@code bytes} auxiliary counter, as the total over the {@code transfers}
+ * counted alongside it.
+ *
+ * @author John Bailey
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileSyncBenchmark {
+
+    @Param({"16777216"})
+    private int fileSize;
+
+    @Param({"0", "16", "256"})
+    private int changes;
+
+    private File dir;
+    private File held;
+    private File current;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("filesync", "");
+        dir.delete();
+        dir.mkdirs();
+        final Random random = new Random(42L);
+        final byte[] contents = new byte[fileSize];
+        random.nextBytes(contents);
+        held = write(new File(dir, "held.jar"), contents);
+        // scattered single byte edits, as a rebuilt deployment with a few changed classes would have
+        for (int i = 0; i < changes; i++) {
+            contents[random.nextInt(fileSize)] ^= 1;
+        }
+        current = write(new File(dir, "current.jar"), contents);
+    }
+
+    @TearDown
+    public void tearDown() {
+        held.delete();
+        current.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public long fullTransfer(final Transfers transfers) throws IOException {
+        final CountingOutputStream output = new CountingOutputStream();
+        final InputStream input = new FileInputStream(current);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        return transfers.sent(output.count);
+    }
+
+    @Benchmark
+    public long deltaTransfer(final Transfers transfers) throws IOException {
+        final FileDelta.Signature signature = FileDelta.Signature.create(held);
+        final CountingOutputStream output = new CountingOutputStream();
+        final DataOutputStream dataOutput = new DataOutputStream(output);
+        // the server manager sends the signature, the domain controller answers with the delta
+        signature.writeTo(dataOutput);
+        FileDelta.writeDelta(current, signature, dataOutput);
+        dataOutput.flush();
+        return transfers.sent(output.count);
+    }
+
+    private static File write(final File file, final byte[] contents) throws IOException {
+        final OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(contents);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    /**
+     * The bytes sent by the transfers of an iteration, reported as JMH auxiliary counters.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Transfers {
+        public long bytes;
+        public long transfers;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0L;
+            transfers = 0L;
+        }
+
+        long sent(final long count) {
+            bytes += count;
+            transfers++;
+            return count;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        public void write(final int b) {
+            count++;
+        }
+
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
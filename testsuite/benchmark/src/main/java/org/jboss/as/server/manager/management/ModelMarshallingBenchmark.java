@@ -0,0 +1,237 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.server.manager.management;
+
+import org.jboss.as.model.DomainModel;
+import org.jboss.as.model.DomainModelParser;
+import org.jboss.as.model.Element;
+import org.jboss.as.model.HostModel;
+import org.jboss.as.model.HostModelParser;
+import org.jboss.as.model.Namespace;
+import org.jboss.as.model.ParseResult;
+import org.jboss.marshalling.ClassTable;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallerFactory;
+import org.jboss.marshalling.Marshalling;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.Unmarshaller;
+import org.jboss.staxmapper.XMLElementReader;
+import org.jboss.staxmapper.XMLMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+
+/**
+ * Benchmarks marshalling the host and domain models a server manager and the domain controller exchange when the
+ * server manager registers, for hosts running 10, 100 and 1000 servers: with a new marshaller describing every class
+ * by name, or with a pooled marshaller using the {@link ModelClassTable} and {@link ModelObjectTable}.  The bytes
+ * of the payloads each marshals are reported by the {@code bytes} auxiliary counter, as the total over the
+ * {@code payloads} counted alongside it.
+ * <p>
+ * The default configuration has no class table as the {@code ModularClassTable} needs a module loader.
+ *
+ * @author John Bailey
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelMarshallingBenchmark {
+
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    @Param({"10", "100", "1000"})
+    private int servers;
+
+    private HostModel host;
+    private DomainModel domain;
+    private MarshallerFactory factory;
+    private MarshallingConfiguration defaultConfiguration;
+    private MarshallerPool pool;
+
+    @Setup
+    public void setup() throws Exception {
+        final int groups = Math.max(1, servers / 10);
+        host = parse(Element.HOST, HostModelParser.getInstance(), hostXml(servers, groups));
+        domain = parse(Element.DOMAIN, DomainModelParser.getInstance(), domainXml(groups));
+        factory = Marshalling.getMarshallerFactory("river", ModelMarshallingBenchmark.class.getClassLoader());
+        defaultConfiguration = new MarshallingConfiguration();
+        final MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setClassTable(new ModelClassTable(new NoClassTable()));
+        configuration.setObjectTable(ModelObjectTable.getInstance());
+        pool = new MarshallerPool(factory, configuration);
+    }
+
+    @Benchmark
+    public Object defaultMarshalling(final Payloads payloads) throws Exception {
+        final Marshaller marshaller = factory.createMarshaller(defaultConfiguration);
+        final byte[] bytes = marshal(marshaller);
+        marshaller.close();
+        payloads.marshalled(bytes.length);
+        final Unmarshaller unmarshaller = factory.createUnmarshaller(defaultConfiguration);
+        final Object result = unmarshal(unmarshaller, bytes);
+        unmarshaller.close();
+        return result;
+    }
+
+    @Benchmark
+    public Object pooledMarshalling(final Payloads payloads) throws Exception {
+        final Marshaller marshaller = pool.getMarshaller();
+        final byte[] bytes = marshal(marshaller);
+        pool.returnMarshaller(marshaller);
+        payloads.marshalled(bytes.length);
+        final Unmarshaller unmarshaller = pool.getUnmarshaller();
+        final Object result = unmarshal(unmarshaller, bytes);
+        pool.returnUnmarshaller(unmarshaller);
+        return result;
+    }
+
+    private byte[] marshal(final Marshaller marshaller) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+        marshaller.start(Marshalling.createByteOutput(output));
+        marshaller.writeObject(host);
+        marshaller.writeObject(domain);
+        marshaller.finish();
+        return output.toByteArray();
+    }
+
+    private static Object unmarshal(final Unmarshaller unmarshaller, final byte[] bytes) throws Exception {
+        unmarshaller.start(Marshalling.createByteInput(new ByteArrayInputStream(bytes)));
+        unmarshaller.readObject(HostModel.class);
+        final DomainModel result = unmarshaller.readObject(DomainModel.class);
+        unmarshaller.finish();
+        return result;
+    }
+
+    private static <T> T parse(final Element root, final XMLElementReader<ParseResult<T>> parser, final String xml) throws Exception {
+        final XMLMapper mapper = XMLMapper.Factory.create();
+        mapper.registerRootElement(new QName(Namespace.CURRENT.getUriString(), root.getLocalName()), parser);
+        final ParseResult<T> result = new ParseResult<T>();
+        mapper.parseDocument(result, XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)));
+        return result.getResult();
+    }
+
+    private static String hostXml(final int servers, final int groups) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<host xmlns=\"").append(Namespace.CURRENT.getUriString()).append("\">");
+        xml.append("<domain-controller><local/></domain-controller>");
+        xml.append("<management interface=\"public\" port=\"9999\"/>");
+        xml.append("<interfaces><interface name=\"public\"><any-address/></interface></interfaces>");
+        xml.append("<jvms><jvm name=\"default\"><system-properties><property name=\"foo\" value=\"bar\"/></system-properties></jvm></jvms>");
+        xml.append("<servers>");
+        for (int i = 0; i < servers; i++) {
+            xml.append("<server name=\"server-").append(i).append("\" group=\"group-").append(i % groups).append("\" start=\"true\">");
+            xml.append("<interface-specs><interface name=\"internal\"><inet-address value=\"10.0.")
+                .append(i / 250).append('.').append(i % 250 + 1).append("\"/></interface></interface-specs>");
+            xml.append("<socket-binding-group ref=\"standard-sockets\" port-offset=\"").append(i * 100).append("\"/>");
+            xml.append("<jvm name=\"default\"><heap size=\"64m\" max-size=\"512m\"/>");
+            xml.append("<system-properties><property name=\"server.index\" value=\"").append(i).append("\"/></system-properties></jvm>");
+            xml.append("</server>");
+        }
+        xml.append("</servers></host>");
+        return xml.toString();
+    }
+
+    private static String domainXml(final int groups) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<domain xmlns=\"").append(Namespace.CURRENT.getUriString()).append("\">");
+        xml.append("<profiles><profile name=\"default\"/></profiles>");
+        xml.append("<interfaces><interface name=\"external\"><any-address/></interface>");
+        xml.append("<interface name=\"internal\"><not><loopback/></not><up/><site-local-address/></interface></interfaces>");
+        xml.append("<socket-binding-groups><socket-binding-group name=\"standard-sockets\" default-interface=\"external\">");
+        xml.append("<socket-binding name=\"jndi\" port=\"1099\"/><socket-binding name=\"http\" port=\"8080\"/>");
+        xml.append("<socket-binding name=\"remoting\" interface=\"internal\" port=\"4447\"/>");
+        xml.append("</socket-binding-group></socket-binding-groups>");
+        xml.append("<system-properties><property name=\"prop1\" value=\"value1\"/></system-properties>");
+        xml.append("<deployments>");
+        for (int i = 0; i < groups; i++) {
+            xml.append("<deployment name=\"app-").append(i).append(".war\" runtime-name=\"app-").append(i)
+                .append(".war\" sha1=\"").append(SHA1).append("\"/>");
+        }
+        xml.append("</deployments><server-groups>");
+        for (int i = 0; i < groups; i++) {
+            xml.append("<server-group name=\"group-").append(i).append("\" profile=\"default\">");
+            xml.append("<jvm name=\"default\"><heap size=\"512m\" max-size=\"1024m\"/></jvm>");
+            xml.append("<socket-binding-group ref=\"standard-sockets\"/>");
+            xml.append("<deployments><deployment name=\"app-").append(i).append(".war\" runtime-name=\"app-").append(i)
+                .append(".war\" sha1=\"").append(SHA1).append("\" start=\"true\"/></deployments>");
+            xml.append("</server-group>");
+        }
+        xml.append("</server-groups></domain>");
+        return xml.toString();
+    }
+
+    /**
+     * The bytes of the payloads marshalled in an iteration, reported as JMH auxiliary counters.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payloads {
+        public long bytes;
+        public long payloads;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0L;
+            payloads = 0L;
+        }
+
+        void marshalled(final int count) {
+            bytes += count;
+            payloads++;
+        }
+    }
+
+    /**
+     * Describes every class which is not a model class by name, standing in for the {@code ModularClassTable}.
+     */
+    private static final class NoClassTable implements ClassTable {
+        public Writer getClassWriter(final Class<?> clazz) {
+            return null;
+        }
+
+        public Class<?> readClass(final Unmarshaller unmarshaller) throws IOException {
+            throw new IOException("No classes are written by this table");
+        }
+    }
+}
@@ -34,7 +34,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
-import org.jboss.as.communication.SocketConnection;
 import org.jboss.as.process.CommandLineConstants;
 import org.jboss.as.process.ProcessManagerMaster;
 import org.jboss.as.process.RespawnPolicy;
@@ -163,9 +162,9 @@ public class TestProcessManager extends ProcessManagerMaster {
     }
 
     @Override
-    protected void acceptedConnection(String processName, SocketConnection connection) {
+    protected void acceptedConnection(String processName) {
         if (newConnectionListener != null)
-            newConnectionListener.acceptedConnection(processName, connection);
+            newConnectionListener.acceptedConnection(processName);
     }
 
     public List<String> pollAddedProcess(int expectedNumber) throws InterruptedException {
@@ -225,7 +224,7 @@ public class TestProcessManager extends ProcessManagerMaster {
     }
 
     public interface NewConnectionListener{
-        void acceptedConnection(String processName, SocketConnection conn);
+        void acceptedConnection(String processName);
     }
 
 }
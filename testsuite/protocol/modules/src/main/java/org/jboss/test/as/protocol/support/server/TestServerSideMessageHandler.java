@@ -21,6 +21,7 @@
  */
 package org.jboss.test.as.protocol.support.server;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -28,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.jboss.as.model.ServerModel;
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
+import org.jboss.as.process.ProcessSample;
 import org.jboss.as.server.manager.ServerManagerProtocol.ServerManagerToServerCommandHandler;
 
 /**
@@ -80,6 +82,10 @@ public class TestServerSideMessageHandler extends ServerManagerToServerCommandHa
         reconnectServer.add(addr + ":" + port);
     }
 
+    @Override
+    public void handleSamples(String processName, List<ProcessSample> samples) {
+    }
+
     public String waitForReconnectServer() throws InterruptedException {
         return waitForReconnectServer(10000);
     }
@@ -24,7 +24,6 @@ package org.jboss.test.as.protocol.support.server.manager;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
-import java.net.Socket;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -108,8 +107,8 @@ public class TestDirectServerManagerCommunicationListener implements ShutdownLis
     class ServerAcceptor implements SocketHandler {
 
         @Override
-        public void initializeConnection(Socket socket) throws IOException, InitialSocketRequestException {
-            InputStream in = socket.getInputStream();
+        public void initializeConnection(SocketConnection connection) throws IOException, InitialSocketRequestException {
+            InputStream in = connection.getInputStream();
             StringBuilder sb = new StringBuilder();
 
             //TODO Timeout on the read?
@@ -128,7 +127,7 @@ public class TestDirectServerManagerCommunicationListener implements ShutdownLis
             String processName = sb.toString();
 
             log.infof("Server acceptor: connected server %s", processName);
-            DirectServerManagerCommunicationHandler handler = DirectServerManagerCommunicationHandler.create(SocketConnection.accepted(socket), processName, messageHandler, TestDirectServerManagerCommunicationListener.this);
+            DirectServerManagerCommunicationHandler handler = DirectServerManagerCommunicationHandler.create(connection, processName, messageHandler, TestDirectServerManagerCommunicationListener.this);
             handlers.put(processName, handler);
 
             newConnectionLatch.countDown();
@@ -21,12 +21,14 @@
  */
 package org.jboss.test.as.protocol.support.server.manager;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.jboss.as.process.ProcessManagerProtocol.OutgoingPmCommandHandler;
+import org.jboss.as.process.ProcessSample;
 import org.jboss.as.server.manager.ServerState;
 import org.jboss.as.server.manager.ServerManagerProtocol.ServerToServerManagerCommandHandler;
 
@@ -97,6 +99,10 @@ public class TestServerManagerMessageHandler extends ServerToServerManagerComman
     public void handleReconnectServerManager(String address, String port) {
     }
 
+    @Override
+    public void handleSamples(String processName, List<ProcessSample> samples) {
+    }
+
     public class ServerMessage {
         String sourceProcess;
         byte[] message;
@@ -29,7 +29,6 @@ import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
-import org.jboss.as.communication.SocketConnection;
 import org.jboss.as.model.DomainModel;
 import org.jboss.as.model.HostModel;
 import org.jboss.as.model.ServerElement;
@@ -171,38 +170,17 @@ public class ServerTestModule extends AbstractProtocolTestModule implements Serv
     }
 
     private static class QueuedNewConnectionListener implements NewConnectionListener {
-        final BlockingQueue<ConnectionData> queue = new LinkedBlockingQueue<ConnectionData>();
+        final BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
 
         @Override
-        public void acceptedConnection(String processName, SocketConnection conn) {
-            synchronized (this) {
-                queue.add(new ConnectionData(processName, conn));
-            }
-        }
-
-        public SocketConnection assertWaitForConnection(String expectedName) throws InterruptedException {
-            ConnectionData data = queue.poll(10, TimeUnit.SECONDS);
-            Assert.assertNotNull(data);
-            Assert.assertEquals(expectedName, data.getProcessName());
-            return data.getConn();
-        }
-    }
-
-    private static class ConnectionData{
-        String processName;
-        SocketConnection conn;
-
-        public ConnectionData(String processName, SocketConnection conn) {
-            this.processName = processName;
-            this.conn = conn;
-        }
-
-        public String getProcessName() {
-            return processName;
+        public void acceptedConnection(String processName) {
+            queue.add(processName);
         }
 
-        public SocketConnection getConn() {
-            return conn;
+        public void assertWaitForConnection(String expectedName) throws InterruptedException {
+            String processName = queue.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(processName);
+            Assert.assertEquals(expectedName, processName);
         }
     }
 }